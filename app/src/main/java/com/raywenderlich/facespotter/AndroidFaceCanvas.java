@@ -0,0 +1,54 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Draws {@link FaceRenderer}'s decorations onto an Android {@link Canvas}, with sprites from the
+ * {@link SpriteAtlas}.<p>
+ *
+ * Set the canvas to draw onto before each frame.  Only for use on the UI thread.
+ */
+class AndroidFaceCanvas implements FaceCanvas {
+
+  private static final String TAG = "AndroidFaceCanvas";
+
+  private final SpriteAtlas mSprites;
+  private final Paint[] mPaints = new Paint[PAINT_COUNT];
+  private Canvas mCanvas;
+
+  AndroidFaceCanvas(SpriteAtlas sprites) {
+    mSprites = sprites;
+    for (int i = 0; i < PAINT_COUNT; i++) {
+      Paint paint = new Paint();
+      paint.setColor(FaceRenderer.getPaintColor(i));
+      if (FaceRenderer.isOutline(i)) {
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(FaceGeometry.EYE_OUTLINE_WIDTH);
+      } else {
+        paint.setStyle(Paint.Style.FILL);
+      }
+      mPaints[i] = paint;
+    }
+  }
+
+  void setCanvas(Canvas canvas) {
+    mCanvas = canvas;
+  }
+
+  @Override
+  public void drawCircle(float centerX, float centerY, float radius, int paint) {
+    mCanvas.drawCircle(centerX, centerY, radius, mPaints[paint]);
+  }
+
+  @Override
+  public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+    mCanvas.drawLine(startX, startY, stopX, stopY, mPaints[paint]);
+  }
+
+  @Override
+  public void drawSprite(int sprite, int left, int top, int right, int bottom) {
+    mSprites.draw(mCanvas, sprite, left, top, right, bottom);
+  }
+
+}
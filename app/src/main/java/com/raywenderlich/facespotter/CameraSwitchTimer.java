@@ -0,0 +1,142 @@
+package com.raywenderlich.facespotter;
+
+import java.util.Locale;
+
+/**
+ * Times each switch between cameras, phase by phase, from the button press to the first frame
+ * the new camera's detector gets through:
+ * <ol>
+ * <li>{@link #PREPARED}: the new camera's detectors are ready (built, the first time that
+ * camera is used),</li>
+ * <li>{@link #STOPPED}: the old camera has stopped,</li>
+ * <li>{@link #STARTED}: the new camera has opened and started previewing,</li>
+ * <li>{@link #FIRST_FRAME}: the detector has finished with the new camera's first frame.</li>
+ * </ol>
+ *
+ * The old camera keeps previewing until it's stopped, so what the user waits through is the
+ * last three phases.  Each phase may end on a different thread.
+ */
+class CameraSwitchTimer {
+
+  private static final String TAG = "CameraSwitchTimer";
+
+  // Phases
+  static final int PREPARED = 0;
+  static final int STOPPED = 1;
+  static final int STARTED = 2;
+  static final int FIRST_FRAME = 3;
+  static final int PHASE_COUNT = 4;
+
+  private static final String[] PHASE_NAMES = {"prepareMs", "stopMs", "startMs", "firstFrameMs"};
+
+  private final LatencyMonitor.Clock mClock;
+
+  // Everything below is guarded by the timer object.
+  private boolean mIsSwitching;
+  private long mPhaseStartedNs;
+  private int mNextPhase;
+  private final long[] mLastPhaseNs = new long[PHASE_COUNT];
+
+  private int mSwitchCount;
+  private final long[] mTotalPhaseNs = new long[PHASE_COUNT];
+
+  CameraSwitchTimer(LatencyMonitor.Clock clock) {
+    mClock = clock;
+  }
+
+  /**
+   * Starts timing a switch, abandoning any switch that didn't get to its first frame.
+   */
+  synchronized void onSwitchStarted() {
+    mIsSwitching = true;
+    mPhaseStartedNs = mClock.nowNs();
+    mNextPhase = PREPARED;
+  }
+
+  /**
+   * Ends a phase of the switch under way.  Phases that are ended out of order, or when no switch
+   * is under way, are ignored.
+   *
+   * @return true if that was the last phase, and the switch is done
+   */
+  synchronized boolean onPhaseDone(int phase) {
+    if (!mIsSwitching || (phase != mNextPhase)) {
+      return false;
+    }
+    long nowNs = mClock.nowNs();
+    mLastPhaseNs[phase] = nowNs - mPhaseStartedNs;
+    mPhaseStartedNs = nowNs;
+    mNextPhase++;
+    if (mNextPhase < PHASE_COUNT) {
+      return false;
+    }
+
+    mIsSwitching = false;
+    mSwitchCount++;
+    for (int i = 0; i < PHASE_COUNT; i++) {
+      mTotalPhaseNs[i] += mLastPhaseNs[i];
+    }
+    return true;
+  }
+
+  /**
+   * Returns true while a switch has started and not yet reached its first frame.
+   */
+  synchronized boolean isSwitching() {
+    return mIsSwitching;
+  }
+
+  synchronized int getSwitchCount() {
+    return mSwitchCount;
+  }
+
+  /**
+   * Returns how long a phase of the last finished switch took, in nanoseconds.
+   */
+  synchronized long getLastPhaseNs(int phase) {
+    return (mSwitchCount == 0) ? 0 : mLastPhaseNs[phase];
+  }
+
+  /**
+   * Returns the time the user waited through in the last finished switch, from stopping the old
+   * camera to the new one's first detected frame, in nanoseconds.
+   */
+  synchronized long getLastBlankNs() {
+    return (mSwitchCount == 0)
+      ? 0
+      : mLastPhaseNs[STOPPED] + mLastPhaseNs[STARTED] + mLastPhaseNs[FIRST_FRAME];
+  }
+
+  /**
+   * Returns the last finished switch's phases, and the average of each over every switch, as
+   * space-separated {@code key=value} pairs.
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("switches=").append(mSwitchCount);
+    if (mSwitchCount == 0) {
+      return builder.toString();
+    }
+
+    long totalNs = 0;
+    for (int i = 0; i < PHASE_COUNT; i++) {
+      builder.append(String.format(Locale.US, " %s=%.1f", PHASE_NAMES[i],
+                                   mLastPhaseNs[i] / 1e6));
+      totalNs += mLastPhaseNs[i];
+    }
+    builder.append(String.format(Locale.US, " blankMs=%.1f totalMs=%.1f",
+                                 getLastBlankNs() / 1e6, totalNs / 1e6));
+    for (int i = 0; i < PHASE_COUNT; i++) {
+      builder.append(String.format(Locale.US, " mean%s=%.1f",
+                                   capitalize(PHASE_NAMES[i]),
+                                   mTotalPhaseNs[i] / 1e6 / mSwitchCount));
+    }
+    return builder.toString();
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+}
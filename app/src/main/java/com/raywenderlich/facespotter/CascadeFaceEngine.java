@@ -0,0 +1,517 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Landmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds faces with a {@link HaarCascade}, in plain Java on the CPU, so that faces can be detected
+ * where Play Services isn't available, and on the desktop.<p>
+ *
+ * The frame's upright integral image and squared integral image, from which the sum of any
+ * rectangle is four lookups, come from its {@link FrameImageCache}.  The cascade's window is
+ * slid across them at every scale from the minimum face size up, by a small fraction of the
+ * window at a time.  Windows that pass every stage are grouped with those that overlap them, and
+ * a group of enough windows is a face.  Faces are given the ids of the faces they overlap most in
+ * the frame before.<p>
+ *
+ * Big frames can be scanned on a {@link TileScanPool}, to use every core.  Each scale is then
+ * scanned at the smallest level of the frame's pyramid that still holds the cascade's own window
+ * size, and split into tiles of window positions.  The tiles are scanned in parallel, each
+ * reading a window's width and height past its own positions, into its neighbours, so that no
+ * face is lost at a seam.  Every tile's windows are then grouped together, with windows found at
+ * different levels and in different tiles suppressed by the biggest group they overlap, as on a
+ * single thread.<p>
+ *
+ * A cascade only finds where faces are, so landmarks are placed where they are on an average
+ * frontal face, the head is taken to face the camera, and eyes and smiles aren't classified.
+ * The engine's scaled cascades, like the frame's images, are reused from frame to frame while the
+ * frame size stays the same.
+ */
+final class CascadeFaceEngine implements FaceDetectionEngine {
+
+  // Each scale's window is this much bigger than the last.
+  private static final float SCALE_STEP = 1.2f;
+
+  // Windows move by this fraction of their width, unless told otherwise.
+  static final float DEFAULT_STEP_FRACTION = 0.08f;
+
+  // Windows with less contrast than this (standard deviation in luminance levels) can't be faces.
+  private static final float MIN_STD_DEV = 12f;
+
+  // Accepted windows overlapping by at least this much (intersection over union) are the same
+  // face, and it takes this many to make a face.
+  private static final float GROUP_OVERLAP = 0.4f;
+  private static final int MIN_GROUP_SIZE = 3;
+
+  // A face overlapping one from the frame before by at least this much keeps its id.
+  private static final float MATCH_OVERLAP = 0.3f;
+
+  // Scanning on a pool, each tile covers up to this many window positions each way.
+  private static final int TILE_POSITIONS = 32;
+
+  // Each tile as its scale, and the window positions it covers: left, top, right and bottom,
+  // the right and bottom exclusive
+  private static final int TILE_VALUES = 5;
+
+  // Where landmarks are on an average frontal face, as fractions of its box.  The left eye is
+  // the subject's, on the right of the image.
+  private static final int[] LANDMARK_TYPES = {
+    Landmark.LEFT_EYE, Landmark.RIGHT_EYE, Landmark.NOSE_BASE, Landmark.LEFT_CHEEK,
+    Landmark.RIGHT_CHEEK, Landmark.LEFT_MOUTH, Landmark.RIGHT_MOUTH, Landmark.BOTTOM_MOUTH
+  };
+  private static final float[] LANDMARK_POSITIONS = {
+    0.72f, 0.38f,  0.28f, 0.38f,  0.50f, 0.62f,  0.76f, 0.62f,
+    0.24f, 0.62f,  0.64f, 0.77f,  0.36f, 0.77f,  0.50f, 0.83f
+  };
+
+  private final HaarCascade mCascade;
+  private final float mMinFaceSize;
+  private final float mStepFraction;
+  private final TileScanPool mPool;
+
+  // The upright frame's size, and the cascade scaled for it: for each scale, the pyramid level
+  // it's scanned at and the step between windows there
+  private int mWidth;
+  private int mHeight;
+  private final List<HaarCascade.Scaled> mScales = new ArrayList<>();
+  private int[] mScaleLevels = new int[16];
+  private int[] mScaleSteps = new int[16];
+
+  // Scanning on a pool: the tiles, each level's integral images for the frame, and the windows
+  // each worker accepted, as x, y and size, in the upright frame's coordinates.  For each tile,
+  // which worker scanned it, and where its windows are among that worker's.
+  private int mTileCount;
+  private int[] mTiles = new int[0];
+  private int[][] mLevelIntegrals = new int[0][];
+  private long[][] mLevelSquaredIntegrals = new long[0][];
+  private final int[][] mWorkerHits;
+  private final int[] mWorkerHitCounts;
+  private int[] mTileWorkers = new int[0];
+  private int[] mTileHitStarts = new int[0];
+  private int[] mTileHitCounts = new int[0];
+  private final TileScanPool.Scanner mTileScanner = new TileScanPool.Scanner() {
+    @Override
+    public void scanTile(int tile, int worker) {
+      CascadeFaceEngine.this.scanTile(tile, worker);
+    }
+  };
+
+  // Accepted windows, as x, y and size, and the groups they make: each group's summed boxes,
+  // as x, y and size, and its count
+  private int mHitCount;
+  private int[] mHits = new int[3 * 64];
+  private int mGroupCount;
+  private float[] mGroups = new float[4 * 16];
+
+  // The faces reported for the last frame, as x, y and size, with their ids
+  private int mLastFaceCount;
+  private float[] mLastFaces = new float[3 * 4];
+  private int[] mLastIds = new int[4];
+  private boolean[] mLastIsMatched = new boolean[4];
+  private int mNextId;
+
+  /**
+   * @param minFaceSize the smallest face to find, as a fraction of the upright frame's width
+   */
+  CascadeFaceEngine(HaarCascade cascade, float minFaceSize) {
+    this(cascade, minFaceSize, DEFAULT_STEP_FRACTION);
+  }
+
+  /**
+   * @param minFaceSize  the smallest face to find, as a fraction of the upright frame's width
+   * @param stepFraction how far windows move, as a fraction of their width; smaller steps find
+   *                     faces more surely, at a cost that's only worth paying on small frames
+   */
+  CascadeFaceEngine(HaarCascade cascade, float minFaceSize, float stepFraction) {
+    this(cascade, minFaceSize, stepFraction, null);
+  }
+
+  /**
+   * @param minFaceSize  the smallest face to find, as a fraction of the upright frame's width
+   * @param stepFraction how far windows move, as a fraction of their width
+   * @param pool         the workers to scan each frame's pyramid levels and tiles on, or null
+   *                     to scan the full-sized frame on the detector's thread
+   */
+  CascadeFaceEngine(HaarCascade cascade, float minFaceSize, float stepFraction,
+                    TileScanPool pool) {
+    mCascade = cascade;
+    mMinFaceSize = minFaceSize;
+    mStepFraction = stepFraction;
+    mPool = pool;
+    int workerCount = (pool != null) ? pool.getWorkerCount() : 0;
+    mWorkerHits = new int[workerCount][3 * 64];
+    mWorkerHitCounts = new int[workerCount];
+  }
+
+  @Override
+  public String getName() {
+    return "cascade";
+  }
+
+  @Override
+  public boolean isOperational() {
+    return true;
+  }
+
+  @Override
+  public void detect(LuminanceFrame frame, DetectedFaces faces) {
+    faces.clear();
+    FrameImageCache images = frame.getImages();
+    prepare(images);
+    if (mPool != null) {
+      scanTiles(images);
+    } else {
+      scan(images.getIntegral(0), images.getSquaredIntegral(0));
+    }
+    groupHits();
+    reportFaces(faces);
+  }
+
+  /**
+   * Returns the number of windows accepted by the cascade in the last frame, before grouping.
+   */
+  int getAcceptedWindowCount() {
+    return mHitCount;
+  }
+
+  /**
+   * Returns the number of tiles each frame is split into, when scanning on a pool.
+   */
+  int getTileCount() {
+    return mTileCount;
+  }
+
+  private void prepare(FrameImageCache images) {
+    int width = images.getWidth(0);
+    int height = images.getHeight(0);
+    if ((width == mWidth) && (height == mHeight)) {
+      return;
+    }
+    mWidth = width;
+    mHeight = height;
+
+    mScales.clear();
+    mTileCount = 0;
+    int windowWidth = mCascade.getWindowWidth();
+    int windowHeight = mCascade.getWindowHeight();
+    float scale = Math.max(1f, (mMinFaceSize * width) / windowWidth);
+    while ((Math.round(windowWidth * scale) <= width) &&
+           (Math.round(windowHeight * scale) <= height)) {
+      int level = (mPool != null) ? getLevel(images, scale) : 0;
+      HaarCascade.Scaled scaled =
+        mCascade.scale(scale / (1 << level), images.getWidth(level) + 1);
+      int index = mScales.size();
+      if (index == mScaleLevels.length) {
+        mScaleLevels = Arrays.copyOf(mScaleLevels, index * 2);
+        mScaleSteps = Arrays.copyOf(mScaleSteps, index * 2);
+      }
+      mScales.add(scaled);
+      mScaleLevels[index] = level;
+      mScaleSteps[index] = Math.max(1, Math.round(scaled.getWindowWidth() * mStepFraction));
+      if (mPool != null) {
+        addTiles(index, images.getWidth(level) - scaled.getWindowWidth(),
+                 images.getHeight(level) - scaled.getWindowHeight(), mScaleSteps[index]);
+      }
+      scale *= SCALE_STEP;
+    }
+
+    if (mPool != null) {
+      mLevelIntegrals = new int[images.getLevelCount()][];
+      mLevelSquaredIntegrals = new long[images.getLevelCount()][];
+      if (mTileWorkers.length < mTileCount) {
+        mTileWorkers = new int[mTileCount];
+        mTileHitStarts = new int[mTileCount];
+        mTileHitCounts = new int[mTileCount];
+      }
+    }
+  }
+
+  // The smallest pyramid level at which the window for the given scale is still at least the
+  // cascade's own size, and fits.
+  private int getLevel(FrameImageCache images, float scale) {
+    int level = 0;
+    while ((level + 1 < images.getLevelCount()) && (scale >= (2 << level))) {
+      float levelScale = scale / (2 << level);
+      if ((Math.round(mCascade.getWindowWidth() * levelScale) > images.getWidth(level + 1)) ||
+          (Math.round(mCascade.getWindowHeight() * levelScale) > images.getHeight(level + 1))) {
+        break;
+      }
+      level++;
+    }
+    return level;
+  }
+
+  // Split one scale's window positions, from 0 to the given maximums, into tiles.
+  private void addTiles(int scale, int maxX, int maxY, int step) {
+    int span = TILE_POSITIONS * step;
+    for (int top = 0; top <= maxY; top += span) {
+      for (int left = 0; left <= maxX; left += span) {
+        if ((mTileCount + 1) * TILE_VALUES > mTiles.length) {
+          mTiles = Arrays.copyOf(mTiles, Math.max(64, mTiles.length * 2));
+        }
+        int t = mTileCount * TILE_VALUES;
+        mTiles[t] = scale;
+        mTiles[t + 1] = left;
+        mTiles[t + 2] = top;
+        mTiles[t + 3] = Math.min(left + span, maxX + 1);
+        mTiles[t + 4] = Math.min(top + span, maxY + 1);
+        mTileCount++;
+      }
+    }
+  }
+
+  private void scan(int[] integral, long[] squaredIntegral) {
+    mHitCount = 0;
+    int stageCount = mCascade.getStageCount();
+    int stride = mWidth + 1;
+    for (int i = 0, scaleCount = mScales.size(); i < scaleCount; i++) {
+      HaarCascade.Scaled scaled = mScales.get(i);
+      int size = scaled.getWindowWidth();
+      int step = Math.max(1, Math.round(size * mStepFraction));
+      int maxX = mWidth - size;
+      int maxY = mHeight - scaled.getWindowHeight();
+      for (int y = 0; y <= maxY; y += step) {
+        int row = y * stride;
+        for (int x = 0; x <= maxX; x += step) {
+          if (scaled.evaluate(integral, squaredIntegral, row + x, MIN_STD_DEV) == stageCount) {
+            addHit(x, y, size);
+          }
+        }
+      }
+    }
+  }
+
+  // Scan every tile on the pool, then gather the accepted windows in tile order, so that they're
+  // grouped the same way whichever worker found them.  The frame's images aren't built on more
+  // than one thread, so every level's integral images are built before the tiles are handed out.
+  private void scanTiles(FrameImageCache images) {
+    for (int i = 0, scaleCount = mScales.size(); i < scaleCount; i++) {
+      int level = mScaleLevels[i];
+      mLevelIntegrals[level] = images.getIntegral(level);
+      mLevelSquaredIntegrals[level] = images.getSquaredIntegral(level);
+    }
+    Arrays.fill(mWorkerHitCounts, 0);
+    mPool.scan(mTileScanner, mTileCount);
+
+    mHitCount = 0;
+    for (int tile = 0; tile < mTileCount; tile++) {
+      int count = mTileHitCounts[tile];
+      if (count == 0) {
+        continue;
+      }
+      while ((mHitCount + count) * 3 > mHits.length) {
+        mHits = Arrays.copyOf(mHits, mHits.length * 2);
+      }
+      System.arraycopy(mWorkerHits[mTileWorkers[tile]], mTileHitStarts[tile] * 3, mHits,
+                       mHitCount * 3, count * 3);
+      mHitCount += count;
+    }
+  }
+
+  // Scan one tile, on one of the pool's workers, adding its accepted windows to the worker's.
+  private void scanTile(int tile, int worker) {
+    int t = tile * TILE_VALUES;
+    int scale = mTiles[t];
+    int left = mTiles[t + 1];
+    int top = mTiles[t + 2];
+    int right = mTiles[t + 3];
+    int bottom = mTiles[t + 4];
+    HaarCascade.Scaled scaled = mScales.get(scale);
+    int level = mScaleLevels[scale];
+    int step = mScaleSteps[scale];
+    int[] integral = mLevelIntegrals[level];
+    long[] squaredIntegral = mLevelSquaredIntegrals[level];
+    int stride = scaled.getStride();
+    int stageCount = mCascade.getStageCount();
+    int size = scaled.getWindowWidth() << level;
+
+    int[] hits = mWorkerHits[worker];
+    int hitCount = mWorkerHitCounts[worker];
+    int start = hitCount;
+    for (int y = top; y < bottom; y += step) {
+      int row = y * stride;
+      for (int x = left; x < right; x += step) {
+        if (scaled.evaluate(integral, squaredIntegral, row + x, MIN_STD_DEV) == stageCount) {
+          if ((hitCount + 1) * 3 > hits.length) {
+            hits = Arrays.copyOf(hits, hits.length * 2);
+            mWorkerHits[worker] = hits;
+          }
+          hits[hitCount * 3] = x << level;
+          hits[(hitCount * 3) + 1] = y << level;
+          hits[(hitCount * 3) + 2] = size;
+          hitCount++;
+        }
+      }
+    }
+    mWorkerHitCounts[worker] = hitCount;
+    mTileWorkers[tile] = worker;
+    mTileHitStarts[tile] = start;
+    mTileHitCounts[tile] = hitCount - start;
+  }
+
+  private void addHit(int x, int y, int size) {
+    if ((mHitCount + 1) * 3 > mHits.length) {
+      mHits = Arrays.copyOf(mHits, mHits.length * 2);
+    }
+    int hit = mHitCount * 3;
+    mHits[hit] = x;
+    mHits[hit + 1] = y;
+    mHits[hit + 2] = size;
+    mHitCount++;
+  }
+
+  // Group each accepted window with the first group whose average box it overlaps, then drop
+  // groups too small to be faces, and groups overlapping a bigger group.
+  private void groupHits() {
+    mGroupCount = 0;
+    for (int i = 0; i < mHitCount; i++) {
+      float x = mHits[i * 3];
+      float y = mHits[(i * 3) + 1];
+      float size = mHits[(i * 3) + 2];
+      int group = 0;
+      for (; group < mGroupCount; group++) {
+        int g = group * 4;
+        float count = mGroups[g + 3];
+        if (overlap(x, y, size, mGroups[g] / count, mGroups[g + 1] / count,
+                    mGroups[g + 2] / count) >= GROUP_OVERLAP) {
+          break;
+        }
+      }
+      if (group == mGroupCount) {
+        if ((mGroupCount + 1) * 4 > mGroups.length) {
+          mGroups = Arrays.copyOf(mGroups, mGroups.length * 2);
+        }
+        Arrays.fill(mGroups, group * 4, (group + 1) * 4, 0);
+        mGroupCount++;
+      }
+      int g = group * 4;
+      mGroups[g] += x;
+      mGroups[g + 1] += y;
+      mGroups[g + 2] += size;
+      mGroups[g + 3] += 1;
+    }
+
+    for (int i = 0; i < mGroupCount; i++) {
+      int g = i * 4;
+      float count = mGroups[g + 3];
+      if (count < MIN_GROUP_SIZE) {
+        mGroups[g + 3] = 0;
+        continue;
+      }
+      mGroups[g] /= count;
+      mGroups[g + 1] /= count;
+      mGroups[g + 2] /= count;
+    }
+    for (int i = 0; i < mGroupCount; i++) {
+      int g = i * 4;
+      if (mGroups[g + 3] == 0) {
+        continue;
+      }
+      for (int j = 0; j < mGroupCount; j++) {
+        int h = j * 4;
+        if ((j == i) || (mGroups[h + 3] == 0) || (mGroups[h + 3] < mGroups[g + 3])) {
+          continue;
+        }
+        if (((mGroups[h + 3] > mGroups[g + 3]) || (j < i)) &&
+            (containment(mGroups[g], mGroups[g + 1], mGroups[g + 2],
+                         mGroups[h], mGroups[h + 1], mGroups[h + 2]) >= GROUP_OVERLAP)) {
+          mGroups[g + 3] = 0;
+          break;
+        }
+      }
+    }
+  }
+
+  // Report the surviving groups as faces, keeping the ids of the faces from the last frame that
+  // they overlap most.
+  private void reportFaces(DetectedFaces faces) {
+    for (int i = 0; i < mLastFaceCount; i++) {
+      mLastIsMatched[i] = false;
+    }
+
+    for (int i = 0; i < mGroupCount; i++) {
+      int g = i * 4;
+      if (mGroups[g + 3] == 0) {
+        continue;
+      }
+      float x = mGroups[g];
+      float y = mGroups[g + 1];
+      float size = mGroups[g + 2];
+
+      int best = -1;
+      float bestOverlap = MATCH_OVERLAP;
+      for (int j = 0; j < mLastFaceCount; j++) {
+        if (mLastIsMatched[j]) {
+          continue;
+        }
+        float overlap = overlap(x, y, size, mLastFaces[j * 3], mLastFaces[(j * 3) + 1],
+                                mLastFaces[(j * 3) + 2]);
+        if (overlap >= bestOverlap) {
+          best = j;
+          bestOverlap = overlap;
+        }
+      }
+      int id;
+      if (best >= 0) {
+        mLastIsMatched[best] = true;
+        id = mLastIds[best];
+      } else {
+        id = mNextId++;
+      }
+
+      int index = faces.add(id, x, y, size, size);
+      for (int j = 0; j < LANDMARK_TYPES.length; j++) {
+        faces.setLandmark(index, LANDMARK_TYPES[j], x + (LANDMARK_POSITIONS[j * 2] * size),
+                          y + (LANDMARK_POSITIONS[(j * 2) + 1] * size));
+      }
+    }
+
+    int count = faces.size();
+    if (count > mLastIds.length) {
+      int capacity = Math.max(count, mLastIds.length * 2);
+      mLastFaces = new float[capacity * 3];
+      mLastIds = new int[capacity];
+      mLastIsMatched = new boolean[capacity];
+    }
+    for (int i = 0; i < count; i++) {
+      mLastFaces[i * 3] = faces.getX(i);
+      mLastFaces[(i * 3) + 1] = faces.getY(i);
+      mLastFaces[(i * 3) + 2] = faces.getWidth(i);
+      mLastIds[i] = faces.getId(i);
+    }
+    mLastFaceCount = count;
+  }
+
+  // Intersection over union of two squares.
+  private static float overlap(float x1, float y1, float size1, float x2, float y2, float size2) {
+    float intersection = intersection(x1, y1, size1, x2, y2, size2);
+    return intersection / ((size1 * size1) + (size2 * size2) - intersection);
+  }
+
+  // How much of the first square is within the second.
+  private static float containment(float x1, float y1, float size1,
+                                   float x2, float y2, float size2) {
+    return intersection(x1, y1, size1, x2, y2, size2) / (size1 * size1);
+  }
+
+  private static float intersection(float x1, float y1, float size1,
+                                    float x2, float y2, float size2) {
+    float width = Math.min(x1 + size1, x2 + size2) - Math.max(x1, x2);
+    float height = Math.min(y1 + size1, y2 + size2) - Math.max(y1, y2);
+    return ((width <= 0) || (height <= 0)) ? 0 : width * height;
+  }
+
+  @Override
+  public void release() {
+    mScales.clear();
+    mTileCount = 0;
+    mLevelIntegrals = new int[0][];
+    mLevelSquaredIntegrals = new long[0][];
+    mWidth = 0;
+    mHeight = 0;
+  }
+
+}
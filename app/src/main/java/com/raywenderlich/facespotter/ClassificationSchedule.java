@@ -0,0 +1,70 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Decides which detections are worth classifying eyes and smiles on.<p>
+ *
+ * Classification is only needed while some face's state is uncertain: a face that has just
+ * appeared, or one whose eye or smile probabilities are near a threshold.  Trackers report such
+ * faces with {@link #reportUncertain()} as they process each frame, and the next detection
+ * classifies.  Otherwise, classification only runs every so often, to notice changes in faces
+ * that were confidently classified.<p>
+ *
+ * Classification never runs on two detections in a row, so that the tracking detector, which
+ * keeps face ids and finds new faces, sees at least every other frame.
+ */
+class ClassificationSchedule {
+
+  private static final String TAG = "ClassificationSchedule";
+
+  private final int mRefreshInterval;
+
+  private boolean mIsUncertainReported;
+  private boolean mWasClassified;
+  private int mDetectionsSinceClassification;
+
+  // Statistics
+  private long mDetectionCount;
+  private long mClassificationCount;
+
+  /**
+   * @param refreshInterval classify on at least every this many detections, even when every
+   *                        face is certain
+   */
+  ClassificationSchedule(int refreshInterval) {
+    mRefreshInterval = Math.max(2, refreshInterval);
+  }
+
+  /**
+   * Reports that a tracked face's eyes or smile need classifying.
+   */
+  synchronized void reportUncertain() {
+    mIsUncertainReported = true;
+  }
+
+  /**
+   * Decides whether the next detection should classify, and starts collecting reports for the
+   * one after.
+   */
+  synchronized boolean nextDetection() {
+    mDetectionCount++;
+    mDetectionsSinceClassification++;
+    boolean classify = !mWasClassified &&
+      (mIsUncertainReported || (mDetectionsSinceClassification >= mRefreshInterval));
+
+    mIsUncertainReported = false;
+    mWasClassified = classify;
+    if (classify) {
+      mClassificationCount++;
+      mDetectionsSinceClassification = 0;
+    }
+    return classify;
+  }
+
+  /**
+   * Returns the fraction of detections that have classified.
+   */
+  synchronized float getClassificationRatio() {
+    return (mDetectionCount == 0) ? 0 : (float) mClassificationCount / mDetectionCount;
+  }
+
+}
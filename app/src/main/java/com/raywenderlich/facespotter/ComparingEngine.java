@@ -0,0 +1,157 @@
+package com.raywenderlich.facespotter;
+
+import java.util.Locale;
+
+/**
+ * Runs two face detection engines on the same frames and keeps score of how they agree, while
+ * reporting the faces of the first.<p>
+ *
+ * The first engine is the reference (e.g., Play Services, through {@link MobileVisionEngine}),
+ * and its faces are the ones tracked and drawn.  The second engine is given the very same
+ * {@link LuminanceFrame} straight after, so differences are down to the engines, not to the
+ * frames they saw.  Each of the reference's faces is matched to the candidate's face it overlaps
+ * most, at least {@link #MATCH_OVERLAP} (intersection over union), each candidate face matching
+ * once at most.  Faces are in the frame's upright coordinates, whichever engine found them.<p>
+ *
+ * Nothing is allocated after the first frame.
+ */
+final class ComparingEngine implements FaceDetectionEngine {
+
+  // Faces from the two engines overlapping by at least this much are the same face.
+  static final float MATCH_OVERLAP = 0.5f;
+
+  private final FaceDetectionEngine mReference;
+  private final FaceDetectionEngine mCandidate;
+  private final DetectedFaces mCandidateFaces = new DetectedFaces();
+  private boolean[] mIsCandidateMatched = new boolean[8];
+
+  // Statistics
+  private long mFrameCount;
+  private long mReferenceFaceCount;
+  private long mCandidateFaceCount;
+  private long mMatchCount;
+  private double mMatchOverlapSum;
+  private long mReferenceNs;
+  private long mCandidateNs;
+
+  ComparingEngine(FaceDetectionEngine reference, FaceDetectionEngine candidate) {
+    mReference = reference;
+    mCandidate = candidate;
+  }
+
+  @Override
+  public String getName() {
+    return mReference.getName() + "-vs-" + mCandidate.getName();
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mReference.isOperational();
+  }
+
+  @Override
+  public void detect(LuminanceFrame frame, DetectedFaces faces) {
+    long startNs = System.nanoTime();
+    mReference.detect(frame, faces);
+    long referenceDoneNs = System.nanoTime();
+    mCandidate.detect(frame, mCandidateFaces);
+    mCandidateNs += System.nanoTime() - referenceDoneNs;
+    mReferenceNs += referenceDoneNs - startNs;
+    mFrameCount++;
+    compare(faces, mCandidateFaces);
+  }
+
+  private void compare(DetectedFaces reference, DetectedFaces candidate) {
+    int referenceCount = reference.size();
+    int candidateCount = candidate.size();
+    mReferenceFaceCount += referenceCount;
+    mCandidateFaceCount += candidateCount;
+    if (mIsCandidateMatched.length < candidateCount) {
+      mIsCandidateMatched = new boolean[Math.max(candidateCount, mIsCandidateMatched.length * 2)];
+    }
+    for (int j = 0; j < candidateCount; j++) {
+      mIsCandidateMatched[j] = false;
+    }
+
+    for (int i = 0; i < referenceCount; i++) {
+      int best = -1;
+      float bestOverlap = MATCH_OVERLAP;
+      for (int j = 0; j < candidateCount; j++) {
+        if (mIsCandidateMatched[j]) {
+          continue;
+        }
+        float overlap = overlap(reference.getX(i), reference.getY(i),
+                                reference.getWidth(i), reference.getHeight(i),
+                                candidate.getX(j), candidate.getY(j),
+                                candidate.getWidth(j), candidate.getHeight(j));
+        if (overlap >= bestOverlap) {
+          best = j;
+          bestOverlap = overlap;
+        }
+      }
+      if (best >= 0) {
+        mIsCandidateMatched[best] = true;
+        mMatchCount++;
+        mMatchOverlapSum += bestOverlap;
+      }
+    }
+  }
+
+  private static float overlap(float x1, float y1, float width1, float height1,
+                               float x2, float y2, float width2, float height2) {
+    float width = Math.min(x1 + width1, x2 + width2) - Math.max(x1, x2);
+    float height = Math.min(y1 + height1, y2 + height2) - Math.max(y1, y2);
+    if ((width <= 0) || (height <= 0)) {
+      return 0;
+    }
+    float intersection = width * height;
+    return intersection / ((width1 * height1) + (width2 * height2) - intersection);
+  }
+
+  long getFrameCount() {
+    return mFrameCount;
+  }
+
+  long getMatchCount() {
+    return mMatchCount;
+  }
+
+  /**
+   * Returns the fraction of the reference engine's faces that the candidate found too.
+   */
+  float getRecall() {
+    return (mReferenceFaceCount == 0) ? 0 : (float) mMatchCount / mReferenceFaceCount;
+  }
+
+  /**
+   * Returns the fraction of the candidate engine's faces that the reference found too.
+   */
+  float getPrecision() {
+    return (mCandidateFaceCount == 0) ? 0 : (float) mMatchCount / mCandidateFaceCount;
+  }
+
+  /**
+   * Returns the average overlap (intersection over union) of the faces matched.
+   */
+  float getMeanMatchOverlap() {
+    return (mMatchCount == 0) ? 0 : (float) (mMatchOverlapSum / mMatchCount);
+  }
+
+  @Override
+  public void release() {
+    mReference.release();
+    mCandidate.release();
+  }
+
+  @Override
+  public String toString() {
+    double frames = Math.max(1, mFrameCount);
+    return String.format(Locale.US,
+                         "ComparingEngine(%s frames=%d faces=%d/%d matches=%d recall=%.3f " +
+                           "precision=%.3f overlap=%.3f ms=%.2f/%.2f)",
+                         getName(), mFrameCount, mReferenceFaceCount, mCandidateFaceCount,
+                         mMatchCount, getRecall(), getPrecision(), getMeanMatchOverlap(),
+                         mReferenceNs / frames / 1e6, mCandidateNs / frames / 1e6);
+  }
+
+}
@@ -0,0 +1,206 @@
+package com.raywenderlich.facespotter;
+
+import java.util.Arrays;
+
+/**
+ * The faces a {@link FaceDetectionEngine} found in one frame: for each face, the same id, box,
+ * head angles, landmarks and classification probabilities that the Mobile Vision detector
+ * reports, in the upright frame's coordinates.<p>
+ *
+ * Faces are kept in flat primitive arrays, which grow as needed and are reused from one frame to
+ * the next, so that an engine can report faces without allocating.  Probabilities that weren't
+ * computed are {@link #UNCOMPUTED_PROBABILITY}, and landmarks that weren't found aren't set.
+ */
+final class DetectedFaces {
+
+  private static final String TAG = "DetectedFaces";
+
+  // The same as Face.UNCOMPUTED_PROBABILITY
+  static final float UNCOMPUTED_PROBABILITY = -1.0f;
+
+  // Values per face in mValues
+  private static final int X = 0;
+  private static final int Y = 1;
+  private static final int WIDTH = 2;
+  private static final int HEIGHT = 3;
+  private static final int EULER_Y = 4;
+  private static final int EULER_Z = 5;
+  private static final int LEFT_EYE_OPEN = 6;
+  private static final int RIGHT_EYE_OPEN = 7;
+  private static final int SMILING = 8;
+  private static final int VALUE_COUNT = 9;
+
+  private static final int LANDMARK_VALUE_COUNT = FaceData.LANDMARK_TYPE_COUNT * 2;
+
+  private int mCount;
+  private int[] mIds;
+  private float[] mValues;
+  private int[] mLandmarkMasks;
+  private float[] mLandmarks;
+
+  DetectedFaces() {
+    allocate(4);
+  }
+
+  private void allocate(int capacity) {
+    mIds = new int[capacity];
+    mValues = new float[capacity * VALUE_COUNT];
+    mLandmarkMasks = new int[capacity];
+    mLandmarks = new float[capacity * LANDMARK_VALUE_COUNT];
+  }
+
+  void clear() {
+    mCount = 0;
+  }
+
+  int size() {
+    return mCount;
+  }
+
+  /**
+   * Removes the face added last, e.g. when it turns out to be one already added.
+   */
+  void removeLast() {
+    if (mCount > 0) {
+      mCount--;
+    }
+  }
+
+  /**
+   * Adds a face, facing straight ahead, with no landmarks and nothing classified.
+   *
+   * @return the face's index
+   */
+  int add(int id, float x, float y, float width, float height) {
+    if (mCount == mIds.length) {
+      int capacity = mCount * 2;
+      mIds = Arrays.copyOf(mIds, capacity);
+      mValues = Arrays.copyOf(mValues, capacity * VALUE_COUNT);
+      mLandmarkMasks = Arrays.copyOf(mLandmarkMasks, capacity);
+      mLandmarks = Arrays.copyOf(mLandmarks, capacity * LANDMARK_VALUE_COUNT);
+    }
+
+    int index = mCount++;
+    mIds[index] = id;
+    int base = index * VALUE_COUNT;
+    mValues[base + X] = x;
+    mValues[base + Y] = y;
+    mValues[base + WIDTH] = width;
+    mValues[base + HEIGHT] = height;
+    mValues[base + EULER_Y] = 0;
+    mValues[base + EULER_Z] = 0;
+    mValues[base + LEFT_EYE_OPEN] = UNCOMPUTED_PROBABILITY;
+    mValues[base + RIGHT_EYE_OPEN] = UNCOMPUTED_PROBABILITY;
+    mValues[base + SMILING] = UNCOMPUTED_PROBABILITY;
+    mLandmarkMasks[index] = 0;
+    return index;
+  }
+
+  /**
+   * Adds a copy of a face from other faces, under a new id, with its box and landmarks scaled
+   * and then offset: e.g., from a crop of a frame back into the frame.
+   *
+   * @return the face's index
+   */
+  int addFrom(DetectedFaces source, int sourceIndex, int id, float offsetX, float offsetY,
+              float scale) {
+    int index = add(id, offsetX + (source.getX(sourceIndex) * scale),
+                    offsetY + (source.getY(sourceIndex) * scale),
+                    source.getWidth(sourceIndex) * scale, source.getHeight(sourceIndex) * scale);
+    setEulerAngles(index, source.getEulerY(sourceIndex), source.getEulerZ(sourceIndex));
+    setProbabilities(index, source.getIsLeftEyeOpenProbability(sourceIndex),
+                     source.getIsRightEyeOpenProbability(sourceIndex),
+                     source.getIsSmilingProbability(sourceIndex));
+    int mask = source.getLandmarkMask(sourceIndex);
+    for (int type = 0; mask != 0; type++, mask >>>= 1) {
+      if ((mask & 1) != 0) {
+        setLandmark(index, type, offsetX + (source.getLandmarkX(sourceIndex, type) * scale),
+                    offsetY + (source.getLandmarkY(sourceIndex, type) * scale));
+      }
+    }
+    return index;
+  }
+
+  void setEulerAngles(int index, float eulerY, float eulerZ) {
+    mValues[index * VALUE_COUNT + EULER_Y] = eulerY;
+    mValues[index * VALUE_COUNT + EULER_Z] = eulerZ;
+  }
+
+  void setProbabilities(int index, float isLeftEyeOpen, float isRightEyeOpen, float isSmiling) {
+    int base = index * VALUE_COUNT;
+    mValues[base + LEFT_EYE_OPEN] = isLeftEyeOpen;
+    mValues[base + RIGHT_EYE_OPEN] = isRightEyeOpen;
+    mValues[base + SMILING] = isSmiling;
+  }
+
+  /**
+   * Sets a landmark, by its Mobile Vision type ({@code Landmark.LEFT_EYE} and so on).  Types
+   * outside of {@link FaceData}'s range are ignored.
+   */
+  void setLandmark(int index, int type, float x, float y) {
+    if ((type < 0) || (type >= FaceData.LANDMARK_TYPE_COUNT)) {
+      return;
+    }
+    mLandmarkMasks[index] |= 1 << type;
+    mLandmarks[index * LANDMARK_VALUE_COUNT + (type * 2)] = x;
+    mLandmarks[index * LANDMARK_VALUE_COUNT + (type * 2) + 1] = y;
+  }
+
+  int getId(int index) {
+    return mIds[index];
+  }
+
+  float getX(int index) {
+    return mValues[index * VALUE_COUNT + X];
+  }
+
+  float getY(int index) {
+    return mValues[index * VALUE_COUNT + Y];
+  }
+
+  float getWidth(int index) {
+    return mValues[index * VALUE_COUNT + WIDTH];
+  }
+
+  float getHeight(int index) {
+    return mValues[index * VALUE_COUNT + HEIGHT];
+  }
+
+  float getEulerY(int index) {
+    return mValues[index * VALUE_COUNT + EULER_Y];
+  }
+
+  float getEulerZ(int index) {
+    return mValues[index * VALUE_COUNT + EULER_Z];
+  }
+
+  float getIsLeftEyeOpenProbability(int index) {
+    return mValues[index * VALUE_COUNT + LEFT_EYE_OPEN];
+  }
+
+  float getIsRightEyeOpenProbability(int index) {
+    return mValues[index * VALUE_COUNT + RIGHT_EYE_OPEN];
+  }
+
+  float getIsSmilingProbability(int index) {
+    return mValues[index * VALUE_COUNT + SMILING];
+  }
+
+  int getLandmarkMask(int index) {
+    return mLandmarkMasks[index];
+  }
+
+  boolean hasLandmark(int index, int type) {
+    return (type >= 0) && (type < FaceData.LANDMARK_TYPE_COUNT) &&
+      ((mLandmarkMasks[index] & (1 << type)) != 0);
+  }
+
+  float getLandmarkX(int index, int type) {
+    return mLandmarks[index * LANDMARK_VALUE_COUNT + (type * 2)];
+  }
+
+  float getLandmarkY(int index, int type) {
+    return mLandmarks[index * LANDMARK_VALUE_COUNT + (type * 2) + 1];
+  }
+
+}
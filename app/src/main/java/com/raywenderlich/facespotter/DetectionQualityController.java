@@ -0,0 +1,206 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Picks how much work the face detector is asked to do, based on how quickly this device actually
+ * gets through it.<p>
+ *
+ * The controller steps through a ladder of quality levels, from cheapest to most expensive.  Each
+ * level sets a camera preview size and frame rate, the smallest face worth looking for, and
+ * whether eyes and smiles are classified.  Every frame reports its id, from which frames the
+ * camera dropped while the detector was busy can be counted, and frames the detector actually ran
+ * on also report how long detection took.  Frames whose faces were only predicted don't count
+ * towards the latency, so that cheap predictions between keyframes can't hide a slow detector.
+ * These are averaged over windows of frames:<p>
+ *
+ * <ul>
+ * <li>If detection runs over the latency budget, or too many frames are dropped, for several
+ * windows in a row, the controller steps down a level.</li>
+ *
+ * <li>If detection runs well within the budget, with hardly any dropped frames, for more windows
+ * in a row than that, the controller steps up a level.</li>
+ * </ul>
+ *
+ * Requiring a run of windows, and more of them to step up than to step down, keeps the controller
+ * from flapping between two levels.  A change of level means rebuilding the camera source, so the
+ * first window after a change is thrown away while the camera settles.<p>
+ *
+ * Landmarks are detected at every level, since every decoration is placed using them.  The
+ * controller is called on the detector thread, and may be read from any thread.
+ */
+class DetectionQualityController {
+
+  private static final String TAG = "DetectionQualityController";
+
+  // Quality levels, from cheapest to most expensive
+  private static final int[] PREVIEW_WIDTHS = { 176, 320, 320, 320, 640 };
+  private static final int[] PREVIEW_HEIGHTS = { 144, 240, 240, 240, 480 };
+  private static final float[] REQUESTED_FPS = { 15.0f, 15.0f, 30.0f, 60.0f, 30.0f };
+  private static final float[] FRONT_MIN_FACE_SIZES = { 0.45f, 0.40f, 0.35f, 0.35f, 0.30f };
+  private static final float[] REAR_MIN_FACE_SIZES = { 0.30f, 0.20f, 0.15f, 0.15f, 0.10f };
+  private static final boolean[] CLASSIFICATION_ENABLED = { false, true, true, true, true };
+
+  static final int LEVEL_COUNT = PREVIEW_WIDTHS.length;
+
+  // The level the app has always run at: a 320x240 preview at 60 fps
+  static final int DEFAULT_LEVEL = 3;
+
+  // Frames averaged before deciding whether to change level
+  static final int WINDOW_FRAMES = 30;
+
+  // Consecutive windows needed to step down or up
+  static final int STEP_DOWN_WINDOWS = 2;
+  static final int STEP_UP_WINDOWS = 4;
+
+  // A window is over budget if more than this fraction of the camera's frames were dropped.
+  private static final float MAX_DROPPED_FRAME_RATIO = 0.25f;
+
+  // A window leaves room to step up if its latency is within this fraction of the budget, and
+  // hardly any frames were dropped.
+  private static final float STEP_UP_LATENCY_RATIO = 0.5f;
+  private static final float STEP_UP_DROPPED_FRAME_RATIO = 0.05f;
+
+  private final long mLatencyBudgetNs;
+  private volatile int mLevel;
+
+  // The current window
+  private int mLastFrameId = -1;
+  private int mWindowFrames;
+  private int mWindowDetectedFrames;
+  private int mWindowDroppedFrames;
+  private long mWindowLatencyNs;
+
+  // Runs of windows that were over budget, or had room to spare
+  private int mOverBudgetWindows;
+  private int mUnderBudgetWindows;
+
+  // Set after a change of level, until the first window at the new level has been thrown away
+  private boolean mSettling;
+
+  /**
+   * @param latencyBudgetMs how long detecting a frame should take, at most
+   * @param initialLevel the level to start at, e.g. the level from a previous run
+   */
+  DetectionQualityController(long latencyBudgetMs, int initialLevel) {
+    mLatencyBudgetNs = latencyBudgetMs * 1000000L;
+    mLevel = Math.max(0, Math.min(LEVEL_COUNT - 1, initialLevel));
+  }
+
+  /**
+   * Records how long detecting a frame took.  Called on the detector thread after every frame
+   * the detector ran on.
+   *
+   * @param frameId the camera's id for the frame, which counts up by one for every frame
+   *                the camera delivers
+   * @return whether the level has changed, in which case the detector and camera source should
+   *         be rebuilt with the new settings
+   */
+  synchronized boolean onFrameDetected(int frameId, long latencyNs) {
+    mWindowDetectedFrames++;
+    mWindowLatencyNs += latencyNs;
+    return onFrame(frameId);
+  }
+
+  /**
+   * Records a frame whose faces were predicted rather than detected, which counts towards the
+   * dropped frames but not the latency.  Called on the detector thread.
+   *
+   * @param frameId the camera's id for the frame
+   * @return whether the level has changed, as for {@link #onFrameDetected}
+   */
+  synchronized boolean onFramePredicted(int frameId) {
+    return onFrame(frameId);
+  }
+
+  private boolean onFrame(int frameId) {
+    // Frame ids start over with each camera source, so only count gaps going forwards.
+    if ((mLastFrameId >= 0) && (frameId > mLastFrameId)) {
+      mWindowDroppedFrames += frameId - mLastFrameId - 1;
+    }
+    mLastFrameId = frameId;
+    mWindowFrames++;
+    if (mWindowFrames < WINDOW_FRAMES) {
+      return false;
+    }
+
+    long meanLatencyNs =
+      (mWindowDetectedFrames == 0) ? 0 : mWindowLatencyNs / mWindowDetectedFrames;
+    float droppedFrameRatio =
+      (float) mWindowDroppedFrames / (mWindowFrames + mWindowDroppedFrames);
+    startWindow();
+
+    if (mSettling) {
+      mSettling = false;
+      return false;
+    }
+
+    if ((meanLatencyNs > mLatencyBudgetNs) || (droppedFrameRatio > MAX_DROPPED_FRAME_RATIO)) {
+      mOverBudgetWindows++;
+      mUnderBudgetWindows = 0;
+    } else if ((meanLatencyNs < mLatencyBudgetNs * STEP_UP_LATENCY_RATIO) &&
+               (droppedFrameRatio < STEP_UP_DROPPED_FRAME_RATIO)) {
+      mUnderBudgetWindows++;
+      mOverBudgetWindows = 0;
+    } else {
+      mOverBudgetWindows = 0;
+      mUnderBudgetWindows = 0;
+    }
+
+    if ((mOverBudgetWindows >= STEP_DOWN_WINDOWS) && (mLevel > 0)) {
+      setLevel(mLevel - 1);
+      return true;
+    }
+    if ((mUnderBudgetWindows >= STEP_UP_WINDOWS) && (mLevel < LEVEL_COUNT - 1)) {
+      setLevel(mLevel + 1);
+      return true;
+    }
+    return false;
+  }
+
+  private void setLevel(int level) {
+    mLevel = level;
+    mOverBudgetWindows = 0;
+    mUnderBudgetWindows = 0;
+    mSettling = true;
+    mLastFrameId = -1;
+  }
+
+  private void startWindow() {
+    mWindowFrames = 0;
+    mWindowDetectedFrames = 0;
+    mWindowDroppedFrames = 0;
+    mWindowLatencyNs = 0;
+  }
+
+  int getLevel() {
+    return mLevel;
+  }
+
+  int getPreviewWidth() {
+    return PREVIEW_WIDTHS[mLevel];
+  }
+
+  int getPreviewHeight() {
+    return PREVIEW_HEIGHTS[mLevel];
+  }
+
+  float getRequestedFps() {
+    return REQUESTED_FPS[mLevel];
+  }
+
+  float getMinFaceSize(boolean isFrontFacing) {
+    return isFrontFacing ? FRONT_MIN_FACE_SIZES[mLevel] : REAR_MIN_FACE_SIZES[mLevel];
+  }
+
+  boolean isClassificationEnabled() {
+    return CLASSIFICATION_ENABLED[mLevel];
+  }
+
+  @Override
+  public String toString() {
+    return "level=" + mLevel +
+      " preview=" + getPreviewWidth() + "x" + getPreviewHeight() +
+      " fps=" + getRequestedFps() +
+      " classification=" + isClassificationEnabled();
+  }
+
+}
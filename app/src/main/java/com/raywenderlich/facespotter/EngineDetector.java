@@ -0,0 +1,88 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.ImageFormat;
+import android.graphics.PointF;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Puts a {@link FaceDetectionEngine} behind the Mobile Vision detector interface, so that the
+ * camera source, the keyframe and timing wrappers, and the trackers can use any engine.<p>
+ *
+ * Each frame's luminance is handed to the engine as it is, without copying, and the faces the
+ * engine finds are turned into {@link Face}s.  The frame and the faces are reused from frame to
+ * frame, so the only allocations are the {@link Face}s themselves, which the trackers keep.
+ */
+class EngineDetector extends Detector<Face> {
+
+  private static final String TAG = "EngineDetector";
+
+  private final FaceDetectionEngine mEngine;
+  private final LuminanceFrame mFrame = new LuminanceFrame();
+  private final DetectedFaces mFaces = new DetectedFaces();
+
+  EngineDetector(FaceDetectionEngine engine) {
+    mEngine = engine;
+  }
+
+  FaceDetectionEngine getEngine() {
+    return mEngine;
+  }
+
+  @Override
+  public SparseArray<Face> detect(Frame frame) {
+    Frame.Metadata metadata = frame.getMetadata();
+    ByteBuffer luminance = frame.getGrayscaleImageData();
+    mFrame.set(luminance, metadata.getWidth(), metadata.getHeight(), metadata.getRotation(),
+               metadata.getId(), metadata.getTimestampMillis(),
+               metadata.getFormat() == ImageFormat.NV21);
+    mEngine.detect(mFrame, mFaces);
+    return toFaces(mFaces);
+  }
+
+  /**
+   * Returns the given faces as Mobile Vision faces, by id.
+   */
+  static SparseArray<Face> toFaces(DetectedFaces detected) {
+    int count = detected.size();
+    SparseArray<Face> faces = new SparseArray<>(count);
+    for (int i = 0; i < count; i++) {
+      int mask = detected.getLandmarkMask(i);
+      Landmark[] landmarks = new Landmark[Integer.bitCount(mask)];
+      for (int type = 0, index = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+        if ((mask & (1 << type)) != 0) {
+          landmarks[index++] = new Landmark(
+            new PointF(detected.getLandmarkX(i, type), detected.getLandmarkY(i, type)), type);
+        }
+      }
+
+      int id = detected.getId(i);
+      faces.append(id, new Face(id, new PointF(detected.getX(i), detected.getY(i)),
+                                detected.getWidth(i), detected.getHeight(i),
+                                detected.getEulerY(i), detected.getEulerZ(i), landmarks,
+                                detected.getIsLeftEyeOpenProbability(i),
+                                detected.getIsRightEyeOpenProbability(i),
+                                detected.getIsSmilingProbability(i)));
+    }
+    return faces;
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mEngine.isOperational();
+  }
+
+  @Override
+  public void release() {
+    mEngine.release();
+    mFrame.getImages().release();
+    super.release();
+  }
+
+}
@@ -9,6 +9,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
@@ -17,6 +18,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageButton;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.gms.common.ConnectionResult;
@@ -28,9 +30,14 @@ import com.google.android.gms.vision.Tracker;
 import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.vision.face.FaceDetector;
 import com.raywenderlich.facespotter.ui.camera.CameraSourcePreview;
+import com.raywenderlich.facespotter.ui.camera.FrameTelemetry;
 import com.raywenderlich.facespotter.ui.camera.GraphicOverlay;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 
 public final class FaceActivity extends AppCompatActivity {
@@ -41,10 +48,113 @@ public final class FaceActivity extends AppCompatActivity {
   // permission request codes need to be < 256
   private static final int RC_HANDLE_CAMERA_PERM = 255;
 
+  // Launch with this extra set to true to record the detected faces to a trace file
+  // in the app's external files directory, for replaying on the desktop:
+  //   adb shell am start -n com.raywenderlich.facespotter/.FaceActivity \
+  //     --ez com.raywenderlich.facespotter.RECORD_TRACE true
+  public static final String EXTRA_RECORD_TRACE = "com.raywenderlich.facespotter.RECORD_TRACE";
+
+  // Launch with this extra set to true to start with the latency from capture to drawing shown
+  // on screen.  Long-pressing the flip button shows and hides it at any time, and hiding it
+  // dumps it to the log.
+  public static final String EXTRA_SHOW_LATENCY = "com.raywenderlich.facespotter.SHOW_LATENCY";
+
+  // Launch with this extra set to "cascade" to detect faces with the plain Java cascade engine
+  // instead of Play Services.  Set it to "multiscale" to run the cascade engine on a
+  // high-resolution preview instead, scanning each frame's pyramid levels and tiles on every
+  // core, to find smaller faces.  The built-in cascade is hand-built, not trained, so these are
+  // for trying out and benchmarking the engine; without the extra, only Play Services is used.
+  // "multiscale" also needs a trained cascade, given by EXTRA_CASCADE_FILE: scanning that many
+  // small windows with the built-in one would find more false faces than real ones.
+  public static final String EXTRA_DETECTION_ENGINE =
+    "com.raywenderlich.facespotter.DETECTION_ENGINE";
+  private static final String ENGINE_CASCADE = "cascade";
+  private static final String ENGINE_MULTI_SCALE = "multiscale";
+
+  // Launch with this extra set to the path of a trained cascade, in HaarCascade's text format,
+  // for the cascade engine to use instead of the built-in one.
+  public static final String EXTRA_CASCADE_FILE = "com.raywenderlich.facespotter.CASCADE_FILE";
+
+  // Launch with this extra set to true to run the cascade engine on the same frames as Play
+  // Services, once it's operational, and log how their faces compare when the activity pauses.
+  // Play Services' faces are still the ones shown.
+  public static final String EXTRA_COMPARE_ENGINES =
+    "com.raywenderlich.facespotter.COMPARE_ENGINES";
+
+  private static final long LATENCY_REFRESH_MS = 500;
+
+  // How often to log the frame rates achieved, while the activity is in the foreground
+  private static final long TELEMETRY_LOG_INTERVAL_MS = 10000;
+
+  // How long detecting a frame should take at most, which keeps the overlay
+  // updating at about 30 frames per second.
+  private static final long DETECTION_LATENCY_BUDGET_MS = 33;
+
+  // Full detection runs on every third frame, or sooner if a face is moving fast (a quarter of
+  // its width before the next detection) or the picture changes a lot (10% mean luminance).
+  // Faces are predicted on the frames in between.
+  private static final int KEYFRAME_INTERVAL = 3;
+  private static final float KEYFRAME_MAX_FACE_MOTION = 0.25f;
+  private static final float KEYFRAME_MAX_SCENE_CHANGE = 0.1f;
+
+  // The cascade engine looks for faces only around the ones it's tracking, and scans the whole
+  // frame for new faces on every fifth detection (every 15th frame, with keyframes).
+  private static final int ROI_FULL_SCAN_INTERVAL = 5;
+
+  // The multi-scale engine's preview size.  With the rear camera, it looks for faces as small in
+  // pixels as crowd mode's smallest at 320x240, which is a quarter of the size in the frame.
+  private static final int MULTI_SCALE_PREVIEW_WIDTH = 1280;
+  private static final int MULTI_SCALE_PREVIEW_HEIGHT = 720;
+  private static final float MULTI_SCALE_REAR_MIN_FACE_SIZE = 0.04f;
+
+  // Eyes and smiles are classified only while some face's state is uncertain,
+  // and otherwise on every fifth detection.
+  private static final int CLASSIFICATION_REFRESH_INTERVAL = 5;
+
+  // Trackers work out their faces' data on up to this many worker threads, leaving a core for
+  // the detector.  Each worker queues about two frames' worth of updates for a crowd before
+  // dropping the oldest.
+  private static final int MAX_TRACKER_WORKERS = 4;
+  private static final int TRACKER_QUEUE_CAPACITY = 32;
+
   private CameraSource mCameraSource = null;
   private CameraSourcePreview mPreview;
   private GraphicOverlay mGraphicOverlay;
   private boolean mIsFrontFacing = true;
+  private FaceTrackerPool mTrackerPool;
+  private KeyframeDetector mKeyframeDetector;
+  private ClassificationSchedule mClassificationSchedule;
+  private TrackerPipeline<Face> mTrackerPipeline;
+  private TileScanPool mScanPool;
+
+  // The detector chain is kept when switching cameras, with the face detectors for each camera
+  // swapped in at the bottom of it.  Switches happen on their own thread, while it's set, and a
+  // restart asked for meanwhile waits for the switch to finish.
+  private Detector<Face> mDetector;
+  private SwitchableFaceDetector mFaceDetector;
+  private ScheduledClassificationDetector[] mClassificationDetectors;
+  private ComparingEngine[] mComparingEngines;
+  private Thread mSwitchThread;
+  private boolean mIsRestartPending;
+  private boolean mIsDestroyed;
+  private final CameraSwitchTimer mCameraSwitchTimer =
+    new CameraSwitchTimer(LatencyMonitor.SYSTEM_CLOCK);
+
+  // Adjusts the camera and detector settings to what this device can keep up with.
+  private DetectionQualityController mQualityController;
+
+  // The cascade engine's cascade: a trained one from EXTRA_CASCADE_FILE, if there is one
+  private HaarCascade mTrainedCascade;
+  private boolean mIsMultiScale;
+  private boolean mIsResumed;
+
+  // Where the time goes between capturing a frame and drawing its faces, when shown
+  private final LatencyMonitor mLatencyMonitor = LatencyMonitor.getInstance();
+  private TextView mLatencyText;
+
+  // Frame rates achieved by the camera, the detector and the overlay, and what was last logged
+  private final FrameTelemetry mFrameTelemetry = new FrameTelemetry(FrameTelemetry.SYSTEM_CLOCK);
+  private FrameTelemetry.Snapshot mLoggedTelemetry;
 
 
   // Activity methods
@@ -57,14 +167,39 @@ public final class FaceActivity extends AppCompatActivity {
 
     mPreview = (CameraSourcePreview) findViewById(R.id.preview);
     mGraphicOverlay = (GraphicOverlay) findViewById(R.id.faceOverlay);
+    mPreview.setTelemetry(mFrameTelemetry);
+    mGraphicOverlay.setTelemetry(mFrameTelemetry);
+    mLoggedTelemetry = mFrameTelemetry.getSnapshot();
 
     final ImageButton button = (ImageButton) findViewById(R.id.flipButton);
     button.setOnClickListener(mFlipButtonListener);
+    button.setOnLongClickListener(mLatencyButtonListener);
+    mLatencyText = (TextView) findViewById(R.id.latencyText);
 
+    int qualityLevel = DetectionQualityController.DEFAULT_LEVEL;
     if (savedInstanceState != null) {
       mIsFrontFacing = savedInstanceState.getBoolean("IsFrontFacing");
+      qualityLevel = savedInstanceState.getInt("QualityLevel", qualityLevel);
+    }
+    mQualityController =
+      new DetectionQualityController(DETECTION_LATENCY_BUDGET_MS, qualityLevel);
+
+    String engine = getIntent().getStringExtra(EXTRA_DETECTION_ENGINE);
+    if (engine != null) {
+      mTrainedCascade = readTrainedCascade();
+    }
+    mIsMultiScale = ENGINE_MULTI_SCALE.equals(engine);
+    if (mIsMultiScale && (mTrainedCascade == null)) {
+      Log.w(TAG, "The multi-scale engine needs a trained cascade; using Play Services instead.");
+      mIsMultiScale = false;
     }
 
+    setLatencyShown(mLatencyMonitor.isEnabled() ||
+                    getIntent().getBooleanExtra(EXTRA_SHOW_LATENCY, false));
+
+    // Decode the face decorations now, so that the first face to appear doesn't have to wait.
+    SpriteAtlas.getInstance(this);
+
     // Check for the camera permission before accessing the camera.
     // Request permission if the user hasn't yet granted it.
     int rc = ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA);
@@ -106,6 +241,11 @@ public final class FaceActivity extends AppCompatActivity {
   @Override
   protected void onResume() {
     super.onResume();
+    mIsResumed = true;
+    mPreview.postDelayed(mTelemetryLogRunnable, TELEMETRY_LOG_INTERVAL_MS);
+    if (mLatencyMonitor.isEnabled()) {
+      mLatencyText.post(mLatencyRefreshRunnable);
+    }
 
     startCameraSource();
   }
@@ -113,14 +253,57 @@ public final class FaceActivity extends AppCompatActivity {
   @Override
   protected void onPause() {
     super.onPause();
+    mIsResumed = false;
     mPreview.stop();
+    mPreview.removeCallbacks(mTelemetryLogRunnable);
+    logTelemetry();
+    mLatencyText.removeCallbacks(mLatencyRefreshRunnable);
+    if (mTrackerPool != null) {
+      Log.d(TAG, "Face tracker pool: " + mTrackerPool);
+    }
+    if (mKeyframeDetector != null) {
+      Log.d(TAG, "Fraction of frames detected: " + mKeyframeDetector.getKeyframeRatio());
+    }
+    if (mClassificationSchedule != null) {
+      Log.d(TAG, "Fraction of detections classified: " +
+        mClassificationSchedule.getClassificationRatio());
+    }
+    if (mTrackerPipeline != null) {
+      Log.d(TAG, "Tracker pipeline: " + mTrackerPipeline);
+    }
+    if (mComparingEngines != null) {
+      for (ComparingEngine comparingEngine : mComparingEngines) {
+        if (comparingEngine != null) {
+          Log.d(TAG, "Engine comparison: " + comparingEngine);
+        }
+      }
+    }
+    if (mCameraSwitchTimer.getSwitchCount() > 0) {
+      Log.d(TAG, "Camera switches: " + mCameraSwitchTimer);
+    }
+    if (mLatencyMonitor.isEnabled()) {
+      Log.d(TAG, "Latency since capture:\n" + mLatencyMonitor.getSummary());
+    }
   }
 
   @Override
   protected void onDestroy() {
     super.onDestroy();
-    if (mCameraSource != null) {
-      mCameraSource.release();
+    mIsDestroyed = true;
+    // A camera switch under way has already been told to leave its camera stopped, by the
+    // preview being stopped in onPause().  It releases the camera source when it's done,
+    // rather than holding up the UI thread until then.
+    if (mSwitchThread == null) {
+      releaseCameraSource();
+    }
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      // The pre-scaled decorations can always be rebuilt from the decoded originals.
+      SpriteAtlas.getInstance(this).trimMemory();
     }
   }
 
@@ -158,25 +341,106 @@ public final class FaceActivity extends AppCompatActivity {
 
 
   // Called when the device orientation changes.
-  // We need to save one piece of info: which camera is being used.
+  // We need to save which camera is being used, and the detection quality
+  // this device was found to keep up with, so it doesn't have to be found again.
   @Override
   public void onSaveInstanceState(Bundle savedInstanceState) {
     super.onSaveInstanceState(savedInstanceState);
     savedInstanceState.putBoolean("IsFrontFacing", mIsFrontFacing);
+    savedInstanceState.putInt("QualityLevel", mQualityController.getLevel());
   }
 
-  // Toggle between front and rear cameras.
+  // Toggle between front and rear cameras, ignoring presses while a switch is under way.
   private View.OnClickListener mFlipButtonListener = new View.OnClickListener() {
     public void onClick(View v) {
+      if (mSwitchThread != null) {
+        return;
+      }
       mIsFrontFacing = !mIsFrontFacing;
+      if (mCameraSource == null) {
+        restartCameraSource();
+      } else {
+        switchCameraSource();
+      }
+    }
+  };
 
-      if (mCameraSource != null) {
-        mCameraSource.release();
-        mCameraSource = null;
+  // Show or hide the latency since capture.
+  private View.OnLongClickListener mLatencyButtonListener = new View.OnLongClickListener() {
+    public boolean onLongClick(View v) {
+      setLatencyShown(!mLatencyMonitor.isEnabled());
+      return true;
+    }
+  };
+
+  // Measure the latency since capture only while it's shown, starting afresh each time,
+  // and dump it to the log when it's hidden.
+  private void setLatencyShown(boolean isShown) {
+    mLatencyText.removeCallbacks(mLatencyRefreshRunnable);
+    if (isShown) {
+      if (!mLatencyMonitor.isEnabled()) {
+        mLatencyMonitor.reset();
+        mLatencyMonitor.setEnabled(true);
+      }
+      mLatencyText.setVisibility(View.VISIBLE);
+      mLatencyText.post(mLatencyRefreshRunnable);
+    } else {
+      if (mLatencyMonitor.isEnabled()) {
+        mLatencyMonitor.setEnabled(false);
+        Log.d(TAG, "Latency since capture:\n" + mLatencyMonitor.getSummary());
       }
+      mLatencyText.setVisibility(View.GONE);
+    }
+  }
 
-      createCameraSource();
-      startCameraSource();
+  private final Runnable mLatencyRefreshRunnable = new Runnable() {
+    @Override
+    public void run() {
+      mLatencyText.setText(mLatencyMonitor.getSummary());
+      mLatencyText.postDelayed(this, LATENCY_REFRESH_MS);
+    }
+  };
+
+  /**
+   * Returns the frame rates achieved so far, for polling with
+   * {@link FrameTelemetry#getSnapshot()}.
+   */
+  public FrameTelemetry getFrameTelemetry() {
+    return mFrameTelemetry;
+  }
+
+  private final Runnable mTelemetryLogRunnable = new Runnable() {
+    @Override
+    public void run() {
+      logTelemetry();
+      mPreview.postDelayed(this, TELEMETRY_LOG_INTERVAL_MS);
+    }
+  };
+
+  // Log the frame rates since the last time they were logged, along with what kind of device
+  // this is and the detection quality it's running at, as key=value pairs.
+  private void logTelemetry() {
+    FrameTelemetry.Snapshot snapshot = mFrameTelemetry.getSnapshot();
+    FrameTelemetry.Snapshot interval = snapshot.since(mLoggedTelemetry);
+    mLoggedTelemetry = snapshot;
+    if (interval.getRunningMs() <= 0) {
+      return;
+    }
+    Log.i(TAG, "telemetry manufacturer=" + Build.MANUFACTURER.replace(' ', '_') +
+      " model=" + Build.MODEL.replace(' ', '_') +
+      " sdk=" + Build.VERSION.SDK_INT +
+      " cores=" + Runtime.getRuntime().availableProcessors() +
+      " qualityLevel=" + mQualityController.getLevel() +
+      " " + interval);
+  }
+
+  // Rebuild the camera source with the settings for the new detection quality level.
+  // Posted to the UI thread by the detector thread.
+  private final Runnable mQualityChangedRunnable = new Runnable() {
+    @Override
+    public void run() {
+      Log.d(TAG, "Detection quality changed: " + mQualityController);
+      restartCameraSource();
     }
   };
 
@@ -185,28 +449,84 @@ public final class FaceActivity extends AppCompatActivity {
   // ========
 
   // Create the face detector, and check if it's ready for use.
+  // The detector only runs on keyframes, with faces predicted in between,
+  // and only classifies eyes and smiles when the trackers need it.
+  // It's timed on every frame, so that the quality controller
+  // can tell whether this device is keeping up.
   @NonNull
-  private FaceDetector createFaceDetector(final Context context) {
-    FaceDetector detector = new FaceDetector.Builder(context)
-      .setLandmarkType(FaceDetector.ALL_LANDMARKS)
-      .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
-      .setTrackingEnabled(true)
-      .setMode(FaceDetector.FAST_MODE)
-      .setProminentFaceOnly(mIsFrontFacing)
-      .setMinFaceSize(mIsFrontFacing ? 0.35f : 0.15f)
-      .build();
-
+  private Detector<Face> createFaceDetector(final Context context) {
+    final DetectionQualityController qualityController = mQualityController;
+    final FrameTelemetry frameTelemetry = mFrameTelemetry;
+    final CameraSwitchTimer cameraSwitchTimer = mCameraSwitchTimer;
+    final boolean isQualityAdaptive = !isMultiScale();
+    mClassificationSchedule = null;
+    if (qualityController.isClassificationEnabled()) {
+      mClassificationSchedule = new ClassificationSchedule(CLASSIFICATION_REFRESH_INTERVAL);
+    }
+    mClassificationDetectors = new ScheduledClassificationDetector[2];
+    mComparingEngines = new ComparingEngine[2];
+    // The multi-scale engine scans each frame on a worker for every core but the detector's,
+    // shared by both cameras' engines.
+    if (isMultiScale()) {
+      mScanPool = new TileScanPool(Runtime.getRuntime().availableProcessors() - 1);
+    }
+    int facing = getCameraFacing(mIsFrontFacing);
+    Detector<Face> facingDetector = buildFacingDetector(context, facing);
+    mFaceDetector = new SwitchableFaceDetector(facing, facingDetector);
+
+    KeyframeScheduler keyframeScheduler = new KeyframeScheduler(
+      KEYFRAME_INTERVAL, KEYFRAME_MAX_FACE_MOTION, KEYFRAME_MAX_SCENE_CHANGE);
+    final KeyframeDetector keyframeDetector =
+      new KeyframeDetector(mFaceDetector, keyframeScheduler);
+    mKeyframeDetector = keyframeDetector;
+
+    // Every frame counts towards the frame rates and dropped frames, but only keyframes tell
+    // the quality controller how long detection takes.  The multi-scale engine's preview size
+    // is fixed, so restarting the camera at another quality level would change nothing.
+    TimedDetector.Listener latencyListener = new TimedDetector.Listener() {
+      @Override
+      public void onFrameDetected(int frameId, long latencyNs) {
+        frameTelemetry.onFrameDetected(frameId);
+        if (isQualityAdaptive) {
+          boolean isQualityChanged = keyframeDetector.wasKeyframe()
+            ? qualityController.onFrameDetected(frameId, latencyNs)
+            : qualityController.onFramePredicted(frameId);
+          if (isQualityChanged) {
+            runOnUiThread(mQualityChangedRunnable);
+          }
+        }
+        if (cameraSwitchTimer.onPhaseDone(CameraSwitchTimer.FIRST_FRAME)) {
+          Log.i(TAG, "Camera switched: " + cameraSwitchTimer);
+        }
+      }
+    };
+    Detector<Face> detector =
+      new TimedDetector<>(keyframeDetector, latencyListener, mLatencyMonitor);
+
+    // Trackers (and their graphics) are recycled as faces come and go,
+    // rather than being created anew for every face.
+    // They work out their faces' data on a pool of workers, so that a crowd
+    // doesn't hold up the next detection.
+    int workerCount =
+      Math.min(MAX_TRACKER_WORKERS, Runtime.getRuntime().availableProcessors() - 1);
+    mTrackerPipeline = new TrackerPipeline<>(workerCount, TRACKER_QUEUE_CAPACITY);
+    final FaceTrackerPool trackerPool = new FaceTrackerPool(
+      mGraphicOverlay, context, mClassificationSchedule, mTrackerPipeline);
+    mTrackerPool = trackerPool;
     MultiProcessor.Factory<Face> factory = new MultiProcessor.Factory<Face>() {
       @Override
       public Tracker<Face> create(Face face) {
-        return new FaceTracker(mGraphicOverlay, context, mIsFrontFacing);
+        return trackerPool.acquire();
       }
     };
 
     Detector.Processor<Face> processor = new MultiProcessor.Builder<>(factory).build();
+    if (getIntent().getBooleanExtra(EXTRA_RECORD_TRACE, false)) {
+      processor = createTraceRecorder(processor);
+    }
     detector.setProcessor(processor);
 
-    if (!detector.isOperational()) {
+    if (!facingDetector.isOperational()) {
       Log.w(TAG, "Face detector dependencies are not yet available.");
 
       // Check for low storage.  If there is low storage, the native library will not be
@@ -222,18 +542,129 @@ public final class FaceActivity extends AppCompatActivity {
     return detector;
   }
 
+  // Record the faces on their way to the given processor, in a new trace file for every
+  // detector chain.  Switching cameras carries on with the same file, which is marked with
+  // the camera it started with.  If the file can't be created, the faces just aren't recorded.
+  private Detector.Processor<Face> createTraceRecorder(Detector.Processor<Face> processor) {
+    File directory = getExternalFilesDir(null);
+    if (directory == null) {
+      directory = getFilesDir();
+    }
+    File file = new File(directory, "faces-" + System.currentTimeMillis() + ".trace");
+    try {
+      return new FaceTraceRecorder(processor, file, mIsFrontFacing);
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't create face trace " + file, e);
+      return processor;
+    }
+  }
+
+  // Build the face detectors for one camera, which only classify eyes and smiles
+  // when the trackers need it, unless the cascade engine was asked for.  When comparing
+  // engines, Play Services is wrapped as an engine so that the cascade engine can be run on
+  // its frames.  Also called on the camera switch thread.
+  private Detector<Face> buildFacingDetector(Context context, int facing) {
+    if (ENGINE_CASCADE.equals(getIntent().getStringExtra(EXTRA_DETECTION_ENGINE)) ||
+        isMultiScale()) {
+      return new EngineDetector(buildCascadeEngine(facing));
+    }
+
+    Detector<Face> detector = buildFaceDetector(context, facing, false, true);
+    if (mClassificationSchedule != null) {
+      ScheduledClassificationDetector classificationDetector =
+        new ScheduledClassificationDetector(
+          detector, buildFaceDetector(context, facing, true, false), mClassificationSchedule);
+      mClassificationDetectors[facing] = classificationDetector;
+      detector = classificationDetector;
+    }
+    if (getIntent().getBooleanExtra(EXTRA_COMPARE_ENGINES, false)) {
+      ComparingEngine comparingEngine =
+        new ComparingEngine(new MobileVisionEngine(detector), buildCascadeEngine(facing));
+      mComparingEngines[facing] = comparingEngine;
+      detector = new EngineDetector(comparingEngine);
+    }
+    return detector;
+  }
+
+  // Build the plain Java cascade engine for one camera, which scans the whole frame now and
+  // then, and only around the faces it's tracking in between.
+  private FaceDetectionEngine buildCascadeEngine(int facing) {
+    boolean isFrontFacing = (facing == CameraSource.CAMERA_FACING_FRONT);
+    HaarCascade cascade = (mTrainedCascade != null) ? mTrainedCascade : HaarCascade.getDefault();
+    CascadeFaceEngine fullFrameEngine;
+    if (isMultiScale()) {
+      float minFaceSize = isFrontFacing
+        ? mQualityController.getMinFaceSize(true)
+        : MULTI_SCALE_REAR_MIN_FACE_SIZE;
+      fullFrameEngine = new CascadeFaceEngine(
+        cascade, minFaceSize, CascadeFaceEngine.DEFAULT_STEP_FRACTION, mScanPool);
+    } else {
+      fullFrameEngine =
+        new CascadeFaceEngine(cascade, mQualityController.getMinFaceSize(isFrontFacing));
+    }
+    return new RoiFaceEngine(
+      fullFrameEngine,
+      new CascadeFaceEngine(cascade, RoiFaceEngine.CROP_MIN_FACE_SIZE,
+                            RoiFaceEngine.CROP_STEP_FRACTION),
+      ROI_FULL_SCAN_INTERVAL);
+  }
+
+  // Build a Mobile Vision face detector with the current quality settings, for the given camera.
+  // Classification can't be switched on and off once a detector is built,
+  // so we build one that classifies and one that doesn't.
+  private FaceDetector buildFaceDetector(Context context, int facing, boolean isClassifying,
+                                         boolean isTracking) {
+    boolean isFrontFacing = (facing == CameraSource.CAMERA_FACING_FRONT);
+    return new FaceDetector.Builder(context)
+      .setLandmarkType(FaceDetector.ALL_LANDMARKS)
+      .setClassificationType(isClassifying
+                               ? FaceDetector.ALL_CLASSIFICATIONS
+                               : FaceDetector.NO_CLASSIFICATIONS)
+      .setTrackingEnabled(isTracking)
+      .setMode(FaceDetector.FAST_MODE)
+      .setProminentFaceOnly(isFrontFacing)
+      .setMinFaceSize(mQualityController.getMinFaceSize(isFrontFacing))
+      .build();
+  }
+
+  private boolean isMultiScale() {
+    return mIsMultiScale;
+  }
+
+  // Read the trained cascade named by EXTRA_CASCADE_FILE.  Returns null if there's none,
+  // or it can't be read.
+  private HaarCascade readTrainedCascade() {
+    String path = getIntent().getStringExtra(EXTRA_CASCADE_FILE);
+    if (path == null) {
+      return null;
+    }
+    try {
+      Reader reader = new InputStreamReader(new FileInputStream(path), "UTF-8");
+      try {
+        return HaarCascade.read(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't read the cascade " + path, e);
+      return null;
+    }
+  }
+
+  private static int getCameraFacing(boolean isFrontFacing) {
+    return isFrontFacing ? CameraSource.CAMERA_FACING_FRONT : CameraSource.CAMERA_FACING_BACK;
+  }
+
   // Camera source
   // =============
 
   private void createCameraSource() {
     Context context = getApplicationContext();
-    FaceDetector detector = createFaceDetector(context);
-
-    int facing = CameraSource.CAMERA_FACING_FRONT;
-    if (!mIsFrontFacing) {
-      facing = CameraSource.CAMERA_FACING_BACK;
-    }
+    mDetector = createFaceDetector(context);
+    mCameraSource = buildCameraSource(context, getCameraFacing(mIsFrontFacing));
+  }
 
+  private CameraSource buildCameraSource(Context context, int facing) {
     // The camera source is initialized to use either the front or rear facing camera.  We use a
     // relatively low resolution for the camera preview, since this is sufficient for this app
     // and the face detector will run faster at lower camera resolutions.
@@ -243,14 +674,135 @@ public final class FaceActivity extends AppCompatActivity {
     // but may miss smaller faces, landmarks, or may not correctly detect eyes open/closed in
     // comparison to using higher camera resolutions.  If you have any of these issues, you may
     // want to increase the resolution.
-    mCameraSource = new CameraSource.Builder(context, detector)
+    //
+    // Rather than fixing the resolution, we let the quality controller pick it (along with the
+    // frame rate and detector settings), stepping it up or down to what the device can handle.
+    // The multi-scale engine, which spreads each frame across every core, keeps a high
+    // resolution throughout.
+    mFrameTelemetry.setRequestedFps(mQualityController.getRequestedFps());
+    boolean isMultiScale = isMultiScale();
+    return new CameraSource.Builder(context, mDetector)
       .setFacing(facing)
-      .setRequestedPreviewSize(320, 240)
-      .setRequestedFps(60.0f)
+      .setRequestedPreviewSize(
+        isMultiScale ? MULTI_SCALE_PREVIEW_WIDTH : mQualityController.getPreviewWidth(),
+        isMultiScale ? MULTI_SCALE_PREVIEW_HEIGHT : mQualityController.getPreviewHeight())
+      .setRequestedFps(mQualityController.getRequestedFps())
       .setAutoFocusEnabled(true)
       .build();
   }
 
+  // Switch the camera source to the camera now chosen, keeping the detector chain, processor
+  // and trackers.  The new camera's face detectors are built the first time it's used, while the
+  // old camera keeps previewing, and are kept for switching back.  Then, on the switch thread,
+  // the old camera is stopped and the new one opened, so that the switch only blanks the
+  // preview for as long as the cameras take to close and open.
+  private void switchCameraSource() {
+    mCameraSwitchTimer.onSwitchStarted();
+    final Context context = getApplicationContext();
+    final int facing = getCameraFacing(mIsFrontFacing);
+    final CameraSource cameraSource = buildCameraSource(context, facing);
+    mCameraSource = cameraSource;
+
+    final SwitchableFaceDetector faceDetector = mFaceDetector;
+    final KeyframeDetector keyframeDetector = mKeyframeDetector;
+    final ScheduledClassificationDetector[] classificationDetectors = mClassificationDetectors;
+    final CameraSwitchTimer switchTimer = mCameraSwitchTimer;
+    final Runnable onStopped = new Runnable() {
+      @Override
+      public void run() {
+        // Nothing is being detected now.  The new camera's frames must not be matched
+        // against the faces the old one saw, and their timestamps start from zero.
+        faceDetector.switchTo(facing);
+        keyframeDetector.reset();
+        if (classificationDetectors[facing] != null) {
+          classificationDetectors[facing].reset();
+        }
+        mLatencyMonitor.resetClock();
+        switchTimer.onPhaseDone(CameraSwitchTimer.STOPPED);
+      }
+    };
+
+    mSwitchThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        if (!faceDetector.hasDetector(facing)) {
+          faceDetector.setDetector(facing, buildFacingDetector(context, facing));
+        }
+        switchTimer.onPhaseDone(CameraSwitchTimer.PREPARED);
+
+        boolean isStarted = false;
+        boolean hasFailed = false;
+        try {
+          isStarted = mPreview.swap(cameraSource, onStopped);
+          if (isStarted) {
+            switchTimer.onPhaseDone(CameraSwitchTimer.STARTED);
+          }
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to start camera source.", e);
+          hasFailed = true;
+        }
+
+        final boolean isSwitchStarted = isStarted;
+        final boolean hasSwitchFailed = hasFailed;
+        runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            onCameraSourceSwitched(isSwitchStarted, hasSwitchFailed);
+          }
+        });
+      }
+    }, "CameraSwitch");
+    mSwitchThread.start();
+  }
+
+  // Called on the UI thread when the switch thread is done, to carry out whatever
+  // was put off while it ran.
+  private void onCameraSourceSwitched(boolean isStarted, boolean hasFailed) {
+    mSwitchThread = null;
+    if (hasFailed || mIsDestroyed) {
+      releaseCameraSource();
+    } else if (mIsRestartPending) {
+      restartCameraSource();
+    } else if (!isStarted && mIsResumed) {
+      startCameraSource();
+    }
+  }
+
+  // Replace the camera source with one built from the current settings,
+  // starting it right away unless the activity is in the background.
+  // If a camera switch is under way, this happens once it's done.
+  private void restartCameraSource() {
+    if (mSwitchThread != null) {
+      mIsRestartPending = true;
+      return;
+    }
+    mIsRestartPending = false;
+    releaseCameraSource();
+    createCameraSource();
+    if (mIsResumed) {
+      startCameraSource();
+    }
+  }
+
+  // Release the camera source, along with its detector, and let the trackers' workers
+  // finish what they were given and stop, along with the multi-scale engine's.
+  private void releaseCameraSource() {
+    if (mCameraSource != null) {
+      mCameraSource.release();
+      mCameraSource = null;
+    }
+    mDetector = null;
+    mFaceDetector = null;
+    if (mTrackerPipeline != null) {
+      mTrackerPipeline.close();
+      mTrackerPipeline = null;
+    }
+    if (mScanPool != null) {
+      mScanPool.close();
+      mScanPool = null;
+    }
+  }
+
   private void startCameraSource() {
     // check that the device has play services available.
     int code = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(
@@ -261,13 +813,15 @@ public final class FaceActivity extends AppCompatActivity {
       dlg.show();
     }
 
-    if (mCameraSource != null) {
+    // A camera switch under way starts the new camera source itself.
+    if ((mCameraSource != null) && (mSwitchThread == null)) {
       try {
+        // The new camera source's frame timestamps start from zero.
+        mLatencyMonitor.resetClock();
         mPreview.start(mCameraSource, mGraphicOverlay);
       } catch (IOException e) {
         Log.e(TAG, "Unable to start camera source.", e);
-        mCameraSource.release();
-        mCameraSource = null;
+        releaseCameraSource();
       }
     }
   }
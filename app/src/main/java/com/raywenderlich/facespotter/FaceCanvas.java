@@ -0,0 +1,44 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * The drawing calls that {@link FaceRenderer} decorates a face with.<p>
+ *
+ * On a device, {@link AndroidFaceCanvas} draws onto the overlay's {@code Canvas}.  Keeping the
+ * calls behind this interface lets the same decorations be drawn by other backends, such as a
+ * Java2D image on the desktop JVM, to measure drawing and compare it against golden images
+ * without a device.<p>
+ *
+ * Paints and sprites are named by the constants below rather than passed as objects, so that
+ * each backend can set up its own.  See {@link FaceRenderer#getPaintColor(int)} for their
+ * colors.
+ */
+interface FaceCanvas {
+
+  // Paints
+  int EYE_WHITES = 0;
+  int EYE_LID = 1;
+  int EYE_IRIS = 2;
+  int EYE_OUTLINE = 3;
+  int PAINT_COUNT = 4;
+
+  // Sprites
+  int PIG_NOSE = 0;
+  int HAPPY_STAR = 1;
+  int MUSTACHE = 2;
+  int RED_HAT = 3;
+  int SPRITE_COUNT = 4;
+
+  /**
+   * Draws a circle, filled or outlined depending on the paint.
+   */
+  void drawCircle(float centerX, float centerY, float radius, int paint);
+
+  void drawLine(float startX, float startY, float stopX, float stopY, int paint);
+
+  /**
+   * Draws a sprite scaled into the given rectangle.  If {@code left} is greater than
+   * {@code right}, the sprite is mirrored horizontally.
+   */
+  void drawSprite(int sprite, int left, int top, int right, int bottom);
+
+}
@@ -1,17 +1,41 @@
 package com.raywenderlich.facespotter;
 
-import android.graphics.PointF;
-
 /**
  * Created by joey on 3/11/17.
  */
 
+/**
+ * A snapshot of everything we know about a face in a single camera frame.<p>
+ *
+ * The snapshot is kept flat and primitive (floats for dimensions and landmark coordinates, and a
+ * single bit-packed word for the facial states) so that it can be copied from the detector thread
+ * to the drawing thread as a whole, without allocation, by {@link FaceDataBuffer}.<p>
+ *
+ * Landmarks are indexed by their Mobile Vision type ({@code Landmark.LEFT_EYE},
+ * {@code Landmark.NOSE_BASE} and so on).
+ */
 public class FaceData {
 
   private static final String TAG = "FaceData";
 
+  // One slot for every landmark type the face detector reports
+  // (Landmark.BOTTOM_MOUTH = 0 through Landmark.RIGHT_MOUTH = 11).
+  public static final int LANDMARK_TYPE_COUNT = 12;
+
+  // Bits of the facial states word
+  private static final int FLAG_LEFT_EYE_OPEN = 1;
+  private static final int FLAG_RIGHT_EYE_OPEN = 1 << 1;
+  private static final int FLAG_SMILING = 1 << 2;
+
+  // Publication order; 0 means that nothing has been published yet.
+  private long mSequence;
+
+  // The timestamp of the camera frame this snapshot is of
+  private long mTimestampMs;
+
   // Face dimensions
-  private PointF mPosition;
+  private float mPositionX;
+  private float mPositionY;
   private float mWidth;
   private float mHeight;
 
@@ -20,31 +44,41 @@ public class FaceData {
   private float mEulerZ;
 
   // Facial states
-  private boolean mLeftEyeOpen;
-  private boolean mRightEyeOpen;
-  private boolean mSmiling;
+  private int mFlags;
+
+  // Facial landmarks, as interleaved x and y coordinates: [x0, y0, x1, y1, ...]
+  // A landmark's coordinates are only meaningful if its bit is set in mLandmarkMask.
+  private final float[] mLandmarks = new float[LANDMARK_TYPE_COUNT * 2];
+  private int mLandmarkMask;
+
+
+  public long getSequence() {
+    return mSequence;
+  }
+
+  void setSequence(long sequence) {
+    mSequence = sequence;
+  }
+
+  public long getTimestampMs() {
+    return mTimestampMs;
+  }
 
-  // Facial landmarks
-  private PointF mLeftEyePosition;
-  private PointF mRightEyePosition;
-  private PointF mLeftCheekPosition;
-  private PointF mRightCheekPosition;
-  private PointF mNoseBasePosition;
-  private PointF mLeftEarPosition;
-  private PointF mLeftEarTipPosition;
-  private PointF mRightEarPosition;
-  private PointF mRightEarTipPosition;
-  private PointF mMouthLeftPosition;
-  private PointF mMouthBottomPosition;
-  private PointF mMouthRightPosition;
+  public void setTimestampMs(long timestampMs) {
+    mTimestampMs = timestampMs;
+  }
 
+  public float getPositionX() {
+    return mPositionX;
+  }
 
-  public PointF getPosition() {
-    return mPosition;
+  public float getPositionY() {
+    return mPositionY;
   }
 
-  public void setPosition(PointF position) {
-    mPosition = position;
+  public void setPosition(float x, float y) {
+    mPositionX = x;
+    mPositionY = y;
   }
 
   public float getWidth() {
@@ -80,123 +114,92 @@ public class FaceData {
   }
 
   public boolean isLeftEyeOpen() {
-    return mLeftEyeOpen;
+    return (mFlags & FLAG_LEFT_EYE_OPEN) != 0;
   }
 
   public void setLeftEyeOpen(boolean leftEyeOpen) {
-    this.mLeftEyeOpen = leftEyeOpen;
+    setFlag(FLAG_LEFT_EYE_OPEN, leftEyeOpen);
   }
 
   public boolean isRightEyeOpen() {
-    return mRightEyeOpen;
+    return (mFlags & FLAG_RIGHT_EYE_OPEN) != 0;
   }
 
   public void setRightEyeOpen(boolean rightEyeOpen) {
-    this.mRightEyeOpen = rightEyeOpen;
+    setFlag(FLAG_RIGHT_EYE_OPEN, rightEyeOpen);
   }
 
   public boolean isSmiling() {
-    return mSmiling;
+    return (mFlags & FLAG_SMILING) != 0;
   }
 
   public void setSmiling(boolean smiling) {
-    this.mSmiling = smiling;
-  }
-
-  public PointF getLeftEyePosition() {
-    return mLeftEyePosition;
-  }
-
-  public void setLeftEyePosition(PointF leftEyePosition) {
-    this.mLeftEyePosition = leftEyePosition;
-  }
-
-  public PointF getRightEyePosition() {
-    return mRightEyePosition;
-  }
-
-  public void setRightEyePosition(PointF rightEyePosition) {
-    this.mRightEyePosition = rightEyePosition;
-  }
-
-  public PointF getLeftCheekPosition() {
-    return mLeftCheekPosition;
-  }
-
-  public void setLeftCheekPosition(PointF leftCheekPosition) {
-    mLeftCheekPosition = leftCheekPosition;
-  }
-
-  public PointF getRightCheekPosition() {
-    return mRightCheekPosition;
-  }
-
-  public void setRightCheekPosition(PointF rightCheekPosition) {
-    mRightCheekPosition = rightCheekPosition;
-  }
-
-  public PointF getNoseBasePosition() {
-    return mNoseBasePosition;
-  }
-
-  public void setNoseBasePosition(PointF noseBasePosition) {
-    this.mNoseBasePosition = noseBasePosition;
-  }
-
-  public PointF getLeftEarPosition() {
-    return mLeftEarPosition;
-  }
-
-  public void setLeftEarPosition(PointF leftEarPosition) {
-    mLeftEarPosition = leftEarPosition;
-  }
-
-  public PointF getLeftEarTipPosition() {
-    return mLeftEarTipPosition;
-  }
-
-  public void setLeftEarTipPosition(PointF leftEarTipPosition) {
-    mLeftEarTipPosition = leftEarTipPosition;
-  }
-
-  public PointF getRightEarPosition() {
-    return mRightEarPosition;
+    setFlag(FLAG_SMILING, smiling);
   }
 
-  public void setRightEarPosition(PointF rightEarPosition) {
-    mRightEarPosition = rightEarPosition;
+  /**
+   * Returns true if the position of the given landmark type is known.
+   */
+  public boolean hasLandmark(int landmarkType) {
+    return (mLandmarkMask & (1 << landmarkType)) != 0;
   }
 
-  public PointF getRightEarTipPosition() {
-    return mRightEarTipPosition;
+  /**
+   * Returns true if the positions of all of the landmark types in the given bit mask (with bit
+   * {@code n} standing for landmark type {@code n}) are known.
+   */
+  public boolean hasLandmarks(int landmarkMask) {
+    return (mLandmarkMask & landmarkMask) == landmarkMask;
   }
 
-  public void setRightEarTipPosition(PointF rightEarTipPosition) {
-    mRightEarTipPosition = rightEarTipPosition;
+  public float getLandmarkX(int landmarkType) {
+    return mLandmarks[landmarkType * 2];
   }
 
-  public PointF getMouthLeftPosition() {
-    return mMouthLeftPosition;
+  public float getLandmarkY(int landmarkType) {
+    return mLandmarks[landmarkType * 2 + 1];
   }
 
-  public void setMouthLeftPosition(PointF mouthLeftPosition) {
-    this.mMouthLeftPosition = mouthLeftPosition;
+  public void setLandmarkPosition(int landmarkType, float x, float y) {
+    mLandmarks[landmarkType * 2] = x;
+    mLandmarks[landmarkType * 2 + 1] = y;
+    mLandmarkMask |= (1 << landmarkType);
   }
 
-  public PointF getMouthBottomPosition() {
-    return mMouthBottomPosition;
+  public void clearLandmarkPosition(int landmarkType) {
+    mLandmarkMask &= ~(1 << landmarkType);
   }
 
-  public void setMouthBottomPosition(PointF mouthBottomPosition) {
-    this.mMouthBottomPosition = mouthBottomPosition;
+  /**
+   * Forgets the positions of all landmarks.
+   */
+  public void clearLandmarkPositions() {
+    mLandmarkMask = 0;
   }
 
-  public PointF getMouthRightPosition() {
-    return mMouthRightPosition;
+  /**
+   * Overwrites this snapshot with the contents of another one.
+   */
+  public void copyFrom(FaceData other) {
+    mSequence = other.mSequence;
+    mTimestampMs = other.mTimestampMs;
+    mPositionX = other.mPositionX;
+    mPositionY = other.mPositionY;
+    mWidth = other.mWidth;
+    mHeight = other.mHeight;
+    mEulerY = other.mEulerY;
+    mEulerZ = other.mEulerZ;
+    mFlags = other.mFlags;
+    mLandmarkMask = other.mLandmarkMask;
+    System.arraycopy(other.mLandmarks, 0, mLandmarks, 0, mLandmarks.length);
   }
 
-  public void setMouthRightPosition(PointF mouthRightPosition) {
-    this.mMouthRightPosition = mouthRightPosition;
+  private void setFlag(int flag, boolean isSet) {
+    if (isSet) {
+      mFlags |= flag;
+    } else {
+      mFlags &= ~flag;
+    }
   }
 
 }
@@ -0,0 +1,66 @@
+package com.raywenderlich.facespotter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands {@link FaceData} snapshots from the detector thread to the drawing thread without locks.<p>
+ *
+ * This is a triple buffer: the writer owns one snapshot, the reader owns another, and the third
+ * holds the most recently published frame.  Publishing copies into the writer's snapshot and then
+ * swaps it with the middle one in a single atomic operation; acquiring swaps the reader's snapshot
+ * with the middle one only if a newer frame has been published since.  Neither side ever blocks
+ * or sees a snapshot the other side is still writing, so the reader always gets a consistent
+ * frame.<p>
+ *
+ * There must be only one writer thread and one reader thread at a time.
+ */
+class FaceDataBuffer {
+
+  private static final String TAG = "FaceDataBuffer";
+
+  // The shared state word holds the index of the middle snapshot in its low bits, plus a flag
+  // that is set when the middle snapshot holds a frame the reader hasn't seen yet.
+  private static final int INDEX_MASK = 0x3;
+  private static final int FRESH = 0x4;
+
+  private final FaceData[] mSnapshots = { new FaceData(), new FaceData(), new FaceData() };
+  private final AtomicInteger mState = new AtomicInteger(1);
+
+  // Owned by the writer thread
+  private int mWriteIndex = 0;
+  private long mSequence = 0;
+  private final FaceData mBlank = new FaceData();
+
+  // Owned by the reader thread
+  private int mReadIndex = 2;
+
+  /**
+   * Publishes a copy of the given face data as the latest frame.  Called by the writer thread.
+   */
+  void publish(FaceData faceData) {
+    FaceData snapshot = mSnapshots[mWriteIndex];
+    snapshot.copyFrom(faceData);
+    snapshot.setSequence(++mSequence);
+    mWriteIndex = mState.getAndSet(mWriteIndex | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Publishes a frame with no landmarks, so that the reader stops drawing the last face it was
+   * given.  Called by the writer thread.
+   */
+  void clear() {
+    publish(mBlank);
+  }
+
+  /**
+   * Returns the latest published frame.  Called by the reader thread; the returned snapshot is
+   * not modified until the next call.  Its sequence number is 0 if nothing has been published.
+   */
+  FaceData acquire() {
+    if ((mState.get() & FRESH) != 0) {
+      mReadIndex = mState.getAndSet(mReadIndex) & INDEX_MASK;
+    }
+    return mSnapshots[mReadIndex];
+  }
+
+}
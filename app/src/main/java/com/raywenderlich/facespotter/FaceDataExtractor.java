@@ -0,0 +1,209 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.util.List;
+
+/**
+ * Turns what the detector reports about one face into {@link FaceData}, filling in the gaps from
+ * what was seen of the same face before: landmarks that weren't detected are approximated from
+ * their last known positions, and eyes whose state couldn't be classified keep their last state.<p>
+ *
+ * The eyes and smile are classified over time by {@link HysteresisClassifier}s rather than one
+ * frame at a time, so that a probability hovering around a threshold doesn't make them flicker,
+ * and so that frames without classification can simply keep the last state.<p>
+ *
+ * The face's bounding box and landmark positions are smoothed over time by a
+ * {@link OneEuroFilterBank}, which takes out the frame-to-frame jitter of a low-resolution
+ * preview or a fast detector mode without making the graphics lag behind a moving face.  The
+ * same filters' velocity estimates let {@link #predict} carry the face forward through the odd
+ * frame where it goes undetected.<p>
+ *
+ * This is the per-face work {@link FaceTracker} does on the detector thread for every frame, kept
+ * free of the overlay and graphics so that it can be measured on its own.  It doesn't allocate.
+ */
+class FaceDataExtractor {
+
+  private static final String TAG = "FaceDataExtractor";
+
+  // "Threshold" constants
+  // An eye opens once its smoothed open probability rises above EYE_OPEN_THRESHOLD,
+  // and closes once it falls below EYE_CLOSED_THRESHOLD; likewise for smiles.
+  private static final float EYE_OPEN_THRESHOLD = 0.5f;
+  private static final float EYE_CLOSED_THRESHOLD = 0.3f;
+  private static final float SMILING_THRESHOLD = 0.8f;
+  private static final float NOT_SMILING_THRESHOLD = 0.6f;
+
+  // Weight given to each new probability when smoothing.  Even at half, a blink closes the eye
+  // within two classified frames.
+  private static final float CLASSIFICATION_SMOOTHING = 0.5f;
+
+  // One Euro filter settings, for positions in preview pixels: still faces are smoothed below
+  // 1 Hz, and the cutoff rises by 1 Hz for every 20 pixels per second of movement.
+  private static final float FILTER_MIN_CUTOFF = 1.0f;
+  private static final float FILTER_BETA = 0.05f;
+  private static final float FILTER_DERIVATIVE_CUTOFF = 1.0f;
+
+  // A face that goes undetected for longer than this is no longer predicted.
+  static final long MAX_PREDICTION_MS = 300;
+
+  // Filter channels: the bounding box, followed by the x and y of every landmark type
+  private static final int CHANNEL_X = 0;
+  private static final int CHANNEL_Y = 1;
+  private static final int CHANNEL_WIDTH = 2;
+  private static final int CHANNEL_HEIGHT = 3;
+  private static final int CHANNEL_FIRST_LANDMARK = 4;
+  private static final int CHANNEL_COUNT =
+    CHANNEL_FIRST_LANDMARK + (FaceData.LANDMARK_TYPE_COUNT * 2);
+
+  private final OneEuroFilterBank mFilters = new OneEuroFilterBank(
+    CHANNEL_COUNT, FILTER_MIN_CUTOFF, FILTER_BETA, FILTER_DERIVATIVE_CUTOFF);
+  private boolean mHasExtracted;
+  private long mLastExtractedTimeMs;
+
+  // Subjects may move too quickly to for the system to detect their detect features,
+  // or they may move so their features are out of the tracker's detection range.
+  // This keeps track of previously detected facial landmarks so that we can approximate
+  // their locations when they momentarily "disappear".
+  private final LandmarkMemory mPreviousLandmarkPositions = new LandmarkMemory();
+
+  // Approximated landmark coordinates are written here rather than into new objects,
+  // so that tracking doesn't create garbage on every frame.
+  private final float[] mApproximatedLandmarkCoordinates = new float[2];
+
+  // As with facial landmarks, we keep track of the eyes' and smile's previous states
+  // so that we can use them during those moments when they momentarily go undetected.
+  private final HysteresisClassifier mLeftEyeOpen = new HysteresisClassifier(
+    EYE_OPEN_THRESHOLD, EYE_CLOSED_THRESHOLD, CLASSIFICATION_SMOOTHING, true);
+  private final HysteresisClassifier mRightEyeOpen = new HysteresisClassifier(
+    EYE_OPEN_THRESHOLD, EYE_CLOSED_THRESHOLD, CLASSIFICATION_SMOOTHING, true);
+  private final HysteresisClassifier mSmiling = new HysteresisClassifier(
+    SMILING_THRESHOLD, NOT_SMILING_THRESHOLD, CLASSIFICATION_SMOOTHING, false);
+
+  /**
+   * Forgets everything about the previous face, so that this extractor can be used for a new one.
+   */
+  void reset() {
+    mPreviousLandmarkPositions.clear();
+    mFilters.reset();
+    mHasExtracted = false;
+    mLeftEyeOpen.reset();
+    mRightEyeOpen.reset();
+    mSmiling.reset();
+  }
+
+  /**
+   * Copies the latest detection of the face into the given face data.
+   *
+   * @param timeMs the timestamp of the camera frame the face was detected in
+   */
+  void extract(Face face, long timeMs, FaceData faceData) {
+    PointF facePosition = face.getPosition();
+    faceData.setTimestampMs(timeMs);
+
+    // Get face dimensions.
+    faceData.setPosition(mFilters.filter(CHANNEL_X, facePosition.x, timeMs),
+                         mFilters.filter(CHANNEL_Y, facePosition.y, timeMs));
+    faceData.setWidth(mFilters.filter(CHANNEL_WIDTH, face.getWidth(), timeMs));
+    faceData.setHeight(mFilters.filter(CHANNEL_HEIGHT, face.getHeight(), timeMs));
+
+    // Get head angles.
+    faceData.setEulerY(face.getEulerY());
+    faceData.setEulerZ(face.getEulerZ());
+
+    // Get the positions of facial landmarks.
+    updateLandmarkPositions(face, timeMs, faceData);
+
+    // Determine if eyes are open.  Uncomputed probabilities leave the previous states as they were.
+    faceData.setLeftEyeOpen(mLeftEyeOpen.update(face.getIsLeftEyeOpenProbability()));
+    faceData.setRightEyeOpen(mRightEyeOpen.update(face.getIsRightEyeOpenProbability()));
+
+    // Determine if person is smiling.
+    faceData.setSmiling(mSmiling.update(face.getIsSmilingProbability()));
+
+    mHasExtracted = true;
+    mLastExtractedTimeMs = timeMs;
+  }
+
+  /**
+   * Returns true if the face's eyes or smile need classifying on an upcoming frame, because
+   * they've never been classified, or were last classified close to a threshold.
+   */
+  boolean isClassificationUncertain() {
+    return mLeftEyeOpen.isUncertain() || mRightEyeOpen.isUncertain() || mSmiling.isUncertain();
+  }
+
+  /**
+   * Moves the face's bounding box and landmarks in the given face data, as last extracted, to
+   * where they're expected to be at the given time, for a frame in which the face went
+   * undetected.  The face's states (eyes, smile and head angles) are left as they were.
+   *
+   * @return false if the face has gone undetected for too long to predict
+   */
+  boolean predict(long timeMs, FaceData faceData) {
+    if (!mHasExtracted || (timeMs - mLastExtractedTimeMs > MAX_PREDICTION_MS)) {
+      return false;
+    }
+
+    faceData.setTimestampMs(timeMs);
+    faceData.setPosition(mFilters.predict(CHANNEL_X, timeMs),
+                         mFilters.predict(CHANNEL_Y, timeMs));
+    faceData.setWidth(Math.max(1, mFilters.predict(CHANNEL_WIDTH, timeMs)));
+    faceData.setHeight(Math.max(1, mFilters.predict(CHANNEL_HEIGHT, timeMs)));
+
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if (faceData.hasLandmark(type)) {
+        int channel = CHANNEL_FIRST_LANDMARK + (type * 2);
+        faceData.setLandmarkPosition(type, mFilters.predict(channel, timeMs),
+                                     mFilters.predict(channel + 1, timeMs));
+      }
+    }
+    return true;
+  }
+
+  // Copy the smoothed coordinates of the face's detected landmarks into the face data,
+  // and fill in approximated coordinates (based on prior data) for the ones that weren't detected.
+  // Landmarks are remembered and approximated relative to the smoothed bounding box
+  // already in the face data.
+  private void updateLandmarkPositions(Face face, long timeMs, FaceData faceData) {
+    float faceX = faceData.getPositionX();
+    float faceY = faceData.getPositionY();
+    float faceWidth = faceData.getWidth();
+    float faceHeight = faceData.getHeight();
+
+    faceData.clearLandmarkPositions();
+
+    // Index the list directly to avoid allocating an iterator on every update.
+    List<Landmark> landmarks = face.getLandmarks();
+    for (int i = 0, count = landmarks.size(); i < count; i++) {
+      Landmark landmark = landmarks.get(i);
+      int type = landmark.getType();
+      if ((type < 0) || (type >= FaceData.LANDMARK_TYPE_COUNT)) {
+        continue;
+      }
+      PointF position = landmark.getPosition();
+      int channel = CHANNEL_FIRST_LANDMARK + (type * 2);
+      float x = mFilters.filter(channel, position.x, timeMs);
+      float y = mFilters.filter(channel + 1, position.y, timeMs);
+      faceData.setLandmarkPosition(type, x, y);
+      mPreviousLandmarkPositions.remember(type, x, y, faceX, faceY, faceWidth, faceHeight);
+    }
+
+    float[] coordinates = mApproximatedLandmarkCoordinates;
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if (!faceData.hasLandmark(type) &&
+          mPreviousLandmarkPositions.approximate(type, faceX, faceY, faceWidth, faceHeight,
+                                                 coordinates, 0)) {
+        // Keep the landmark's filters running on the approximation, so that it doesn't jump
+        // when it's detected again.
+        int channel = CHANNEL_FIRST_LANDMARK + (type * 2);
+        faceData.setLandmarkPosition(type, mFilters.filter(channel, coordinates[0], timeMs),
+                                     mFilters.filter(channel + 1, coordinates[1], timeMs));
+      }
+    }
+  }
+
+}
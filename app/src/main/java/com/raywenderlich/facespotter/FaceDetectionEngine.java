@@ -0,0 +1,37 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Something that finds faces in camera frames.<p>
+ *
+ * Engines take frames as luminance and report faces as flat {@link DetectedFaces}, neither of
+ * which involves Android or Play Services, so that engines can be swapped for one another,
+ * benchmarked on the desktop, and compared on the same frames.  {@link EngineDetector} puts an
+ * engine behind the Mobile Vision detector interface, for the camera source and trackers.<p>
+ *
+ * An engine is used from one thread at a time.
+ */
+interface FaceDetectionEngine {
+
+  /**
+   * Returns a short name for the engine, for logs and benchmark results.
+   */
+  String getName();
+
+  /**
+   * Returns true if the engine can detect faces.  An engine that depends on something it
+   * couldn't get (e.g., a native library not yet downloaded) detects nothing until it can.
+   */
+  boolean isOperational();
+
+  /**
+   * Finds the faces in a frame, replacing whatever the given faces held.  Faces seen in earlier
+   * frames should keep their ids, so that they can be tracked.
+   */
+  void detect(LuminanceFrame frame, DetectedFaces faces);
+
+  /**
+   * Frees whatever the engine holds.  The engine can't be used afterwards.
+   */
+  void release();
+
+}
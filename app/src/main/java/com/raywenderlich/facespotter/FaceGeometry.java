@@ -0,0 +1,275 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Landmark;
+
+/**
+ * Works out where {@link FaceGraphic}'s decorations go for one frame of face data: the centers and
+ * sizes of the googly eyes, and the rectangles for the pig nose, mustache and hat, all in view
+ * coordinates.  Also computes the bounding box of everything that will be drawn, so that the
+ * overlay only has to redraw the area around the face.<p>
+ *
+ * The results are stored in this object rather than in new objects, so an instance should only be
+ * used by one thread.
+ */
+class FaceGeometry {
+
+  private static final String TAG = "FaceGeometry";
+
+  static final float EYE_RADIUS_PROPORTION = 0.45f;
+  static final float IRIS_RADIUS_PROPORTION = EYE_RADIUS_PROPORTION / 2.0f;
+  static final float HEAD_TILT_HAT_THRESHOLD = 20.0f;
+  static final float NOSE_WIDTH_SCALE_FACTOR = 1.4f;
+  static final float EYE_OUTLINE_WIDTH = 5.0f;
+
+  // The landmarks a face must have before we draw anything over it
+  static final int REQUIRED_LANDMARKS =
+    (1 << Landmark.LEFT_EYE) |
+    (1 << Landmark.RIGHT_EYE) |
+    (1 << Landmark.NOSE_BASE) |
+    (1 << Landmark.LEFT_MOUTH) |
+    (1 << Landmark.BOTTOM_MOUTH) |
+    (1 << Landmark.RIGHT_MOUTH);
+
+  // Extra room around the drawn area, for the eye outline's stroke and anti-aliasing.
+  private static final float BOUNDS_PADDING = EYE_OUTLINE_WIDTH / 2 + 2;
+
+  /**
+   * Converts preview coordinates and sizes to view coordinates and sizes.  The method signatures
+   * match those of {@link com.raywenderlich.facespotter.ui.camera.GraphicOverlay.Transform}, so a
+   * graphic can pass its overlay's transform straight through.
+   */
+  interface ViewTransform {
+
+    float scaleX(float horizontal);
+
+    float scaleY(float vertical);
+
+    float translateX(float x);
+
+    float translateY(float y);
+
+  }
+
+  // Eyes
+  private float mLeftEyeX;
+  private float mLeftEyeY;
+  private float mRightEyeX;
+  private float mRightEyeY;
+  private float mEyeRadius;
+  private float mIrisRadius;
+
+  // Pig nose
+  private int mNoseLeft;
+  private int mNoseTop;
+  private int mNoseRight;
+  private int mNoseBottom;
+
+  // Mustache (left and right are swapped for the rear camera, to mirror it)
+  private int mMustacheLeft;
+  private int mMustacheTop;
+  private int mMustacheRight;
+  private int mMustacheBottom;
+
+  // Hat
+  private boolean mHasHat;
+  private int mHatLeft;
+  private int mHatTop;
+  private int mHatRight;
+  private int mHatBottom;
+
+  // Everything above
+  private float mBoundsLeft;
+  private float mBoundsTop;
+  private float mBoundsRight;
+  private float mBoundsBottom;
+
+  /**
+   * Lays out the decorations for the given face.
+   *
+   * @return false if the face is missing landmarks needed to draw over it, in which case
+   *         nothing should be drawn
+   */
+  boolean compute(FaceData faceData, ViewTransform transform, boolean isFrontFacing) {
+    if (!faceData.hasLandmarks(REQUIRED_LANDMARKS)) {
+      return false;
+    }
+
+    // Convert the face's camera coordinates and dimensions
+    // to view coordinates and dimensions.
+    float positionY = transform.scaleY(faceData.getPositionY());
+    float width = transform.scaleX(faceData.getWidth());
+    float height = transform.scaleY(faceData.getHeight());
+    mLeftEyeX = transform.translateX(faceData.getLandmarkX(Landmark.LEFT_EYE));
+    mLeftEyeY = transform.translateY(faceData.getLandmarkY(Landmark.LEFT_EYE));
+    mRightEyeX = transform.translateX(faceData.getLandmarkX(Landmark.RIGHT_EYE));
+    mRightEyeY = transform.translateY(faceData.getLandmarkY(Landmark.RIGHT_EYE));
+    float noseBaseX = transform.translateX(faceData.getLandmarkX(Landmark.NOSE_BASE));
+    float noseBaseY = transform.translateY(faceData.getLandmarkY(Landmark.NOSE_BASE));
+    float mouthLeftX = transform.translateX(faceData.getLandmarkX(Landmark.LEFT_MOUTH));
+    float mouthLeftY = transform.translateY(faceData.getLandmarkY(Landmark.LEFT_MOUTH));
+    float mouthRightX = transform.translateX(faceData.getLandmarkX(Landmark.RIGHT_MOUTH));
+    float mouthRightY = transform.translateY(faceData.getLandmarkY(Landmark.RIGHT_MOUTH));
+
+    // Calculate the distance between the eyes using Pythagoras' formula,
+    // and we'll use that distance to set the size of the eyes and irises.
+    float distance = (float) Math.sqrt(
+      (mRightEyeX - mLeftEyeX) * (mRightEyeX - mLeftEyeX) +
+      (mRightEyeY - mLeftEyeY) * (mRightEyeY - mLeftEyeY));
+    mEyeRadius = EYE_RADIUS_PROPORTION * distance;
+    mIrisRadius = IRIS_RADIUS_PROPORTION * distance;
+
+    // The nose is as wide as a scaled-up iris, and runs from between the eyes to the nose base.
+    mNoseLeft = (int)(noseBaseX - mIrisRadius * NOSE_WIDTH_SCALE_FACTOR);
+    mNoseRight = (int)(noseBaseX + mIrisRadius * NOSE_WIDTH_SCALE_FACTOR);
+    mNoseTop = (int)(mLeftEyeY + mRightEyeY) / 2;
+    mNoseBottom = (int)noseBaseY;
+
+    // The mustache runs between the corners of the mouth, from the nose base down.
+    int left = (int)mouthLeftX;
+    int right = (int)mouthRightX;
+    mMustacheTop = (int)noseBaseY;
+    mMustacheBottom = (int)Math.min(mouthLeftY, mouthRightY);
+    if (isFrontFacing) {
+      mMustacheLeft = left;
+      mMustacheRight = right;
+    } else {
+      mMustacheLeft = right;
+      mMustacheRight = left;
+    }
+
+    // The hat is shown only if the subject's head is titled at a
+    // sufficiently jaunty angle.
+    mHasHat = Math.abs(faceData.getEulerZ()) > HEAD_TILT_HAT_THRESHOLD;
+    if (mHasHat) {
+      float hatCenterY = positionY + (height / 8);
+      float hatWidth = width / 4;
+      float hatHeight = height / 6;
+      mHatLeft = (int)(noseBaseX - (hatWidth / 2));
+      mHatRight = (int)(noseBaseX + (hatWidth / 2));
+      mHatTop = (int)(hatCenterY - (hatHeight / 2));
+      mHatBottom = (int)(hatCenterY + (hatHeight / 2));
+    }
+
+    computeBounds();
+    return true;
+  }
+
+  private void computeBounds() {
+    mBoundsLeft = Math.min(mLeftEyeX, mRightEyeX) - mEyeRadius;
+    mBoundsRight = Math.max(mLeftEyeX, mRightEyeX) + mEyeRadius;
+    mBoundsTop = Math.min(mLeftEyeY, mRightEyeY) - mEyeRadius;
+    mBoundsBottom = Math.max(mLeftEyeY, mRightEyeY) + mEyeRadius;
+
+    includeInBounds(mNoseLeft, mNoseTop, mNoseRight, mNoseBottom);
+    includeInBounds(mMustacheLeft, mMustacheTop, mMustacheRight, mMustacheBottom);
+    if (mHasHat) {
+      includeInBounds(mHatLeft, mHatTop, mHatRight, mHatBottom);
+    }
+
+    mBoundsLeft -= BOUNDS_PADDING;
+    mBoundsTop -= BOUNDS_PADDING;
+    mBoundsRight += BOUNDS_PADDING;
+    mBoundsBottom += BOUNDS_PADDING;
+  }
+
+  // Edges may be given in either order, since the mustache can be mirrored.
+  private void includeInBounds(float left, float top, float right, float bottom) {
+    mBoundsLeft = Math.min(mBoundsLeft, Math.min(left, right));
+    mBoundsRight = Math.max(mBoundsRight, Math.max(left, right));
+    mBoundsTop = Math.min(mBoundsTop, Math.min(top, bottom));
+    mBoundsBottom = Math.max(mBoundsBottom, Math.max(top, bottom));
+  }
+
+  float getLeftEyeX() {
+    return mLeftEyeX;
+  }
+
+  float getLeftEyeY() {
+    return mLeftEyeY;
+  }
+
+  float getRightEyeX() {
+    return mRightEyeX;
+  }
+
+  float getRightEyeY() {
+    return mRightEyeY;
+  }
+
+  float getEyeRadius() {
+    return mEyeRadius;
+  }
+
+  float getIrisRadius() {
+    return mIrisRadius;
+  }
+
+  int getNoseLeft() {
+    return mNoseLeft;
+  }
+
+  int getNoseTop() {
+    return mNoseTop;
+  }
+
+  int getNoseRight() {
+    return mNoseRight;
+  }
+
+  int getNoseBottom() {
+    return mNoseBottom;
+  }
+
+  int getMustacheLeft() {
+    return mMustacheLeft;
+  }
+
+  int getMustacheTop() {
+    return mMustacheTop;
+  }
+
+  int getMustacheRight() {
+    return mMustacheRight;
+  }
+
+  int getMustacheBottom() {
+    return mMustacheBottom;
+  }
+
+  boolean hasHat() {
+    return mHasHat;
+  }
+
+  int getHatLeft() {
+    return mHatLeft;
+  }
+
+  int getHatTop() {
+    return mHatTop;
+  }
+
+  int getHatRight() {
+    return mHatRight;
+  }
+
+  int getHatBottom() {
+    return mHatBottom;
+  }
+
+  float getBoundsLeft() {
+    return mBoundsLeft;
+  }
+
+  float getBoundsTop() {
+    return mBoundsTop;
+  }
+
+  float getBoundsRight() {
+    return mBoundsRight;
+  }
+
+  float getBoundsBottom() {
+    return mBoundsBottom;
+  }
+
+}
@@ -3,10 +3,7 @@ package com.raywenderlich.facespotter;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import static android.graphics.Color.rgb;
-import android.graphics.drawable.Drawable;
 import android.graphics.Paint;
-import android.graphics.PointF;
 
 import com.raywenderlich.facespotter.ui.camera.GraphicOverlay;
 
@@ -15,229 +12,201 @@ class FaceGraphic extends GraphicOverlay.Graphic {
 
   private static final String TAG = "FaceGraphic";
 
-  private static final float EYE_RADIUS_PROPORTION = 0.45f;
-  private static final float IRIS_RADIUS_PROPORTION = EYE_RADIUS_PROPORTION / 2.0f;
-  private static final float HEAD_TILT_HAT_THRESHOLD = 20.0f;
   private static final float ID_TEXT_SIZE = 60.0f;
 
   private Context mContext;
-  private boolean mIsFrontFacing;
 
-  private Drawable mPigNoseGraphic;
-  private Drawable mHappyStarGraphic;
-  private Drawable mMustacheGraphic;
-  private Drawable mHatGraphic;
+  // Draws the decorations, with sprites from an atlas shared by every face,
+  // so that new faces don't have to decode the decorations again.
+  private AndroidFaceCanvas mFaceCanvas;
 
-  private Paint mEyeWhitesPaint;
-  private Paint mEyeIrisPaint;
-  private Paint mEyeOutlinePaint;
-  private Paint mEyeLidPaint;
   private Paint mTextPaint;
 
-  // Face coordinate and dimension data
-  private volatile PointF mPosition;
-  private volatile float mWidth;
-  private volatile float mHeight;
-  private volatile float mEulerY;
-  private volatile float mEulerZ;
-  private volatile PointF mLeftEyePosition;
-  private volatile boolean mLeftEyeOpen;
-  private volatile PointF mRightEyePosition;
-  private volatile boolean mRightEyeOpen;
-  private volatile PointF mNoseBasePosition;
-  private volatile PointF mMouthLeftPosition;
-  private volatile PointF mMouthBottomPosition;
-  private volatile PointF mMouthRightPosition;
-  private volatile boolean mIsSmiling;
-
-  // We want each iris to move independently,
-  // so each one gets its own physics engine.
-  private EyePhysics mLeftPhysics = new EyePhysics();
-  private EyePhysics mRightPhysics = new EyePhysics();
-
-
-  FaceGraphic(GraphicOverlay overlay, Context context, boolean isFrontFacing) {
-    super(overlay);
+  // Face coordinate and dimension data, handed over from the tracker one whole frame at a time
+  // so that drawing never sees a mix of two frames.
+  private final FaceDataBuffer mFaceData = new FaceDataBuffer();
+
+  // Where the decorations go.  Each thread gets its own, since update() works out the area
+  // that needs redrawing on the tracker's thread while draw() runs on the UI thread.
+  // Both work from a single snapshot of the overlay's transform, since the tracker's thread
+  // would otherwise race the UI thread's updates to the scale factors and view width.
+  private final FaceGeometry mUpdateGeometry = new FaceGeometry();
+  private final FaceGeometry mDrawGeometry = new FaceGeometry();
+  private final TransformSnapshot mUpdateTransform = new TransformSnapshot();
+  private final TransformSnapshot mDrawTransform = new TransformSnapshot();
+
+  // Every iris in the scene is simulated by one shared engine, which steps them all together
+  // once per frame.  This graphic's eyes are slots in it, handed out the first time the graphic
+  // is drawn and given back once it's gone from the overlay.  Only used on the UI thread.
+  private static final IrisPhysicsEngine sIrisPhysics = new IrisPhysicsEngine();
+  private static final int NO_EYE = -1;
+  private int mLeftEye = NO_EYE;
+  private int mRightEye = NO_EYE;
+  private final Runnable mReleaseEyes = new Runnable() {
+    @Override
+    public void run() {
+      releaseEyes();
+    }
+  };
 
-    final int POWDER_BLUE_COLOR = Color.rgb(176,224,230);
-    final int SADDLE_BROWN_COLOR = rgb(139,69,19);
-    final float TEXT_SIZE = 60.0f;
+  // Set when this graphic is reset for reuse.  The physics belongs to the drawing thread,
+  // so the eyes are reset there, before the next draw.
+  private volatile boolean mPhysicsResetPending;
 
-    mContext = context;
-    mIsFrontFacing = isFrontFacing;
+  // The frame picked up by prepare() for draw(), or null if there's nothing to draw.
+  private FaceData mPreparedFaceData;
 
-    mPigNoseGraphic = mContext.getDrawable(R.drawable.pig_nose_emoji);
-    mHappyStarGraphic = mContext.getDrawable(R.drawable.happy_star);
-    mMustacheGraphic = mContext.getDrawable(R.drawable.mustache);
-    mHatGraphic = mContext.getDrawable(R.drawable.red_hat);
+  // The last frame drawn, so that only the first drawing of each frame counts towards
+  // its latency.  Only used on the UI thread.
+  private static final LatencyMonitor sLatencyMonitor = LatencyMonitor.getInstance();
+  private long mLastDrawnSequence;
 
-    mEyeWhitesPaint = new Paint();
-    mEyeWhitesPaint.setColor(Color.WHITE);
-    mEyeWhitesPaint.setStyle(Paint.Style.FILL);
 
-    mEyeLidPaint = new Paint();
-    mEyeLidPaint.setColor(POWDER_BLUE_COLOR);
-    mEyeLidPaint.setStyle(Paint.Style.FILL);
+  FaceGraphic(GraphicOverlay overlay, Context context) {
+    super(overlay);
 
-    mEyeIrisPaint = new Paint();
-    mEyeIrisPaint.setColor(SADDLE_BROWN_COLOR);
-    mEyeIrisPaint.setStyle(Paint.Style.FILL);
+    mContext = context;
 
-    mEyeOutlinePaint = new Paint();
-    mEyeOutlinePaint.setColor(Color.BLACK);
-    mEyeOutlinePaint.setStyle(Paint.Style.STROKE);
-    mEyeOutlinePaint.setStrokeWidth(5);
+    mFaceCanvas = new AndroidFaceCanvas(SpriteAtlas.getInstance(mContext));
 
     mTextPaint = new Paint();
     mTextPaint.setColor(Color.CYAN);
     mTextPaint.setTextSize(ID_TEXT_SIZE);
   }
 
-  void update(FaceData faceData) {
-    mPosition = faceData.getPosition();
-    mHeight = faceData.getHeight();
-    mWidth = faceData.getWidth();
+  // Forget the previous face, so that this graphic can be reused for a new one.
+  // Called from the tracker's thread.
+  void reset() {
+    mFaceData.clear();
+    mPhysicsResetPending = true;
+  }
 
-    mEulerY = faceData.getEulerY();
-    mEulerZ = faceData.getEulerZ();
+  // Give this graphic's eyes back to the physics engine, once it's known that the graphic will
+  // never be drawn again.  Called from the tracker's thread, after the graphic has been removed
+  // from the overlay.  The UI thread may still be preparing or drawing it from a snapshot taken
+  // before then, so the eyes are released on the UI thread, once that pass is over.
+  void release() {
+    postToDrawingThread(mReleaseEyes);
+  }
 
-    mLeftEyePosition = faceData.getLeftEyePosition();
-    mLeftEyeOpen = faceData.isLeftEyeOpen();
-    mRightEyePosition = faceData.getRightEyePosition();
-    mRightEyeOpen = faceData.isRightEyeOpen();
+  private void releaseEyes() {
+    if (mLeftEye != NO_EYE) {
+      sIrisPhysics.release(mLeftEye);
+      sIrisPhysics.release(mRightEye);
+      mLeftEye = NO_EYE;
+      mRightEye = NO_EYE;
+    }
+  }
 
-    mNoseBasePosition = faceData.getNoseBasePosition();
+  void update(FaceData faceData) {
+    mFaceData.publish(faceData);
+
+    // Only the area around the face's old and new positions needs to be redrawn.
+    FaceGeometry geometry = mUpdateGeometry;
+    TransformSnapshot transform = mUpdateTransform.take(getTransform());
+    if (geometry.compute(faceData, transform, transform.isFrontFacing())) {
+      postInvalidate(geometry.getBoundsLeft(), geometry.getBoundsTop(),
+                     geometry.getBoundsRight(), geometry.getBoundsBottom());
+    } else {
+      postInvalidate();
+    }
+  }
 
-    mMouthLeftPosition = faceData.getMouthLeftPosition();
-    mMouthBottomPosition = faceData.getMouthBottomPosition();
-    mMouthRightPosition = faceData.getMouthRightPosition();
-    mIsSmiling = faceData.isSmiling();
+  @Override
+  public void prepare() {
+    // Confirm that the face and its features are still visible
+    // before drawing any graphics over it.
+    FaceData faceData = mFaceData.acquire();
+    FaceGeometry geometry = mDrawGeometry;
+    TransformSnapshot transform = mDrawTransform.take(getTransform());
+    if ((faceData.getSequence() == 0) ||
+        !geometry.compute(faceData, transform, transform.isFrontFacing())) {
+      mPreparedFaceData = null;
+      return;
+    }
+    mPreparedFaceData = faceData;
+
+    // Hand this frame's eyes to the physics engine, which moves every iris in the scene
+    // at once before the first of them is drawn.
+    int leftEye = mLeftEye;
+    int rightEye = mRightEye;
+    if (leftEye == NO_EYE) {
+      leftEye = sIrisPhysics.allocate();
+      rightEye = sIrisPhysics.allocate();
+      mLeftEye = leftEye;
+      mRightEye = rightEye;
+      mPhysicsResetPending = false;
+    } else if (mPhysicsResetPending) {
+      mPhysicsResetPending = false;
+      sIrisPhysics.reset(leftEye);
+      sIrisPhysics.reset(rightEye);
+    }
 
-    postInvalidate();
+    float eyeRadius = geometry.getEyeRadius();
+    float irisRadius = geometry.getIrisRadius();
+    sIrisPhysics.setEye(leftEye, geometry.getLeftEyeX(), geometry.getLeftEyeY(),
+                        eyeRadius, irisRadius);
+    sIrisPhysics.setEye(rightEye, geometry.getRightEyeX(), geometry.getRightEyeY(),
+                        eyeRadius, irisRadius);
   }
 
   @Override
   public void draw(Canvas canvas) {
-    // Confirm that the face and its features are still visible
-    // before drawing any graphics over it.
-    PointF detectPosition = mPosition;
-    PointF detectLeftPosition = mLeftEyePosition;
-    PointF detectRightPosition = mRightEyePosition;
-    PointF detectNoseBasePosition = mNoseBasePosition;
-    PointF detectMouthLeftPosition = mMouthLeftPosition;
-    PointF detectBottomMouthPosition = mMouthBottomPosition;
-    PointF detectMouthRightPosition = mMouthRightPosition;
-    if ((detectPosition == null) ||
-        (detectLeftPosition == null) ||
-        (detectRightPosition == null) ||
-        (detectNoseBasePosition == null) ||
-        (detectMouthLeftPosition == null) ||
-        (detectBottomMouthPosition == null) ||
-        (detectMouthRightPosition == null)) {
+    FaceData faceData = mPreparedFaceData;
+    int leftEye = mLeftEye;
+    int rightEye = mRightEye;
+    if ((faceData == null) || (leftEye == NO_EYE)) {
       return;
     }
 
-    // Convert the face's camera coordinates and dimensions
-    // to view coordinates and dimensions.
-    PointF position = new PointF(scaleX(detectPosition.x),
-                                 scaleY(detectPosition.y));
-    float width = scaleX(mWidth);
-    float height = scaleY(mHeight);
-    PointF leftEyePosition = new PointF(translateX(detectLeftPosition.x),
-                                        translateY(detectLeftPosition.y));
-    PointF rightEyePosition = new PointF(translateX(detectRightPosition.x),
-                                         translateY(detectRightPosition.y));
-    PointF noseBasePosition = new PointF(translateX(detectNoseBasePosition.x),
-                                         translateY(detectNoseBasePosition.y));
-    PointF mouthLeftPosition = new PointF(translateX(detectMouthLeftPosition.x),
-                                          translateY(detectMouthLeftPosition.y));
-    PointF mouthRightPosition = new PointF(translateX(detectMouthRightPosition.x),
-                                           translateY(detectMouthRightPosition.y));
-
-    // Calculate the distance between the eyes using Pythagoras' formula,
-    // and we'll use that distance to set the size of the eyes and irises.
-    float distance = (float) Math.sqrt(
-      (rightEyePosition.x - leftEyePosition.x) * (rightEyePosition.x - leftEyePosition.x) +
-      (rightEyePosition.y - leftEyePosition.y) * ((rightEyePosition.y - leftEyePosition.y)));
-    float eyeRadius = EYE_RADIUS_PROPORTION * distance;
-    float irisRadius = IRIS_RADIUS_PROPORTION * distance;
-
-    // Draw the eyes.
-    PointF leftIrisPosition = mLeftPhysics.nextIrisPosition(leftEyePosition, eyeRadius, irisRadius);
-    drawEye(canvas, leftEyePosition, eyeRadius, leftIrisPosition, irisRadius, mLeftEyeOpen, mIsSmiling);
-    PointF rightIrisPosition = mRightPhysics.nextIrisPosition(rightEyePosition, eyeRadius, irisRadius);
-    drawEye(canvas, rightEyePosition, eyeRadius, rightIrisPosition, irisRadius, mRightEyeOpen, mIsSmiling);
-
-    // Draw the mustache and nose.
-    drawMustache(canvas, noseBasePosition, mouthLeftPosition, mouthRightPosition);
-    drawNose(canvas, noseBasePosition, leftEyePosition, rightEyePosition, irisRadius);
-
-    // Draw the hat only if the subject's head is titled at a
-    // sufficiently jaunty angle.
-    if (Math.abs(mEulerZ) > HEAD_TILT_HAT_THRESHOLD) {
-      drawHat(canvas, position, width, height, noseBasePosition);
+    // The first graphic drawn in a frame steps the irises of every graphic.
+    sIrisPhysics.stepFrame(getFrameNumber());
+
+    mFaceCanvas.setCanvas(canvas);
+    FaceRenderer.draw(mFaceCanvas, mDrawGeometry, faceData,
+                      sIrisPhysics.getIrisX(leftEye), sIrisPhysics.getIrisY(leftEye),
+                      sIrisPhysics.getIrisX(rightEye), sIrisPhysics.getIrisY(rightEye));
+
+    if (faceData.getSequence() != mLastDrawnSequence) {
+      mLastDrawnSequence = faceData.getSequence();
+      sLatencyMonitor.stamp(LatencyMonitor.DRAWN, faceData.getTimestampMs());
     }
   }
 
-  private void drawEye(Canvas canvas, PointF eyePosition, float eyeRadius,
-                       PointF irisPosition, float irisRadius, boolean isOpen,
-                       boolean isSmiling) {
-    if (isOpen) {
-      canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeWhitesPaint);
-      if ( !isSmiling ) {
-        canvas.drawCircle(irisPosition.x, irisPosition.y, irisRadius, mEyeIrisPaint);
-      } else {
-        mHappyStarGraphic.setBounds((int)(irisPosition.x - irisRadius),
-                                    (int)(irisPosition.y - irisRadius),
-                                    (int)(irisPosition.x + irisRadius),
-                                    (int)(irisPosition.y + irisRadius));
-        mHappyStarGraphic.draw(canvas);
-      }
-    } else {
-      canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeLidPaint);
-      float y = eyePosition.y;
-      float start = eyePosition.x - eyeRadius;
-      float end = eyePosition.x + eyeRadius;
-      canvas.drawLine(start, y, end, y, mEyeOutlinePaint);
+  // Converts coordinates for FaceGeometry with the one overlay transform taken for a computation.
+  private static final class TransformSnapshot implements FaceGeometry.ViewTransform {
+
+    private GraphicOverlay.Transform mTransform;
+
+    TransformSnapshot take(GraphicOverlay.Transform transform) {
+      mTransform = transform;
+      return this;
     }
-    canvas.drawCircle(eyePosition.x, eyePosition.y, eyeRadius, mEyeOutlinePaint);
-  }
 
-  private void drawNose(Canvas canvas, PointF noseBasePosition, PointF leftEyePosition, PointF rightEyePosition, float noseWidth) {
-    final float NOSE_WIDTH_SCALE_FACTOR = 1.4f;
+    boolean isFrontFacing() {
+      return mTransform.isFrontFacing();
+    }
 
-    int left = (int)(noseBasePosition.x - noseWidth * NOSE_WIDTH_SCALE_FACTOR);
-    int right = (int)(noseBasePosition.x + noseWidth * NOSE_WIDTH_SCALE_FACTOR);
-    int top = (int)(leftEyePosition.y + rightEyePosition.y) / 2;
-    int bottom = (int)noseBasePosition.y;
-    mPigNoseGraphic.setBounds(left, top, right, bottom);
-    mPigNoseGraphic.draw(canvas);
-  }
+    @Override
+    public float scaleX(float horizontal) {
+      return mTransform.scaleX(horizontal);
+    }
 
-  private void drawMustache(Canvas canvas, PointF noseBasePosition, PointF mouthLeftPosition, PointF mouthRightPosition) {
-    int left = (int)mouthLeftPosition.x;
-    int top = (int)noseBasePosition.y;
-    int right = (int)mouthRightPosition.x;
-    int bottom = (int)Math.min(mouthLeftPosition.y, mouthRightPosition.y);
-    if (mIsFrontFacing) {
-      mMustacheGraphic.setBounds(left, top, right, bottom);
-    } else {
-      mMustacheGraphic.setBounds(right, top, left, bottom);
+    @Override
+    public float scaleY(float vertical) {
+      return mTransform.scaleY(vertical);
+    }
+
+    @Override
+    public float translateX(float x) {
+      return mTransform.translateX(x);
+    }
+
+    @Override
+    public float translateY(float y) {
+      return mTransform.translateY(y);
     }
-    mMustacheGraphic.draw(canvas);
-  }
 
-  private void drawHat(Canvas canvas, PointF facePosition, float faceWidth, float faceHeight, PointF noseBasePosition) {
-    float hatCenterY = facePosition.y + (faceHeight / 8);
-    float hatWidth = faceWidth / 4;
-    float hatHeight = faceHeight / 6;
-
-    int left = (int)(noseBasePosition.x - (hatWidth / 2));
-    int right = (int)(noseBasePosition.x + (hatWidth / 2));
-    int top = (int)(hatCenterY - (hatHeight / 2));
-    int bottom = (int)(hatCenterY + (hatHeight / 2));
-    mHatGraphic.setBounds(left, top, right, bottom);
-    mHatGraphic.draw(canvas);
   }
 
-}
\ No newline at end of file
+}
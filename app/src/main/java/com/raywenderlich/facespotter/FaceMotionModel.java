@@ -0,0 +1,158 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Predicts where a face is between the frames it was actually detected in.<p>
+ *
+ * Each detection (a keyframe) updates the face's bounding box, a velocity estimate for the box's
+ * position and size, and the positions of its landmarks as proportions of the box, as
+ * {@link LandmarkMemory} keeps them.  In between, the box is extrapolated along its velocity and
+ * the landmarks are placed in proportion to it, so that a face can be drawn moving smoothly on
+ * frames the detector never looked at.<p>
+ *
+ * The velocity is an exponential moving average of the velocities between consecutive
+ * keyframes, so that one noisy detection doesn't throw the face off course.  Nothing is allocated
+ * after construction.
+ */
+class FaceMotionModel {
+
+  private static final String TAG = "FaceMotionModel";
+
+  // Weight given to the latest keyframe's velocity in the moving average
+  private static final float VELOCITY_SMOOTHING = 0.5f;
+
+  // Keyframes further apart than this are too stale to estimate velocity from.
+  private static final long MAX_KEYFRAME_GAP_MS = 500;
+
+  private final LandmarkMemory mLandmarks = new LandmarkMemory();
+
+  private boolean mHasKeyframe;
+  private long mKeyframeTimeMs;
+
+  // The face's bounding box at the last keyframe
+  private float mX;
+  private float mY;
+  private float mWidth;
+  private float mHeight;
+
+  // Change in the box per millisecond
+  private float mVx;
+  private float mVy;
+  private float mVWidth;
+  private float mVHeight;
+
+  // The box predicted by the last call to predict()
+  private float mPredictedX;
+  private float mPredictedY;
+  private float mPredictedWidth;
+  private float mPredictedHeight;
+
+  /**
+   * Forgets the face, so that this model can be used for another one.
+   */
+  void reset() {
+    mLandmarks.clear();
+    mHasKeyframe = false;
+    mVx = 0;
+    mVy = 0;
+    mVWidth = 0;
+    mVHeight = 0;
+  }
+
+  /**
+   * Records the face's bounding box as detected at the given time.  Follow with
+   * {@link #rememberLandmark(int, float, float)} for each detected landmark.
+   */
+  void onKeyframe(long timeMs, float x, float y, float width, float height) {
+    long elapsedMs = timeMs - mKeyframeTimeMs;
+    if (mHasKeyframe && (elapsedMs > 0) && (elapsedMs <= MAX_KEYFRAME_GAP_MS)) {
+      mVx = smooth(mVx, (x - mX) / elapsedMs);
+      mVy = smooth(mVy, (y - mY) / elapsedMs);
+      mVWidth = smooth(mVWidth, (width - mWidth) / elapsedMs);
+      mVHeight = smooth(mVHeight, (height - mHeight) / elapsedMs);
+    } else if (!mHasKeyframe || (elapsedMs > MAX_KEYFRAME_GAP_MS)) {
+      mVx = 0;
+      mVy = 0;
+      mVWidth = 0;
+      mVHeight = 0;
+    }
+
+    mHasKeyframe = true;
+    mKeyframeTimeMs = timeMs;
+    mX = x;
+    mY = y;
+    mWidth = width;
+    mHeight = height;
+    mPredictedX = x;
+    mPredictedY = y;
+    mPredictedWidth = width;
+    mPredictedHeight = height;
+  }
+
+  /**
+   * Records where a landmark was detected in the latest keyframe.
+   */
+  void rememberLandmark(int landmarkType, float x, float y) {
+    mLandmarks.remember(landmarkType, x, y, mX, mY, mWidth, mHeight);
+  }
+
+  /**
+   * Extrapolates the face's bounding box to the given time.  The result is available from the
+   * {@code getPredicted} methods, and is where {@link #predictLandmark} places landmarks.
+   */
+  void predict(long timeMs) {
+    long elapsedMs = Math.max(0, timeMs - mKeyframeTimeMs);
+    mPredictedX = mX + (mVx * elapsedMs);
+    mPredictedY = mY + (mVy * elapsedMs);
+    mPredictedWidth = Math.max(1, mWidth + (mVWidth * elapsedMs));
+    mPredictedHeight = Math.max(1, mHeight + (mVHeight * elapsedMs));
+  }
+
+  /**
+   * Writes the predicted position of a landmark into {@code out[offset]} (x) and
+   * {@code out[offset + 1]} (y).
+   *
+   * @return false if the landmark has never been detected on this face
+   */
+  boolean predictLandmark(int landmarkType, float[] out, int offset) {
+    return mLandmarks.approximate(landmarkType, mPredictedX, mPredictedY,
+                                  mPredictedWidth, mPredictedHeight, out, offset);
+  }
+
+  /**
+   * Returns how far the face is expected to move over the given time, as a fraction of its
+   * width.  Fast-moving faces are worth detecting again sooner than prediction would.
+   */
+  float getRelativeMotion(long intervalMs) {
+    if (!mHasKeyframe || (mWidth <= 0)) {
+      return 0;
+    }
+    float dx = mVx * intervalMs;
+    float dy = mVy * intervalMs;
+    return (float) Math.sqrt((dx * dx) + (dy * dy)) / mWidth;
+  }
+
+  boolean hasKeyframe() {
+    return mHasKeyframe;
+  }
+
+  float getPredictedX() {
+    return mPredictedX;
+  }
+
+  float getPredictedY() {
+    return mPredictedY;
+  }
+
+  float getPredictedWidth() {
+    return mPredictedWidth;
+  }
+
+  float getPredictedHeight() {
+    return mPredictedHeight;
+  }
+
+  private static float smooth(float average, float value) {
+    return average + (VELOCITY_SMOOTHING * (value - average));
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Draws the decorations over a face: googly eyes, a pig nose, a mustache and, if the head is
+ * tilted, a hat.<p>
+ *
+ * This is what {@link FaceGraphic} draws, given the face's {@link FaceGeometry} and where the
+ * physics has put the irises.  It only talks to a {@link FaceCanvas}, so that the same drawing
+ * can run on a device or headless on the desktop JVM.
+ */
+final class FaceRenderer {
+
+  private static final String TAG = "FaceRenderer";
+
+  // Paint colors, as ARGB
+  private static final int WHITE_COLOR = 0xFFFFFFFF;
+  private static final int POWDER_BLUE_COLOR = 0xFFB0E0E6;
+  private static final int SADDLE_BROWN_COLOR = 0xFF8B4513;
+  private static final int BLACK_COLOR = 0xFF000000;
+
+  private FaceRenderer() {
+  }
+
+  /**
+   * Returns the ARGB color of one of the {@link FaceCanvas} paints.
+   */
+  static int getPaintColor(int paint) {
+    switch (paint) {
+      case FaceCanvas.EYE_WHITES:
+        return WHITE_COLOR;
+      case FaceCanvas.EYE_LID:
+        return POWDER_BLUE_COLOR;
+      case FaceCanvas.EYE_IRIS:
+        return SADDLE_BROWN_COLOR;
+      default:
+        return BLACK_COLOR;
+    }
+  }
+
+  /**
+   * Returns true if one of the {@link FaceCanvas} paints outlines shapes rather than filling
+   * them.  Outlines are {@link FaceGeometry#EYE_OUTLINE_WIDTH} wide.
+   */
+  static boolean isOutline(int paint) {
+    return paint == FaceCanvas.EYE_OUTLINE;
+  }
+
+  static void draw(FaceCanvas canvas, FaceGeometry geometry, FaceData faceData,
+                   float leftIrisX, float leftIrisY, float rightIrisX, float rightIrisY) {
+    float eyeRadius = geometry.getEyeRadius();
+    float irisRadius = geometry.getIrisRadius();
+    boolean isSmiling = faceData.isSmiling();
+
+    // Draw the eyes.
+    drawEye(canvas, geometry.getLeftEyeX(), geometry.getLeftEyeY(), eyeRadius,
+            leftIrisX, leftIrisY, irisRadius, faceData.isLeftEyeOpen(), isSmiling);
+    drawEye(canvas, geometry.getRightEyeX(), geometry.getRightEyeY(), eyeRadius,
+            rightIrisX, rightIrisY, irisRadius, faceData.isRightEyeOpen(), isSmiling);
+
+    // Draw the mustache and nose.
+    drawMustache(canvas, geometry);
+    drawNose(canvas, geometry);
+
+    // Draw the hat only if the subject's head is titled at a
+    // sufficiently jaunty angle.
+    if (geometry.hasHat()) {
+      drawHat(canvas, geometry);
+    }
+  }
+
+  private static void drawEye(FaceCanvas canvas, float eyeX, float eyeY, float eyeRadius,
+                              float irisX, float irisY, float irisRadius, boolean isOpen,
+                              boolean isSmiling) {
+    if (isOpen) {
+      canvas.drawCircle(eyeX, eyeY, eyeRadius, FaceCanvas.EYE_WHITES);
+      if ( !isSmiling ) {
+        canvas.drawCircle(irisX, irisY, irisRadius, FaceCanvas.EYE_IRIS);
+      } else {
+        canvas.drawSprite(FaceCanvas.HAPPY_STAR,
+                          (int)(irisX - irisRadius),
+                          (int)(irisY - irisRadius),
+                          (int)(irisX + irisRadius),
+                          (int)(irisY + irisRadius));
+      }
+    } else {
+      canvas.drawCircle(eyeX, eyeY, eyeRadius, FaceCanvas.EYE_LID);
+      float start = eyeX - eyeRadius;
+      float end = eyeX + eyeRadius;
+      canvas.drawLine(start, eyeY, end, eyeY, FaceCanvas.EYE_OUTLINE);
+    }
+    canvas.drawCircle(eyeX, eyeY, eyeRadius, FaceCanvas.EYE_OUTLINE);
+  }
+
+  private static void drawNose(FaceCanvas canvas, FaceGeometry geometry) {
+    canvas.drawSprite(FaceCanvas.PIG_NOSE,
+                      geometry.getNoseLeft(), geometry.getNoseTop(),
+                      geometry.getNoseRight(), geometry.getNoseBottom());
+  }
+
+  private static void drawMustache(FaceCanvas canvas, FaceGeometry geometry) {
+    canvas.drawSprite(FaceCanvas.MUSTACHE,
+                      geometry.getMustacheLeft(), geometry.getMustacheTop(),
+                      geometry.getMustacheRight(), geometry.getMustacheBottom());
+  }
+
+  private static void drawHat(FaceCanvas canvas, FaceGeometry geometry) {
+    canvas.drawSprite(FaceCanvas.RED_HAT,
+                      geometry.getHatLeft(), geometry.getHatTop(),
+                      geometry.getHatRight(), geometry.getHatBottom());
+  }
+
+}
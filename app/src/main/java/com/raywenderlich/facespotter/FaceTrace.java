@@ -0,0 +1,40 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * The binary format of a face trace: a recording of everything the face detector reported, frame
+ * by frame, which can be replayed through the tracking and drawing code without a camera.<p>
+ *
+ * A trace is a header followed by frames, with every value big-endian:<p>
+ *
+ * <pre>
+ * header:  int magic ("FSTR"), int version, int flags
+ * frame:   long timestamp (ms), int frame id, int width, int height, int face count, faces
+ * face:    int id, float x, float y, float width, float height, float euler y, float euler z,
+ *          float left eye open, float right eye open, float smiling probabilities,
+ *          int landmark mask, then an x and a y float for each landmark type in the mask,
+ *          in type order
+ * </pre>
+ *
+ * Frames are written whole, so a trace cut short by the app stopping ends at a frame boundary.
+ * See {@link FaceTraceWriter} and {@link FaceTraceReader}.
+ */
+final class FaceTrace {
+
+  static final int MAGIC = 0x46535452;
+  static final int VERSION = 1;
+
+  // Header flags
+  static final int FLAG_FRONT_FACING = 1;
+
+  static final int HEADER_BYTES = 12;
+  static final int FRAME_HEADER_BYTES = 24;
+  static final int FACE_HEADER_BYTES = 44;
+  static final int MAX_FACE_BYTES = FACE_HEADER_BYTES + (FaceData.LANDMARK_TYPE_COUNT * 8);
+
+  // Landmark types are those of FaceData, so a mask of all of them covers every type recorded.
+  static final int ALL_LANDMARKS = (1 << FaceData.LANDMARK_TYPE_COUNT) - 1;
+
+  private FaceTrace() {
+  }
+
+}
@@ -0,0 +1,239 @@
+package com.raywenderlich.facespotter;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a face trace, in the format described by {@link FaceTrace}, one frame and one face at a
+ * time.<p>
+ *
+ * The trace is memory-mapped a window at a time rather than read into the heap, so that traces
+ * of any length stream through at the speed of the page cache.  The current frame and face are
+ * available from the getters; nothing is allocated per frame except when moving to the next
+ * window.
+ */
+class FaceTraceReader implements Closeable {
+
+  private static final String TAG = "FaceTraceReader";
+
+  // How much of the trace is mapped at a time
+  static final long DEFAULT_WINDOW_BYTES = 64L * 1024 * 1024;
+
+  private final FileChannel mChannel;
+  private final long mSize;
+  private final long mWindowBytes;
+  private final int mFlags;
+
+  private MappedByteBuffer mWindow;
+  private long mWindowStart;
+
+  // The current frame
+  private long mTimestampMs;
+  private int mFrameId;
+  private int mWidth;
+  private int mHeight;
+  private int mFaceCount;
+  private int mFacesLeft;
+
+  // The current face
+  private int mFaceId;
+  private float mX;
+  private float mY;
+  private float mFaceWidth;
+  private float mFaceHeight;
+  private float mEulerY;
+  private float mEulerZ;
+  private float mIsLeftEyeOpenProbability;
+  private float mIsRightEyeOpenProbability;
+  private float mIsSmilingProbability;
+  private int mLandmarkMask;
+  private final float[] mLandmarks = new float[FaceData.LANDMARK_TYPE_COUNT * 2];
+
+  FaceTraceReader(FileChannel channel) throws IOException {
+    this(channel, DEFAULT_WINDOW_BYTES);
+  }
+
+  /**
+   * @param windowBytes how much of the trace to map at a time
+   */
+  FaceTraceReader(FileChannel channel, long windowBytes) throws IOException {
+    mChannel = channel;
+    mSize = channel.size();
+    mWindowBytes = Math.max(windowBytes, FaceTrace.MAX_FACE_BYTES);
+
+    map(0);
+    if (!ensureAvailable(FaceTrace.HEADER_BYTES) || (mWindow.getInt() != FaceTrace.MAGIC)) {
+      throw new IOException("Not a face trace");
+    }
+    int version = mWindow.getInt();
+    if (version != FaceTrace.VERSION) {
+      throw new IOException("Unsupported face trace version " + version);
+    }
+    mFlags = mWindow.getInt();
+  }
+
+  boolean isFrontFacing() {
+    return (mFlags & FaceTrace.FLAG_FRONT_FACING) != 0;
+  }
+
+  /**
+   * Moves to the next frame, skipping any faces of the current one that weren't read.
+   *
+   * @return false at the end of the trace
+   */
+  boolean nextFrame() throws IOException {
+    while (mFacesLeft > 0) {
+      nextFace();
+    }
+    if (!ensureAvailable(FaceTrace.FRAME_HEADER_BYTES)) {
+      return false;
+    }
+
+    MappedByteBuffer window = mWindow;
+    mTimestampMs = window.getLong();
+    mFrameId = window.getInt();
+    mWidth = window.getInt();
+    mHeight = window.getInt();
+    mFaceCount = window.getInt();
+    mFacesLeft = mFaceCount;
+    return true;
+  }
+
+  /**
+   * Moves to the next face of the current frame.
+   */
+  void nextFace() throws IOException {
+    if (mFacesLeft == 0) {
+      throw new IllegalStateException("The frame has no more faces");
+    }
+    if (!ensureAvailable(FaceTrace.FACE_HEADER_BYTES)) {
+      throw new EOFException("The trace ends in the middle of a frame");
+    }
+
+    MappedByteBuffer window = mWindow;
+    mFaceId = window.getInt();
+    mX = window.getFloat();
+    mY = window.getFloat();
+    mFaceWidth = window.getFloat();
+    mFaceHeight = window.getFloat();
+    mEulerY = window.getFloat();
+    mEulerZ = window.getFloat();
+    mIsLeftEyeOpenProbability = window.getFloat();
+    mIsRightEyeOpenProbability = window.getFloat();
+    mIsSmilingProbability = window.getFloat();
+    mLandmarkMask = window.getInt() & FaceTrace.ALL_LANDMARKS;
+
+    if (!ensureAvailable(Integer.bitCount(mLandmarkMask) * 8)) {
+      throw new EOFException("The trace ends in the middle of a frame");
+    }
+    window = mWindow;
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if ((mLandmarkMask & (1 << type)) != 0) {
+        mLandmarks[type * 2] = window.getFloat();
+        mLandmarks[type * 2 + 1] = window.getFloat();
+      }
+    }
+    mFacesLeft--;
+  }
+
+  // Make sure that the next given number of bytes are mapped, moving the window along if need be.
+  // Returns false if the trace doesn't have that many bytes left.
+  private boolean ensureAvailable(int bytes) throws IOException {
+    if (mWindow.remaining() >= bytes) {
+      return true;
+    }
+    long position = mWindowStart + mWindow.position();
+    if (mSize - position < bytes) {
+      return false;
+    }
+    map(position);
+    return true;
+  }
+
+  private void map(long position) throws IOException {
+    long length = Math.min(mWindowBytes, mSize - position);
+    mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    mWindowStart = position;
+  }
+
+  long getTimestampMs() {
+    return mTimestampMs;
+  }
+
+  int getFrameId() {
+    return mFrameId;
+  }
+
+  int getWidth() {
+    return mWidth;
+  }
+
+  int getHeight() {
+    return mHeight;
+  }
+
+  int getFaceCount() {
+    return mFaceCount;
+  }
+
+  int getFaceId() {
+    return mFaceId;
+  }
+
+  float getX() {
+    return mX;
+  }
+
+  float getY() {
+    return mY;
+  }
+
+  float getFaceWidth() {
+    return mFaceWidth;
+  }
+
+  float getFaceHeight() {
+    return mFaceHeight;
+  }
+
+  float getEulerY() {
+    return mEulerY;
+  }
+
+  float getEulerZ() {
+    return mEulerZ;
+  }
+
+  float getIsLeftEyeOpenProbability() {
+    return mIsLeftEyeOpenProbability;
+  }
+
+  float getIsRightEyeOpenProbability() {
+    return mIsRightEyeOpenProbability;
+  }
+
+  float getIsSmilingProbability() {
+    return mIsSmilingProbability;
+  }
+
+  boolean hasLandmark(int landmarkType) {
+    return (mLandmarkMask & (1 << landmarkType)) != 0;
+  }
+
+  float getLandmarkX(int landmarkType) {
+    return mLandmarks[landmarkType * 2];
+  }
+
+  float getLandmarkY(int landmarkType) {
+    return mLandmarks[landmarkType * 2 + 1];
+  }
+
+  @Override
+  public void close() throws IOException {
+    mChannel.close();
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Records everything the face detector reports to a face trace file, on its way to the processor
+ * that tracks the faces.<p>
+ *
+ * The trace can be replayed on a desktop JVM, without a device or camera, to profile and
+ * regression-test tracking and drawing; see the benchmarks module's {@code FaceTraceReplay}.
+ * Recording stops, with an error logged, if the file can't be written.
+ */
+class FaceTraceRecorder implements Detector.Processor<Face> {
+
+  private static final String TAG = "FaceTraceRecorder";
+
+  private final Detector.Processor<Face> mDelegate;
+  private final File mFile;
+  private FaceTraceWriter mWriter;
+
+  // Landmark coordinates are collected here rather than into new objects.
+  private final float[] mLandmarks = new float[FaceData.LANDMARK_TYPE_COUNT * 2];
+
+  FaceTraceRecorder(Detector.Processor<Face> delegate, File file, boolean isFrontFacing)
+    throws IOException {
+    mDelegate = delegate;
+    mFile = file;
+    mWriter = new FaceTraceWriter(new FileOutputStream(file).getChannel(),
+                                  isFrontFacing ? FaceTrace.FLAG_FRONT_FACING : 0);
+    Log.i(TAG, "Recording faces to " + file);
+  }
+
+  @Override
+  public void receiveDetections(Detector.Detections<Face> detections) {
+    if (mWriter != null) {
+      try {
+        record(detections);
+      } catch (IOException e) {
+        Log.e(TAG, "Couldn't record faces to " + mFile, e);
+        stopRecording();
+      }
+    }
+    mDelegate.receiveDetections(detections);
+  }
+
+  private void record(Detector.Detections<Face> detections) throws IOException {
+    Frame.Metadata metadata = detections.getFrameMetadata();
+    SparseArray<Face> faces = detections.getDetectedItems();
+    int faceCount = faces.size();
+    FaceTraceWriter writer = mWriter;
+    writer.beginFrame(metadata.getTimestampMillis(), metadata.getId(),
+                      metadata.getWidth(), metadata.getHeight(), faceCount);
+
+    for (int i = 0; i < faceCount; i++) {
+      Face face = faces.valueAt(i);
+      int landmarkMask = 0;
+      List<Landmark> landmarks = face.getLandmarks();
+      for (int j = 0, landmarkCount = landmarks.size(); j < landmarkCount; j++) {
+        Landmark landmark = landmarks.get(j);
+        int type = landmark.getType();
+        if ((type < 0) || (type >= FaceData.LANDMARK_TYPE_COUNT)) {
+          continue;
+        }
+        PointF position = landmark.getPosition();
+        mLandmarks[type * 2] = position.x;
+        mLandmarks[type * 2 + 1] = position.y;
+        landmarkMask |= (1 << type);
+      }
+
+      PointF position = face.getPosition();
+      writer.writeFace(faces.keyAt(i), position.x, position.y, face.getWidth(), face.getHeight(),
+                       face.getEulerY(), face.getEulerZ(), face.getIsLeftEyeOpenProbability(),
+                       face.getIsRightEyeOpenProbability(), face.getIsSmilingProbability(),
+                       landmarkMask, mLandmarks);
+    }
+  }
+
+  private void stopRecording() {
+    if (mWriter == null) {
+      return;
+    }
+    try {
+      mWriter.close();
+      Log.i(TAG, "Recorded faces to " + mFile);
+    } catch (IOException e) {
+      Log.e(TAG, "Couldn't finish recording faces to " + mFile, e);
+    }
+    mWriter = null;
+  }
+
+  @Override
+  public void release() {
+    stopRecording();
+    mDelegate.release();
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.raywenderlich.facespotter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a face trace, in the format described by {@link FaceTrace}.<p>
+ *
+ * Each frame is begun with {@link #beginFrame}, followed by {@link #writeFace} for each of its
+ * faces.  Frames are collected in a buffer and written out whole, so that recording costs the
+ * detector thread a few stores per face rather than a write.
+ */
+class FaceTraceWriter implements Closeable {
+
+  private static final String TAG = "FaceTraceWriter";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final WritableByteChannel mChannel;
+  private ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private int mFacesLeft;
+  private int mFrameStart;
+
+  /**
+   * @param flags {@link FaceTrace} header flags
+   */
+  FaceTraceWriter(WritableByteChannel channel, int flags) {
+    mChannel = channel;
+    mBuffer.putInt(FaceTrace.MAGIC);
+    mBuffer.putInt(FaceTrace.VERSION);
+    mBuffer.putInt(flags);
+  }
+
+  /**
+   * Starts a frame, which must be followed by {@code faceCount} calls to {@link #writeFace}.
+   */
+  void beginFrame(long timestampMs, int frameId, int width, int height, int faceCount)
+    throws IOException {
+    if (mFacesLeft != 0) {
+      throw new IllegalStateException("The last frame is missing " + mFacesLeft + " faces");
+    }
+
+    // Make room for the whole frame, so that it's never split between writes.
+    int frameBytes = FaceTrace.FRAME_HEADER_BYTES + (faceCount * FaceTrace.MAX_FACE_BYTES);
+    if (mBuffer.remaining() < frameBytes) {
+      flush();
+      if (mBuffer.capacity() < frameBytes) {
+        mBuffer = ByteBuffer.allocateDirect(frameBytes);
+      }
+    }
+
+    mFrameStart = mBuffer.position();
+    mBuffer.putLong(timestampMs);
+    mBuffer.putInt(frameId);
+    mBuffer.putInt(width);
+    mBuffer.putInt(height);
+    mBuffer.putInt(faceCount);
+    mFacesLeft = faceCount;
+  }
+
+  /**
+   * Adds a face to the current frame.
+   *
+   * @param landmarkMask the landmark types whose positions are known, with bit {@code n} standing
+   *                     for type {@code n}
+   * @param landmarks interleaved landmark coordinates, indexed as in {@link FaceData}:
+   *                  {@code [x0, y0, x1, y1, ...]}
+   */
+  void writeFace(int id, float x, float y, float width, float height, float eulerY, float eulerZ,
+                 float isLeftEyeOpenProbability, float isRightEyeOpenProbability,
+                 float isSmilingProbability, int landmarkMask, float[] landmarks) {
+    if (mFacesLeft == 0) {
+      throw new IllegalStateException("The frame already has all of its faces");
+    }
+    mFacesLeft--;
+
+    ByteBuffer buffer = mBuffer;
+    buffer.putInt(id);
+    buffer.putFloat(x);
+    buffer.putFloat(y);
+    buffer.putFloat(width);
+    buffer.putFloat(height);
+    buffer.putFloat(eulerY);
+    buffer.putFloat(eulerZ);
+    buffer.putFloat(isLeftEyeOpenProbability);
+    buffer.putFloat(isRightEyeOpenProbability);
+    buffer.putFloat(isSmilingProbability);
+
+    landmarkMask &= FaceTrace.ALL_LANDMARKS;
+    buffer.putInt(landmarkMask);
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if ((landmarkMask & (1 << type)) != 0) {
+        buffer.putFloat(landmarks[type * 2]);
+        buffer.putFloat(landmarks[type * 2 + 1]);
+      }
+    }
+  }
+
+  /**
+   * Writes out every frame so far.  Can't be called in the middle of a frame.
+   */
+  void flush() throws IOException {
+    if (mFacesLeft != 0) {
+      throw new IllegalStateException("Can't flush in the middle of a frame");
+    }
+    mBuffer.flip();
+    while (mBuffer.hasRemaining()) {
+      mChannel.write(mBuffer);
+    }
+    mBuffer.clear();
+  }
+
+  /**
+   * Writes out every whole frame and closes the channel.  A frame that's missing faces is left
+   * out.
+   */
+  @Override
+  public void close() throws IOException {
+    if (mFacesLeft != 0) {
+      mBuffer.position(mFrameStart);
+      mFacesLeft = 0;
+    }
+    try {
+      flush();
+    } finally {
+      mChannel.close();
+    }
+  }
+
+}
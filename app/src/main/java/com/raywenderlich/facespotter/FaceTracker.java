@@ -1,157 +1,163 @@
 package com.raywenderlich.facespotter;
 
 import android.content.Context;
-import android.graphics.PointF;
 
 import com.google.android.gms.vision.Tracker;
 import com.google.android.gms.vision.face.Face;
 import com.google.android.gms.vision.face.FaceDetector;
-import com.google.android.gms.vision.face.Landmark;
 import com.raywenderlich.facespotter.ui.camera.GraphicOverlay;
 
-import java.util.HashMap;
-import java.util.Map;
-
 // See https://developers.google.com/android/reference/com/google/android/gms/vision/Tracker
 
-class FaceTracker extends Tracker<Face> {
+class FaceTracker extends Tracker<Face> implements TrackerPipeline.Handler<Face> {
 
   private static final String TAG = "FaceTracker";
 
-  // "Threshold" constants
-  private static final float EYE_CLOSED_THRESHOLD = 0.4f;
-  private static final float SMILING_THRESHOLD = 0.8f;
-
   private GraphicOverlay mOverlay;
   private FaceGraphic mFaceGraphic;
   private Context mContext;
-  private boolean mIsFrontFacing;
   private FaceData mFaceData;
 
-  // Subjects may move too quickly to for the system to detect their detect features,
-  // or they may move so their features are out of the tracker's detection range.
-  // This map keeps track of previously detected facial landmarks so that we can approximate
-  // their locations when they momentarily "disappear".
-  private Map<Integer, PointF> mPreviousLandmarkPositions = new HashMap<>();
+  // The pool this tracker goes back to when its face is gone for good, if any
+  private FaceTrackerPool mPool;
+
+  // Where to report that this face's eyes or smile need classifying, if classification is
+  // scheduled
+  private ClassificationSchedule mClassificationSchedule;
 
-  // As with facial landmarks, we keep track of the eye’s previous open/closed states
-  // so that we can use them during those moments when they momentarily go undetected.
-  private boolean mPreviousIsLeftOpen = true;
-  private boolean mPreviousIsRightOpen = true;
+  // Where this tracker's work is done, if not on the detector's thread
+  private TrackerPipeline<Face> mPipeline;
+  private int mId;
 
+  // Works out each frame's face data, remembering what it needs about the face between frames.
+  private final FaceDataExtractor mExtractor = new FaceDataExtractor();
 
-  FaceTracker(GraphicOverlay overlay, Context context, boolean isFrontFacing) {
+  private final LatencyMonitor mLatencyMonitor = LatencyMonitor.getInstance();
+
+
+  FaceTracker(GraphicOverlay overlay, Context context, FaceTrackerPool pool,
+              ClassificationSchedule classificationSchedule, TrackerPipeline<Face> pipeline) {
     mOverlay = overlay;
     mContext = context;
-    mIsFrontFacing = isFrontFacing;
     mFaceData = new FaceData();
+    mPool = pool;
+    mClassificationSchedule = classificationSchedule;
+    mPipeline = pipeline;
+  }
+
+  // Forget everything about the previous face, so that this tracker
+  // (and its graphic) can be reused for a new one.
+  void reset() {
+    mExtractor.reset();
+    if (mFaceGraphic != null) {
+      mFaceGraphic.reset();
+    }
+  }
+
+  // Give back what the graphic holds in shared engines, when the pool has no room to keep
+  // this tracker for reuse.
+  void discard() {
+    if (mFaceGraphic != null) {
+      mFaceGraphic.release();
+    }
   }
 
   // Face detection event handlers
   // =============================
+  // These are called on the detector's thread.  If there's a pipeline, they hand the work
+  // over to it and return straight away; otherwise they do it themselves.
 
-  // This method is called when a new face is detected.
-  // We'll create a new graphic overlay whenever this happens.
   @Override
   public void onNewItem(int id, Face face) {
-    mFaceGraphic = new FaceGraphic(mOverlay, mContext, mIsFrontFacing);
+    mId = id;
+    if (mPipeline != null) {
+      mPipeline.postNewItem(this, id, face);
+    } else {
+      processNewItem(id, face);
+    }
   }
 
-  // As detected faces are tracked over time, this method is called regularly to update their information.
-  // We'll collect the updated face information and use it to update the graphic overlay.
   @Override
   public void onUpdate(FaceDetector.Detections<Face> detectionResults, Face face) {
-    mOverlay.add(mFaceGraphic);
-    updatePreviousLandmarkPositions(face);
-
-    // Get face dimensions.
-    mFaceData.setPosition(face.getPosition());
-    mFaceData.setWidth(face.getWidth());
-    mFaceData.setHeight(face.getHeight());
-
-    // Get head angles.
-    mFaceData.setEulerY(face.getEulerY());
-    mFaceData.setEulerZ(face.getEulerZ());
-
-    // Get the positions of facial landmarks.
-    mFaceData.setLeftEyePosition(getLandmarkPosition(face, Landmark.LEFT_EYE));
-    mFaceData.setRightEyePosition(getLandmarkPosition(face, Landmark.RIGHT_EYE));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.LEFT_CHEEK));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.RIGHT_CHEEK));
-    mFaceData.setNoseBasePosition(getLandmarkPosition(face, Landmark.NOSE_BASE));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.LEFT_EAR));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.LEFT_EAR_TIP));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.RIGHT_EAR));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.RIGHT_EAR_TIP));
-    mFaceData.setMouthLeftPosition(getLandmarkPosition(face, Landmark.LEFT_MOUTH));
-    mFaceData.setMouthBottomPosition(getLandmarkPosition(face, Landmark.BOTTOM_MOUTH));
-    mFaceData.setMouthRightPosition(getLandmarkPosition(face, Landmark.RIGHT_MOUTH));
-
-    // Determine if eyes are open.
-    float leftOpenScore = face.getIsLeftEyeOpenProbability();
-    if (leftOpenScore == Face.UNCOMPUTED_PROBABILITY) {
-      mFaceData.setLeftEyeOpen(mPreviousIsLeftOpen);
-    } else {
-      mFaceData.setLeftEyeOpen(leftOpenScore > EYE_CLOSED_THRESHOLD);
-      mPreviousIsLeftOpen = mFaceData.isLeftEyeOpen();
-    }
-    float rightOpenScore = face.getIsRightEyeOpenProbability();
-    if (rightOpenScore == Face.UNCOMPUTED_PROBABILITY) {
-      mFaceData.setRightEyeOpen(mPreviousIsRightOpen);
+    long timeMs = detectionResults.getFrameMetadata().getTimestampMillis();
+    if (mPipeline != null) {
+      mPipeline.postUpdate(this, mId, face, timeMs);
     } else {
-      mFaceData.setRightEyeOpen(rightOpenScore > EYE_CLOSED_THRESHOLD);
-      mPreviousIsRightOpen = mFaceData.isRightEyeOpen();
+      processUpdate(face, timeMs);
     }
-
-    // Determine if person is smiling.
-    mFaceData.setSmiling(face.getIsSmilingProbability() > SMILING_THRESHOLD);
-
-    // Update the graphic overlay.
-    mFaceGraphic.update(mFaceData);
   }
 
-  // This method is called when a face momentarily goes undetected.
   @Override
   public void onMissing(FaceDetector.Detections<Face> detectionResults) {
-    mOverlay.remove(mFaceGraphic);
+    long timeMs = detectionResults.getFrameMetadata().getTimestampMillis();
+    if (mPipeline != null) {
+      mPipeline.postMissing(this, mId, timeMs);
+    } else {
+      processMissing(timeMs);
+    }
   }
 
-  // This method is called when a face is assumed to be out of camera view for good.
   @Override
   public void onDone() {
-    mOverlay.remove(mFaceGraphic);
+    if (mPipeline != null) {
+      mPipeline.postDone(this, mId);
+    } else {
+      processDone();
+    }
   }
 
-  // Facial landmark utility methods
-  // ===============================
-
-  // Given a face and a facial landmark position,
-  // return the coordinates of the landmark if known,
-  // or approximated coordinates (based on prior data) if not.
-  private PointF getLandmarkPosition(Face face, int landmarkId) {
-    for (Landmark landmark : face.getLandmarks()) {
-      if (landmark.getType() == landmarkId) {
-        return landmark.getPosition();
-      }
+  // Face processing
+  // ===============
+  // These are called in order for each face, on one thread at a time.
+
+  // This method is called when a new face is detected.
+  // We'll create a new graphic overlay whenever this happens,
+  // unless this tracker is being reused and already has one.
+  @Override
+  public void processNewItem(int id, Face face) {
+    if (mFaceGraphic == null) {
+      mFaceGraphic = new FaceGraphic(mOverlay, mContext);
     }
+  }
 
-    PointF landmarkPosition = mPreviousLandmarkPositions.get(landmarkId);
-    if (landmarkPosition == null) {
-      return null;
+  // As detected faces are tracked over time, this method is called regularly to update their information.
+  // We'll collect the updated face information and use it to update the graphic overlay.
+  @Override
+  public void processUpdate(Face face, long timeMs) {
+    mOverlay.add(mFaceGraphic);
+    mExtractor.extract(face, timeMs, mFaceData);
+    if ((mClassificationSchedule != null) && mExtractor.isClassificationUncertain()) {
+      mClassificationSchedule.reportUncertain();
     }
+    mLatencyMonitor.stamp(LatencyMonitor.TRACKED, timeMs);
+
+    // Update the graphic overlay.  The graphic takes its own copy of the face data,
+    // so we're free to reuse ours on the next update.
+    mFaceGraphic.update(mFaceData);
+    mLatencyMonitor.stamp(LatencyMonitor.PUBLISHED, timeMs);
+  }
 
-    float x = face.getPosition().x + (landmarkPosition.x * face.getWidth());
-    float y = face.getPosition().y + (landmarkPosition.y * face.getHeight());
-    return new PointF(x, y);
+  // This method is called when a face momentarily goes undetected.
+  // Rather than make the graphic blink out, we keep it moving the way the face was going,
+  // and only remove it if the face stays undetected for longer than we can sensibly predict.
+  @Override
+  public void processMissing(long timeMs) {
+    if (mExtractor.predict(timeMs, mFaceData)) {
+      mLatencyMonitor.stamp(LatencyMonitor.TRACKED, timeMs);
+      mFaceGraphic.update(mFaceData);
+      mLatencyMonitor.stamp(LatencyMonitor.PUBLISHED, timeMs);
+    } else {
+      mOverlay.remove(mFaceGraphic);
+    }
   }
 
-  private void updatePreviousLandmarkPositions(Face face) {
-    for (Landmark landmark : face.getLandmarks()) {
-      PointF position = landmark.getPosition();
-      float xProp = (position.x - face.getPosition().x) / face.getWidth();
-      float yProp = (position.y - face.getPosition().y) / face.getHeight();
-      mPreviousLandmarkPositions.put(landmark.getType(), new PointF(xProp, yProp));
+  // This method is called when a face is assumed to be out of camera view for good.
+  @Override
+  public void processDone() {
+    mOverlay.remove(mFaceGraphic);
+    if (mPool != null) {
+      mPool.release(this);
     }
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package com.raywenderlich.facespotter;
+
+import android.content.Context;
+
+import com.google.android.gms.vision.face.Face;
+import com.raywenderlich.facespotter.ui.camera.GraphicOverlay;
+
+/**
+ * Recycles {@link FaceTracker}s, along with their {@link FaceGraphic}s, as faces enter and leave
+ * the frame.<p>
+ *
+ * In a crowded scene, faces come and go constantly.  Without pooling, every new face costs a new
+ * tracker and a new graphic (with its paints, landmark memory and iris physics).  Trackers
+ * return themselves to the pool from {@link FaceTracker#onDone()}, and are reset there so that
+ * nothing about their previous face carries over.  With a {@link TrackerPipeline}, that happens
+ * on a pipeline worker, after the tracker's last event has been handled.
+ */
+class FaceTrackerPool extends ObjectPool<FaceTracker> {
+
+  private static final String TAG = "FaceTrackerPool";
+
+  // Enough idle trackers to absorb a crowd turning over, without holding on to many graphics.
+  private static final int CAPACITY = 16;
+
+  private final GraphicOverlay mOverlay;
+  private final Context mContext;
+  private final ClassificationSchedule mClassificationSchedule;
+  private final TrackerPipeline<Face> mPipeline;
+
+  /**
+   * @param classificationSchedule where trackers report faces that need classifying, or null if
+   *                               classification isn't scheduled
+   * @param pipeline where trackers do their work, or null to do it on the detector's thread
+   */
+  FaceTrackerPool(GraphicOverlay overlay, Context context,
+                  ClassificationSchedule classificationSchedule,
+                  TrackerPipeline<Face> pipeline) {
+    super(CAPACITY);
+    mOverlay = overlay;
+    mContext = context;
+    mClassificationSchedule = classificationSchedule;
+    mPipeline = pipeline;
+  }
+
+  @Override
+  protected FaceTracker create() {
+    return new FaceTracker(mOverlay, mContext, this, mClassificationSchedule, mPipeline);
+  }
+
+  @Override
+  protected void reset(FaceTracker tracker) {
+    tracker.reset();
+  }
+
+  @Override
+  protected void discard(FaceTracker tracker) {
+    tracker.discard();
+  }
+
+}
@@ -0,0 +1,258 @@
+package com.raywenderlich.facespotter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The images worked out from one {@link LuminanceFrame}, built the first time they're asked for
+ * and shared by everything that looks at the frame.<p>
+ *
+ * Level 0 of the pyramid is the frame's luminance turned upright.  Each level after it is half
+ * the size of the one before, each pixel the mean of four.  Any level's integral image, and
+ * integral image of squares, can be asked for too; from them, the sum and variance of any
+ * rectangle of the level are a few lookups.  A detector and a cropper working on the same frame
+ * share one upright copy and one set of integral images, rather than each building their own.<p>
+ *
+ * Every array is kept from frame to frame and only reallocated when the frame size changes, so a
+ * stream of same-sized frames allocates nothing.  The inner loops are branch-free passes over
+ * primitive arrays, stepping through memory in order, which the JIT unrolls and, where there's
+ * no running sum, vectorizes.  Building the images is bound by memory more than arithmetic, so
+ * each pixel is read once: the integral images are built in the same pass, and frames are
+ * turned upright a tile at a time.<p>
+ *
+ * A frame's cache is used from one thread at a time, like the frame.
+ */
+final class FrameImageCache {
+
+  // Levels stop before either side would be smaller than this, which is smaller than any
+  // detector window.
+  static final int MIN_LEVEL_SIZE = 16;
+
+  private static final int MAX_LEVELS = 8;
+
+  // Frames that need turning upright are turned in square tiles this size.
+  private static final int ROTATION_TILE = 64;
+
+  private LuminanceFrame mFrame;
+  private int mLevelCount;
+  private final int[] mWidths = new int[MAX_LEVELS];
+  private final int[] mHeights = new int[MAX_LEVELS];
+
+  // Each level's images, and whether they've been built for the current frame
+  private final byte[][] mPixels = new byte[MAX_LEVELS][];
+  private final int[][] mIntegrals = new int[MAX_LEVELS][];
+  private final long[][] mSquaredIntegrals = new long[MAX_LEVELS][];
+  private final boolean[] mHasPixels = new boolean[MAX_LEVELS];
+  private final boolean[] mHasIntegrals = new boolean[MAX_LEVELS];
+
+  // Scratch space for the frame as it's stored, when it isn't upright
+  private byte[] mSource = new byte[0];
+
+  // Statistics
+  private long mPixelBuildCount;
+  private long mIntegralBuildCount;
+
+  /**
+   * Forgets the last frame's images, for a new frame.  Nothing is built until it's asked for.
+   */
+  void reset(LuminanceFrame frame) {
+    mFrame = frame;
+    int width = frame.getUprightWidth();
+    int height = frame.getUprightHeight();
+    if ((mLevelCount == 0) || (width != mWidths[0]) || (height != mHeights[0])) {
+      resize(width, height);
+    }
+    for (int level = 0; level < mLevelCount; level++) {
+      mHasPixels[level] = false;
+      mHasIntegrals[level] = false;
+    }
+  }
+
+  private void resize(int width, int height) {
+    mLevelCount = 0;
+    while ((mLevelCount < MAX_LEVELS) &&
+           (((width >= MIN_LEVEL_SIZE) && (height >= MIN_LEVEL_SIZE)) || (mLevelCount == 0))) {
+      mWidths[mLevelCount] = width;
+      mHeights[mLevelCount] = height;
+      mPixels[mLevelCount] = null;
+      mIntegrals[mLevelCount] = null;
+      mSquaredIntegrals[mLevelCount] = null;
+      mLevelCount++;
+      width /= 2;
+      height /= 2;
+    }
+    for (int level = mLevelCount; level < MAX_LEVELS; level++) {
+      mPixels[level] = null;
+      mIntegrals[level] = null;
+      mSquaredIntegrals[level] = null;
+    }
+  }
+
+  int getLevelCount() {
+    return mLevelCount;
+  }
+
+  int getWidth(int level) {
+    return mWidths[level];
+  }
+
+  int getHeight(int level) {
+    return mHeights[level];
+  }
+
+  /**
+   * Returns a level's pixels, row by row, {@link #getWidth(int)} to a row.
+   */
+  byte[] getPixels(int level) {
+    if (!mHasPixels[level]) {
+      if (mPixels[level] == null) {
+        mPixels[level] = new byte[mWidths[level] * mHeights[level]];
+      }
+      if (level == 0) {
+        buildUpright(mPixels[0]);
+      } else {
+        downsample(getPixels(level - 1), mWidths[level - 1], mPixels[level], mWidths[level],
+                   mHeights[level]);
+      }
+      mHasPixels[level] = true;
+      mPixelBuildCount++;
+    }
+    return mPixels[level];
+  }
+
+  /**
+   * Returns a level's integral image: for each point, the sum of the pixels above and to the
+   * left of it.  There is one more point than pixels each way, the first row and column being
+   * zeros, so the image is {@code getWidth(level) + 1} to a row.
+   */
+  int[] getIntegral(int level) {
+    buildIntegrals(level);
+    return mIntegrals[level];
+  }
+
+  /**
+   * Returns a level's integral image of squared pixels, laid out like {@link #getIntegral(int)}.
+   */
+  long[] getSquaredIntegral(int level) {
+    buildIntegrals(level);
+    return mSquaredIntegrals[level];
+  }
+
+  long getPixelBuildCount() {
+    return mPixelBuildCount;
+  }
+
+  long getIntegralBuildCount() {
+    return mIntegralBuildCount;
+  }
+
+  // Copy the frame's luminance upright: in one go if it already is, and otherwise a tile at a
+  // time, so that the source rows being read from and the upright rows being written to stay in
+  // the cache together.
+  private void buildUpright(byte[] upright) {
+    LuminanceFrame frame = mFrame;
+    int pixelCount = frame.getWidth() * frame.getHeight();
+    if (frame.getRotation() == LuminanceFrame.ROTATION_0) {
+      copyLuminance(frame.getLuminance(), upright, pixelCount);
+      return;
+    }
+
+    if (mSource.length < pixelCount) {
+      mSource = new byte[pixelCount];
+    }
+    copyLuminance(frame.getLuminance(), mSource, pixelCount);
+    byte[] source = mSource;
+    int origin = frame.getUprightOrigin();
+    int stepX = frame.getUprightStepX();
+    int stepY = frame.getUprightStepY();
+    int width = mWidths[0];
+    int height = mHeights[0];
+    for (int tileTop = 0; tileTop < height; tileTop += ROTATION_TILE) {
+      int tileBottom = Math.min(tileTop + ROTATION_TILE, height);
+      for (int tileLeft = 0; tileLeft < width; tileLeft += ROTATION_TILE) {
+        int tileRight = Math.min(tileLeft + ROTATION_TILE, width);
+        for (int y = tileTop; y < tileBottom; y++) {
+          int index = origin + (y * stepY) + (tileLeft * stepX);
+          int row = y * width;
+          for (int x = tileLeft; x < tileRight; x++, index += stepX) {
+            upright[row + x] = source[index];
+          }
+        }
+      }
+    }
+  }
+
+  // Copy the luminance from the buffer's position, straight from its array if it has one.
+  private static void copyLuminance(ByteBuffer luminance, byte[] target, int length) {
+    if (luminance.hasArray()) {
+      System.arraycopy(luminance.array(), luminance.arrayOffset() + luminance.position(),
+                       target, 0, length);
+    } else {
+      luminance.duplicate().get(target, 0, length);
+    }
+  }
+
+  // Halve a level both ways, each pixel the rounded mean of the four it covers.  An odd last
+  // row or column is dropped.
+  private static void downsample(byte[] source, int sourceWidth, byte[] target, int width,
+                                 int height) {
+    for (int y = 0; y < height; y++) {
+      int top = 2 * y * sourceWidth;
+      int bottom = top + sourceWidth;
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        int left = 2 * x;
+        int sum = (source[top + left] & 0xff) + (source[top + left + 1] & 0xff) +
+          (source[bottom + left] & 0xff) + (source[bottom + left + 1] & 0xff);
+        target[row + x] = (byte) ((sum + 2) >> 2);
+      }
+    }
+  }
+
+  private void buildIntegrals(int level) {
+    if (mHasIntegrals[level]) {
+      return;
+    }
+    byte[] pixels = getPixels(level);
+    int width = mWidths[level];
+    int height = mHeights[level];
+    int stride = width + 1;
+    if (mIntegrals[level] == null) {
+      // The first row and column stay zero.
+      mIntegrals[level] = new int[stride * (height + 1)];
+      mSquaredIntegrals[level] = new long[stride * (height + 1)];
+    }
+    int[] integral = mIntegrals[level];
+    long[] squaredIntegral = mSquaredIntegrals[level];
+    for (int y = 0; y < height; y++) {
+      int rowSum = 0;
+      long rowSquaredSum = 0;
+      int row = y * width;
+      int above = (y * stride) + 1;
+      int here = above + stride;
+      for (int x = 0; x < width; x++) {
+        int value = pixels[row + x] & 0xff;
+        rowSum += value;
+        rowSquaredSum += value * value;
+        integral[here + x] = integral[above + x] + rowSum;
+        squaredIntegral[here + x] = squaredIntegral[above + x] + rowSquaredSum;
+      }
+    }
+    mHasIntegrals[level] = true;
+    mIntegralBuildCount++;
+  }
+
+  /**
+   * Lets go of every image, until the next frame.
+   */
+  void release() {
+    mFrame = null;
+    mLevelCount = 0;
+    for (int level = 0; level < MAX_LEVELS; level++) {
+      mPixels[level] = null;
+      mIntegrals[level] = null;
+      mSquaredIntegrals[level] = null;
+    }
+    mSource = new byte[0];
+  }
+
+}
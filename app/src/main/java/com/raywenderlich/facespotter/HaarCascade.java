@@ -0,0 +1,348 @@
+package com.raywenderlich.facespotter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A Viola-Jones cascade of Haar-like features, which decides whether a window of an image looks
+ * like a face.<p>
+ *
+ * The cascade is a series of stages, and a window has to pass every one to be accepted.  Each
+ * stage adds up the votes of its weak classifiers and passes the window if they reach the stage's
+ * threshold.  A weak classifier compares one feature of the window against its threshold and
+ * votes one way or the other.  A feature is a weighted sum of the mean luminance of up to three
+ * rectangles of the window, divided by the window's standard deviation, so that it doesn't
+ * depend on the lighting.  Rectangles are given in the cascade's window size, and scaled with
+ * the window.  Early stages are cheap and reject most windows, so only face-like windows cost
+ * much.<p>
+ *
+ * Cascades are read from a line-based text format:
+ * <pre>
+ * window &lt;width&gt; &lt;height&gt;
+ * stage &lt;threshold&gt;
+ * weak &lt;threshold&gt; &lt;below&gt; &lt;above&gt;
+ *      [&lt;x&gt; &lt;y&gt; &lt;width&gt; &lt;height&gt; &lt;weight&gt;]...
+ * </pre>
+ * with each {@code weak} classifier on one line.  A weak classifier belongs to the
+ * {@code stage} before it, votes {@code below} if its feature is below its threshold and
+ * {@code above} otherwise, and has one to three rectangles.
+ * Blank lines and lines starting with {@code #} are ignored.<p>
+ *
+ * {@link #getDefault()} is a small hand-built cascade of the classic first features (the eyes
+ * are darker than the cheeks and forehead, the bridge of the nose is lighter than the eyes, the
+ * mouth is darker than the skin above it).  It was never trained, and has only been tried on
+ * drawn faces, so it's for tests, benchmarks and engines the user asks for, not for finding
+ * faces the app relies on; a trained cascade in the same format is needed for that.
+ */
+final class HaarCascade {
+
+  static final int MAX_RECTS_PER_FEATURE = 3;
+
+  // In a 24x24 window framing a face from forehead to chin.
+  private static final String DEFAULT_CASCADE =
+    "window 24 24\n" +
+    "# The eyes are darker than the cheeks, and the nose bridge is lighter than the eyes.\n" +
+    "stage 1.5\n" +
+    "weak 0.4 -1 1  3 12 18 4 1  3 7 18 4 -1\n" +
+    "weak 0.4 -1 1  10 7 4 4 1  4 7 5 4 -0.5  15 7 5 4 -0.5\n" +
+    "# The forehead is lighter than the eyes, and the mouth is darker than the skin above it.\n" +
+    "stage 1.5\n" +
+    "weak 0.3 -1 1  4 2 16 4 1  3 7 18 4 -1\n" +
+    "weak 0.2 -1 1  7 13 10 3 1  7 17 10 3 -1\n" +
+    "# Each eye on its own is darker than the cheek below it.\n" +
+    "stage 1.5\n" +
+    "weak 0.3 -1 1  4 12 6 4 1  4 7 6 4 -1\n" +
+    "weak 0.3 -1 1  14 12 6 4 1  14 7 6 4 -1\n" +
+    "# Each eye on its own is darker than the bridge of the nose and the forehead above it.\n" +
+    "stage 3.5\n" +
+    "weak 0.4 -1 1  10 7 4 4 1  4 7 5 4 -1\n" +
+    "weak 0.4 -1 1  10 7 4 4 1  15 7 5 4 -1\n" +
+    "weak 0.3 -1 1  4 2 6 4 1  4 7 6 4 -1\n" +
+    "weak 0.3 -1 1  14 2 6 4 1  14 7 6 4 -1\n" +
+    "# The chin is lighter than the mouth.\n" +
+    "stage 0.5\n" +
+    "weak 0.2 -1 1  7 21 10 2 1  7 17 10 3 -1\n";
+
+  private static HaarCascade sDefault;
+
+  private final int mWindowWidth;
+  private final int mWindowHeight;
+
+  // Stages: their thresholds and the range of weak classifiers in each
+  private final float[] mStageThresholds;
+  private final int[] mStageEnds;
+
+  // Weak classifiers: thresholds, votes, and the range of rectangles in each feature
+  private final float[] mThresholds;
+  private final float[] mBelowVotes;
+  private final float[] mAboveVotes;
+  private final int[] mFeatureEnds;
+
+  // Rectangles, as x, y, width, height in the window, and weights
+  private final int[] mRects;
+  private final float[] mWeights;
+
+  private HaarCascade(int windowWidth, int windowHeight, float[] stageThresholds,
+                      int[] stageEnds, float[] thresholds, float[] belowVotes,
+                      float[] aboveVotes, int[] featureEnds, int[] rects, float[] weights) {
+    mWindowWidth = windowWidth;
+    mWindowHeight = windowHeight;
+    mStageThresholds = stageThresholds;
+    mStageEnds = stageEnds;
+    mThresholds = thresholds;
+    mBelowVotes = belowVotes;
+    mAboveVotes = aboveVotes;
+    mFeatureEnds = featureEnds;
+    mRects = rects;
+    mWeights = weights;
+  }
+
+  /**
+   * Returns the built-in cascade.
+   */
+  static synchronized HaarCascade getDefault() {
+    if (sDefault == null) {
+      try {
+        sDefault = read(new StringReader(DEFAULT_CASCADE));
+      } catch (IOException e) {
+        throw new IllegalStateException("Bad built-in cascade", e);
+      }
+    }
+    return sDefault;
+  }
+
+  /**
+   * Reads a cascade in the text format described above.
+   *
+   * @throws IOException if the cascade can't be read or isn't well formed
+   */
+  static HaarCascade read(Reader reader) throws IOException {
+    BufferedReader lines = new BufferedReader(reader);
+    int windowWidth = 0;
+    int windowHeight = 0;
+    List<Float> stageThresholds = new ArrayList<>();
+    List<Integer> stageEnds = new ArrayList<>();
+    List<float[]> classifiers = new ArrayList<>();
+    List<float[]> rects = new ArrayList<>();
+
+    int lineNumber = 0;
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      try {
+        if (fields[0].equals("window") && (fields.length == 3)) {
+          windowWidth = Integer.parseInt(fields[1]);
+          windowHeight = Integer.parseInt(fields[2]);
+        } else if (fields[0].equals("stage") && (fields.length == 2)) {
+          stageThresholds.add(Float.parseFloat(fields[1]));
+          stageEnds.add(classifiers.size());
+        } else if (fields[0].equals("weak") && !stageEnds.isEmpty()) {
+          int rectCount = (fields.length - 4) / 5;
+          if ((rectCount < 1) || (rectCount > MAX_RECTS_PER_FEATURE) ||
+              (fields.length != 4 + (rectCount * 5))) {
+            throw new IOException("Bad weak classifier on line " + lineNumber);
+          }
+          classifiers.add(new float[]{Float.parseFloat(fields[1]), Float.parseFloat(fields[2]),
+                                      Float.parseFloat(fields[3]), rects.size() + rectCount});
+          for (int i = 0; i < rectCount; i++) {
+            int field = 4 + (i * 5);
+            rects.add(new float[]{Integer.parseInt(fields[field]),
+                                  Integer.parseInt(fields[field + 1]),
+                                  Integer.parseInt(fields[field + 2]),
+                                  Integer.parseInt(fields[field + 3]),
+                                  Float.parseFloat(fields[field + 4])});
+          }
+          stageEnds.set(stageEnds.size() - 1, classifiers.size());
+        } else {
+          throw new IOException("Unexpected line " + lineNumber + ": " + line);
+        }
+      } catch (NumberFormatException e) {
+        throw new IOException("Bad number on line " + lineNumber + ": " + line);
+      }
+    }
+
+    if ((windowWidth <= 0) || (windowHeight <= 0) || stageThresholds.isEmpty()) {
+      throw new IOException("Cascade has no window size or no stages");
+    }
+    for (float[] rect : rects) {
+      if ((rect[0] < 0) || (rect[1] < 0) || (rect[2] <= 0) || (rect[3] <= 0) ||
+          (rect[0] + rect[2] > windowWidth) || (rect[1] + rect[3] > windowHeight)) {
+        throw new IOException("Rectangle outside of the window");
+      }
+    }
+
+    int stageCount = stageThresholds.size();
+    float[] stageThresholdArray = new float[stageCount];
+    int[] stageEndArray = new int[stageCount];
+    for (int i = 0; i < stageCount; i++) {
+      stageThresholdArray[i] = stageThresholds.get(i);
+      stageEndArray[i] = stageEnds.get(i);
+    }
+    int classifierCount = classifiers.size();
+    float[] thresholds = new float[classifierCount];
+    float[] belowVotes = new float[classifierCount];
+    float[] aboveVotes = new float[classifierCount];
+    int[] featureEnds = new int[classifierCount];
+    for (int i = 0; i < classifierCount; i++) {
+      float[] classifier = classifiers.get(i);
+      thresholds[i] = classifier[0];
+      belowVotes[i] = classifier[1];
+      aboveVotes[i] = classifier[2];
+      featureEnds[i] = (int) classifier[3];
+    }
+    int[] rectArray = new int[rects.size() * 4];
+    float[] weights = new float[rects.size()];
+    for (int i = 0; i < weights.length; i++) {
+      float[] rect = rects.get(i);
+      for (int j = 0; j < 4; j++) {
+        rectArray[(i * 4) + j] = (int) rect[j];
+      }
+      weights[i] = rect[4];
+    }
+    return new HaarCascade(windowWidth, windowHeight, stageThresholdArray, stageEndArray,
+                           thresholds, belowVotes, aboveVotes, featureEnds, rectArray, weights);
+  }
+
+  int getWindowWidth() {
+    return mWindowWidth;
+  }
+
+  int getWindowHeight() {
+    return mWindowHeight;
+  }
+
+  int getStageCount() {
+    return mStageThresholds.length;
+  }
+
+  /**
+   * The cascade scaled to one window size, over integral images of one width, with every
+   * rectangle's corners worked out as offsets from the window's top left corner so that
+   * evaluating a window is only lookups and arithmetic.
+   */
+  final class Scaled {
+
+    private final int mScaledWidth;
+    private final int mScaledHeight;
+    private final int mStride;
+    private final int mWindowCorner;
+    private final float mInverseWindowArea;
+
+    // For each rectangle: the offsets of its four corners, and its weight over its area
+    private final int[] mCorners;
+    private final float[] mScaledWeights;
+
+    private Scaled(float scale, int stride) {
+      mScaledWidth = Math.round(mWindowWidth * scale);
+      mScaledHeight = Math.round(mWindowHeight * scale);
+      mStride = stride;
+      mWindowCorner = (mScaledHeight * stride) + mScaledWidth;
+      mInverseWindowArea = 1f / (mScaledWidth * mScaledHeight);
+
+      int rectCount = mWeights.length;
+      mCorners = new int[rectCount * 4];
+      mScaledWeights = new float[rectCount];
+      for (int i = 0; i < rectCount; i++) {
+        int left = Math.round(mRects[i * 4] * scale);
+        int top = Math.round(mRects[(i * 4) + 1] * scale);
+        int right = Math.max(left + 1, Math.round((mRects[i * 4] + mRects[(i * 4) + 2]) * scale));
+        int bottom =
+          Math.max(top + 1, Math.round((mRects[(i * 4) + 1] + mRects[(i * 4) + 3]) * scale));
+        right = Math.min(right, mScaledWidth);
+        bottom = Math.min(bottom, mScaledHeight);
+        mCorners[i * 4] = (top * stride) + left;
+        mCorners[(i * 4) + 1] = (top * stride) + right;
+        mCorners[(i * 4) + 2] = (bottom * stride) + left;
+        mCorners[(i * 4) + 3] = (bottom * stride) + right;
+        mScaledWeights[i] = mWeights[i] / ((right - left) * (bottom - top));
+      }
+    }
+
+    int getWindowWidth() {
+      return mScaledWidth;
+    }
+
+    int getWindowHeight() {
+      return mScaledHeight;
+    }
+
+    int getStride() {
+      return mStride;
+    }
+
+    /**
+     * Runs the cascade on one window.
+     *
+     * @param integral        the image's integral image, {@code stride} values a row, with a
+     *                        leading row and column of zeros
+     * @param squaredIntegral the same for the squares of the luminance
+     * @param origin          the index in the integral images of the window's top left corner
+     * @param minStdDev       windows flatter than this (in luminance levels) are rejected
+     * @return the number of stages passed; the window is accepted if that's all of them
+     */
+    int evaluate(int[] integral, long[] squaredIntegral, int origin, float minStdDev) {
+      int corner = origin + mWindowCorner;
+      int topRight = origin + mScaledWidth;
+      int bottomLeft = corner - mScaledWidth;
+      float sum = integral[corner] - integral[topRight] - integral[bottomLeft] + integral[origin];
+      float squaredSum = squaredIntegral[corner] - squaredIntegral[topRight] -
+        squaredIntegral[bottomLeft] + squaredIntegral[origin];
+      float mean = sum * mInverseWindowArea;
+      float variance = (squaredSum * mInverseWindowArea) - (mean * mean);
+      if (variance < minStdDev * minStdDev) {
+        return 0;
+      }
+      float inverseStdDev = 1f / (float) Math.sqrt(variance);
+
+      int classifier = 0;
+      int rect = 0;
+      int stageCount = mStageThresholds.length;
+      for (int stage = 0; stage < stageCount; stage++) {
+        float votes = 0;
+        for (int stageEnd = mStageEnds[stage]; classifier < stageEnd; classifier++) {
+          float feature = 0;
+          for (int featureEnd = mFeatureEnds[classifier]; rect < featureEnd; rect++) {
+            int corners = rect * 4;
+            int rectSum = integral[origin + mCorners[corners + 3]] -
+              integral[origin + mCorners[corners + 1]] -
+              integral[origin + mCorners[corners + 2]] +
+              integral[origin + mCorners[corners]];
+            feature += rectSum * mScaledWeights[rect];
+          }
+          votes += (feature * inverseStdDev < mThresholds[classifier])
+            ? mBelowVotes[classifier]
+            : mAboveVotes[classifier];
+        }
+        if (votes < mStageThresholds[stage]) {
+          return stage;
+        }
+      }
+      return stageCount;
+    }
+  }
+
+  /**
+   * Returns the cascade scaled up by the given factor, for integral images with the given
+   * number of values a row.
+   */
+  Scaled scale(float scale, int stride) {
+    return new Scaled(scale, stride);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "HaarCascade(%dx%d, %d stages, %d weak classifiers)",
+                         mWindowWidth, mWindowHeight, mStageThresholds.length,
+                         mThresholds.length);
+  }
+
+}
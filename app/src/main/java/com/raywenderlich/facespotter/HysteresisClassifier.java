@@ -0,0 +1,101 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Turns a noisy stream of probabilities for a facial state (an eye being open, a smile) into a
+ * steady yes or no.<p>
+ *
+ * The probabilities are smoothed with an exponential moving average, and the state only changes
+ * when the average crosses one of two thresholds: it turns on above the higher one and off below
+ * the lower one.  In between, it stays as it was, so a probability hovering around a single
+ * threshold doesn't make the state flicker from frame to frame.<p>
+ *
+ * The classifier also says when it's uncertain, i.e. when the average is in or near the band
+ * between the thresholds, or nothing has been measured yet.  Only then is it worth asking the
+ * detector for a fresh probability; see {@link ClassificationSchedule}.
+ */
+class HysteresisClassifier {
+
+  private static final String TAG = "HysteresisClassifier";
+
+  // How far outside the band between the thresholds the average still counts as uncertain
+  private static final float UNCERTAIN_MARGIN = 0.1f;
+
+  private final float mOnThreshold;
+  private final float mOffThreshold;
+  private final float mSmoothing;
+  private final boolean mInitialState;
+
+  private boolean mHasAverage;
+  private float mAverage;
+  private boolean mState;
+
+  /**
+   * @param onThreshold the average probability above which the state turns on
+   * @param offThreshold the average probability below which the state turns off
+   * @param smoothing the weight given to each new probability in the average, from 0 to 1
+   * @param initialState the state before anything has been measured
+   */
+  HysteresisClassifier(float onThreshold, float offThreshold, float smoothing,
+                       boolean initialState) {
+    mOnThreshold = onThreshold;
+    mOffThreshold = offThreshold;
+    mSmoothing = smoothing;
+    mInitialState = initialState;
+    mState = initialState;
+  }
+
+  /**
+   * Forgets everything measured, going back to the initial state.
+   */
+  void reset() {
+    mHasAverage = false;
+    mAverage = 0;
+    mState = mInitialState;
+  }
+
+  /**
+   * Adds a new probability, and returns the resulting state.
+   *
+   * @param probability from 0 to 1, or a negative value (such as
+   *                    {@code Face.UNCOMPUTED_PROBABILITY}) if it wasn't measured this time, which
+   *                    leaves the state as it was
+   */
+  boolean update(float probability) {
+    if (probability < 0) {
+      return mState;
+    }
+
+    if (mHasAverage) {
+      mAverage += mSmoothing * (probability - mAverage);
+    } else {
+      mAverage = probability;
+      mHasAverage = true;
+    }
+
+    if (mAverage > mOnThreshold) {
+      mState = true;
+    } else if (mAverage < mOffThreshold) {
+      mState = false;
+    }
+    return mState;
+  }
+
+  boolean getState() {
+    return mState;
+  }
+
+  float getAverage() {
+    return mAverage;
+  }
+
+  /**
+   * Returns true if the state could easily change with the next few probabilities, or nothing
+   * has been measured yet.
+   */
+  boolean isUncertain() {
+    return !mHasAverage ||
+      ((mAverage > mOffThreshold - UNCERTAIN_MARGIN) &&
+       (mAverage < mOnThreshold + UNCERTAIN_MARGIN));
+  }
+
+}
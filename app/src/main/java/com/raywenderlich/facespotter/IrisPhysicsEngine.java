@@ -0,0 +1,474 @@
+package com.raywenderlich.facespotter;
+
+import android.os.SystemClock;
+
+/**
+ * Simulates the physics of motion for every iris in the scene, each moving within its own googly
+ * eye.  An iris moves independently of the motion of the face/eye, according to the following
+ * forces:<p>
+ *
+ * <ol>
+ * <li>Gravity - downward acceleration.</li>
+ *
+ * <li>Friction - deceleration; opposing motion</li>
+ *
+ * <li>Bounce - acceleration in the opposite direction of motion when the iris hits the side of the
+ * eye (e.g., due to a jerking motion which suddenly moves the face in frame).  Note that this is
+ * the only way to get the iris to move horizontally, since gravity only accelerates downward.</li>
+ * </ol>
+ *
+ * The simulation is configured to run at a universal real time rate, regardless of the performance
+ * of the device in which it is run and how frequently updates are received.  It advances in fixed
+ * steps of simulated time: each frame, the time since the last frame is added to an accumulator,
+ * and as many whole steps are taken as it holds.  The irises are drawn part of the way between
+ * their last two simulated positions, according to how much time is left over.  This keeps the
+ * simulation deterministic for a given sequence of clock readings, and keeps a stalled frame from
+ * turning into one huge step that would send an iris through the side of its eye.  After a long
+ * stall, the simulation gives up on catching up rather than taking more than a few steps per
+ * frame.<p>
+ *
+ * All of the eyes' state is kept in parallel primitive arrays, indexed by an eye slot handed out
+ * by {@link #allocate()}.  Each frame, the drawing thread submits every visible eye's position and
+ * size with {@link #setEye(int, float, float, float, float)}, then advances all of them in a single
+ * allocation-free loop with {@link #step()}, and reads back the iris positions.  Stepping,
+ * submitting and reading must all happen on the drawing thread; only allocating and releasing
+ * slots may happen elsewhere.
+ */
+class IrisPhysicsEngine {
+
+  private static final String TAG = "IrisPhysicsEngine";
+
+  // The friction and gravity values below are set relative to a specific time period.  This
+  // allows the simulation to run at the same rate, regardless of whether it is running on a slow
+  // or fast device or if there are temporary performance variations on the device.
+  private static final long TIME_PERIOD_MS = 1000;
+
+  private static final float FRICTION = 2.2f;
+  private static final float GRAVITY = 40.0f;
+
+  private static final float BOUNCE_MULTIPLIER = 20.0f;
+
+  // Allow slightly non-zero values to be considered to be zero, to converge to zero more quickly.
+  private static final float ZERO_TOLERANCE = 0.001f;
+
+  // The simulation advances in steps of this much simulated time.
+  static final long FIXED_STEP_MS = 10;
+  private static final float FIXED_STEP_RATE = (float) FIXED_STEP_MS / TIME_PERIOD_MS;
+
+  // The most steps taken in one frame.  Time beyond this is dropped, so that a stalled frame
+  // costs no more to simulate than a slow one.
+  static final int MAX_STEPS_PER_FRAME = 5;
+
+  /**
+   * A source of time for the simulation, in milliseconds.
+   */
+  interface Clock {
+    long nowMs();
+  }
+
+  /**
+   * Time since boot, which keeps counting while the device sleeps.
+   */
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nowMs() {
+      return SystemClock.elapsedRealtime();
+    }
+  };
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private int mCapacity;
+  private boolean[] mAllocated;
+
+  // Set when an eye's position has been submitted since the last step
+  private boolean[] mSubmitted;
+
+  // Set once an eye's iris has a position of its own
+  private boolean[] mHasIris;
+
+
+  private float[] mEyeX;
+  private float[] mEyeY;
+  private float[] mEyeRadius;
+
+  private float[] mIrisX;
+  private float[] mIrisY;
+  private float[] mIrisRadius;
+
+  // Velocity is independent of the final rendering coordinate system, so that we don't have to
+  // change it as the eye gets bigger or smaller by forward and backward motion.  This will be
+  // scaled up proportional to the eye size when updating position.
+  private float[] mVx;
+  private float[] mVy;
+
+  // Keep track of bounces that immediately occur consecutively, since this means that the
+  // iris is bouncing too fast.  When this happens, we dampen the velocity to avoid infinite
+  // bounces.
+  private int[] mConsecutiveBounces;
+
+  // The iris's offset from its eye before and after the latest step, which drawing interpolates
+  // between.  Offsets are used rather than positions so that the iris stays with its eye when the
+  // face moves but no step is due.
+  private float[] mPreviousOffsetX;
+  private float[] mPreviousOffsetY;
+  private float[] mOffsetX;
+  private float[] mOffsetY;
+
+  // Where the irises are drawn this frame.
+  private float[] mRenderX;
+  private float[] mRenderY;
+
+  private final Clock mClock;
+
+  // Simulated time not yet stepped through, and the clock reading it was last brought up to date
+  // at.  There's no reading until the first step.
+  private long mAccumulatedMs;
+  private long mLastStepTimeMs;
+  private boolean mHasStepped;
+
+  // The highest allocated slot, plus one, so that stepping doesn't scan unused capacity.
+  private int mSlotLimit;
+
+  // The frame most recently stepped by stepFrame()
+  private long mLastSteppedFrame = -1;
+
+  IrisPhysicsEngine() {
+    this(SYSTEM_CLOCK);
+  }
+
+  IrisPhysicsEngine(Clock clock) {
+    mClock = clock;
+    resize(INITIAL_CAPACITY);
+  }
+
+  //==============================================================================================
+  // Slots
+  //==============================================================================================
+
+  /**
+   * Reserves a slot for a new eye, with its iris at rest.
+   */
+  synchronized int allocate() {
+    int eye = 0;
+    while ((eye < mCapacity) && mAllocated[eye]) {
+      eye++;
+    }
+    if (eye == mCapacity) {
+      resize(mCapacity * 2);
+    }
+
+    mAllocated[eye] = true;
+    mSlotLimit = Math.max(mSlotLimit, eye + 1);
+    reset(eye);
+    return eye;
+  }
+
+  /**
+   * Returns an eye's slot, so that it can be handed out again.
+   */
+  synchronized void release(int eye) {
+    mAllocated[eye] = false;
+    mSubmitted[eye] = false;
+    while ((mSlotLimit > 0) && !mAllocated[mSlotLimit - 1]) {
+      mSlotLimit--;
+    }
+  }
+
+  /**
+   * Puts an eye's iris back at rest, as if the simulation were just starting.
+   */
+  synchronized void reset(int eye) {
+    mSubmitted[eye] = false;
+    mHasIris[eye] = false;
+    mVx[eye] = 0.0f;
+    mVy[eye] = 0.0f;
+    mConsecutiveBounces[eye] = 0;
+  }
+
+  private void resize(int capacity) {
+    mAllocated = copyOf(mAllocated, capacity);
+    mSubmitted = copyOf(mSubmitted, capacity);
+    mHasIris = copyOf(mHasIris, capacity);
+    mEyeX = copyOf(mEyeX, capacity);
+    mEyeY = copyOf(mEyeY, capacity);
+    mEyeRadius = copyOf(mEyeRadius, capacity);
+    mIrisX = copyOf(mIrisX, capacity);
+    mIrisY = copyOf(mIrisY, capacity);
+    mIrisRadius = copyOf(mIrisRadius, capacity);
+    mVx = copyOf(mVx, capacity);
+    mVy = copyOf(mVy, capacity);
+    mConsecutiveBounces = copyOf(mConsecutiveBounces, capacity);
+    mPreviousOffsetX = copyOf(mPreviousOffsetX, capacity);
+    mPreviousOffsetY = copyOf(mPreviousOffsetY, capacity);
+    mOffsetX = copyOf(mOffsetX, capacity);
+    mOffsetY = copyOf(mOffsetY, capacity);
+    mRenderX = copyOf(mRenderX, capacity);
+    mRenderY = copyOf(mRenderY, capacity);
+    mCapacity = capacity;
+  }
+
+  //==============================================================================================
+  // Simulation
+  //==============================================================================================
+
+  /**
+   * Submits an eye's position and size for the next step.  Correct the current eye position and
+   * size based on recent motion of the face within the frame.  The current iris position is
+   * kept, if there is one.
+   */
+  void setEye(int eye, float eyeX, float eyeY, float eyeRadius, float irisRadius) {
+    mEyeX[eye] = eyeX;
+    mEyeY[eye] = eyeY;
+    mEyeRadius[eye] = eyeRadius;
+    if (!mHasIris[eye]) {
+      mIrisX[eye] = eyeX;
+      mIrisY[eye] = eyeY;
+      mPreviousOffsetX[eye] = 0.0f;
+      mPreviousOffsetY[eye] = 0.0f;
+      mOffsetX[eye] = 0.0f;
+      mOffsetY[eye] = 0.0f;
+      mHasIris[eye] = true;
+    }
+    mIrisRadius[eye] = irisRadius;
+    mSubmitted[eye] = true;
+  }
+
+  /**
+   * Returns where the iris should be drawn this frame, between its last two simulated positions.
+   */
+  float getIrisX(int eye) {
+    return mRenderX[eye];
+  }
+
+  float getIrisY(int eye) {
+    return mRenderY[eye];
+  }
+
+  /**
+   * Returns where the simulation last put the iris.
+   */
+  float getSimulatedIrisX(int eye) {
+    return mIrisX[eye];
+  }
+
+  float getSimulatedIrisY(int eye) {
+    return mIrisY[eye];
+  }
+
+  /**
+   * Steps the simulation once per frame: the first call for a given frame number steps every
+   * submitted eye, and later calls for the same frame do nothing.  This lets each graphic ask for
+   * the step it needs without the eyes being stepped more than once per frame.
+   */
+  synchronized void stepFrame(long frameNumber) {
+    if (frameNumber != mLastSteppedFrame) {
+      mLastSteppedFrame = frameNumber;
+      step();
+    }
+  }
+
+  /**
+   * Brings the simulation up to the current time, generating the next positions of every
+   * submitted iris based on simulated velocity, eye boundaries, gravity, friction, and bounce
+   * momentum.  Eyes that weren't submitted since the last step are left as they are, and don't
+   * catch up on the time they missed.
+   */
+  synchronized void step() {
+    // Keep track of time, so that we can consistently update the simulation proportionally to
+    // how much time has elapsed.  This makes the animation rate device-independent.
+    long nowMs = mClock.nowMs();
+    if (mHasStepped) {
+      mAccumulatedMs += Math.max(0, nowMs - mLastStepTimeMs);
+    }
+    mLastStepTimeMs = nowMs;
+    mHasStepped = true;
+
+    int steps = (int) Math.min(MAX_STEPS_PER_FRAME, mAccumulatedMs / FIXED_STEP_MS);
+    mAccumulatedMs = Math.min(mAccumulatedMs - (steps * FIXED_STEP_MS), FIXED_STEP_MS - 1);
+    float alpha = (float) mAccumulatedMs / FIXED_STEP_MS;
+
+    for (int eye = 0; eye < mSlotLimit; eye++) {
+      if (!mAllocated[eye] || !mSubmitted[eye]) {
+        continue;
+      }
+      mSubmitted[eye] = false;
+
+      for (int i = 0; i < steps; i++) {
+        mPreviousOffsetX[eye] = mOffsetX[eye];
+        mPreviousOffsetY[eye] = mOffsetY[eye];
+        stepEye(eye, FIXED_STEP_RATE);
+        mOffsetX[eye] = mIrisX[eye] - mEyeX[eye];
+        mOffsetY[eye] = mIrisY[eye] - mEyeY[eye];
+      }
+
+      float previousX = mPreviousOffsetX[eye];
+      float previousY = mPreviousOffsetY[eye];
+      mRenderX[eye] = mEyeX[eye] + previousX + ((mOffsetX[eye] - previousX) * alpha);
+      mRenderY[eye] = mEyeY[eye] + previousY + ((mOffsetY[eye] - previousY) * alpha);
+    }
+  }
+
+  private void stepEye(int eye, float simulationRate) {
+    float eyeX = mEyeX[eye];
+    float eyeY = mEyeY[eye];
+    float irisRadius = mIrisRadius[eye];
+    float maxDistance = mEyeRadius[eye] - irisRadius;
+    float vx = mVx[eye];
+    float vy = mVy[eye];
+    float irisX = mIrisX[eye];
+    float irisY = mIrisY[eye];
+
+    if (!isStopped(eyeY, maxDistance, irisY, vx, vy)) {
+      // Only apply gravity when the iris is not stopped at the bottom of the eye.
+      vy += GRAVITY * simulationRate;
+    }
+
+    // Apply friction in the opposite direction of motion, so that the iris slows in the absence
+    // of other head motion.
+    vx = applyFriction(vx, simulationRate);
+    vy = applyFriction(vy, simulationRate);
+
+    // Update the iris position based on velocity.  Since velocity is size-independent, scale by
+    // the iris radius to get the change in position.
+    irisX = irisX + (vx * irisRadius * simulationRate);
+    irisY = irisY + (vy * irisRadius * simulationRate);
+
+    // Correct the position and velocity of the iris if it has gone out of bounds, guaranteeing
+    // that the resulting position is valid within the eye.  Being out of bounds could have been
+    // due to a sudden movement of the head and/or camera, or the result of just bouncing/rolling
+    // around.  In addition, modify the velocity to cause a bounce in the opposite direction.
+    float irisOffsetX = irisX - eyeX;
+    float irisOffsetY = irisY - eyeY;
+
+    // The squares are formed in double precision, exactly as squaring with Math.pow would, but
+    // without the cost of the call.
+    float distance = (float) Math.sqrt(((double) irisOffsetX * irisOffsetX) +
+                                       ((double) irisOffsetY * irisOffsetY));
+    if (distance <= maxDistance) {
+      // The iris is in bounds, so no correction is necessary.
+      mConsecutiveBounces[eye] = 0;
+    } else {
+      // Accumulate a consecutive bounce count, in order to dampen the momentum of a quickly
+      // moving iris.  Two or more bounces in a row indicates that the iris is moving so fast that
+      // it doesn't even travel inside the eye.  We progressively slow the velocity using this
+      // count until this is no longer the case.
+      int consecutiveBounces = ++mConsecutiveBounces[eye];
+
+      // Move the iris back to where it would have been when it would have contacted the side of
+      // the eye.
+      float ratio = maxDistance / distance;
+      float x = eyeX + (ratio * irisOffsetX);
+      float y = eyeY + (ratio * irisOffsetY);
+
+      // Update the velocity direction and magnitude to cause a bounce.
+      float dx = x - irisX;
+      vx = applyBounce(vx, dx, irisRadius, simulationRate) / consecutiveBounces;
+
+      float dy = y - irisY;
+      vy = applyBounce(vy, dy, irisRadius, simulationRate) / consecutiveBounces;
+
+      irisX = x;
+      irisY = y;
+    }
+
+    mVx[eye] = vx;
+    mVy[eye] = vy;
+    mIrisX[eye] = irisX;
+    mIrisY[eye] = irisY;
+  }
+
+  /**
+   * Friction slows velocity in the opposite direction of motion, until zero velocity is reached.
+   */
+  private static float applyFriction(float velocity, float simulationRate) {
+    if (isZero(velocity)) {
+      velocity = 0.0f;
+    } else if (velocity > 0) {
+      velocity = Math.max(0.0f, velocity - (FRICTION * simulationRate));
+    } else {
+      velocity = Math.min(0.0f, velocity + (FRICTION * simulationRate));
+    }
+    return velocity;
+  }
+
+  /**
+   * Update velocity in response to bouncing off the sides of the eye (i.e., when iris hits the
+   * bottom or the eye moves quickly).  This is the only way to gain horizontal velocity, since
+   * there is no other horizontal force.
+   */
+  private static float applyBounce(float velocity, float distOutOfBounds, float irisRadius,
+                                   float simulationRate) {
+    if (isZero(distOutOfBounds)) {
+      // No bounce needed, since we are still in bounds along this dimension.
+      return velocity;
+    }
+
+    // Reverse velocity to create a bounce in the opposite direction.
+    velocity *= -1;
+
+    // If distOutOfBounds was large, this indicates that the iris was whacked against the side
+    // of the eye quickly.  Add an additional velocity factor to account for the force gained by
+    // this quick movement, based upon how much it was out of bounds.
+    float bounce = BOUNCE_MULTIPLIER * Math.abs(distOutOfBounds / irisRadius);
+    if (velocity > 0) {
+      velocity += bounce * simulationRate;
+    } else {
+      velocity -= bounce * simulationRate;
+    }
+
+    return velocity;
+  }
+
+  /**
+   * The iris is stopped if it is at the bottom of the eye and its velocity is zero.
+   */
+  private static boolean isStopped(float eyeY, float maxDistance, float irisY, float vx, float vy) {
+    if (eyeY >= irisY) {
+      return false;
+    }
+
+    float irisOffsetY = irisY - eyeY;
+    if (irisOffsetY < maxDistance) {
+      return false;
+    }
+
+    return (isZero(vx) && isZero(vy));
+  }
+
+  /**
+   * Allow for a small tolerance in floating point values in considering whether a value is zero.
+   */
+  private static boolean isZero(float num) {
+    return ((num < ZERO_TOLERANCE) && (num > -1 * ZERO_TOLERANCE));
+  }
+
+  //==============================================================================================
+  // Array helpers
+  //==============================================================================================
+
+  private static boolean[] copyOf(boolean[] array, int length) {
+    boolean[] copy = new boolean[length];
+    if (array != null) {
+      System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    }
+    return copy;
+  }
+
+  private static int[] copyOf(int[] array, int length) {
+    int[] copy = new int[length];
+    if (array != null) {
+      System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    }
+    return copy;
+  }
+
+  private static float[] copyOf(float[] array, int length) {
+    float[] copy = new float[length];
+    if (array != null) {
+      System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    }
+    return copy;
+  }
+
+}
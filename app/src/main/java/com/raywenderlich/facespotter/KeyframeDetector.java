@@ -0,0 +1,217 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps a face detector so that it only runs on some frames, predicting the faces on the rest.<p>
+ *
+ * Full detection, with landmarks and classification, is the most expensive thing the app does.
+ * This detector runs it only on keyframes, chosen by a {@link KeyframeScheduler}.  On the frames
+ * in between, it reports every face seen in the last keyframe, under the same id, moved along by
+ * its {@link FaceMotionModel}: the bounding box follows its recent velocity, and the landmarks
+ * keep their places within it.  Predicted faces have uncomputed eye and smile probabilities, so
+ * that trackers keep their last classification rather than counting the same one again.
+ * Trackers and the overlay are still updated on every camera frame, while the detector runs a
+ * fraction as often.<p>
+ *
+ * Set the processor on this detector, not on the wrapped one.
+ */
+class KeyframeDetector extends Detector<Face> {
+
+  private static final String TAG = "KeyframeDetector";
+
+  /**
+   * What's known about a face from the last keyframe it was detected in.
+   */
+  private static class TrackedFace {
+    final FaceMotionModel mMotion = new FaceMotionModel();
+    float mEulerY;
+    float mEulerZ;
+    boolean mIsInKeyframe;
+  }
+
+  private final Detector<Face> mDelegate;
+  private final KeyframeScheduler mScheduler;
+
+  // Faces from the last keyframe, by id, and spares kept from faces that have gone
+  private final SparseArray<TrackedFace> mFaces = new SparseArray<>();
+  private final ArrayList<TrackedFace> mSpareFaces = new ArrayList<>();
+
+  private final float[] mLandmarkCoordinates = new float[2];
+  private long mLastFrameTimeMs = -1;
+  private boolean mWasKeyframe;
+
+  // Statistics
+  private long mFrameCount;
+  private long mKeyframeCount;
+
+  KeyframeDetector(Detector<Face> delegate, KeyframeScheduler scheduler) {
+    mDelegate = delegate;
+    mScheduler = scheduler;
+  }
+
+  @Override
+  public SparseArray<Face> detect(Frame frame) {
+    Frame.Metadata metadata = frame.getMetadata();
+    long timeMs = metadata.getTimestampMillis();
+    long frameIntervalMs = (mLastFrameTimeMs < 0) ? 0 : Math.max(0, timeMs - mLastFrameTimeMs);
+    mLastFrameTimeMs = timeMs;
+    mFrameCount++;
+
+    // Faces that will have moved far by the next keyframe need detecting sooner.
+    long keyframeIntervalMs = frameIntervalMs * mScheduler.getInterval();
+    float fastestMotion = 0;
+    for (int i = 0, count = mFaces.size(); i < count; i++) {
+      fastestMotion = Math.max(fastestMotion,
+                               mFaces.valueAt(i).mMotion.getRelativeMotion(keyframeIntervalMs));
+    }
+
+    mScheduler.sampleFrame(frame.getGrayscaleImageData(),
+                           metadata.getWidth(), metadata.getHeight());
+    mWasKeyframe = mScheduler.isKeyframe(fastestMotion);
+    if (mWasKeyframe) {
+      mKeyframeCount++;
+      SparseArray<Face> faces = mDelegate.detect(frame);
+      onKeyframe(timeMs, faces);
+      return faces;
+    }
+    return predictFaces(timeMs);
+  }
+
+  private void onKeyframe(long timeMs, SparseArray<Face> faces) {
+    for (int i = 0, count = mFaces.size(); i < count; i++) {
+      mFaces.valueAt(i).mIsInKeyframe = false;
+    }
+
+    for (int i = 0, count = faces.size(); i < count; i++) {
+      int id = faces.keyAt(i);
+      Face face = faces.valueAt(i);
+      TrackedFace tracked = mFaces.get(id);
+      if (tracked == null) {
+        tracked = obtainTrackedFace();
+        mFaces.put(id, tracked);
+      }
+
+      PointF position = face.getPosition();
+      FaceMotionModel motion = tracked.mMotion;
+      motion.onKeyframe(timeMs, position.x, position.y, face.getWidth(), face.getHeight());
+      List<Landmark> landmarks = face.getLandmarks();
+      for (int j = 0, landmarkCount = landmarks.size(); j < landmarkCount; j++) {
+        Landmark landmark = landmarks.get(j);
+        PointF landmarkPosition = landmark.getPosition();
+        motion.rememberLandmark(landmark.getType(), landmarkPosition.x, landmarkPosition.y);
+      }
+      tracked.mEulerY = face.getEulerY();
+      tracked.mEulerZ = face.getEulerZ();
+      tracked.mIsInKeyframe = true;
+    }
+
+    // Faces the detector no longer sees are gone, as far as prediction is concerned.
+    for (int i = mFaces.size() - 1; i >= 0; i--) {
+      TrackedFace tracked = mFaces.valueAt(i);
+      if (!tracked.mIsInKeyframe) {
+        mFaces.removeAt(i);
+        mSpareFaces.add(tracked);
+      }
+    }
+  }
+
+  private SparseArray<Face> predictFaces(long timeMs) {
+    int count = mFaces.size();
+    SparseArray<Face> faces = new SparseArray<>(count);
+    for (int i = 0; i < count; i++) {
+      TrackedFace tracked = mFaces.valueAt(i);
+      FaceMotionModel motion = tracked.mMotion;
+      motion.predict(timeMs);
+
+      int landmarkCount = 0;
+      for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+        if (motion.predictLandmark(type, mLandmarkCoordinates, 0)) {
+          landmarkCount++;
+        }
+      }
+      Landmark[] landmarks = new Landmark[landmarkCount];
+      for (int type = 0, index = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+        if (motion.predictLandmark(type, mLandmarkCoordinates, 0)) {
+          landmarks[index++] = new Landmark(
+            new PointF(mLandmarkCoordinates[0], mLandmarkCoordinates[1]), type);
+        }
+      }
+
+      int id = mFaces.keyAt(i);
+      faces.append(id, new Face(id,
+                                new PointF(motion.getPredictedX(), motion.getPredictedY()),
+                                motion.getPredictedWidth(), motion.getPredictedHeight(),
+                                tracked.mEulerY, tracked.mEulerZ, landmarks,
+                                Face.UNCOMPUTED_PROBABILITY,
+                                Face.UNCOMPUTED_PROBABILITY,
+                                Face.UNCOMPUTED_PROBABILITY));
+    }
+    return faces;
+  }
+
+  private TrackedFace obtainTrackedFace() {
+    int spares = mSpareFaces.size();
+    if (spares == 0) {
+      return new TrackedFace();
+    }
+    TrackedFace tracked = mSpareFaces.remove(spares - 1);
+    tracked.mMotion.reset();
+    return tracked;
+  }
+
+  /**
+   * Forgets the faces from the last keyframe, so that the next frame is a keyframe.  Call this
+   * between camera sources, while no frame is being detected: the faces seen by one camera
+   * can't be predicted into another's frames.
+   */
+  void reset() {
+    for (int i = 0, count = mFaces.size(); i < count; i++) {
+      mSpareFaces.add(mFaces.valueAt(i));
+    }
+    mFaces.clear();
+    mScheduler.reset();
+    mLastFrameTimeMs = -1;
+  }
+
+  /**
+   * Returns whether the wrapped detector ran on the last frame, rather than its faces being
+   * predicted.  Only valid on the detector thread.
+   */
+  boolean wasKeyframe() {
+    return mWasKeyframe;
+  }
+
+  /**
+   * Returns the fraction of frames the wrapped detector has actually been run on.
+   */
+  float getKeyframeRatio() {
+    return (mFrameCount == 0) ? 0 : (float) mKeyframeCount / mFrameCount;
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mDelegate.isOperational();
+  }
+
+  @Override
+  public boolean setFocus(int id) {
+    return mDelegate.setFocus(id);
+  }
+
+  @Override
+  public void release() {
+    mDelegate.release();
+    super.release();
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.raywenderlich.facespotter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides which camera frames are worth running the face detector on.<p>
+ *
+ * Detection runs on every Nth frame (a keyframe), with faces predicted in between.  A keyframe
+ * comes early when prediction is likely to go wrong:<p>
+ *
+ * <ul>
+ * <li>a tracked face is moving quickly, so that its path is hard to extrapolate, or</li>
+ *
+ * <li>the picture has changed a lot since the last keyframe, e.g. because the camera moved or
+ * someone walked into the frame.</li>
+ * </ul>
+ *
+ * Changes in the picture are measured on a coarse grid of luminance samples, which is cheap
+ * enough to take from every frame.  Nothing is allocated after construction.
+ */
+class KeyframeScheduler {
+
+  private static final String TAG = "KeyframeScheduler";
+
+  // The grid of luminance samples compared between frames
+  static final int SAMPLE_COLUMNS = 32;
+  static final int SAMPLE_ROWS = 24;
+  static final int SAMPLE_COUNT = SAMPLE_COLUMNS * SAMPLE_ROWS;
+
+  private final int mInterval;
+  private final float mMaxFaceMotion;
+  private final float mMaxSceneChange;
+
+  private final byte[] mKeyframeSamples = new byte[SAMPLE_COUNT];
+  private final byte[] mFrameSamples = new byte[SAMPLE_COUNT];
+  private boolean mHasKeyframeSamples;
+  private int mFramesSinceKeyframe;
+
+  /**
+   * @param interval detect on at least every this many frames
+   * @param maxFaceMotion detect early if a face is expected to move more than this fraction of
+   *                      its width before the next keyframe
+   * @param maxSceneChange detect early if the picture's mean luminance difference from the last
+   *                       keyframe, from 0 to 1, is more than this
+   */
+  KeyframeScheduler(int interval, float maxFaceMotion, float maxSceneChange) {
+    mInterval = Math.max(1, interval);
+    mMaxFaceMotion = maxFaceMotion;
+    mMaxSceneChange = maxSceneChange;
+  }
+
+  int getInterval() {
+    return mInterval;
+  }
+
+  /**
+   * Starts over, so that the next frame is a keyframe.
+   */
+  void reset() {
+    mHasKeyframeSamples = false;
+    mFramesSinceKeyframe = 0;
+  }
+
+  /**
+   * Samples the luminance of a new frame, for comparison against the last keyframe.
+   *
+   * @param luminance the frame's luminance plane, one byte per pixel, row by row (e.g., the Y
+   *                  plane at the start of an NV21 image)
+   */
+  void sampleFrame(ByteBuffer luminance, int width, int height) {
+    sample(luminance, width, height, mFrameSamples);
+  }
+
+  /**
+   * Decides whether the frame last passed to {@link #sampleFrame} should be a keyframe.
+   *
+   * @param fastestFaceMotion the largest of the tracked faces' expected motion before the next
+   *                          keyframe, as a fraction of the face's width
+   */
+  boolean isKeyframe(float fastestFaceMotion) {
+    boolean isKeyframe = !mHasKeyframeSamples ||
+      (++mFramesSinceKeyframe >= mInterval) ||
+      (fastestFaceMotion > mMaxFaceMotion) ||
+      (sceneChange(mKeyframeSamples, mFrameSamples) > mMaxSceneChange);
+
+    if (isKeyframe) {
+      System.arraycopy(mFrameSamples, 0, mKeyframeSamples, 0, SAMPLE_COUNT);
+      mHasKeyframeSamples = true;
+      mFramesSinceKeyframe = 0;
+    }
+    return isKeyframe;
+  }
+
+  /**
+   * Samples a luminance plane on a {@link #SAMPLE_COLUMNS} by {@link #SAMPLE_ROWS} grid.
+   */
+  static void sample(ByteBuffer luminance, int width, int height, byte[] out) {
+    int limit = luminance.limit();
+    for (int row = 0; row < SAMPLE_ROWS; row++) {
+      int y = ((2 * row + 1) * height) / (2 * SAMPLE_ROWS);
+      for (int column = 0; column < SAMPLE_COLUMNS; column++) {
+        int x = ((2 * column + 1) * width) / (2 * SAMPLE_COLUMNS);
+        int index = (y * width) + x;
+        out[(row * SAMPLE_COLUMNS) + column] = (index < limit) ? luminance.get(index) : 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the mean absolute difference between two sets of luminance samples, from 0 (the
+   * same) to 1 (black to white everywhere).
+   */
+  static float sceneChange(byte[] a, byte[] b) {
+    long total = 0;
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      total += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+    }
+    return (float) total / (SAMPLE_COUNT * 255);
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * Remembers where each facial landmark was last seen, expressed as a proportion of the face's
+ * bounding box, so that a landmark which momentarily goes undetected can be approximated from
+ * the face's current position and size.<p>
+ *
+ * Landmark types in the Mobile Vision API are small, consecutive integers (from
+ * {@code Landmark.BOTTOM_MOUTH} = 0 to {@code Landmark.RIGHT_MOUTH} = 11), so the proportions are
+ * kept in a flat float array indexed by type rather than in a map.  Nothing is allocated after
+ * construction, which keeps the per-frame tracking path free of garbage.
+ */
+class LandmarkMemory {
+
+  private static final String TAG = "LandmarkMemory";
+
+  static final int LANDMARK_TYPE_COUNT = FaceData.LANDMARK_TYPE_COUNT;
+
+  // x and y proportions for each landmark type, interleaved: [x0, y0, x1, y1, ...]
+  private final float[] mProportions = new float[LANDMARK_TYPE_COUNT * 2];
+  private final boolean[] mKnown = new boolean[LANDMARK_TYPE_COUNT];
+
+  /**
+   * Records the position of a detected landmark relative to the face that contains it.
+   */
+  void remember(int landmarkType, float x, float y,
+                float faceX, float faceY, float faceWidth, float faceHeight) {
+    if (!isTracked(landmarkType) || faceWidth == 0 || faceHeight == 0) {
+      return;
+    }
+
+    int index = landmarkType * 2;
+    mProportions[index] = (x - faceX) / faceWidth;
+    mProportions[index + 1] = (y - faceY) / faceHeight;
+    mKnown[landmarkType] = true;
+  }
+
+  /**
+   * Writes the approximate position of a landmark, given the face's current position and size,
+   * into {@code out[offset]} (x) and {@code out[offset + 1]} (y).
+   *
+   * @return false if the landmark has never been seen, in which case {@code out} is untouched
+   */
+  boolean approximate(int landmarkType,
+                      float faceX, float faceY, float faceWidth, float faceHeight,
+                      float[] out, int offset) {
+    if (!isKnown(landmarkType)) {
+      return false;
+    }
+
+    int index = landmarkType * 2;
+    out[offset] = faceX + (mProportions[index] * faceWidth);
+    out[offset + 1] = faceY + (mProportions[index + 1] * faceHeight);
+    return true;
+  }
+
+  boolean isKnown(int landmarkType) {
+    return isTracked(landmarkType) && mKnown[landmarkType];
+  }
+
+  /**
+   * Forgets every remembered landmark.
+   */
+  void clear() {
+    for (int i = 0; i < LANDMARK_TYPE_COUNT; i++) {
+      mKnown[i] = false;
+    }
+  }
+
+  private static boolean isTracked(int landmarkType) {
+    return (landmarkType >= 0) && (landmarkType < LANDMARK_TYPE_COUNT);
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.raywenderlich.facespotter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in microseconds, with buckets laid out the way HDR
+ * histograms lay them out.<p>
+ *
+ * Latencies below {@code 2 * SUB_BUCKET_COUNT} microseconds are counted exactly.  Above that,
+ * each power of two is split into {@code SUB_BUCKET_COUNT} equal buckets, so that any recorded
+ * value is known to within about 3% however large it is, from a microsecond up to over an hour,
+ * in a fixed, small array of counts.  Recording is a handful of shifts and an atomic increment,
+ * so any number of threads can record at once without locking or allocating.<p>
+ *
+ * Percentiles are read from whatever has been recorded so far, while recording goes on, so they
+ * may be off by the few values recorded during the read.
+ */
+class LatencyHistogram {
+
+  private static final String TAG = "LatencyHistogram";
+
+  private static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  // Values below this are counted in buckets one microsecond wide.
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+  private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+
+  // Values from 2^MAX_EXPONENT microseconds (over an hour) up all go in the last bucket.
+  private static final int MAX_EXPONENT = 32;
+  static final long MAX_TRACKABLE_US = (1L << MAX_EXPONENT) - 1;
+  private static final int BUCKET_COUNT =
+    LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong mTotalCount = new AtomicLong();
+  private final AtomicLong mMaxUs = new AtomicLong();
+
+  /**
+   * Counts one latency.  Negative latencies count as zero.
+   */
+  void record(long latencyUs) {
+    long value = Math.max(0, Math.min(latencyUs, MAX_TRACKABLE_US));
+    mCounts.incrementAndGet(bucketOf(value));
+    mTotalCount.incrementAndGet();
+
+    long maxUs = mMaxUs.get();
+    while ((value > maxUs) && !mMaxUs.compareAndSet(maxUs, value)) {
+      maxUs = mMaxUs.get();
+    }
+  }
+
+  static int bucketOf(long valueUs) {
+    if (valueUs < LINEAR_LIMIT) {
+      return (int) valueUs;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(valueUs);
+    int subBucket = (int) (valueUs >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+    return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * Returns the largest value that goes in the given bucket.
+   */
+  static long highestValueIn(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int exponent = LINEAR_BITS + (bucket - LINEAR_LIMIT) / SUB_BUCKET_COUNT;
+    long subBucket = SUB_BUCKET_COUNT + (bucket - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  long getCount() {
+    return mTotalCount.get();
+  }
+
+  long getMaxUs() {
+    return mMaxUs.get();
+  }
+
+  /**
+   * Returns the latency that the given percentage of recorded latencies are at or below, to
+   * within the width of its bucket (rounded up, and never above the largest value recorded),
+   * or 0 if nothing has been recorded.
+   */
+  long getPercentileUs(double percentile) {
+    long totalCount = mTotalCount.get();
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(totalCount * Math.min(100, Math.max(0, percentile)) / 100);
+    rank = Math.max(1, rank);
+
+    long count = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      count += mCounts.get(bucket);
+      if (count >= rank) {
+        return Math.min(highestValueIn(bucket), mMaxUs.get());
+      }
+    }
+    return mMaxUs.get();
+  }
+
+  /**
+   * Forgets everything recorded.  Values recorded during the reset may or may not be kept.
+   */
+  void reset() {
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      mCounts.set(bucket, 0);
+    }
+    mTotalCount.set(0);
+    mMaxUs.set(0);
+  }
+
+}
@@ -0,0 +1,167 @@
+package com.raywenderlich.facespotter;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures where the time goes between the camera capturing a frame and the faces in it being
+ * drawn.<p>
+ *
+ * Each stage that a frame's faces pass through stamps them with the frame's capture timestamp,
+ * and the time since capture goes into that stage's {@link LatencyHistogram}:
+ * <ol>
+ * <li>{@link #DETECTED}: the detector has finished with the frame (once per frame),</li>
+ * <li>{@link #TRACKED}: a tracker has worked out a face's data (once per face),</li>
+ * <li>{@link #PUBLISHED}: the face's graphic has published that data for drawing,</li>
+ * <li>{@link #DRAWN}: the overlay has drawn the face from that data for the first time.</li>
+ * </ol>
+ *
+ * Frame timestamps count from when the camera source started, in milliseconds, on a clock that
+ * isn't exposed.  They're lined up with {@link System#nanoTime()} by taking the smallest gap seen
+ * between a frame's timestamp and the detector starting on it as the camera source's start
+ * time, so latencies are measured from capture to within the quickest hand-off from the camera
+ * to the detector.  The estimate must be reset whenever the camera source starts.<p>
+ *
+ * The monitor starts disabled, and while disabled, every stamp is a single volatile read.
+ */
+class LatencyMonitor {
+
+  private static final String TAG = "LatencyMonitor";
+
+  // Stages
+  static final int DETECTED = 0;
+  static final int TRACKED = 1;
+  static final int PUBLISHED = 2;
+  static final int DRAWN = 3;
+  static final int STAGE_COUNT = 4;
+
+  private static final String[] STAGE_NAMES = {"detected", "tracked", "published", "drawn"};
+  private static final String SUMMARY_FORMAT =
+    "%-9s n=%-7d p50=%6.1f p99=%6.1f p999=%6.1f max=%6.1f ms";
+
+  /**
+   * A source of time, in nanoseconds.
+   */
+  interface Clock {
+    long nowNs();
+  }
+
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nowNs() {
+      return System.nanoTime();
+    }
+  };
+
+  private static final long NO_START = Long.MAX_VALUE;
+
+  private static final LatencyMonitor sInstance = new LatencyMonitor(SYSTEM_CLOCK);
+
+  private final Clock mClock;
+  private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_COUNT];
+  private volatile boolean mIsEnabled;
+
+  // When the camera source started, on the monitor's clock, as estimated so far
+  private final AtomicLong mSourceStartNs = new AtomicLong(NO_START);
+
+  /**
+   * Returns the monitor shared by every stage of the app.
+   */
+  static LatencyMonitor getInstance() {
+    return sInstance;
+  }
+
+  LatencyMonitor(Clock clock) {
+    mClock = clock;
+    for (int i = 0; i < STAGE_COUNT; i++) {
+      mHistograms[i] = new LatencyHistogram();
+    }
+  }
+
+  boolean isEnabled() {
+    return mIsEnabled;
+  }
+
+  void setEnabled(boolean isEnabled) {
+    mIsEnabled = isEnabled;
+  }
+
+  /**
+   * Forgets when the camera source started, for when it starts again and its frame timestamps
+   * start counting from zero.
+   */
+  void resetClock() {
+    mSourceStartNs.set(NO_START);
+  }
+
+  /**
+   * Notes that the detector is starting on a frame, to line frame timestamps up with the
+   * monitor's clock.
+   *
+   * @param captureMs the frame's timestamp
+   */
+  void onFrameStarted(long captureMs) {
+    if (!mIsEnabled) {
+      return;
+    }
+    long startNs = mClock.nowNs() - captureMs * 1000000;
+    long estimateNs = mSourceStartNs.get();
+    while ((startNs < estimateNs) && !mSourceStartNs.compareAndSet(estimateNs, startNs)) {
+      estimateNs = mSourceStartNs.get();
+    }
+  }
+
+  /**
+   * Records that a frame, or a face in it, has been through a stage.
+   *
+   * @param captureMs the frame's timestamp
+   */
+  void stamp(int stage, long captureMs) {
+    if (!mIsEnabled) {
+      return;
+    }
+    long startNs = mSourceStartNs.get();
+    if (startNs == NO_START) {
+      return;
+    }
+    long latencyNs = mClock.nowNs() - (startNs + captureMs * 1000000);
+    mHistograms[stage].record(latencyNs / 1000);
+  }
+
+  LatencyHistogram getHistogram(int stage) {
+    return mHistograms[stage];
+  }
+
+  void reset() {
+    for (LatencyHistogram histogram : mHistograms) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Returns a line per stage, giving its count and the 50th, 99th and 99.9th percentile and
+   * largest latencies since capture, in milliseconds.
+   */
+  String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    for (int stage = 0; stage < STAGE_COUNT; stage++) {
+      LatencyHistogram histogram = mHistograms[stage];
+      if (stage > 0) {
+        summary.append('\n');
+      }
+      summary.append(String.format(Locale.US, SUMMARY_FORMAT,
+                                   STAGE_NAMES[stage], histogram.getCount(),
+                                   histogram.getPercentileUs(50) / 1000f,
+                                   histogram.getPercentileUs(99) / 1000f,
+                                   histogram.getPercentileUs(99.9) / 1000f,
+                                   histogram.getMaxUs() / 1000f));
+    }
+    return summary.toString();
+  }
+
+  @Override
+  public String toString() {
+    return getSummary();
+  }
+
+}
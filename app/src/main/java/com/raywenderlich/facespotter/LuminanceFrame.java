@@ -0,0 +1,152 @@
+package com.raywenderlich.facespotter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame as a {@link FaceDetectionEngine} sees it: the luminance plane, one byte per
+ * pixel, row by row, with how the frame is rotated and when it was captured.<p>
+ *
+ * The luminance is the start of the buffer, from its position, so an NV21 image can be passed as
+ * it comes from the camera; {@link #isNv21()} says whether the chroma follows it.  Frames are
+ * reused from one camera frame to the next, so engines mustn't hold on to them.<p>
+ *
+ * Images worked out from the frame (upright, downscaled, integral) are built on demand by its
+ * {@link #getImages() image cache}, once for everything that looks at the frame.
+ */
+final class LuminanceFrame {
+
+  // Rotations, in quarter turns clockwise, as in the Mobile Vision Frame
+  static final int ROTATION_0 = 0;
+  static final int ROTATION_90 = 1;
+  static final int ROTATION_180 = 2;
+  static final int ROTATION_270 = 3;
+
+  private ByteBuffer mLuminance;
+  private int mWidth;
+  private int mHeight;
+  private int mRotation;
+  private int mId;
+  private long mTimestampMs;
+  private boolean mIsNv21;
+  private final FrameImageCache mImages = new FrameImageCache();
+
+  /**
+   * Sets the frame's image and metadata.
+   *
+   * @param width    the width of the image as captured, before rotation
+   * @param rotation how far the image needs turning clockwise to be upright, in quarter turns
+   * @param isNv21   true if the luminance is followed by the rest of an NV21 image
+   */
+  void set(ByteBuffer luminance, int width, int height, int rotation, int id, long timestampMs,
+           boolean isNv21) {
+    if (luminance.remaining() < width * height) {
+      throw new IllegalArgumentException("Luminance buffer too small for " + width + "x" + height);
+    }
+    mLuminance = luminance;
+    mWidth = width;
+    mHeight = height;
+    mRotation = rotation & 3;
+    mId = id;
+    mTimestampMs = timestampMs;
+    mIsNv21 = isNv21;
+    mImages.reset(this);
+  }
+
+  ByteBuffer getLuminance() {
+    return mLuminance;
+  }
+
+  int getWidth() {
+    return mWidth;
+  }
+
+  int getHeight() {
+    return mHeight;
+  }
+
+  int getRotation() {
+    return mRotation;
+  }
+
+  /**
+   * Returns the width of the frame once it's upright, which faces' coordinates are relative to.
+   */
+  int getUprightWidth() {
+    return ((mRotation & 1) == 0) ? mWidth : mHeight;
+  }
+
+  int getUprightHeight() {
+    return ((mRotation & 1) == 0) ? mHeight : mWidth;
+  }
+
+  /**
+   * Returns the index in the luminance, from the buffer's position, of the upright frame's top
+   * left pixel.  With {@link #getUprightStepX()} and {@link #getUprightStepY()}, the pixel at
+   * (x, y) in the upright frame is at {@code origin + (x * stepX) + (y * stepY)}.
+   */
+  int getUprightOrigin() {
+    switch (mRotation) {
+      case ROTATION_90:
+        return (mHeight - 1) * mWidth;
+      case ROTATION_180:
+        return (mWidth * mHeight) - 1;
+      case ROTATION_270:
+        return mWidth - 1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Returns how far the index into the luminance moves for a step right in the upright frame.
+   */
+  int getUprightStepX() {
+    switch (mRotation) {
+      case ROTATION_90:
+        return -mWidth;
+      case ROTATION_180:
+        return -1;
+      case ROTATION_270:
+        return mWidth;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Returns how far the index into the luminance moves for a step down in the upright frame.
+   */
+  int getUprightStepY() {
+    switch (mRotation) {
+      case ROTATION_90:
+        return 1;
+      case ROTATION_180:
+        return -mWidth;
+      case ROTATION_270:
+        return -1;
+      default:
+        return mWidth;
+    }
+  }
+
+  int getId() {
+    return mId;
+  }
+
+  long getTimestampMs() {
+    return mTimestampMs;
+  }
+
+  boolean isNv21() {
+    return mIsNv21;
+  }
+
+  /**
+   * Returns the images built from this frame so far, which are forgotten when the frame is set
+   * to the next one.
+   */
+  FrameImageCache getImages() {
+    return mImages;
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.ImageFormat;
+import android.graphics.PointF;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The Play Services face detector as a {@link FaceDetectionEngine}, so that it can be compared
+ * with other engines on the same frames.<p>
+ *
+ * The app's own camera pipeline gives the Play Services detector frames directly; this engine is
+ * for running it on {@link LuminanceFrame}s.  Mobile Vision takes NV21 images, so frames that
+ * are luminance only are copied into an NV21 buffer with neutral chroma, which is kept from frame
+ * to frame.
+ */
+final class MobileVisionEngine implements FaceDetectionEngine {
+
+  private final Detector<Face> mDetector;
+  private ByteBuffer mNv21;
+
+  MobileVisionEngine(Detector<Face> detector) {
+    mDetector = detector;
+  }
+
+  @Override
+  public String getName() {
+    return "mobile-vision";
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mDetector.isOperational();
+  }
+
+  @Override
+  public void detect(LuminanceFrame frame, DetectedFaces faces) {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    ByteBuffer image = frame.isNv21() ? frame.getLuminance() : toNv21(frame);
+    Frame mobileVisionFrame = new Frame.Builder()
+      .setImageData(image, width, height, ImageFormat.NV21)
+      .setId(frame.getId())
+      .setTimestampMillis(frame.getTimestampMs())
+      .setRotation(frame.getRotation())
+      .build();
+
+    faces.clear();
+    SparseArray<Face> detected = mDetector.detect(mobileVisionFrame);
+    for (int i = 0, count = detected.size(); i < count; i++) {
+      Face face = detected.valueAt(i);
+      PointF position = face.getPosition();
+      int index = faces.add(detected.keyAt(i), position.x, position.y,
+                            face.getWidth(), face.getHeight());
+      faces.setEulerAngles(index, face.getEulerY(), face.getEulerZ());
+      faces.setProbabilities(index, face.getIsLeftEyeOpenProbability(),
+                             face.getIsRightEyeOpenProbability(),
+                             face.getIsSmilingProbability());
+      List<Landmark> landmarks = face.getLandmarks();
+      for (int j = 0, landmarkCount = landmarks.size(); j < landmarkCount; j++) {
+        Landmark landmark = landmarks.get(j);
+        PointF landmarkPosition = landmark.getPosition();
+        faces.setLandmark(index, landmark.getType(), landmarkPosition.x, landmarkPosition.y);
+      }
+    }
+  }
+
+  // Copy the frame's luminance into the NV21 buffer, whose chroma is already neutral.
+  private ByteBuffer toNv21(LuminanceFrame frame) {
+    int pixelCount = frame.getWidth() * frame.getHeight();
+    int size = pixelCount * 3 / 2;
+    if ((mNv21 == null) || (mNv21.capacity() != size)) {
+      mNv21 = ByteBuffer.allocateDirect(size);
+      for (int i = pixelCount; i < size; i++) {
+        mNv21.put(i, (byte) 128);
+      }
+    }
+    ByteBuffer luminance = frame.getLuminance().duplicate();
+    luminance.limit(luminance.position() + pixelCount);
+    mNv21.clear();
+    mNv21.put(luminance);
+    mNv21.clear();
+    return mNv21;
+  }
+
+  @Override
+  public void release() {
+    mDetector.release();
+    mNv21 = null;
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * A bounded pool of reusable objects.<p>
+ *
+ * {@link #acquire()} hands out an idle object if there is one, and only creates a new one when the
+ * pool is empty.  {@link #release(Object)} resets an object and keeps it for reuse, unless the pool
+ * is already holding as many idle objects as it's allowed to, in which case the object is left for
+ * the garbage collector.  The pool counts how often acquisitions were served from it, so that its
+ * capacity can be tuned to how quickly objects come and go.
+ */
+abstract class ObjectPool<T> {
+
+  private static final String TAG = "ObjectPool";
+
+  private final Object[] mIdle;
+  private int mIdleCount;
+
+  // Statistics, guarded by the pool itself
+  private long mAcquiredCount;
+  private long mReusedCount;
+  private long mDiscardedCount;
+
+  /**
+   * @param capacity the most idle objects the pool will hold on to
+   */
+  ObjectPool(int capacity) {
+    mIdle = new Object[capacity];
+  }
+
+  /**
+   * Creates a new object, when the pool has no idle ones to hand out.
+   */
+  protected abstract T create();
+
+  /**
+   * Resets an object that is being returned to the pool, so that it's ready to be handed out
+   * again.  Called by {@link #release(Object)}, on the releasing thread.
+   */
+  protected abstract void reset(T item);
+
+  /**
+   * Lets go of an object that was released while the pool was full, e.g. to free resources it
+   * holds outside of the heap.  Called by {@link #release(Object)}, on the releasing thread.
+   */
+  protected void discard(T item) {
+  }
+
+  /**
+   * Returns an idle object from the pool, or a new one if the pool is empty.
+   */
+  T acquire() {
+    synchronized (this) {
+      mAcquiredCount++;
+      if (mIdleCount > 0) {
+        mReusedCount++;
+        mIdleCount--;
+        @SuppressWarnings("unchecked")
+        T item = (T) mIdle[mIdleCount];
+        mIdle[mIdleCount] = null;
+        return item;
+      }
+    }
+    return create();
+  }
+
+  /**
+   * Resets an object and returns it to the pool.  The caller must not use it afterwards.
+   */
+  void release(T item) {
+    reset(item);
+    synchronized (this) {
+      if (mIdleCount < mIdle.length) {
+        mIdle[mIdleCount++] = item;
+        return;
+      }
+      mDiscardedCount++;
+    }
+    discard(item);
+  }
+
+  /**
+   * Drops all of the idle objects.
+   */
+  synchronized void clear() {
+    for (int i = 0; i < mIdleCount; i++) {
+      mIdle[i] = null;
+    }
+    mIdleCount = 0;
+  }
+
+  synchronized int getIdleCount() {
+    return mIdleCount;
+  }
+
+  synchronized long getAcquiredCount() {
+    return mAcquiredCount;
+  }
+
+  synchronized long getReusedCount() {
+    return mReusedCount;
+  }
+
+  synchronized long getDiscardedCount() {
+    return mDiscardedCount;
+  }
+
+  /**
+   * Returns the fraction of acquisitions that were served by reusing an idle object.
+   */
+  synchronized float getHitRate() {
+    return (mAcquiredCount == 0) ? 0 : (float) mReusedCount / mAcquiredCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "acquired=" + mAcquiredCount +
+      " reused=" + mReusedCount +
+      " discarded=" + mDiscardedCount +
+      " idle=" + mIdleCount +
+      " hitRate=" + getHitRate();
+  }
+
+}
@@ -0,0 +1,133 @@
+package com.raywenderlich.facespotter;
+
+/**
+ * A set of One Euro filters, one per channel, for smoothing noisy positions over time.<p>
+ *
+ * A One Euro filter is a low-pass filter whose cutoff frequency rises with speed: when a value is
+ * holding still, it's smoothed heavily, which removes jitter; when it's moving quickly, it's
+ * smoothed lightly, which keeps lag down.  Each channel also keeps a smoothed estimate of its rate
+ * of change, which is used both to pick the cutoff and to predict where the value is heading.<p>
+ *
+ * See Casiez, Roussel and Vogel, "1 Euro Filter: A Simple Speed-based Low-pass Filter for Noisy
+ * Input in Interactive Systems", CHI 2012.  Unlike the paper, the rate of change is taken between
+ * successive measurements rather than from the last filtered value, which would overstate it by
+ * however far the filter lags; that keeps predictions from overshooting.<p>
+ *
+ * The state of every channel is kept in primitive arrays, so nothing is allocated after
+ * construction.
+ */
+class OneEuroFilterBank {
+
+  private static final String TAG = "OneEuroFilterBank";
+
+  // Updates closer together than this are treated as this far apart, and updates further apart
+  // start a channel over, since the value could have gone anywhere in the meantime.
+  private static final float MIN_ELAPSED_SECONDS = 0.001f;
+  private static final float MAX_ELAPSED_SECONDS = 1.0f;
+
+  private final float mMinCutoff;
+  private final float mBeta;
+  private final float mDerivativeCutoff;
+
+  private final float[] mValues;
+  private final float[] mMeasurements;
+  private final float[] mDerivatives;
+  private final long[] mTimesMs;
+  private final boolean[] mInitialized;
+
+  /**
+   * @param channels the number of values to filter
+   * @param minCutoff the cutoff frequency, in hertz, for a value that's holding still; lower
+   *                  means less jitter but more lag
+   * @param beta how much the cutoff rises with speed, in hertz per unit per second; higher means
+   *             less lag when moving
+   * @param derivativeCutoff the cutoff frequency, in hertz, for the rate of change
+   */
+  OneEuroFilterBank(int channels, float minCutoff, float beta, float derivativeCutoff) {
+    mMinCutoff = minCutoff;
+    mBeta = beta;
+    mDerivativeCutoff = derivativeCutoff;
+    mValues = new float[channels];
+    mMeasurements = new float[channels];
+    mDerivatives = new float[channels];
+    mTimesMs = new long[channels];
+    mInitialized = new boolean[channels];
+  }
+
+  /**
+   * Starts every channel over.
+   */
+  void reset() {
+    for (int channel = 0; channel < mInitialized.length; channel++) {
+      mInitialized[channel] = false;
+    }
+  }
+
+  /**
+   * Starts one channel over, e.g. when its value stops being measured.
+   */
+  void reset(int channel) {
+    mInitialized[channel] = false;
+  }
+
+  /**
+   * Adds a measurement of a channel's value, and returns the filtered value.
+   */
+  float filter(int channel, float value, long timeMs) {
+    float elapsedSeconds = (timeMs - mTimesMs[channel]) / 1000.0f;
+    if (!mInitialized[channel] || (elapsedSeconds > MAX_ELAPSED_SECONDS)) {
+      mValues[channel] = value;
+      mMeasurements[channel] = value;
+      mDerivatives[channel] = 0;
+      mTimesMs[channel] = timeMs;
+      mInitialized[channel] = true;
+      return value;
+    }
+    if (elapsedSeconds < MIN_ELAPSED_SECONDS) {
+      elapsedSeconds = MIN_ELAPSED_SECONDS;
+    }
+
+    float previous = mValues[channel];
+    float derivative = (value - mMeasurements[channel]) / elapsedSeconds;
+    float smoothedDerivative = mDerivatives[channel] +
+      smoothingFactor(mDerivativeCutoff, elapsedSeconds) * (derivative - mDerivatives[channel]);
+
+    float cutoff = mMinCutoff + (mBeta * Math.abs(smoothedDerivative));
+    float filtered = previous + smoothingFactor(cutoff, elapsedSeconds) * (value - previous);
+
+    mValues[channel] = filtered;
+    mMeasurements[channel] = value;
+    mDerivatives[channel] = smoothedDerivative;
+    mTimesMs[channel] = timeMs;
+    return filtered;
+  }
+
+  /**
+   * Returns where a channel's value is expected to be at the given time, by extrapolating from
+   * its last filtered value at its current rate of change.  Doesn't change the channel.
+   */
+  float predict(int channel, long timeMs) {
+    float elapsedSeconds = Math.max(0, timeMs - mTimesMs[channel]) / 1000.0f;
+    return mValues[channel] + (mDerivatives[channel] * elapsedSeconds);
+  }
+
+  boolean isInitialized(int channel) {
+    return mInitialized[channel];
+  }
+
+  /**
+   * Returns the time of a channel's last measurement.
+   */
+  long getTimeMs(int channel) {
+    return mTimesMs[channel];
+  }
+
+  /**
+   * The weight given to a new measurement by a low-pass filter with the given cutoff frequency.
+   */
+  private static float smoothingFactor(float cutoff, float elapsedSeconds) {
+    float timeConstant = 1.0f / (2.0f * (float) Math.PI * cutoff);
+    return 1.0f / (1.0f + (timeConstant / elapsedSeconds));
+  }
+
+}
@@ -0,0 +1,322 @@
+package com.raywenderlich.facespotter;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Wraps face detection engines so that, once faces are found, only the regions around them are
+ * searched.<p>
+ *
+ * Most frames show the same few faces as the frame before, a little way from where they were.
+ * Between full scans of the frame, this engine crops a square around each face it's tracking,
+ * {@link #ROI_EXPANSION} times the face's size, shrinks or stretches it to a fixed
+ * {@link #CROP_SIZE}, and has the crop engine look for the face in that.  The face found is moved
+ * back into the frame's upright coordinates, which the overlay maps to the view as it does any
+ * face.  A face or two costs a few small crops rather than the whole frame.<p>
+ *
+ * The whole frame is still scanned, to find faces that have come into view:<p>
+ *
+ * <ul>
+ * <li>every so many frames,</li>
+ *
+ * <li>when nothing is being tracked,</li>
+ *
+ * <li>when a tracked face wasn't found in its crop (it may have moved fast or been missed),
+ * and</li>
+ *
+ * <li>when there are so many faces that their crops would cost as much as the scan.</li>
+ * </ul>
+ *
+ * This engine gives faces their ids, keeping them for faces found in their crops and for faces
+ * found by a full scan where a tracked face was.  Nothing is allocated after the first frame.
+ */
+final class RoiFaceEngine implements FaceDetectionEngine {
+
+  // Crops are this many times the size of the face they're around, so that the face can move
+  // up to half its size between frames and still be in its crop.
+  static final float ROI_EXPANSION = 2f;
+
+  // Crops are resampled to squares this size, in which faces are about half as wide.
+  static final int CROP_SIZE = 72;
+
+  // The smallest face the crop engine should look for, as a fraction of the crop's width, to
+  // allow for faces getting smaller.  Crops are small enough to search with finer steps than
+  // whole frames, which makes sure a face that is there is found.
+  static final float CROP_MIN_FACE_SIZE = 0.3f;
+  static final float CROP_STEP_FRACTION = 0.04f;
+
+  // If the crops would have more than this fraction of the frame's pixels, scan it all instead.
+  private static final float MAX_CROP_PIXELS = 0.5f;
+
+  // A face overlapping a tracked one by at least this much (intersection over union) is the
+  // same face; faces from different crops overlapping by this much are one face.
+  private static final float MATCH_OVERLAP = 0.3f;
+  private static final float DUPLICATE_OVERLAP = 0.5f;
+
+  private final FaceDetectionEngine mFullFrameEngine;
+  private final FaceDetectionEngine mCropEngine;
+  private final int mFullScanInterval;
+
+  // Faces reported for the last frame, as x, y, width and height, with their ids
+  private int mTrackedCount;
+  private float[] mTracked = new float[4 * 4];
+  private int[] mTrackedIds = new int[4];
+  private boolean[] mIsTrackedMatched = new boolean[4];
+  private int mNextId;
+
+  private int mFramesSinceFullScan;
+  private boolean mIsFullScanDue = true;
+
+  private final DetectedFaces mEngineFaces = new DetectedFaces();
+  private final byte[] mCrop = new byte[CROP_SIZE * CROP_SIZE];
+  private final ByteBuffer mCropBuffer = ByteBuffer.wrap(mCrop);
+  private final LuminanceFrame mCropFrame = new LuminanceFrame();
+  // Where each column of the crop comes from in the pyramid level it's taken from
+  private final int[] mColumnOffsets = new int[CROP_SIZE];
+
+  // Statistics
+  private long mFrameCount;
+  private long mFullScanCount;
+  private long mCropCount;
+  private long mProcessedPixelCount;
+  private long mFramePixelCount;
+
+  /**
+   * @param fullFrameEngine  finds faces in whole frames
+   * @param cropEngine       finds faces in crops, which are {@link #CROP_SIZE} square with the
+   *                         face about half as wide; it should look for faces down to
+   *                         {@link #CROP_MIN_FACE_SIZE} of the crop, in steps of
+   *                         {@link #CROP_STEP_FRACTION} if it works in steps
+   * @param fullScanInterval scan the whole frame at least every this many frames
+   */
+  RoiFaceEngine(FaceDetectionEngine fullFrameEngine, FaceDetectionEngine cropEngine,
+                int fullScanInterval) {
+    mFullFrameEngine = fullFrameEngine;
+    mCropEngine = cropEngine;
+    mFullScanInterval = Math.max(1, fullScanInterval);
+  }
+
+  @Override
+  public String getName() {
+    return "roi-" + mFullFrameEngine.getName();
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mFullFrameEngine.isOperational() && mCropEngine.isOperational();
+  }
+
+  @Override
+  public void detect(LuminanceFrame frame, DetectedFaces faces) {
+    faces.clear();
+    mFrameCount++;
+    int width = frame.getUprightWidth();
+    int height = frame.getUprightHeight();
+    mFramePixelCount += width * height;
+
+    mFramesSinceFullScan++;
+    if (mIsFullScanDue || (mTrackedCount == 0) || (mFramesSinceFullScan >= mFullScanInterval) ||
+        (mTrackedCount * CROP_SIZE * CROP_SIZE > MAX_CROP_PIXELS * width * height)) {
+      scanFrame(frame, faces);
+    } else {
+      scanCrops(frame, faces);
+    }
+    rememberFaces(faces);
+  }
+
+  private void scanFrame(LuminanceFrame frame, DetectedFaces faces) {
+    mFullScanCount++;
+    mFramesSinceFullScan = 0;
+    mIsFullScanDue = false;
+    mProcessedPixelCount += frame.getWidth() * frame.getHeight();
+    mFullFrameEngine.detect(frame, mEngineFaces);
+
+    for (int i = 0; i < mTrackedCount; i++) {
+      mIsTrackedMatched[i] = false;
+    }
+    for (int i = 0, count = mEngineFaces.size(); i < count; i++) {
+      float x = mEngineFaces.getX(i);
+      float y = mEngineFaces.getY(i);
+      float faceWidth = mEngineFaces.getWidth(i);
+      float faceHeight = mEngineFaces.getHeight(i);
+      int best = -1;
+      float bestOverlap = MATCH_OVERLAP;
+      for (int j = 0; j < mTrackedCount; j++) {
+        if (mIsTrackedMatched[j]) {
+          continue;
+        }
+        int t = j * 4;
+        float overlap = overlap(x, y, faceWidth, faceHeight,
+                                mTracked[t], mTracked[t + 1], mTracked[t + 2], mTracked[t + 3]);
+        if (overlap >= bestOverlap) {
+          best = j;
+          bestOverlap = overlap;
+        }
+      }
+      int id;
+      if (best >= 0) {
+        mIsTrackedMatched[best] = true;
+        id = mTrackedIds[best];
+      } else {
+        id = mNextId++;
+      }
+      faces.addFrom(mEngineFaces, i, id, 0, 0, 1);
+    }
+  }
+
+  private void scanCrops(LuminanceFrame frame, DetectedFaces faces) {
+    int width = frame.getUprightWidth();
+    int height = frame.getUprightHeight();
+    for (int i = 0; i < mTrackedCount; i++) {
+      int t = i * 4;
+      int side = getCropSide(mTracked[t + 2], mTracked[t + 3], width, height);
+      int left = clamp(Math.round(mTracked[t] + ((mTracked[t + 2] - side) / 2)), width - side);
+      int top =
+        clamp(Math.round(mTracked[t + 1] + ((mTracked[t + 3] - side) / 2)), height - side);
+      float scale = (float) side / CROP_SIZE;
+
+      crop(frame, left, top, scale);
+      mCropCount++;
+      mProcessedPixelCount += CROP_SIZE * CROP_SIZE;
+      mCropFrame.set(mCropBuffer, CROP_SIZE, CROP_SIZE, LuminanceFrame.ROTATION_0,
+                     frame.getId(), frame.getTimestampMs(), false);
+      mCropEngine.detect(mCropFrame, mEngineFaces);
+
+      // The face in the crop that overlaps where the tracked face was, in the crop's
+      // coordinates, is the tracked face.
+      int best = -1;
+      float bestOverlap = 0;
+      for (int j = 0, count = mEngineFaces.size(); j < count; j++) {
+        float overlap = overlap(mEngineFaces.getX(j), mEngineFaces.getY(j),
+                                mEngineFaces.getWidth(j), mEngineFaces.getHeight(j),
+                                (mTracked[t] - left) / scale, (mTracked[t + 1] - top) / scale,
+                                mTracked[t + 2] / scale, mTracked[t + 3] / scale);
+        if (overlap > bestOverlap) {
+          best = j;
+          bestOverlap = overlap;
+        }
+      }
+      if (best < 0) {
+        mIsFullScanDue = true;
+        continue;
+      }
+
+      int index = faces.addFrom(mEngineFaces, best, mTrackedIds[i], left, top, scale);
+      if (isDuplicate(faces, index)) {
+        faces.removeLast();
+      }
+    }
+  }
+
+  // Resample the square of the upright frame with the given top left corner into the crop,
+  // the nearest pixel to each crop pixel's center.  Big squares are taken from the smallest
+  // level of the frame's pyramid that's still at least the crop's size, so that each crop pixel
+  // stands for the pixels around it rather than just one of them.
+  private void crop(LuminanceFrame frame, int left, int top, float scale) {
+    FrameImageCache images = frame.getImages();
+    int level = 0;
+    while ((level + 1 < images.getLevelCount()) && (scale >= 2 << level)) {
+      level++;
+    }
+    byte[] pixels = images.getPixels(level);
+    int width = images.getWidth(level);
+    int maxX = width - 1;
+    int maxY = images.getHeight(level) - 1;
+    float levelScale = scale / (1 << level);
+    float levelLeft = (float) left / (1 << level);
+    float levelTop = (float) top / (1 << level);
+    for (int x = 0; x < CROP_SIZE; x++) {
+      mColumnOffsets[x] = Math.min((int) (levelLeft + ((x + 0.5f) * levelScale)), maxX);
+    }
+    byte[] crop = mCrop;
+    for (int y = 0, i = 0; y < CROP_SIZE; y++) {
+      int row = Math.min((int) (levelTop + ((y + 0.5f) * levelScale)), maxY) * width;
+      for (int x = 0; x < CROP_SIZE; x++) {
+        crop[i++] = pixels[row + mColumnOffsets[x]];
+      }
+    }
+  }
+
+  // A face found in one crop may already have been found in another's, if their faces are close.
+  private static boolean isDuplicate(DetectedFaces faces, int index) {
+    for (int i = 0; i < index; i++) {
+      if (overlap(faces.getX(i), faces.getY(i), faces.getWidth(i), faces.getHeight(i),
+                  faces.getX(index), faces.getY(index), faces.getWidth(index),
+                  faces.getHeight(index)) >= DUPLICATE_OVERLAP) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void rememberFaces(DetectedFaces faces) {
+    int count = faces.size();
+    if (count > mTrackedIds.length) {
+      int capacity = Math.max(count, mTrackedIds.length * 2);
+      mTracked = new float[capacity * 4];
+      mTrackedIds = new int[capacity];
+      mIsTrackedMatched = new boolean[capacity];
+    }
+    for (int i = 0; i < count; i++) {
+      mTracked[i * 4] = faces.getX(i);
+      mTracked[(i * 4) + 1] = faces.getY(i);
+      mTracked[(i * 4) + 2] = faces.getWidth(i);
+      mTracked[(i * 4) + 3] = faces.getHeight(i);
+      mTrackedIds[i] = faces.getId(i);
+    }
+    mTrackedCount = count;
+  }
+
+  private static int getCropSide(float faceWidth, float faceHeight, int width, int height) {
+    int side = Math.round(Math.max(faceWidth, faceHeight) * ROI_EXPANSION);
+    return Math.max(1, Math.min(side, Math.min(width, height)));
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(value, max));
+  }
+
+  // Intersection over union of two boxes.
+  private static float overlap(float x1, float y1, float width1, float height1,
+                               float x2, float y2, float width2, float height2) {
+    float width = Math.min(x1 + width1, x2 + width2) - Math.max(x1, x2);
+    float height = Math.min(y1 + height1, y2 + height2) - Math.max(y1, y2);
+    if ((width <= 0) || (height <= 0)) {
+      return 0;
+    }
+    float intersection = width * height;
+    return intersection / ((width1 * height1) + (width2 * height2) - intersection);
+  }
+
+  long getFullScanCount() {
+    return mFullScanCount;
+  }
+
+  long getCropCount() {
+    return mCropCount;
+  }
+
+  /**
+   * Returns the pixels searched for faces, as a fraction of the pixels in the frames given.
+   */
+  float getProcessedPixelRatio() {
+    return (mFramePixelCount == 0) ? 0 : (float) mProcessedPixelCount / mFramePixelCount;
+  }
+
+  @Override
+  public void release() {
+    mFullFrameEngine.release();
+    mCropEngine.release();
+    mCropFrame.getImages().release();
+    mTrackedCount = 0;
+    mIsFullScanDue = true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US,
+                         "RoiFaceEngine(frames=%d fullScans=%d crops=%d pixelRatio=%.3f)",
+                         mFrameCount, mFullScanCount, mCropCount, getProcessedPixelRatio());
+  }
+
+}
@@ -0,0 +1,151 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+
+/**
+ * Classifies eyes and smiles only on the frames a {@link ClassificationSchedule} asks for.<p>
+ *
+ * A face detector's classification type is fixed when it's built, so this detector switches
+ * between two: a tracking detector that doesn't classify, used on most frames, and one that
+ * does, used when the schedule asks.  Only one of them runs on any frame.<p>
+ *
+ * Faces from the classifying detector are reported under the ids of the nearest faces the
+ * tracking detector reported on the frame before, so that trackers carry on as if the same
+ * detector had seen them.  A face that can't be matched is left out of that frame; the tracking
+ * detector finds it again on the next.  The faces themselves aren't copied, and keep the ids the
+ * classifying detector gave them, as the processor and trackers go by the keys.<p>
+ *
+ * Set the processor on this detector, not on the wrapped ones.
+ */
+class ScheduledClassificationDetector extends Detector<Face> {
+
+  private static final String TAG = "ScheduledClassificationDetector";
+
+  // Faces whose centers are further apart than this fraction of their width aren't the same face.
+  private static final float MAX_MATCH_DISTANCE = 0.5f;
+
+  private final Detector<Face> mTrackingDetector;
+  private final Detector<Face> mClassifyingDetector;
+  private final ClassificationSchedule mSchedule;
+
+  // The faces reported for the last frame, for matching classified faces against
+  private int mLastFaceCount;
+  private int[] mLastIds = new int[4];
+  private float[] mLastCenterX = new float[4];
+  private float[] mLastCenterY = new float[4];
+  private float[] mLastWidth = new float[4];
+  private boolean[] mLastIsMatched = new boolean[4];
+
+  // The classified faces under their matched ids, reused from frame to frame
+  private final SparseArray<Face> mMatchedFaces = new SparseArray<>();
+
+  ScheduledClassificationDetector(Detector<Face> trackingDetector,
+                                  Detector<Face> classifyingDetector,
+                                  ClassificationSchedule schedule) {
+    mTrackingDetector = trackingDetector;
+    mClassifyingDetector = classifyingDetector;
+    mSchedule = schedule;
+  }
+
+  @Override
+  public SparseArray<Face> detect(Frame frame) {
+    SparseArray<Face> faces;
+    if ((mLastFaceCount > 0) && mSchedule.nextDetection()) {
+      faces = matchClassifiedFaces(mClassifyingDetector.detect(frame));
+    } else {
+      faces = mTrackingDetector.detect(frame);
+    }
+    rememberFaces(faces);
+    return faces;
+  }
+
+  private SparseArray<Face> matchClassifiedFaces(SparseArray<Face> classified) {
+    for (int i = 0; i < mLastFaceCount; i++) {
+      mLastIsMatched[i] = false;
+    }
+
+    SparseArray<Face> faces = mMatchedFaces;
+    faces.clear();
+    for (int i = 0, count = classified.size(); i < count; i++) {
+      Face face = classified.valueAt(i);
+      PointF position = face.getPosition();
+      float centerX = position.x + (face.getWidth() / 2);
+      float centerY = position.y + (face.getHeight() / 2);
+
+      int nearest = -1;
+      float nearestDistance = Float.MAX_VALUE;
+      for (int j = 0; j < mLastFaceCount; j++) {
+        if (mLastIsMatched[j]) {
+          continue;
+        }
+        float dx = centerX - mLastCenterX[j];
+        float dy = centerY - mLastCenterY[j];
+        float distance = (float) Math.sqrt((dx * dx) + (dy * dy));
+        if ((distance < nearestDistance) && (distance <= MAX_MATCH_DISTANCE * mLastWidth[j])) {
+          nearest = j;
+          nearestDistance = distance;
+        }
+      }
+      if (nearest < 0) {
+        continue;
+      }
+
+      mLastIsMatched[nearest] = true;
+      faces.put(mLastIds[nearest], face);
+    }
+    return faces;
+  }
+
+  private void rememberFaces(SparseArray<Face> faces) {
+    int count = faces.size();
+    if (count > mLastIds.length) {
+      int capacity = Math.max(count, mLastIds.length * 2);
+      mLastIds = new int[capacity];
+      mLastCenterX = new float[capacity];
+      mLastCenterY = new float[capacity];
+      mLastWidth = new float[capacity];
+      mLastIsMatched = new boolean[capacity];
+    }
+
+    for (int i = 0; i < count; i++) {
+      Face face = faces.valueAt(i);
+      PointF position = face.getPosition();
+      mLastIds[i] = faces.keyAt(i);
+      mLastCenterX[i] = position.x + (face.getWidth() / 2);
+      mLastCenterY[i] = position.y + (face.getHeight() / 2);
+      mLastWidth[i] = face.getWidth();
+    }
+    mLastFaceCount = count;
+  }
+
+  /**
+   * Forgets the faces reported for the last frame, so that the next frame is only tracked.  Call
+   * this before the detector sees frames from a different camera source.
+   */
+  void reset() {
+    mLastFaceCount = 0;
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mTrackingDetector.isOperational() && mClassifyingDetector.isOperational();
+  }
+
+  @Override
+  public boolean setFocus(int id) {
+    return mTrackingDetector.setFocus(id);
+  }
+
+  @Override
+  public void release() {
+    mTrackingDetector.release();
+    mClassifyingDetector.release();
+    super.release();
+  }
+
+}
@@ -0,0 +1,174 @@
+package com.raywenderlich.facespotter;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+/**
+ * A process-wide cache of the decorations that {@link FaceGraphic} draws over faces.<p>
+ *
+ * Each sprite's PNG is decoded once, the first time the atlas is used.  When a sprite is drawn,
+ * the target size is rounded up to one of a fixed set of sizes (four per doubling), and a copy of
+ * the sprite pre-scaled to that size is kept in an LRU cache with a fixed memory budget.  Drawing a
+ * sprite is then a blit from a bitmap that's already about the right size, rather than decoding
+ * a drawable per face and scaling it from its full size on every frame.<p>
+ *
+ * The atlas must only be drawn from the UI thread.
+ */
+final class SpriteAtlas {
+
+  private static final String TAG = "SpriteAtlas";
+
+  // Sprites, indexed by their FaceCanvas constants (FaceCanvas.PIG_NOSE and so on)
+  private static final int[] SPRITE_RESOURCES = {
+    R.drawable.pig_nose_emoji,
+    R.drawable.happy_star,
+    R.drawable.mustache,
+    R.drawable.red_hat,
+  };
+
+  // Pre-scaled sizes are kept between these limits.  Smaller or larger sprites are drawn
+  // from the nearest limit.
+  private static final int MIN_SCALED_SIZE = 8;
+  private static final int MAX_SCALED_SIZE = 2048;
+
+  // Each doubling of size is split into four steps, so a cached copy is never more than about
+  // 19% larger than the area it's drawn into.
+  private static final float SIZE_STEP = (float) Math.pow(2.0, 0.25);
+
+  // Memory budget for pre-scaled copies: a slice of the heap, within fixed bounds.
+  private static final int MIN_CACHE_BYTES = 2 * 1024 * 1024;
+  private static final int MAX_CACHE_BYTES = 16 * 1024 * 1024;
+
+  private static SpriteAtlas sInstance;
+
+  private final Bitmap[] mSources = new Bitmap[SPRITE_RESOURCES.length];
+  private final LruCache<Long, Bitmap> mScaledSprites;
+
+  // The most recently drawn copy of each sprite, which spares a cache lookup when the same face
+  // is drawn at the same size frame after frame.
+  private final long[] mLastKeys = new long[SPRITE_RESOURCES.length];
+  private final Bitmap[] mLastBitmaps = new Bitmap[SPRITE_RESOURCES.length];
+
+  private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final Rect mSourceRect = new Rect();
+  private final Rect mDestinationRect = new Rect();
+
+  /**
+   * Returns the process-wide atlas, decoding the sprites if this is the first call.
+   */
+  static synchronized SpriteAtlas getInstance(Context context) {
+    if (sInstance == null) {
+      sInstance = new SpriteAtlas(context.getApplicationContext().getResources());
+    }
+    return sInstance;
+  }
+
+  private SpriteAtlas(Resources resources) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inScaled = false;
+    for (int i = 0; i < SPRITE_RESOURCES.length; i++) {
+      mSources[i] = BitmapFactory.decodeResource(resources, SPRITE_RESOURCES[i], options);
+    }
+
+    int budget = (int) Math.min(MAX_CACHE_BYTES,
+                                Math.max(MIN_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 32));
+    mScaledSprites = new LruCache<Long, Bitmap>(budget) {
+      @Override
+      protected int sizeOf(Long key, Bitmap bitmap) {
+        return bitmap.getByteCount();
+      }
+    };
+
+    for (int i = 0; i < mLastKeys.length; i++) {
+      mLastKeys[i] = -1;
+    }
+  }
+
+  /**
+   * Draws a sprite stretched over the given rectangle.  If left is greater than right, the
+   * sprite is mirrored horizontally.
+   */
+  void draw(Canvas canvas, int sprite, int left, int top, int right, int bottom) {
+    boolean mirrored = left > right;
+    int x0 = Math.min(left, right);
+    int x1 = Math.max(left, right);
+    int y0 = Math.min(top, bottom);
+    int y1 = Math.max(top, bottom);
+    if ((x0 == x1) || (y0 == y1)) {
+      return;
+    }
+
+    Bitmap bitmap = getScaledSprite(sprite, quantize(x1 - x0), quantize(y1 - y0));
+    if (bitmap == null) {
+      return;
+    }
+
+    mSourceRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+    mDestinationRect.set(x0, y0, x1, y1);
+    if (mirrored) {
+      canvas.save();
+      canvas.scale(-1, 1, (x0 + x1) / 2.0f, (y0 + y1) / 2.0f);
+      canvas.drawBitmap(bitmap, mSourceRect, mDestinationRect, mPaint);
+      canvas.restore();
+    } else {
+      canvas.drawBitmap(bitmap, mSourceRect, mDestinationRect, mPaint);
+    }
+  }
+
+  /**
+   * Drops all pre-scaled copies of the sprites, e.g. when the system is low on memory.
+   */
+  void trimMemory() {
+    mScaledSprites.evictAll();
+    for (int i = 0; i < mLastKeys.length; i++) {
+      mLastKeys[i] = -1;
+      mLastBitmaps[i] = null;
+    }
+  }
+
+  private Bitmap getScaledSprite(int sprite, int width, int height) {
+    long key = ((long) sprite << 32) | ((long) width << 16) | height;
+    if (mLastKeys[sprite] == key) {
+      return mLastBitmaps[sprite];
+    }
+
+    Bitmap bitmap = mScaledSprites.get(key);
+    if (bitmap == null) {
+      Bitmap source = mSources[sprite];
+      if (source == null) {
+        return null;
+      }
+      bitmap = Bitmap.createScaledBitmap(source, width, height, true);
+      mScaledSprites.put(key, bitmap);
+    }
+
+    mLastKeys[sprite] = key;
+    mLastBitmaps[sprite] = bitmap;
+    return bitmap;
+  }
+
+  /**
+   * Rounds a size in pixels up to the nearest size at which sprites are pre-scaled.
+   */
+  static int quantize(int size) {
+    if (size <= MIN_SCALED_SIZE) {
+      return MIN_SCALED_SIZE;
+    }
+    if (size >= MAX_SCALED_SIZE) {
+      return MAX_SCALED_SIZE;
+    }
+
+    float step = Integer.highestOneBit(size);
+    while ((int) Math.ceil(step) < size) {
+      step *= SIZE_STEP;
+    }
+    return (int) Math.ceil(step);
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.raywenderlich.facespotter;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.CameraSource;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+
+/**
+ * Passes frames to the face detector built for the camera in use, so that switching cameras
+ * doesn't mean building a new detector chain, processor and trackers.<p>
+ *
+ * Face detectors are built for a camera facing (only the most prominent face for the front
+ * camera, and a smaller minimum face size for the rear), and those settings are fixed once
+ * they're built.  This detector holds one for each facing, and {@link #switchTo(int)} picks the
+ * one that frames go to.  Each detector numbers its faces on its own, so after a switch, ids
+ * are moved out of the way of those reported before it.  Faces seen by the old camera then go
+ * missing, rather than being carried on by faces from the new one.<p>
+ *
+ * Releasing this detector releases every detector it holds.
+ */
+class SwitchableFaceDetector extends Detector<Face> {
+
+  private static final String TAG = "SwitchableFaceDetector";
+
+  // Added to every id after each switch.  The ids a detector hands out stay far below this.
+  // The offset wraps around after ID_OFFSET_COUNT switches, so that ids never overflow; faces
+  // from that many switches ago are long gone.
+  private static final int ID_OFFSET_STEP = 1 << 20;
+  private static final int ID_OFFSET_COUNT = 1 << 10;
+
+  // By camera facing: CameraSource.CAMERA_FACING_BACK or CAMERA_FACING_FRONT
+  private final Detector<Face>[] mDetectors;
+  private volatile int mFacing;
+  private volatile int mIdOffset;
+
+  // The detected faces under their offset ids, reused from frame to frame.  The faces keep the
+  // ids they were detected with, as nothing downstream reads them: the processor and the
+  // trackers go by the keys, and are done with one frame's faces before the next is detected.
+  private final SparseArray<Face> mOffsetFaces = new SparseArray<>();
+
+  @SuppressWarnings("unchecked")
+  SwitchableFaceDetector(int facing, Detector<Face> detector) {
+    mDetectors = (Detector<Face>[]) new Detector<?>[2];
+    mDetectors[facing] = detector;
+    mFacing = facing;
+  }
+
+  boolean hasDetector(int facing) {
+    return mDetectors[facing] != null;
+  }
+
+  /**
+   * Sets the detector for a camera facing that has none yet.
+   */
+  void setDetector(int facing, Detector<Face> detector) {
+    if (mDetectors[facing] != null) {
+      throw new IllegalStateException("Already have a detector for facing " + facing);
+    }
+    mDetectors[facing] = detector;
+  }
+
+  /**
+   * Sends frames to the detector for the given camera facing from now on.  Only call this while
+   * no frame is being detected, between stopping one camera source and starting the next.
+   */
+  void switchTo(int facing) {
+    if (mDetectors[facing] == null) {
+      throw new IllegalStateException("No detector for facing " + facing);
+    }
+    mFacing = facing;
+    mIdOffset = (mIdOffset + ID_OFFSET_STEP) % (ID_OFFSET_STEP * ID_OFFSET_COUNT);
+  }
+
+  int getFacing() {
+    return mFacing;
+  }
+
+  boolean isFrontFacing() {
+    return mFacing == CameraSource.CAMERA_FACING_FRONT;
+  }
+
+  @Override
+  public SparseArray<Face> detect(Frame frame) {
+    SparseArray<Face> faces = mDetectors[mFacing].detect(frame);
+    int idOffset = mIdOffset;
+    if (idOffset == 0) {
+      return faces;
+    }
+
+    mOffsetFaces.clear();
+    for (int i = 0, count = faces.size(); i < count; i++) {
+      mOffsetFaces.append(faces.keyAt(i) + idOffset, faces.valueAt(i));
+    }
+    return mOffsetFaces;
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mDetectors[mFacing].isOperational();
+  }
+
+  @Override
+  public boolean setFocus(int id) {
+    return mDetectors[mFacing].setFocus(id - mIdOffset);
+  }
+
+  @Override
+  public void release() {
+    for (Detector<Face> detector : mDetectors) {
+      if (detector != null) {
+        detector.release();
+      }
+    }
+    super.release();
+  }
+
+}
@@ -0,0 +1,195 @@
+package com.raywenderlich.facespotter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a scan of many tiles across a fixed pool of worker threads and the thread asking for
+ * it, for detecting faces in big frames on every core.<p>
+ *
+ * Tiles are handed out one at a time from a shared counter, as each thread finishes its last,
+ * so that threads which get cheap tiles, or get going late, take more of them and all finish at
+ * about the same time.  This is the balancing a fork-join pool's work stealing would give,
+ * without the pool, which older Android versions don't have, and without allocating per scan.
+ * The scan returns once every tile is done, and whatever the tiles wrote is then visible to the
+ * caller.<p>
+ *
+ * One scan runs at a time; a second caller waits its turn.  A tile that throws doesn't stop the
+ * others, and the scan throws the first failure once they're done.  After {@link #close()}, scans
+ * run on the calling thread alone.
+ */
+final class TileScanPool {
+
+  private static final String TAG = "TileScanPool";
+
+  /**
+   * Scans one tile.  Tiles are scanned in no particular order, and at the same time on
+   * different workers, so each one should only write to its own part of the results, or to its
+   * worker's.
+   */
+  interface Scanner {
+
+    /**
+     * @param tile   the tile's index
+     * @param worker the index of the worker scanning it, below {@link #getWorkerCount()}: 0 for
+     *               the calling thread
+     */
+    void scanTile(int tile, int worker);
+  }
+
+  private final Thread[] mThreads;
+  private final Object mScanLock = new Object();
+  private final AtomicInteger mNextTile = new AtomicInteger();
+
+  // The scan under way, guarded by this.  Each scan has a new generation, which wakes the
+  // workers, and is done once none of them is busy with it.
+  private Scanner mScanner;
+  private int mTileCount;
+  private int mGeneration;
+  private int mBusyWorkerCount;
+  private RuntimeException mFailure;
+  private boolean mIsClosed;
+
+  /**
+   * Starts the worker threads.
+   *
+   * @param threadCount the number of worker threads, besides the thread asking for each scan;
+   *                    with none, scans run on the calling thread alone
+   */
+  TileScanPool(int threadCount) {
+    mThreads = new Thread[Math.max(0, threadCount)];
+    for (int i = 0; i < mThreads.length; i++) {
+      mThreads[i] = new Thread(new Worker(i + 1), TAG + "-" + (i + 1));
+      mThreads[i].setDaemon(true);
+      mThreads[i].start();
+    }
+  }
+
+  /**
+   * Returns the number of threads that scan tiles, counting the calling thread.
+   */
+  int getWorkerCount() {
+    return mThreads.length + 1;
+  }
+
+  /**
+   * Scans every tile, and returns when they're all done.
+   */
+  void scan(Scanner scanner, int tileCount) {
+    synchronized (mScanLock) {
+      boolean isParallel;
+      synchronized (this) {
+        isParallel = !mIsClosed && (mThreads.length > 0) && (tileCount > 1);
+        mNextTile.set(0);
+        if (isParallel) {
+          mScanner = scanner;
+          mTileCount = tileCount;
+          mBusyWorkerCount = mThreads.length;
+          mFailure = null;
+          mGeneration++;
+          notifyAll();
+        }
+      }
+
+      RuntimeException failure = null;
+      try {
+        scanTiles(scanner, tileCount, 0);
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+      if (isParallel) {
+        failure = awaitWorkers(failure);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private void scanTiles(Scanner scanner, int tileCount, int worker) {
+    for (int tile = mNextTile.getAndIncrement(); tile < tileCount;
+         tile = mNextTile.getAndIncrement()) {
+      scanner.scanTile(tile, worker);
+    }
+  }
+
+  // Wait for the workers to finish their tiles, even if interrupted, since they're still writing
+  // the results.  Returns the first failure.
+  private synchronized RuntimeException awaitWorkers(RuntimeException failure) {
+    boolean isInterrupted = false;
+    while (mBusyWorkerCount > 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        isInterrupted = true;
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+    mScanner = null;
+    return (failure != null) ? failure : mFailure;
+  }
+
+  /**
+   * Stops the workers, once they've finished any scan under way.
+   */
+  synchronized void close() {
+    mIsClosed = true;
+    notifyAll();
+  }
+
+  @Override
+  public String toString() {
+    return "TileScanPool(workers=" + getWorkerCount() + ")";
+  }
+
+  private final class Worker implements Runnable {
+
+    private final int mIndex;
+
+    Worker(int index) {
+      mIndex = index;
+    }
+
+    @Override
+    public void run() {
+      int generation = 0;
+      while (true) {
+        Scanner scanner;
+        int tileCount;
+        synchronized (TileScanPool.this) {
+          while ((mGeneration == generation) && !mIsClosed) {
+            try {
+              TileScanPool.this.wait();
+            } catch (InterruptedException e) {
+              // Only closing stops a worker.
+            }
+          }
+          if (mGeneration == generation) {
+            return;
+          }
+          generation = mGeneration;
+          scanner = mScanner;
+          tileCount = mTileCount;
+        }
+
+        RuntimeException failure = null;
+        try {
+          scanTiles(scanner, tileCount, mIndex);
+        } catch (RuntimeException e) {
+          failure = e;
+        } finally {
+          synchronized (TileScanPool.this) {
+            if ((failure != null) && (mFailure == null)) {
+              mFailure = failure;
+            }
+            if (--mBusyWorkerCount == 0) {
+              TileScanPool.this.notifyAll();
+            }
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.raywenderlich.facespotter;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+/**
+ * Wraps a detector to measure how long it takes to detect each frame.<p>
+ *
+ * The camera source hands frames to this detector, which passes them on to the wrapped one and
+ * reports the time taken before the detections go to this detector's processor.  Set the
+ * processor on this detector, not on the wrapped one.<p>
+ *
+ * It also stamps each frame for the {@link LatencyMonitor} as detection starts and finishes.
+ */
+class TimedDetector<T> extends Detector<T> {
+
+  private static final String TAG = "TimedDetector";
+
+  /**
+   * Receives the time taken to detect each frame, on the detector thread.
+   */
+  interface Listener {
+    void onFrameDetected(int frameId, long latencyNs);
+  }
+
+  private final Detector<T> mDelegate;
+  private final Listener mListener;
+  private final LatencyMonitor mLatencyMonitor;
+
+  TimedDetector(Detector<T> delegate, Listener listener, LatencyMonitor latencyMonitor) {
+    mDelegate = delegate;
+    mListener = listener;
+    mLatencyMonitor = latencyMonitor;
+  }
+
+  @Override
+  public SparseArray<T> detect(Frame frame) {
+    long captureMs = frame.getMetadata().getTimestampMillis();
+    mLatencyMonitor.onFrameStarted(captureMs);
+    long startNs = System.nanoTime();
+    SparseArray<T> detections = mDelegate.detect(frame);
+    mListener.onFrameDetected(frame.getMetadata().getId(), System.nanoTime() - startNs);
+    mLatencyMonitor.stamp(LatencyMonitor.DETECTED, captureMs);
+    return detections;
+  }
+
+  @Override
+  public boolean isOperational() {
+    return mDelegate.isOperational();
+  }
+
+  @Override
+  public boolean setFocus(int id) {
+    return mDelegate.setFocus(id);
+  }
+
+  @Override
+  public void release() {
+    mDelegate.release();
+    super.release();
+  }
+
+}
@@ -0,0 +1,412 @@
+package com.raywenderlich.facespotter;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Runs trackers' per-frame work on a fixed pool of worker threads, rather than on the detector's
+ * thread.<p>
+ *
+ * The detector's processor calls every tracker one after the other on its own thread, so with a
+ * crowd in view, working out each face's data holds up the next detection.  Instead, trackers
+ * post their events here and return at once.  Each worker serves one shard of the item ids, in
+ * the order they were posted, so that events for any one item are handled in order and never
+ * at the same time, while different items are handled in parallel.<p>
+ *
+ * Each shard's queue is bounded.  When a worker falls behind and its queue is full, a new update
+ * or missing event replaces the oldest one already queued for the same item, since it's newer
+ * news of that item.  If the item has nothing queued, the event makes room by dropping an older
+ * event for an item that has a newer one queued behind it, and only as a last resort the oldest
+ * update or missing event of any item, so that one busy item doesn't leave the others stale.
+ * New-item and done events are never dropped, so that every item is set up and finished with;
+ * they're few enough that they may take a queue past its capacity.<p>
+ *
+ * The pipeline keeps statistics on queue depths, drops, and how long events wait and take to
+ * handle, for tuning the number of workers and the queue capacity.
+ */
+class TrackerPipeline<T> {
+
+  private static final String TAG = "TrackerPipeline";
+
+  /**
+   * The work a tracker hands over to the pipeline, called on the worker thread that serves its
+   * item.
+   */
+  interface Handler<T> {
+
+    void processNewItem(int id, T item);
+
+    void processUpdate(T item, long timeMs);
+
+    void processMissing(long timeMs);
+
+    void processDone();
+  }
+
+  // Event types
+  private static final int NEW_ITEM = 0;
+  private static final int UPDATE = 1;
+  private static final int MISSING = 2;
+  private static final int DONE = 3;
+
+  private static class Event<T> {
+    Handler<T> mHandler;
+    int mType;
+    int mId;
+    T mItem;
+    long mTimeMs;
+    long mPostedNs;
+
+    boolean isDroppable() {
+      return (mType == UPDATE) || (mType == MISSING);
+    }
+  }
+
+  private final Shard<T>[] mShards;
+
+  /**
+   * Starts the worker threads.
+   *
+   * @param workerCount the number of worker threads, each serving its own shard
+   * @param queueCapacity the most update and missing events a shard holds before dropping
+   *                      older ones
+   */
+  @SuppressWarnings("unchecked")
+  TrackerPipeline(int workerCount, int queueCapacity) {
+    mShards = (Shard<T>[]) new Shard<?>[Math.max(1, workerCount)];
+    for (int i = 0; i < mShards.length; i++) {
+      mShards[i] = new Shard<>(Math.max(1, queueCapacity));
+      Thread worker = new Thread(mShards[i], TAG + "-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  void postNewItem(Handler<T> handler, int id, T item) {
+    post(handler, NEW_ITEM, id, item, 0);
+  }
+
+  void postUpdate(Handler<T> handler, int id, T item, long timeMs) {
+    post(handler, UPDATE, id, item, timeMs);
+  }
+
+  void postMissing(Handler<T> handler, int id, long timeMs) {
+    post(handler, MISSING, id, null, timeMs);
+  }
+
+  void postDone(Handler<T> handler, int id) {
+    post(handler, DONE, id, null, 0);
+  }
+
+  private void post(Handler<T> handler, int type, int id, T item, long timeMs) {
+    Shard<T> shard = mShards[(id & Integer.MAX_VALUE) % mShards.length];
+    shard.post(handler, type, id, item, timeMs);
+  }
+
+  /**
+   * Stops taking events.  The workers handle the events already posted, then stop.
+   */
+  void close() {
+    for (Shard<T> shard : mShards) {
+      shard.close();
+    }
+  }
+
+  int getWorkerCount() {
+    return mShards.length;
+  }
+
+  /**
+   * Returns the number of events waiting to be handled, across all shards.
+   */
+  int getQueueDepth() {
+    int depth = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        depth += shard.mQueue.size();
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Returns the most events that any one shard has had waiting.
+   */
+  int getMaxQueueDepth() {
+    int depth = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        depth = Math.max(depth, shard.mMaxDepth);
+      }
+    }
+    return depth;
+  }
+
+  long getPostedCount() {
+    long count = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        count += shard.mPostedCount;
+      }
+    }
+    return count;
+  }
+
+  long getDroppedCount() {
+    long count = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        count += shard.mDroppedCount;
+      }
+    }
+    return count;
+  }
+
+  long getHandledCount() {
+    long count = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        count += shard.mHandledCount;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, that events have waited in a queue before being
+   * handled.
+   */
+  long getAverageWaitNs() {
+    long count = 0;
+    long totalNs = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        count += shard.mHandledCount;
+        totalNs += shard.mTotalWaitNs;
+      }
+    }
+    return (count == 0) ? 0 : totalNs / count;
+  }
+
+  long getMaxWaitNs() {
+    long maxNs = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        maxNs = Math.max(maxNs, shard.mMaxWaitNs);
+      }
+    }
+    return maxNs;
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, that handlers have taken over an event.
+   */
+  long getAverageHandleNs() {
+    long count = 0;
+    long totalNs = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        count += shard.mHandledCount;
+        totalNs += shard.mTotalHandleNs;
+      }
+    }
+    return (count == 0) ? 0 : totalNs / count;
+  }
+
+  long getMaxHandleNs() {
+    long maxNs = 0;
+    for (Shard<T> shard : mShards) {
+      synchronized (shard) {
+        maxNs = Math.max(maxNs, shard.mMaxHandleNs);
+      }
+    }
+    return maxNs;
+  }
+
+  @Override
+  public String toString() {
+    return "workers=" + mShards.length +
+      " posted=" + getPostedCount() +
+      " handled=" + getHandledCount() +
+      " dropped=" + getDroppedCount() +
+      " depth=" + getQueueDepth() +
+      " maxDepth=" + getMaxQueueDepth() +
+      " waitUs=" + (getAverageWaitNs() / 1000) + "/" + (getMaxWaitNs() / 1000) +
+      " handleUs=" + (getAverageHandleNs() / 1000) + "/" + (getMaxHandleNs() / 1000);
+  }
+
+  /**
+   * One worker's queue, and the worker itself.  Everything but the worker's handling of an
+   * event is guarded by the shard.
+   */
+  private static class Shard<T> implements Runnable {
+
+    private final int mCapacity;
+    private final ArrayDeque<Event<T>> mQueue = new ArrayDeque<>();
+    private int mDroppableCount;
+    private boolean mIsClosed;
+
+    // Handled events, kept for reuse so that posting doesn't allocate
+    private final ArrayDeque<Event<T>> mIdle = new ArrayDeque<>();
+
+    // Statistics
+    private int mMaxDepth;
+    private long mPostedCount;
+    private long mDroppedCount;
+    private long mHandledCount;
+    private long mTotalWaitNs;
+    private long mMaxWaitNs;
+    private long mTotalHandleNs;
+    private long mMaxHandleNs;
+
+    Shard(int capacity) {
+      mCapacity = capacity;
+    }
+
+    synchronized void post(Handler<T> handler, int type, int id, T item, long timeMs) {
+      if (mIsClosed) {
+        return;
+      }
+      mPostedCount++;
+
+      Event<T> event = mIdle.poll();
+      if (event == null) {
+        event = new Event<>();
+      }
+      event.mHandler = handler;
+      event.mType = type;
+      event.mId = id;
+      event.mItem = item;
+      event.mTimeMs = timeMs;
+      event.mPostedNs = System.nanoTime();
+
+      if (event.isDroppable()) {
+        if (mDroppableCount == mCapacity) {
+          dropFor(id);
+        }
+        mDroppableCount++;
+      }
+      mQueue.add(event);
+      mMaxDepth = Math.max(mMaxDepth, mQueue.size());
+      notify();
+    }
+
+    // Makes room for an update or missing event for the given item, by dropping the oldest
+    // event the item already has queued, or failing that the oldest event superseded by a newer
+    // one for the same item, or failing that the oldest of them all.
+    private void dropFor(int id) {
+      Event<T> oldest = null;
+      Event<T> superseded = null;
+      for (Event<T> event : mQueue) {
+        if (!event.isDroppable()) {
+          continue;
+        }
+        if (event.mId == id) {
+          drop(event);
+          return;
+        }
+        if (oldest == null) {
+          oldest = event;
+        }
+        if ((superseded == null) && hasLaterEvent(event)) {
+          superseded = event;
+        }
+      }
+      drop((superseded != null) ? superseded : oldest);
+    }
+
+    // Returns true if another update or missing event for the same item is queued after the
+    // given one.
+    private boolean hasLaterEvent(Event<T> event) {
+      Iterator<Event<T>> events = mQueue.descendingIterator();
+      while (events.hasNext()) {
+        Event<T> later = events.next();
+        if (later == event) {
+          return false;
+        }
+        if (later.isDroppable() && (later.mId == event.mId)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void drop(Event<T> event) {
+      if (event == null) {
+        return;
+      }
+      mQueue.removeFirstOccurrence(event);
+      mDroppableCount--;
+      mDroppedCount++;
+      recycle(event);
+    }
+
+    private void recycle(Event<T> event) {
+      event.mHandler = null;
+      event.mItem = null;
+      mIdle.add(event);
+    }
+
+    synchronized void close() {
+      mIsClosed = true;
+      notify();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Event<T> event;
+        synchronized (this) {
+          while (mQueue.isEmpty() && !mIsClosed) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              // Only closing stops the worker.
+            }
+          }
+          event = mQueue.poll();
+          if (event == null) {
+            return;
+          }
+          if (event.isDroppable()) {
+            mDroppableCount--;
+          }
+        }
+
+        long startNs = System.nanoTime();
+        handle(event);
+        long endNs = System.nanoTime();
+
+        synchronized (this) {
+          long waitNs = startNs - event.mPostedNs;
+          long handleNs = endNs - startNs;
+          mHandledCount++;
+          mTotalWaitNs += waitNs;
+          mMaxWaitNs = Math.max(mMaxWaitNs, waitNs);
+          mTotalHandleNs += handleNs;
+          mMaxHandleNs = Math.max(mMaxHandleNs, handleNs);
+          recycle(event);
+        }
+      }
+    }
+
+    private static <T> void handle(Event<T> event) {
+      Handler<T> handler = event.mHandler;
+      switch (event.mType) {
+        case NEW_ITEM:
+          handler.processNewItem(event.mId, event.mItem);
+          break;
+        case UPDATE:
+          handler.processUpdate(event.mItem, event.mTimeMs);
+          break;
+        case MISSING:
+          handler.processMissing(event.mTimeMs);
+          break;
+        default:
+          handler.processDone();
+          break;
+      }
+    }
+  }
+
+}
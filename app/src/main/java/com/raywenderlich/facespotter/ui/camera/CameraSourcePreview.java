@@ -38,9 +38,20 @@ public class CameraSourcePreview extends ViewGroup {
   private boolean mStartRequested;
   private boolean mSurfaceAvailable;
   private CameraSource mCameraSource;
+  private boolean mIsRunning;
+
+  // Guards the camera source and its state, which swap() changes from a background thread
+  private final Object mCameraLock = new Object();
+
+  // Set while swap() is stopping the old camera and opening the new one, outside the lock.
+  // Meanwhile, stop() and release() only say what they want, and swap() sees to the cameras.
+  private boolean mIsSwitching;
 
   private GraphicOverlay mOverlay;
 
+  // Told when the camera starts and stops, if set
+  private FrameTelemetry mTelemetry;
+
   public CameraSourcePreview(Context context, AttributeSet attrs) {
     super(context, attrs);
     mContext = context;
@@ -53,15 +64,17 @@ public class CameraSourcePreview extends ViewGroup {
   }
 
   public void start(CameraSource cameraSource) throws IOException {
-    if (cameraSource == null) {
-      stop();
-    }
+    synchronized (mCameraLock) {
+      if (cameraSource == null) {
+        stop();
+      }
 
-    mCameraSource = cameraSource;
+      mCameraSource = cameraSource;
 
-    if (mCameraSource != null) {
-      mStartRequested = true;
-      startIfReady();
+      if (mCameraSource != null) {
+        mStartRequested = true;
+        startIfReady();
+      }
     }
   }
 
@@ -70,43 +83,155 @@ public class CameraSourcePreview extends ViewGroup {
     start(cameraSource);
   }
 
+  public void setTelemetry(FrameTelemetry telemetry) {
+    mTelemetry = telemetry;
+  }
+
   public void stop() {
-    if (mCameraSource != null) {
-        mCameraSource.stop();
+    synchronized (mCameraLock) {
+      if ((mCameraSource != null) && !mIsSwitching) {
+          mCameraSource.stop();
+      }
+      mIsRunning = false;
+      mStartRequested = false;
+      if (mTelemetry != null) {
+        mTelemetry.onCameraStopped();
+      }
     }
   }
 
+  /**
+   * Releases the camera source.  During a {@link #swap}, the source being swapped in is only
+   * dropped, since it may be opening; it's stopped by the swap and left for its owner to
+   * release.
+   */
   public void release() {
-    if (mCameraSource != null) {
-        mCameraSource.release();
+    synchronized (mCameraLock) {
+      if (mCameraSource != null) {
+        if (!mIsSwitching) {
+          mCameraSource.release();
+        }
         mCameraSource = null;
+      }
+      mIsRunning = false;
+      mStartRequested = false;
+      if (mTelemetry != null) {
+        mTelemetry.onCameraStopped();
+      }
     }
   }
 
-  private void startIfReady() throws IOException {
-    if (mStartRequested && mSurfaceAvailable) {
-      mCameraSource.start(mSurfaceView.getHolder());
-      if (mOverlay != null) {
-        Size size = mCameraSource.getPreviewSize();
-        int min = Math.min(size.getWidth(), size.getHeight());
-        int max = Math.max(size.getWidth(), size.getHeight());
-        if (isPortraitMode()) {
-          // Swap width and height sizes when in portrait, since it will be rotated by
-          // 90 degrees
-          mOverlay.setCameraInfo(min, max, mCameraSource.getCameraFacing());
-        } else {
-          mOverlay.setCameraInfo(max, min, mCameraSource.getCameraFacing());
+  /**
+   * Replaces the camera source with another, on the calling thread.  The old source is stopped,
+   * then {@code onStopped} runs while neither source is delivering frames, then the new source
+   * is started if the old one was running.  Opening a camera takes a while, so call this from a
+   * background thread; the preview and overlay go on showing the old camera until it stops.<p>
+   *
+   * The cameras are stopped and started without holding the lock the UI thread takes to pause,
+   * lay out, or gain and lose the preview surface, so none of those wait for a camera to open.
+   * Whether the new source should still run is checked again once it's open.<p>
+   *
+   * The old source is only stopped, not released, since releasing a camera source releases its
+   * detector as well, and the new source may share it.
+   *
+   * @return true if the new source was started; if not, it starts with the next
+   *         {@link #start(CameraSource)}, or when the preview surface is next available
+   */
+  public boolean swap(CameraSource cameraSource, Runnable onStopped) throws IOException {
+    CameraSource oldSource;
+    synchronized (mCameraLock) {
+      oldSource = mCameraSource;
+      mStartRequested = mIsRunning;
+      mIsRunning = false;
+      mIsSwitching = true;
+      mCameraSource = cameraSource;
+    }
+
+    boolean isRunning = false;
+    try {
+      if (oldSource != null) {
+        oldSource.stop();
+      }
+      if (mTelemetry != null) {
+        mTelemetry.onCameraStopped();
+      }
+      onStopped.run();
+
+      if (isStartWanted(cameraSource)) {
+        cameraSource.start(mSurfaceView.getHolder());
+        synchronized (mCameraLock) {
+          isRunning = isStartWanted(cameraSource);
+          if (isRunning) {
+            onCameraStarted();
+          }
+        }
+        if (!isRunning) {
+          // Stopped, released, or out of a surface while the camera was opening
+          cameraSource.stop();
         }
-        mOverlay.clear();
       }
-      mStartRequested = false;
+    } finally {
+      synchronized (mCameraLock) {
+        mIsSwitching = false;
+      }
+
+      // The new camera's preview may be a different size.  Laying out again also starts the
+      // new camera, if it's wanted but the surface only came back during the switch.
+      post(mRequestLayoutRunnable);
+    }
+    return isRunning;
+  }
+
+  private final Runnable mRequestLayoutRunnable = new Runnable() {
+    @Override
+    public void run() {
+      requestLayout();
+    }
+  };
+
+  private boolean isStartWanted(CameraSource cameraSource) {
+    synchronized (mCameraLock) {
+      return mStartRequested && mSurfaceAvailable && (mCameraSource == cameraSource);
+    }
+  }
+
+  private void startIfReady() throws IOException {
+    synchronized (mCameraLock) {
+      if (mStartRequested && mSurfaceAvailable && !mIsSwitching) {
+        mCameraSource.start(mSurfaceView.getHolder());
+        onCameraStarted();
+      }
     }
   }
 
+  // Called with the lock held, once the current camera source has started.
+  private void onCameraStarted() {
+    mIsRunning = true;
+    if (mTelemetry != null) {
+      mTelemetry.onCameraStarted();
+    }
+    if (mOverlay != null) {
+      Size size = mCameraSource.getPreviewSize();
+      int min = Math.min(size.getWidth(), size.getHeight());
+      int max = Math.max(size.getWidth(), size.getHeight());
+      if (isPortraitMode()) {
+        // Swap width and height sizes when in portrait, since it will be rotated by
+        // 90 degrees
+        mOverlay.setCameraInfo(min, max, mCameraSource.getCameraFacing());
+      } else {
+        mOverlay.setCameraInfo(max, min, mCameraSource.getCameraFacing());
+      }
+      mOverlay.clear();
+    }
+    mStartRequested = false;
+  }
+
   private class SurfaceCallback implements SurfaceHolder.Callback {
     @Override
     public void surfaceCreated(SurfaceHolder surface) {
-      mSurfaceAvailable = true;
+      synchronized (mCameraLock) {
+        mSurfaceAvailable = true;
+      }
       try {
         startIfReady();
       } catch (IOException e) {
@@ -116,7 +241,9 @@ public class CameraSourcePreview extends ViewGroup {
 
     @Override
     public void surfaceDestroyed(SurfaceHolder surface) {
-      mSurfaceAvailable = false;
+      synchronized (mCameraLock) {
+        mSurfaceAvailable = false;
+      }
     }
 
     @Override
@@ -129,11 +256,13 @@ public class CameraSourcePreview extends ViewGroup {
   protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
     int previewWidth = 320;
     int previewHeight = 240;
-    if (mCameraSource != null) {
-      Size size = mCameraSource.getPreviewSize();
-      if (size != null) {
-        previewWidth = size.getWidth();
-        previewHeight = size.getHeight();
+    synchronized (mCameraLock) {
+      if (mCameraSource != null) {
+        Size size = mCameraSource.getPreviewSize();
+        if (size != null) {
+          previewWidth = size.getWidth();
+          previewHeight = size.getHeight();
+        }
       }
     }
 
@@ -0,0 +1,88 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+/**
+ * A rectangular area of the overlay, in view coordinates, that grows to cover every area added to
+ * it.  Used to track what needs to be redrawn, and what each graphic covers.<p>
+ *
+ * This deliberately doesn't use {@code RectF}, so that it can be exercised in local unit tests.
+ */
+class DirtyRegion {
+
+  private static final String TAG = "DirtyRegion";
+
+  private float mLeft;
+  private float mTop;
+  private float mRight;
+  private float mBottom;
+  private boolean mEmpty = true;
+
+  float getLeft() {
+    return mLeft;
+  }
+
+  float getTop() {
+    return mTop;
+  }
+
+  float getRight() {
+    return mRight;
+  }
+
+  float getBottom() {
+    return mBottom;
+  }
+
+  boolean isEmpty() {
+    return mEmpty;
+  }
+
+  void setEmpty() {
+    mEmpty = true;
+  }
+
+  /**
+   * Replaces this region with the given rectangle.  The edges may be given in either order.
+   */
+  void set(float left, float top, float right, float bottom) {
+    mEmpty = true;
+    union(left, top, right, bottom);
+  }
+
+  void set(DirtyRegion other) {
+    mLeft = other.mLeft;
+    mTop = other.mTop;
+    mRight = other.mRight;
+    mBottom = other.mBottom;
+    mEmpty = other.mEmpty;
+  }
+
+  /**
+   * Grows this region to also cover the given rectangle.  The edges may be given in either order,
+   * since some graphics are drawn mirrored.
+   */
+  void union(float left, float top, float right, float bottom) {
+    float minX = Math.min(left, right);
+    float maxX = Math.max(left, right);
+    float minY = Math.min(top, bottom);
+    float maxY = Math.max(top, bottom);
+    if (mEmpty) {
+      mLeft = minX;
+      mTop = minY;
+      mRight = maxX;
+      mBottom = maxY;
+      mEmpty = false;
+    } else {
+      mLeft = Math.min(mLeft, minX);
+      mTop = Math.min(mTop, minY);
+      mRight = Math.max(mRight, maxX);
+      mBottom = Math.max(mBottom, maxY);
+    }
+  }
+
+  void union(DirtyRegion other) {
+    if (!other.mEmpty) {
+      union(other.mLeft, other.mTop, other.mRight, other.mBottom);
+    }
+  }
+
+}
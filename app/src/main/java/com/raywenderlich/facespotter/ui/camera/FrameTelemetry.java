@@ -0,0 +1,231 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Counts the frames that the camera delivers, that the detector gets through, and that the
+ * overlay draws, so that the frame rates actually achieved can be compared with the one
+ * requested.<p>
+ *
+ * The camera source hands the detector only the latest frame, dropping any that arrived while the
+ * detector was busy.  Its frame ids count every frame the camera delivered, so the frames
+ * delivered are worked out from the ids the detector sees, and the frames dropped are the ones
+ * it never saw.<p>
+ *
+ * {@link CameraSourcePreview} reports when the camera starts and stops, the detector reports
+ * each frame it's done with, and {@link GraphicOverlay} reports each time it draws.  Rates are
+ * per second of the camera running.  Any thread may report or take a {@link Snapshot}.
+ */
+public class FrameTelemetry {
+
+  private static final String TAG = "FrameTelemetry";
+
+  /**
+   * A source of time, in milliseconds.
+   */
+  public interface Clock {
+    long nowMs();
+  }
+
+  public static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nowMs() {
+      return SystemClock.elapsedRealtime();
+    }
+  };
+
+  /**
+   * The counts at one moment, or between two moments (see {@link #since(Snapshot)}).
+   */
+  public static final class Snapshot {
+
+    private final float mRequestedFps;
+    private final long mRunningMs;
+    private final long mCameraFrameCount;
+    private final long mDetectedFrameCount;
+    private final long mDrawnFrameCount;
+
+    Snapshot(float requestedFps, long runningMs, long cameraFrameCount, long detectedFrameCount,
+             long drawnFrameCount) {
+      mRequestedFps = requestedFps;
+      mRunningMs = runningMs;
+      mCameraFrameCount = cameraFrameCount;
+      mDetectedFrameCount = detectedFrameCount;
+      mDrawnFrameCount = drawnFrameCount;
+    }
+
+    /**
+     * Returns the counts between an earlier snapshot and this one, with this one's requested
+     * frame rate.
+     */
+    public Snapshot since(Snapshot earlier) {
+      return new Snapshot(mRequestedFps,
+                          mRunningMs - earlier.mRunningMs,
+                          mCameraFrameCount - earlier.mCameraFrameCount,
+                          mDetectedFrameCount - earlier.mDetectedFrameCount,
+                          mDrawnFrameCount - earlier.mDrawnFrameCount);
+    }
+
+    public float getRequestedFps() {
+      return mRequestedFps;
+    }
+
+    /**
+     * Returns how long the camera has been running, in milliseconds.
+     */
+    public long getRunningMs() {
+      return mRunningMs;
+    }
+
+    public long getCameraFrameCount() {
+      return mCameraFrameCount;
+    }
+
+    public long getDetectedFrameCount() {
+      return mDetectedFrameCount;
+    }
+
+    /**
+     * Returns the number of frames the camera delivered that the detector never saw.
+     */
+    public long getDroppedFrameCount() {
+      return Math.max(0, mCameraFrameCount - mDetectedFrameCount);
+    }
+
+    public long getDrawnFrameCount() {
+      return mDrawnFrameCount;
+    }
+
+    public float getCameraFps() {
+      return perSecond(mCameraFrameCount);
+    }
+
+    public float getDetectorFps() {
+      return perSecond(mDetectedFrameCount);
+    }
+
+    public float getDrawFps() {
+      return perSecond(mDrawnFrameCount);
+    }
+
+    /**
+     * Returns the fraction of the frames the camera delivered that the detector never saw.
+     */
+    public float getDroppedFraction() {
+      return (mCameraFrameCount == 0) ? 0 : (float) getDroppedFrameCount() / mCameraFrameCount;
+    }
+
+    private float perSecond(long count) {
+      return (mRunningMs <= 0) ? 0 : count * 1000f / mRunningMs;
+    }
+
+    /**
+     * Returns the snapshot as space-separated {@code key=value} pairs, for log lines that can
+     * be collected and compared across devices.
+     */
+    @Override
+    public String toString() {
+      return String.format(Locale.US,
+                           "runningMs=%d requestedFps=%.1f cameraFps=%.1f detectorFps=%.1f " +
+                           "drawFps=%.1f cameraFrames=%d detectedFrames=%d droppedFrames=%d " +
+                           "droppedFraction=%.3f drawnFrames=%d",
+                           mRunningMs, mRequestedFps, getCameraFps(), getDetectorFps(),
+                           getDrawFps(), mCameraFrameCount, mDetectedFrameCount,
+                           getDroppedFrameCount(), getDroppedFraction(), mDrawnFrameCount);
+    }
+  }
+
+  private final Clock mClock;
+
+  // Everything below is guarded by the telemetry object.
+  private float mRequestedFps;
+
+  // Time the camera ran before the current run, and when the current run started
+  private long mRunningMs;
+  private boolean mIsRunning;
+  private long mStartedMs;
+
+  // Camera frames delivered before the current run, and the ids seen during it
+  private long mCameraFrameCount;
+  private boolean mHasFrameId;
+  private int mFirstFrameId;
+  private int mLastFrameId;
+
+  private long mDetectedFrameCount;
+  private long mDrawnFrameCount;
+
+  public FrameTelemetry(Clock clock) {
+    mClock = clock;
+  }
+
+  /**
+   * Sets the frame rate asked of the camera, for comparison with the one it delivers.
+   */
+  public synchronized void setRequestedFps(float requestedFps) {
+    mRequestedFps = requestedFps;
+  }
+
+  /**
+   * Reports that the camera has started delivering frames.  Frame ids may start over.
+   */
+  public synchronized void onCameraStarted() {
+    endRun();
+    mIsRunning = true;
+    mStartedMs = mClock.nowMs();
+  }
+
+  public synchronized void onCameraStopped() {
+    endRun();
+  }
+
+  private void endRun() {
+    if (mIsRunning) {
+      mRunningMs += mClock.nowMs() - mStartedMs;
+      mIsRunning = false;
+    }
+    mCameraFrameCount += getRunFrameCount();
+    mHasFrameId = false;
+  }
+
+  private long getRunFrameCount() {
+    return mHasFrameId ? (long) mLastFrameId - mFirstFrameId + 1 : 0;
+  }
+
+  /**
+   * Reports that the detector is done with a frame.
+   *
+   * @param frameId the frame's id, from its metadata
+   */
+  public synchronized void onFrameDetected(int frameId) {
+    mDetectedFrameCount++;
+    if (!mHasFrameId) {
+      mHasFrameId = true;
+      mFirstFrameId = frameId;
+      mLastFrameId = frameId;
+    } else if (frameId > mLastFrameId) {
+      mLastFrameId = frameId;
+    }
+  }
+
+  /**
+   * Reports that the overlay has drawn a frame.
+   */
+  public synchronized void onOverlayDrawn() {
+    mDrawnFrameCount++;
+  }
+
+  /**
+   * Returns the counts since the telemetry was created.
+   */
+  public synchronized Snapshot getSnapshot() {
+    long runningMs = mRunningMs;
+    if (mIsRunning) {
+      runningMs += mClock.nowMs() - mStartedMs;
+    }
+    return new Snapshot(mRequestedFps, runningMs, mCameraFrameCount + getRunFrameCount(),
+                        mDetectedFrameCount, mDrawnFrameCount);
+  }
+
+}
@@ -18,14 +18,13 @@ package com.raywenderlich.facespotter.ui.camera;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.view.View;
 
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
  * (i.e., the camera preview).  The creator can add graphics objects, update the objects, and remove
@@ -43,6 +42,9 @@ import java.util.Set;
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the coordinate
  * from the preview's coordinate system to the view coordinate system.</li>
  * </ol>
+ *
+ * Graphics may be added and removed from any thread without waiting for drawing to finish, and are
+ * drawn in the order in which they were added.
  */
 public class GraphicOverlay extends View {
 
@@ -50,11 +52,91 @@ public class GraphicOverlay extends View {
 
   private final Object mLock = new Object();
   private int mPreviewWidth;
-  private float mWidthScaleFactor = 1.0f;
   private int mPreviewHeight;
-  private float mHeightScaleFactor = 1.0f;
-  private int mFacing = CameraSource.CAMERA_FACING_BACK;
-  private Set<Graphic> mGraphics = new HashSet<>();
+
+  // How preview coordinates map to view coordinates.  Written under mLock, and read without it
+  // by graphics on any thread.
+  private volatile Transform mTransform =
+    new Transform(1.0f, 1.0f, 0, CameraSource.CAMERA_FACING_BACK);
+  private final GraphicRegistry<Graphic> mGraphics = new GraphicRegistry<>();
+
+  // Counts the passes through onDraw(), so that graphics can share work done once per frame.
+  private long mFrameNumber;
+
+  // Coalesces all of the redraw requests made during a display frame into a single invalidate.
+  private final InvalidationScheduler mInvalidationScheduler;
+
+  // Told about every pass through onDraw(), if set
+  private volatile FrameTelemetry mTelemetry;
+
+  // Runs graphics' tasks on the drawing thread.  View.post() can't be used from other threads:
+  // before API 24, posting to a view that isn't attached queues the task on the posting
+  // thread's looper, and the tracker workers that release graphics have none to run it.
+  private final Handler mDrawingThreadHandler = new Handler(Looper.getMainLooper());
+
+  /**
+   * How preview coordinates map to view coordinates, as of one moment: the scale factors, the
+   * view's width and the camera's facing.  The overlay replaces its transform as a whole whenever
+   * any of these change, so code working from one transform never sees a mix of old and new
+   * values, whichever thread it runs on.
+   */
+  public static final class Transform {
+
+    private final float mWidthScaleFactor;
+    private final float mHeightScaleFactor;
+    private final int mViewWidth;
+    private final int mFacing;
+
+    Transform(float widthScaleFactor, float heightScaleFactor, int viewWidth, int facing) {
+      mWidthScaleFactor = widthScaleFactor;
+      mHeightScaleFactor = heightScaleFactor;
+      mViewWidth = viewWidth;
+      mFacing = facing;
+    }
+
+    /**
+     * Returns true if the preview is from a front-facing camera, and so is mirrored.
+     */
+    public boolean isFrontFacing() {
+      return mFacing == CameraSource.CAMERA_FACING_FRONT;
+    }
+
+    /**
+     * Adjusts a horizontal value of the supplied value from the preview scale to the view
+     * scale.
+     */
+    public float scaleX(float horizontal) {
+      return horizontal * mWidthScaleFactor;
+    }
+
+    /**
+     * Adjusts a vertical value of the supplied value from the preview scale to the view scale.
+     */
+    public float scaleY(float vertical) {
+      return vertical * mHeightScaleFactor;
+    }
+
+    /**
+     * Adjusts the x coordinate from the preview's coordinate system to the view coordinate
+     * system.
+     */
+    public float translateX(float x) {
+      if (isFrontFacing()) {
+        return mViewWidth - scaleX(x);
+      } else {
+        return scaleX(x);
+      }
+    }
+
+    /**
+     * Adjusts the y coordinate from the preview's coordinate system to the view coordinate
+     * system.
+     */
+    public float translateY(float y) {
+      return scaleY(y);
+    }
+
+  }
 
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay.  Subclass
@@ -65,6 +147,11 @@ public class GraphicOverlay extends View {
 
     private GraphicOverlay mOverlay;
 
+    // The area of the view this graphic covered the last time it reported its bounds, and the
+    // scratch area used to work out what needs redrawing when they change.
+    private final DirtyRegion mBounds = new DirtyRegion();
+    private final DirtyRegion mDirtyBounds = new DirtyRegion();
+
     public Graphic(GraphicOverlay overlay) {
         mOverlay = overlay;
     }
@@ -83,19 +170,55 @@ public class GraphicOverlay extends View {
      */
     public abstract void draw(Canvas canvas);
 
+    /**
+     * Called on the drawing thread for every graphic in the overlay before any of them is drawn.
+     * Graphics which share work across the whole scene (e.g., a simulation that steps every
+     * graphic at once) can submit their part of it here, and pick up the results in
+     * {@link #draw(Canvas)}.  Does nothing by default.
+     */
+    public void prepare() {
+    }
+
+    /**
+     * Returns the number of the frame currently being prepared or drawn, which is the same for
+     * every graphic within a frame and different from one frame to the next.  Only valid on the
+     * drawing thread.
+     */
+    public long getFrameNumber() {
+      return mOverlay.mFrameNumber;
+    }
+
+    /**
+     * Returns the overlay's current mapping from preview to view coordinates.  It can be used
+     * from any thread.  Work that makes several conversions off the UI thread should take one
+     * transform and use it throughout, rather than the conversion methods below, which each pick
+     * up the latest transform.
+     */
+    public Transform getTransform() {
+      return mOverlay.mTransform;
+    }
+
+    /**
+     * Returns true if the preview is from a front-facing camera, and so is mirrored.  This can
+     * change whenever the camera does.
+     */
+    public boolean isFrontFacing() {
+      return getTransform().isFrontFacing();
+    }
+
     /**
      * Adjusts a horizontal value of the supplied value from the preview scale to the view
      * scale.
      */
     public float scaleX(float horizontal) {
-      return horizontal * mOverlay.mWidthScaleFactor;
+      return getTransform().scaleX(horizontal);
     }
 
     /**
      * Adjusts a vertical value of the supplied value from the preview scale to the view scale.
      */
     public float scaleY(float vertical) {
-      return vertical * mOverlay.mHeightScaleFactor;
+      return getTransform().scaleY(vertical);
     }
 
     /**
@@ -103,11 +226,7 @@ public class GraphicOverlay extends View {
      * system.
      */
     public float translateX(float x) {
-      if (mOverlay.mFacing == CameraSource.CAMERA_FACING_FRONT) {
-        return mOverlay.getWidth() - scaleX(x);
-      } else {
-        return scaleX(x);
-      }
+      return getTransform().translateX(x);
     }
 
     /**
@@ -115,47 +234,108 @@ public class GraphicOverlay extends View {
      * system.
      */
     public float translateY(float y) {
-      return scaleY(y);
+      return getTransform().translateY(y);
     }
 
+    /**
+     * Runs a task on the drawing thread, between passes through the overlay's graphics, whether
+     * or not the overlay is attached to a window.  A graphic removed from the overlay before
+     * posting a task is in no pass that runs after the task, so the task can safely free what
+     * drawing the graphic uses.
+     */
+    public void postToDrawingThread(Runnable task) {
+      mOverlay.mDrawingThreadHandler.post(task);
+    }
+
+    /**
+     * Asks for the overlay to be redrawn in the next display frame.  Requests made within the
+     * same frame, by this or any other graphic, result in a single redraw.  Graphics which know
+     * where they're drawn should use {@link #postInvalidate(float, float, float, float)}
+     * instead, so that only the part of the overlay that has changed is redrawn.
+     */
     public void postInvalidate() {
-      mOverlay.postInvalidate();
+      synchronized (mBounds) {
+        mBounds.setEmpty();
+      }
+      mOverlay.scheduleInvalidate();
+    }
+
+    /**
+     * Reports the area of the view, in view coordinates, that this graphic will cover when it is
+     * next drawn, and asks for that area and the area it previously covered to be redrawn in the
+     * next display frame.
+     */
+    public void postInvalidate(float left, float top, float right, float bottom) {
+      DirtyRegion dirty = mDirtyBounds;
+      synchronized (mBounds) {
+        dirty.set(mBounds);
+        mBounds.set(left, top, right, bottom);
+        dirty.union(mBounds);
+        mOverlay.scheduleInvalidate(dirty);
+      }
+    }
+
+    /**
+     * Asks for the area this graphic last reported covering to be redrawn, or the whole
+     * overlay if it hasn't reported one.
+     */
+    private void invalidateBounds() {
+      synchronized (mBounds) {
+        if (mBounds.isEmpty()) {
+          mOverlay.scheduleInvalidate();
+        } else {
+          mOverlay.scheduleInvalidate(mBounds);
+        }
+      }
     }
 
   }
 
   public GraphicOverlay(Context context, AttributeSet attrs) {
     super(context, attrs);
+    mInvalidationScheduler = new InvalidationScheduler(
+      new InvalidationScheduler.ChoreographerFrameClock(),
+      new InvalidationScheduler.Invalidator() {
+        @Override
+        public void invalidateAll() {
+          invalidate();
+        }
+
+        @Override
+        public void invalidateRegion(int left, int top, int right, int bottom) {
+          invalidate(left, top, right, bottom);
+        }
+      });
   }
 
   /**
    * Removes all graphics from the overlay.
    */
   public void clear() {
-    synchronized (mLock) {
-      mGraphics.clear();
-    }
-    postInvalidate();
+    mGraphics.clear();
+    scheduleInvalidate();
   }
 
   /**
-   * Adds a graphic to the overlay.
+   * Adds a graphic to the overlay.  Adding a graphic that is already in the overlay does nothing.
    */
   public void add(Graphic graphic) {
-    synchronized (mLock) {
-      mGraphics.add(graphic);
+    if (mGraphics.add(graphic)) {
+      graphic.invalidateBounds();
     }
-    postInvalidate();
   }
 
   /**
    * Removes a graphic from the overlay.
    */
   public void remove(Graphic graphic) {
-    synchronized (mLock) {
-      mGraphics.remove(graphic);
+    if (mGraphics.remove(graphic)) {
+      graphic.invalidateBounds();
     }
-    postInvalidate();
+  }
+
+  public void setTelemetry(FrameTelemetry telemetry) {
+    mTelemetry = telemetry;
   }
 
   /**
@@ -166,9 +346,25 @@ public class GraphicOverlay extends View {
     synchronized (mLock) {
       mPreviewWidth = previewWidth;
       mPreviewHeight = previewHeight;
-      mFacing = facing;
+      Transform transform = mTransform;
+      mTransform = new Transform(transform.mWidthScaleFactor, transform.mHeightScaleFactor,
+                                 transform.mViewWidth, facing);
     }
-    postInvalidate();
+    scheduleInvalidate();
+  }
+
+  /**
+   * Returns the number of redraws that graphics and overlay changes have asked for.
+   */
+  public long getRequestedRedrawCount() {
+    return mInvalidationScheduler.getRequestedCount();
+  }
+
+  /**
+   * Returns the number of redraws actually issued, which is at most one per display frame.
+   */
+  public long getIssuedRedrawCount() {
+    return mInvalidationScheduler.getIssuedCount();
   }
 
   /**
@@ -178,16 +374,46 @@ public class GraphicOverlay extends View {
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
 
+    // Publish a new transform only when the view or preview has changed size, so that drawing
+    // doesn't allocate from frame to frame.
     synchronized (mLock) {
+      Transform transform = mTransform;
+      float widthScaleFactor = transform.mWidthScaleFactor;
+      float heightScaleFactor = transform.mHeightScaleFactor;
       if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-        mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-        mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
+        widthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
+        heightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
       }
-
-      for (Graphic graphic : mGraphics) {
-        graphic.draw(canvas);
+      if ((widthScaleFactor != transform.mWidthScaleFactor) ||
+          (heightScaleFactor != transform.mHeightScaleFactor) ||
+          (getWidth() != transform.mViewWidth)) {
+        mTransform = new Transform(widthScaleFactor, heightScaleFactor, getWidth(),
+                                   transform.mFacing);
       }
     }
+
+    // Draw from a snapshot of the graphics, so that trackers adding and removing graphics
+    // never have to wait for drawing to finish.
+    Object[] graphics = mGraphics.snapshot();
+    mFrameNumber++;
+    FrameTelemetry telemetry = mTelemetry;
+    if (telemetry != null) {
+      telemetry.onOverlayDrawn();
+    }
+    for (Object graphic : graphics) {
+      ((Graphic) graphic).prepare();
+    }
+    for (Object graphic : graphics) {
+      ((Graphic) graphic).draw(canvas);
+    }
+  }
+
+  private void scheduleInvalidate() {
+    mInvalidationScheduler.requestInvalidate();
+  }
+
+  private void scheduleInvalidate(DirtyRegion region) {
+    mInvalidationScheduler.requestInvalidate(region);
   }
 
 }
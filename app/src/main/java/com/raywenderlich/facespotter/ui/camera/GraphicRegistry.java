@@ -0,0 +1,97 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free, copy-on-write set of graphics which keeps them in the order they were added.<p>
+ *
+ * Drawing takes an immutable snapshot of the registry and iterates it without holding any lock,
+ * while tracker threads add and remove graphics by atomically swapping in a new snapshot.  Adding
+ * a graphic that is already registered (which trackers do on every frame) only scans the current
+ * snapshot and doesn't copy or write anything.<p>
+ *
+ * Graphics are drawn in snapshot order, so the most recently added graphic is drawn on top.
+ */
+class GraphicRegistry<T> {
+
+  private static final String TAG = "GraphicRegistry";
+
+  private static final Object[] EMPTY = new Object[0];
+
+  private final AtomicReference<Object[]> mSnapshot = new AtomicReference<>(EMPTY);
+
+  /**
+   * Adds an item to the end of the registry.
+   *
+   * @return false if the item was already registered
+   */
+  boolean add(T item) {
+    while (true) {
+      Object[] current = mSnapshot.get();
+      if (indexOf(current, item) >= 0) {
+        return false;
+      }
+
+      Object[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = item;
+      if (mSnapshot.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes an item from the registry, keeping the order of the remaining items.
+   *
+   * @return false if the item wasn't registered
+   */
+  boolean remove(T item) {
+    while (true) {
+      Object[] current = mSnapshot.get();
+      int index = indexOf(current, item);
+      if (index < 0) {
+        return false;
+      }
+
+      Object[] next = EMPTY;
+      if (current.length > 1) {
+        next = new Object[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+      }
+      if (mSnapshot.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes all items from the registry.
+   */
+  void clear() {
+    mSnapshot.set(EMPTY);
+  }
+
+  boolean contains(T item) {
+    return indexOf(mSnapshot.get(), item) >= 0;
+  }
+
+  /**
+   * Returns the registered items, in drawing order.  The returned array is never modified, so it
+   * may be iterated without locking; callers must not modify it either.
+   */
+  Object[] snapshot() {
+    return mSnapshot.get();
+  }
+
+  private static int indexOf(Object[] items, Object item) {
+    for (int i = 0; i < items.length; i++) {
+      if (items[i] == item) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+}
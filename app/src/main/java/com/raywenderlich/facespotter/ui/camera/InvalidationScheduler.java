@@ -0,0 +1,166 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces redraw requests so that a view is invalidated at most once per display frame.<p>
+ *
+ * Every tracked face asks for a redraw whenever it is updated or added to or removed from the
+ * overlay, which can add up to several requests per camera frame.  Only the first request in a
+ * display frame schedules a frame callback; the rest are absorbed until the callback runs and
+ * issues a single invalidation.  Redraw work therefore follows the display rate, rather than the
+ * number of faces multiplied by the detector rate.<p>
+ *
+ * Requests may name the area that needs redrawing.  The areas requested during a frame are merged,
+ * and only their union is invalidated, unless some request in the frame asked for the whole view.<p>
+ *
+ * Requests may be made from any thread.  The invalidation itself runs on whichever thread the
+ * {@link FrameClock} delivers frames to (the UI thread, for {@link ChoreographerFrameClock}).
+ */
+class InvalidationScheduler {
+
+  private static final String TAG = "InvalidationScheduler";
+
+  /**
+   * A source of display frames.
+   */
+  interface FrameClock {
+
+    /**
+     * Runs the callback once, at the start of the next display frame.  May be called from any
+     * thread.
+     */
+    void postFrameCallback(Runnable callback);
+
+  }
+
+  /**
+   * Invalidates all or part of a view.
+   */
+  interface Invalidator {
+
+    void invalidateAll();
+
+    void invalidateRegion(int left, int top, int right, int bottom);
+
+  }
+
+  /**
+   * A {@link FrameClock} driven by the display's vsync, via {@link Choreographer}.  It must be
+   * created on the thread that owns the view being invalidated (normally the UI thread).
+   */
+  static class ChoreographerFrameClock implements FrameClock {
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+
+    @Override
+    public void postFrameCallback(final Runnable callback) {
+      mChoreographer.postFrameCallback(new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+          callback.run();
+        }
+      });
+    }
+
+  }
+
+  private final FrameClock mFrameClock;
+  private final Invalidator mInvalidator;
+  private final AtomicBoolean mFramePending = new AtomicBoolean(false);
+  private final AtomicLong mRequestedCount = new AtomicLong();
+  private final AtomicLong mIssuedCount = new AtomicLong();
+
+  // The area requested so far in the current frame, and whether the whole view was requested.
+  // Guarded by itself; it's only held long enough to merge or take a rectangle.
+  private final DirtyRegion mDirtyRegion = new DirtyRegion();
+  private boolean mDirtyAll;
+
+  // The merged area handed to the invalidator.  Only used on the frame thread.
+  private final DirtyRegion mFrameRegion = new DirtyRegion();
+
+  private final Runnable mFrameCallback = new Runnable() {
+    @Override
+    public void run() {
+      // Clear the pending flag before invalidating, so that a request arriving while we're
+      // invalidating schedules another frame rather than being lost.
+      mFramePending.set(false);
+
+      boolean dirtyAll;
+      synchronized (mDirtyRegion) {
+        dirtyAll = mDirtyAll;
+        mFrameRegion.set(mDirtyRegion);
+        mDirtyAll = false;
+        mDirtyRegion.setEmpty();
+      }
+
+      if (dirtyAll) {
+        mIssuedCount.incrementAndGet();
+        mInvalidator.invalidateAll();
+      } else if (!mFrameRegion.isEmpty()) {
+        mIssuedCount.incrementAndGet();
+        mInvalidator.invalidateRegion((int) Math.floor(mFrameRegion.getLeft()),
+                                      (int) Math.floor(mFrameRegion.getTop()),
+                                      (int) Math.ceil(mFrameRegion.getRight()),
+                                      (int) Math.ceil(mFrameRegion.getBottom()));
+      }
+    }
+  };
+
+  /**
+   * @param frameClock the source of display frames
+   * @param invalidator invalidates the view; called once per frame in which a redraw was requested
+   */
+  InvalidationScheduler(FrameClock frameClock, Invalidator invalidator) {
+    mFrameClock = frameClock;
+    mInvalidator = invalidator;
+  }
+
+  /**
+   * Asks for the whole view to be redrawn in the next display frame.
+   */
+  void requestInvalidate() {
+    synchronized (mDirtyRegion) {
+      mDirtyAll = true;
+    }
+    scheduleFrame();
+  }
+
+  /**
+   * Asks for the given area of the view to be redrawn in the next display frame.
+   */
+  void requestInvalidate(DirtyRegion region) {
+    if (region.isEmpty()) {
+      return;
+    }
+    synchronized (mDirtyRegion) {
+      mDirtyRegion.union(region);
+    }
+    scheduleFrame();
+  }
+
+  /**
+   * Returns the number of redraws that have been requested.
+   */
+  long getRequestedCount() {
+    return mRequestedCount.get();
+  }
+
+  /**
+   * Returns the number of invalidations that have actually been issued.
+   */
+  long getIssuedCount() {
+    return mIssuedCount.get();
+  }
+
+  private void scheduleFrame() {
+    mRequestedCount.incrementAndGet();
+    if (mFramePending.compareAndSet(false, true)) {
+      mFrameClock.postFrameCallback(mFrameCallback);
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+package com.raywenderlich.facespotter;
+
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Takes preview frames from a camera into a {@link Nv21FrameRing}, for detection backends and
+ * preprocessing that need the frames themselves.<p>
+ *
+ * The Play Services camera source buffers frames internally and only hands them to its detector.
+ * This ingester instead registers the ring's buffers with the camera as preview callback buffers,
+ * so that the camera writes each frame straight into one of them.  The frame is passed to the
+ * {@link Consumer} on the camera's callback thread, and its buffer goes back to the camera once
+ * every stage that retained it has released it.  Nothing is allocated or copied per frame.<p>
+ *
+ * Nothing in the app uses this yet; see {@link Nv21FrameRing}.
+ */
+class CameraFrameIngester implements Camera.PreviewCallback {
+
+  private static final String TAG = "CameraFrameIngester";
+
+  /**
+   * Receives each frame as it's filled, on the camera's callback thread.  A consumer that works
+   * on the frame on another thread retains it before returning, and releases it when done.
+   */
+  interface Consumer {
+    void onFrame(Nv21FrameRing.Frame frame);
+  }
+
+  private final Nv21FrameRing mRing;
+  private final int mRotation;
+  private final Consumer mConsumer;
+  private int mNextId;
+
+  /**
+   * @param rotation how far the camera's frames need turning clockwise to be upright, in quarter
+   *                 turns
+   */
+  CameraFrameIngester(Nv21FrameRing ring, int rotation, Consumer consumer) {
+    mRing = ring;
+    mRotation = rotation;
+    mConsumer = consumer;
+  }
+
+  /**
+   * Starts taking frames from the camera, whose preview size must match the ring's.  Call
+   * before or after starting the preview.
+   */
+  void start(final Camera camera) {
+    camera.setPreviewCallbackWithBuffer(this);
+    mRing.setRecycler(new Nv21FrameRing.Recycler() {
+      @Override
+      public void recycle(byte[] buffer) {
+        try {
+          camera.addCallbackBuffer(buffer);
+        } catch (RuntimeException e) {
+          // The camera was released while the frame was in the pipeline.
+          Log.w(TAG, "Couldn't return a frame buffer to the camera", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stops taking frames from the camera.  Frames still in the pipeline stay valid until they're
+   * released, and their buffers are given to the camera that's started next, each once.
+   */
+  void stop(Camera camera) {
+    mRing.setRecycler(null);
+    camera.setPreviewCallbackWithBuffer(null);
+  }
+
+  @Override
+  public void onPreviewFrame(byte[] data, Camera camera) {
+    if (data == null) {
+      return;
+    }
+    Nv21FrameRing.Frame frame =
+      mRing.acquire(data, mNextId++, SystemClock.elapsedRealtime(), mRotation);
+    try {
+      mConsumer.onFrame(frame);
+    } finally {
+      frame.release();
+    }
+  }
+
+  Nv21FrameRing getRing() {
+    return mRing;
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CameraSwitchTimer}.
+ */
+public class CameraSwitchTimerTest {
+
+  private static final long MS = 1000000;
+
+  private static class FakeClock implements LatencyMonitor.Clock {
+    long mNowNs;
+
+    @Override
+    public long nowNs() {
+      return mNowNs;
+    }
+  }
+
+  private FakeClock mClock;
+  private CameraSwitchTimer mTimer;
+
+  @Before
+  public void setUp() throws Exception {
+    mClock = new FakeClock();
+    mTimer = new CameraSwitchTimer(mClock);
+  }
+
+  // Switches cameras, taking the given times for each phase.
+  private boolean runSwitch(long prepareMs, long stopMs, long startMs, long firstFrameMs) {
+    mTimer.onSwitchStarted();
+    mClock.mNowNs += prepareMs * MS;
+    mTimer.onPhaseDone(CameraSwitchTimer.PREPARED);
+    mClock.mNowNs += stopMs * MS;
+    mTimer.onPhaseDone(CameraSwitchTimer.STOPPED);
+    mClock.mNowNs += startMs * MS;
+    mTimer.onPhaseDone(CameraSwitchTimer.STARTED);
+    mClock.mNowNs += firstFrameMs * MS;
+    return mTimer.onPhaseDone(CameraSwitchTimer.FIRST_FRAME);
+  }
+
+  @Test
+  public void noSwitch_timesNothing() throws Exception {
+    assertFalse(mTimer.isSwitching());
+    assertFalse(mTimer.onPhaseDone(CameraSwitchTimer.FIRST_FRAME));
+    assertEquals(0, mTimer.getSwitchCount());
+    assertEquals("switches=0", mTimer.toString());
+  }
+
+  @Test
+  public void phases_areTimedOneAfterAnother() throws Exception {
+    assertTrue(runSwitch(400, 50, 200, 40));
+
+    assertFalse(mTimer.isSwitching());
+    assertEquals(1, mTimer.getSwitchCount());
+    assertEquals(400 * MS, mTimer.getLastPhaseNs(CameraSwitchTimer.PREPARED));
+    assertEquals(50 * MS, mTimer.getLastPhaseNs(CameraSwitchTimer.STOPPED));
+    assertEquals(200 * MS, mTimer.getLastPhaseNs(CameraSwitchTimer.STARTED));
+    assertEquals(40 * MS, mTimer.getLastPhaseNs(CameraSwitchTimer.FIRST_FRAME));
+    // The old camera previews while the detectors are prepared.
+    assertEquals(290 * MS, mTimer.getLastBlankNs());
+  }
+
+  @Test
+  public void framesBeforeNewCameraStarts_areIgnored() throws Exception {
+    mTimer.onSwitchStarted();
+    mClock.mNowNs += 10 * MS;
+    mTimer.onPhaseDone(CameraSwitchTimer.PREPARED);
+
+    // The old camera's last frames are still being detected.
+    assertFalse(mTimer.onPhaseDone(CameraSwitchTimer.FIRST_FRAME));
+    assertTrue(mTimer.isSwitching());
+    assertEquals(0, mTimer.getSwitchCount());
+  }
+
+  @Test
+  public void abandonedSwitch_isNotCounted() throws Exception {
+    // Paused before the new camera started.
+    mTimer.onSwitchStarted();
+    mTimer.onPhaseDone(CameraSwitchTimer.PREPARED);
+    mTimer.onPhaseDone(CameraSwitchTimer.STOPPED);
+
+    assertTrue(runSwitch(0, 60, 240, 30));
+    assertEquals(1, mTimer.getSwitchCount());
+    assertEquals(330 * MS, mTimer.getLastBlankNs());
+  }
+
+  @Test
+  public void toString_hasLastAndMeanPhases() throws Exception {
+    runSwitch(500, 40, 200, 30);
+    runSwitch(0, 60, 300, 50);
+    String line = mTimer.toString();
+
+    assertTrue(line, line.startsWith("switches=2 "));
+    assertTrue(line, line.contains(" prepareMs=0.0 "));
+    assertTrue(line, line.contains(" blankMs=410.0 "));
+    assertTrue(line, line.contains(" meanPrepareMs=250.0 "));
+    assertTrue(line, line.contains(" meanStartMs=250.0 "));
+    for (String pair : line.split(" ")) {
+      assertEquals(pair, 2, pair.split("=").length);
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Landmark;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CascadeFaceEngine}.
+ */
+public class CascadeFaceEngineTest {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+
+  private CascadeFaceEngine mEngine;
+  private LuminanceFrame mFrame;
+  private DetectedFaces mFaces;
+
+  @Before
+  public void setUp() throws Exception {
+    mEngine = new CascadeFaceEngine(HaarCascade.getDefault(), 0.1f);
+    mFrame = new LuminanceFrame();
+    mFaces = new DetectedFaces();
+  }
+
+  private void detect(byte[] image, int width, int height, int rotation) {
+    mFrame.set(ByteBuffer.wrap(image), width, height, rotation, 0, 0, false);
+    mEngine.detect(mFrame, mFaces);
+  }
+
+  // Asserts that the face at the given index is within a fifth of its size of the given square.
+  private void assertFaceNear(int index, int left, int top, int size) {
+    float tolerance = size * 0.2f;
+    assertEquals(left, mFaces.getX(index), tolerance);
+    assertEquals(top, mFaces.getY(index), tolerance);
+    assertEquals(size, mFaces.getWidth(index), tolerance);
+  }
+
+  @Test
+  public void background_hasNoFaces() throws Exception {
+    detect(LuminanceFaces.background(WIDTH, HEIGHT, 1), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+
+    assertEquals(0, mFaces.size());
+  }
+
+  @Test
+  public void oneFace_isFound() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 2);
+    LuminanceFaces.drawFace(image, WIDTH, 100, 60, 96);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+
+    assertEquals(1, mFaces.size());
+    assertFaceNear(0, 100, 60, 96);
+    assertEquals(DetectedFaces.UNCOMPUTED_PROBABILITY,
+                 mFaces.getIsSmilingProbability(0), 0);
+  }
+
+  @Test
+  public void landmarks_areWithinFace() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 3);
+    LuminanceFaces.drawFace(image, WIDTH, 100, 60, 96);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+
+    assertEquals(1, mFaces.size());
+    assertTrue(mFaces.hasLandmark(0, Landmark.LEFT_EYE));
+    assertTrue(mFaces.hasLandmark(0, Landmark.BOTTOM_MOUTH));
+    // The subject's left eye is on the right of the image.
+    assertEquals(100 + 96 * 0.72f, mFaces.getLandmarkX(0, Landmark.LEFT_EYE), 96 * 0.2f);
+    assertEquals(100 + 96 * 0.28f, mFaces.getLandmarkX(0, Landmark.RIGHT_EYE), 96 * 0.2f);
+    assertTrue(mFaces.getLandmarkY(0, Landmark.BOTTOM_MOUTH) >
+               mFaces.getLandmarkY(0, Landmark.NOSE_BASE));
+  }
+
+  @Test
+  public void severalFaces_ofDifferentSizes() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 4);
+    LuminanceFaces.drawFace(image, WIDTH, 10, 20, 120);
+    LuminanceFaces.drawFace(image, WIDTH, 200, 40, 64);
+    LuminanceFaces.drawFace(image, WIDTH, 180, 150, 48);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+
+    assertEquals(3, mFaces.size());
+  }
+
+  @Test
+  public void rotatedFrame_reportsUprightCoordinates() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 5);
+    LuminanceFaces.drawFace(image, WIDTH, 150, 40, 100);
+    // Captured sideways, HEIGHT wide and WIDTH high.
+    byte[] sideways = LuminanceFaces.rotateAnticlockwise(image, WIDTH, HEIGHT);
+    detect(sideways, HEIGHT, WIDTH, LuminanceFrame.ROTATION_90);
+
+    assertEquals(1, mFaces.size());
+    assertFaceNear(0, 150, 40, 100);
+  }
+
+  @Test
+  public void movingFace_keepsItsId() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 6);
+    LuminanceFaces.drawFace(image, WIDTH, 100, 60, 96);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+    assertEquals(1, mFaces.size());
+    int id = mFaces.getId(0);
+
+    image = LuminanceFaces.background(WIDTH, HEIGHT, 7);
+    LuminanceFaces.drawFace(image, WIDTH, 112, 64, 96);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+    assertEquals(1, mFaces.size());
+    assertEquals(id, mFaces.getId(0));
+
+    // Gone for a frame, then back: a new face as far as the engine knows.
+    detect(LuminanceFaces.background(WIDTH, HEIGHT, 8), WIDTH, HEIGHT,
+           LuminanceFrame.ROTATION_0);
+    detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+    assertEquals(1, mFaces.size());
+    assertNotEquals(id, mFaces.getId(0));
+  }
+
+  @Test
+  public void facesSmallerThanMinimum_areIgnored() throws Exception {
+    CascadeFaceEngine engine = new CascadeFaceEngine(HaarCascade.getDefault(), 0.3f);
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 9);
+    LuminanceFaces.drawFace(image, WIDTH, 100, 60, 64);
+    mFrame.set(ByteBuffer.wrap(image), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, 0, 0, false);
+    engine.detect(mFrame, mFaces);
+
+    assertEquals(0, mFaces.size());
+  }
+
+  @Test
+  public void pooled_findsTheSameFaces() throws Exception {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 4);
+    LuminanceFaces.drawFace(image, WIDTH, 10, 20, 120);
+    LuminanceFaces.drawFace(image, WIDTH, 200, 40, 64);
+    LuminanceFaces.drawFace(image, WIDTH, 180, 150, 48);
+    TileScanPool pool = new TileScanPool(3);
+    try {
+      mEngine = new CascadeFaceEngine(HaarCascade.getDefault(), 0.1f,
+                                      CascadeFaceEngine.DEFAULT_STEP_FRACTION, pool);
+      detect(image, WIDTH, HEIGHT, LuminanceFrame.ROTATION_0);
+    } finally {
+      pool.close();
+    }
+
+    assertTrue(mEngine.getTileCount() > pool.getWorkerCount());
+    assertEquals(3, mFaces.size());
+    // In the order the faces were grouped: smallest scale first.
+    assertFaceNear(0, 180, 150, 48);
+    assertFaceNear(1, 200, 40, 64);
+    assertFaceNear(2, 10, 20, 120);
+  }
+
+  @Test
+  public void pooled_findsSmallFacesInHighResolutionFrames() throws Exception {
+    int width = 1280;
+    int height = 720;
+    int[][] faces = {
+      { 40, 40, 56 }, { 300, 100, 64 }, { 600, 300, 80 }, { 1000, 500, 48 }, { 700, 600, 60 },
+      { 900, 50, 200 }, { 100, 400, 300 }
+    };
+    byte[] image = LuminanceFaces.background(width, height, 10);
+    for (int[] face : faces) {
+      LuminanceFaces.drawFace(image, width, face[0], face[1], face[2]);
+    }
+    TileScanPool pool = new TileScanPool(3);
+    try {
+      mEngine = new CascadeFaceEngine(HaarCascade.getDefault(), 0.035f,
+                                      CascadeFaceEngine.DEFAULT_STEP_FRACTION, pool);
+      detect(image, width, height, LuminanceFrame.ROTATION_0);
+    } finally {
+      pool.close();
+    }
+
+    // Each face once, wherever the tiles' seams fall.
+    assertEquals(faces.length, mFaces.size());
+    for (int[] face : faces) {
+      int found = 0;
+      for (int i = 0; i < mFaces.size(); i++) {
+        if ((Math.abs(mFaces.getX(i) - face[0]) <= face[2] * 0.2f) &&
+            (Math.abs(mFaces.getY(i) - face[1]) <= face[2] * 0.2f) &&
+            (Math.abs(mFaces.getWidth(i) - face[2]) <= face[2] * 0.2f)) {
+          found++;
+        }
+      }
+      assertEquals(1, found);
+    }
+  }
+
+}
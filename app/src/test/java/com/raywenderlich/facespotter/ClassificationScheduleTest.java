@@ -0,0 +1,65 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ClassificationSchedule}.
+ */
+public class ClassificationScheduleTest {
+
+  private static final int REFRESH_INTERVAL = 5;
+
+  @Test
+  public void certainFaces_areOnlyClassifiedOnRefresh() throws Exception {
+    ClassificationSchedule schedule = new ClassificationSchedule(REFRESH_INTERVAL);
+
+    int classified = 0;
+    for (int i = 0; i < 100; i++) {
+      if (schedule.nextDetection()) {
+        classified++;
+      }
+    }
+
+    assertEquals(100 / REFRESH_INTERVAL, classified);
+    assertEquals(1.0f / REFRESH_INTERVAL, schedule.getClassificationRatio(), 0.001f);
+  }
+
+  @Test
+  public void uncertainFace_isClassifiedOnNextDetection() throws Exception {
+    ClassificationSchedule schedule = new ClassificationSchedule(REFRESH_INTERVAL);
+    assertFalse(schedule.nextDetection());
+
+    schedule.reportUncertain();
+
+    assertTrue(schedule.nextDetection());
+  }
+
+  @Test
+  public void classification_neverRunsTwiceInARow() throws Exception {
+    ClassificationSchedule schedule = new ClassificationSchedule(REFRESH_INTERVAL);
+
+    boolean wasClassified = false;
+    for (int i = 0; i < 20; i++) {
+      schedule.reportUncertain();
+      boolean isClassified = schedule.nextDetection();
+      assertFalse(wasClassified && isClassified);
+      wasClassified = isClassified;
+    }
+    assertEquals(0.5f, schedule.getClassificationRatio(), 0.001f);
+  }
+
+  @Test
+  public void reports_areForTheNextDetectionOnly() throws Exception {
+    ClassificationSchedule schedule = new ClassificationSchedule(REFRESH_INTERVAL);
+    schedule.reportUncertain();
+    assertTrue(schedule.nextDetection());
+
+    // Reported while the tracking detector must run; forgotten afterwards.
+    schedule.reportUncertain();
+    assertFalse(schedule.nextDetection());
+    assertFalse(schedule.nextDetection());
+  }
+
+}
@@ -0,0 +1,138 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ComparingEngine}.
+ */
+public class ComparingEngineTest {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  private static final float DELTA = 0.0001f;
+
+  /**
+   * Reports the same boxes, as left, top and size, on every frame.
+   */
+  private static final class FixedEngine implements FaceDetectionEngine {
+    private final float[] mBoxes;
+    private int mFrameCount;
+
+    FixedEngine(float... boxes) {
+      mBoxes = boxes;
+    }
+
+    @Override
+    public String getName() {
+      return "fixed";
+    }
+
+    @Override
+    public boolean isOperational() {
+      return true;
+    }
+
+    @Override
+    public void detect(LuminanceFrame frame, DetectedFaces faces) {
+      mFrameCount++;
+      faces.clear();
+      for (int i = 0; i < mBoxes.length; i += 3) {
+        faces.add(i / 3, mBoxes[i], mBoxes[i + 1], mBoxes[i + 2], mBoxes[i + 2]);
+      }
+    }
+
+    @Override
+    public void release() {
+    }
+  }
+
+  private static LuminanceFrame frame(int... corners) {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, 1);
+    for (int i = 0; i < corners.length; i += 2) {
+      LuminanceFaces.drawFace(image, WIDTH, corners[i], corners[i + 1], 80);
+    }
+    LuminanceFrame frame = new LuminanceFrame();
+    frame.set(ByteBuffer.wrap(image), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, 1, 0, false);
+    return frame;
+  }
+
+  @Test
+  public void sameEngineTwice_agreesOnEveryFace() throws Exception {
+    HaarCascade cascade = HaarCascade.getDefault();
+    ComparingEngine engine = new ComparingEngine(new CascadeFaceEngine(cascade, 0.1f),
+                                                 new CascadeFaceEngine(cascade, 0.1f));
+    DetectedFaces faces = new DetectedFaces();
+
+    engine.detect(frame(20, 40, 200, 100), faces);
+
+    assertEquals(2, faces.size());
+    assertEquals(1, engine.getFrameCount());
+    assertEquals(2, engine.getMatchCount());
+    assertEquals(1, engine.getRecall(), DELTA);
+    assertEquals(1, engine.getPrecision(), DELTA);
+    assertEquals(1, engine.getMeanMatchOverlap(), DELTA);
+  }
+
+  @Test
+  public void detect_reportsTheReferenceFacesAndRunsBothOnEveryFrame() throws Exception {
+    FixedEngine reference = new FixedEngine(10, 10, 50);
+    FixedEngine candidate = new FixedEngine(100, 100, 40, 200, 20, 40);
+    ComparingEngine engine = new ComparingEngine(reference, candidate);
+    DetectedFaces faces = new DetectedFaces();
+    LuminanceFrame frame = frame();
+
+    engine.detect(frame, faces);
+    engine.detect(frame, faces);
+
+    assertEquals(1, faces.size());
+    assertEquals(10, faces.getX(0), DELTA);
+    assertEquals(2, reference.mFrameCount);
+    assertEquals(2, candidate.mFrameCount);
+    assertEquals(2, engine.getFrameCount());
+  }
+
+  @Test
+  public void missedAndExtraFaces_countAgainstRecallAndPrecision() throws Exception {
+    // The candidate finds the first face a little off, misses the second, and finds two that
+    // the reference doesn't.
+    ComparingEngine engine = new ComparingEngine(
+      new FixedEngine(10, 10, 50, 100, 10, 50),
+      new FixedEngine(15, 10, 50, 200, 20, 40, 200, 150, 40));
+
+    engine.detect(frame(), new DetectedFaces());
+
+    assertEquals(1, engine.getMatchCount());
+    assertEquals(0.5f, engine.getRecall(), DELTA);
+    assertEquals(1 / 3f, engine.getPrecision(), DELTA);
+    // 45 by 50 in common, out of 55 by 50 covered
+    assertEquals(45 / 55f, engine.getMeanMatchOverlap(), DELTA);
+  }
+
+  @Test
+  public void candidateFace_matchesOneReferenceFaceAtMost() throws Exception {
+    ComparingEngine engine = new ComparingEngine(new FixedEngine(10, 10, 50, 12, 10, 50),
+                                                 new FixedEngine(11, 10, 50));
+
+    engine.detect(frame(), new DetectedFaces());
+
+    assertEquals(1, engine.getMatchCount());
+    assertEquals(0.5f, engine.getRecall(), DELTA);
+    assertEquals(1, engine.getPrecision(), DELTA);
+  }
+
+  @Test
+  public void slightOverlap_isNotAMatch() throws Exception {
+    ComparingEngine engine = new ComparingEngine(new FixedEngine(10, 10, 50),
+                                                 new FixedEngine(40, 10, 50));
+
+    engine.detect(frame(), new DetectedFaces());
+
+    assertEquals(0, engine.getMatchCount());
+    assertEquals(0, engine.getMeanMatchOverlap(), DELTA);
+  }
+
+}
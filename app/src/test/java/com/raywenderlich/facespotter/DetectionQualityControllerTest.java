@@ -0,0 +1,154 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DetectionQualityController}.
+ */
+public class DetectionQualityControllerTest {
+
+  private static final long BUDGET_MS = 33;
+  private static final long SLOW_NS = 50 * 1000000L;
+  private static final long FAST_NS = 5 * 1000000L;
+  private static final long ADEQUATE_NS = 25 * 1000000L;
+
+  private int mFrameId;
+
+  // Feeds whole windows of frames at the given latency, each frame skipping ahead by the given
+  // number of camera frames, and returns how many times the level changed.
+  private int feedWindows(DetectionQualityController controller, int windows, long latencyNs,
+                          int frameStep) {
+    int changes = 0;
+    for (int i = 0; i < windows * DetectionQualityController.WINDOW_FRAMES; i++) {
+      mFrameId += frameStep;
+      if (controller.onFrameDetected(mFrameId, latencyNs)) {
+        changes++;
+      }
+    }
+    return changes;
+  }
+
+  @Test
+  public void slowDetection_stepsDownAfterSeveralWindows() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    assertEquals(0, feedWindows(controller, DetectionQualityController.STEP_DOWN_WINDOWS - 1,
+                                SLOW_NS, 1));
+    assertEquals(1, feedWindows(controller, 1, SLOW_NS, 1));
+    assertEquals(DetectionQualityController.DEFAULT_LEVEL - 1, controller.getLevel());
+  }
+
+  @Test
+  public void droppedFrames_stepDownEvenWhenDetectionIsQuick() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    // Every other camera frame is dropped.
+    feedWindows(controller, DetectionQualityController.STEP_DOWN_WINDOWS, ADEQUATE_NS, 2);
+
+    assertEquals(DetectionQualityController.DEFAULT_LEVEL - 1, controller.getLevel());
+  }
+
+  @Test
+  public void slowKeyframes_stepDownDespiteQuickPredictions() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    // Detection runs on every third frame, and the frames in between are predicted.  Averaged
+    // over every frame, the latency would be well within budget.
+    int changes = 0;
+    for (int i = 0; i < DetectionQualityController.STEP_DOWN_WINDOWS *
+                        DetectionQualityController.WINDOW_FRAMES; i++) {
+      mFrameId++;
+      boolean isChanged = (i % 3 == 0)
+        ? controller.onFrameDetected(mFrameId, SLOW_NS)
+        : controller.onFramePredicted(mFrameId);
+      if (isChanged) {
+        changes++;
+      }
+    }
+
+    assertEquals(1, changes);
+    assertEquals(DetectionQualityController.DEFAULT_LEVEL - 1, controller.getLevel());
+  }
+
+  @Test
+  public void fastDetection_stepsUpMoreSlowlyThanDown() throws Exception {
+    DetectionQualityController controller = new DetectionQualityController(BUDGET_MS, 0);
+
+    assertEquals(0, feedWindows(controller, DetectionQualityController.STEP_UP_WINDOWS - 1,
+                                FAST_NS, 1));
+    assertEquals(1, feedWindows(controller, 1, FAST_NS, 1));
+    assertEquals(1, controller.getLevel());
+    assertTrue(DetectionQualityController.STEP_UP_WINDOWS >
+               DetectionQualityController.STEP_DOWN_WINDOWS);
+  }
+
+  @Test
+  public void adequateDetection_holdsLevel() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    assertEquals(0, feedWindows(controller, 20, ADEQUATE_NS, 1));
+    assertEquals(DetectionQualityController.DEFAULT_LEVEL, controller.getLevel());
+  }
+
+  @Test
+  public void alternatingWindows_doNotFlap() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    int changes = 0;
+    for (int i = 0; i < 20; i++) {
+      changes += feedWindows(controller, 1, SLOW_NS, 1);
+      changes += feedWindows(controller, 1, FAST_NS, 1);
+    }
+
+    assertEquals(0, changes);
+  }
+
+  @Test
+  public void firstWindowAfterChange_isIgnored() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+    feedWindows(controller, DetectionQualityController.STEP_DOWN_WINDOWS, SLOW_NS, 1);
+
+    // The camera restarts with new frame ids; the settling window doesn't count towards another
+    // step down.
+    mFrameId = 0;
+    feedWindows(controller, 1, SLOW_NS, 1);
+    assertEquals(0, feedWindows(controller, DetectionQualityController.STEP_DOWN_WINDOWS - 1,
+                                SLOW_NS, 1));
+    assertEquals(DetectionQualityController.DEFAULT_LEVEL - 1, controller.getLevel());
+  }
+
+  @Test
+  public void level_staysWithinLadder() throws Exception {
+    DetectionQualityController lowest = new DetectionQualityController(BUDGET_MS, -5);
+    DetectionQualityController highest = new DetectionQualityController(BUDGET_MS, 99);
+
+    feedWindows(lowest, 20, SLOW_NS, 1);
+    feedWindows(highest, 20, FAST_NS, 1);
+
+    assertEquals(0, lowest.getLevel());
+    assertFalse(lowest.isClassificationEnabled());
+    assertEquals(DetectionQualityController.LEVEL_COUNT - 1, highest.getLevel());
+  }
+
+  @Test
+  public void defaultLevel_matchesOriginalCameraSettings() throws Exception {
+    DetectionQualityController controller =
+      new DetectionQualityController(BUDGET_MS, DetectionQualityController.DEFAULT_LEVEL);
+
+    assertEquals(320, controller.getPreviewWidth());
+    assertEquals(240, controller.getPreviewHeight());
+    assertEquals(60.0f, controller.getRequestedFps(), 0);
+    assertEquals(0.35f, controller.getMinFaceSize(true), 0);
+    assertEquals(0.15f, controller.getMinFaceSize(false), 0);
+    assertTrue(controller.isClassificationEnabled());
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceDataBuffer}, the lock-free handoff between the detector thread
+ * and the drawing thread.
+ */
+public class FaceDataBufferTest {
+
+  @Test
+  public void acquire_beforePublish_returnsEmptySnapshot() throws Exception {
+    FaceDataBuffer buffer = new FaceDataBuffer();
+
+    assertEquals(0, buffer.acquire().getSequence());
+  }
+
+  @Test
+  public void acquire_returnsLatestPublishedFrame() throws Exception {
+    FaceDataBuffer buffer = new FaceDataBuffer();
+    FaceData faceData = new FaceData();
+
+    for (int frame = 1; frame <= 5; frame++) {
+      fill(faceData, frame);
+      buffer.publish(faceData);
+    }
+
+    FaceData snapshot = buffer.acquire();
+    assertEquals(5, snapshot.getSequence());
+    assertConsistent(snapshot, 5);
+
+    // With nothing new published, the reader keeps the same frame.
+    assertSame(snapshot, buffer.acquire());
+  }
+
+  @Test
+  public void acquire_neverReturnsTornFrame() throws Exception {
+    final FaceDataBuffer buffer = new FaceDataBuffer();
+    final int frames = 200000;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        FaceData faceData = new FaceData();
+        for (int frame = 1; frame <= frames; frame++) {
+          fill(faceData, frame);
+          buffer.publish(faceData);
+        }
+      }
+    });
+    writer.start();
+
+    long lastSequence = 0;
+    try {
+      while (lastSequence < frames) {
+        FaceData snapshot = buffer.acquire();
+        long sequence = snapshot.getSequence();
+        assertTrue("sequence went backwards", sequence >= lastSequence);
+        if (sequence != 0) {
+          assertConsistent(snapshot, (int) sequence);
+        }
+        lastSequence = sequence;
+      }
+    } catch (Throwable t) {
+      failure.set(t);
+    }
+    writer.join();
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+  }
+
+  // Every value in the frame is derived from the frame number, so that a snapshot mixing two
+  // frames can be spotted.
+  private static void fill(FaceData faceData, int frame) {
+    faceData.setPosition(frame, frame);
+    faceData.setWidth(frame);
+    faceData.setHeight(frame);
+    faceData.setEulerY(frame);
+    faceData.setEulerZ(frame);
+    faceData.setLeftEyeOpen(frame % 2 == 0);
+    faceData.setRightEyeOpen(frame % 2 == 0);
+    faceData.setSmiling(frame % 2 == 0);
+    faceData.clearLandmarkPositions();
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if ((frame + type) % 3 != 0) {
+        faceData.setLandmarkPosition(type, frame, -frame);
+      }
+    }
+  }
+
+  private static void assertConsistent(FaceData faceData, int frame) {
+    assertEquals(frame, faceData.getPositionX(), 0);
+    assertEquals(frame, faceData.getPositionY(), 0);
+    assertEquals(frame, faceData.getWidth(), 0);
+    assertEquals(frame, faceData.getHeight(), 0);
+    assertEquals(frame, faceData.getEulerY(), 0);
+    assertEquals(frame, faceData.getEulerZ(), 0);
+    assertEquals(frame % 2 == 0, faceData.isLeftEyeOpen());
+    assertEquals(frame % 2 == 0, faceData.isRightEyeOpen());
+    assertEquals(frame % 2 == 0, faceData.isSmiling());
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      boolean expected = (frame + type) % 3 != 0;
+      assertEquals(expected, faceData.hasLandmark(type));
+      if (expected) {
+        assertEquals(frame, faceData.getLandmarkX(type), 0);
+        assertEquals(-frame, faceData.getLandmarkY(type), 0);
+      }
+    }
+  }
+
+}
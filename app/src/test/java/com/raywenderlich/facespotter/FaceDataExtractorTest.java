@@ -0,0 +1,171 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceDataExtractor}, the per-face work {@link FaceTracker#onUpdate}
+ * does on the detector thread for every frame, which must not allocate.
+ */
+public class FaceDataExtractorTest {
+
+  private static final float DELTA = 0.0001f;
+  private static final long FRAME_INTERVAL_MS = 33;
+  private static final int FACE_COUNT = 4;
+  private static final int FRAME_COUNT = 64;
+
+  @Test
+  public void extract_firstDetection_copiesFace() throws Exception {
+    FaceDataExtractor extractor = new FaceDataExtractor();
+    FaceData faceData = new FaceData();
+
+    extractor.extract(face(10, 20, 100, 0.9f, new int[] {Landmark.LEFT_EYE}), 1000, faceData);
+
+    assertEquals(1000, faceData.getTimestampMs());
+    assertEquals(10, faceData.getPositionX(), DELTA);
+    assertEquals(20, faceData.getPositionY(), DELTA);
+    assertEquals(100, faceData.getWidth(), DELTA);
+    assertTrue(faceData.hasLandmark(Landmark.LEFT_EYE));
+    assertFalse(faceData.hasLandmark(Landmark.RIGHT_EYE));
+    assertTrue(faceData.isLeftEyeOpen());
+  }
+
+  @Test
+  public void extract_missingLandmark_isApproximated() throws Exception {
+    FaceDataExtractor extractor = new FaceDataExtractor();
+    FaceData faceData = new FaceData();
+
+    extractor.extract(face(10, 20, 100, 0.9f, new int[] {Landmark.LEFT_EYE}), 1000, faceData);
+    extractor.extract(face(10, 20, 100, 0.9f, new int[0]), 1000 + FRAME_INTERVAL_MS, faceData);
+
+    assertTrue(faceData.hasLandmark(Landmark.LEFT_EYE));
+    assertEquals(landmarkX(10, 100, Landmark.LEFT_EYE),
+                 faceData.getLandmarkX(Landmark.LEFT_EYE), 0.5f);
+  }
+
+  @Test
+  public void extract_unclassifiedFace_keepsEyeState() throws Exception {
+    FaceDataExtractor extractor = new FaceDataExtractor();
+    FaceData faceData = new FaceData();
+
+    extractor.extract(face(10, 20, 100, 0.0f, new int[0]), 1000, faceData);
+    extractor.extract(face(10, 20, 100, Face.UNCOMPUTED_PROBABILITY, new int[0]),
+                      1000 + FRAME_INTERVAL_MS, faceData);
+
+    assertFalse(faceData.isLeftEyeOpen());
+    assertFalse(faceData.isRightEyeOpen());
+  }
+
+  @Test
+  public void steadyStateExtraction_doesNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    Face[][] frames = generateFrames();
+    FaceDataExtractor[] extractors = new FaceDataExtractor[FACE_COUNT];
+    FaceData[] faceData = new FaceData[FACE_COUNT];
+    for (int i = 0; i < FACE_COUNT; i++) {
+      extractors[i] = new FaceDataExtractor();
+      faceData[i] = new FaceData();
+    }
+
+    // Warm up so that class loading and JIT compilation aren't counted.
+    long timeMs = 0;
+    for (int pass = 0; pass < 100; pass++) {
+      timeMs = runFrames(frames, extractors, faceData, timeMs);
+    }
+
+    // As in LandmarkMemoryTest, take the best of a few runs so that one-off allocations made by
+    // the JVM itself on this thread aren't blamed on tracking.
+    long threadId = Thread.currentThread().getId();
+    long fewestBytes = Long.MAX_VALUE;
+    for (int run = 0; run < 5; run++) {
+      long before = threads.getThreadAllocatedBytes(threadId);
+      for (int pass = 0; pass < 50; pass++) {
+        timeMs = runFrames(frames, extractors, faceData, timeMs);
+      }
+      long after = threads.getThreadAllocatedBytes(threadId);
+      fewestBytes = Math.min(fewestBytes, after - before);
+    }
+
+    assertFalse(Float.isNaN(faceData[0].getPositionX()));
+    assertEquals("bytes allocated by steady-state extraction", 0, fewestBytes);
+  }
+
+  private static long runFrames(Face[][] frames, FaceDataExtractor[] extractors,
+                                FaceData[] faceData, long timeMs) {
+    for (int frame = 0; frame < frames.length; frame++) {
+      timeMs += FRAME_INTERVAL_MS;
+      Face[] faces = frames[frame];
+      for (int i = 0; i < faces.length; i++) {
+        if (faces[i] != null) {
+          extractors[i].extract(faces[i], timeMs, faceData[i]);
+        } else {
+          extractors[i].predict(timeMs, faceData[i]);
+        }
+      }
+    }
+    return timeMs;
+  }
+
+  // Faces drifting across the frame, losing half of their landmarks and their classification on
+  // alternate frames, and going undetected now and then, so that every path of the extractor is
+  // exercised.
+  private static Face[][] generateFrames() {
+    int[] allLandmarks = new int[FaceData.LANDMARK_TYPE_COUNT];
+    int[] someLandmarks = new int[FaceData.LANDMARK_TYPE_COUNT / 2];
+    for (int type = 0; type < allLandmarks.length; type++) {
+      allLandmarks[type] = type;
+    }
+    for (int i = 0; i < someLandmarks.length; i++) {
+      someLandmarks[i] = i * 2;
+    }
+
+    Face[][] frames = new Face[FRAME_COUNT][FACE_COUNT];
+    for (int frame = 0; frame < FRAME_COUNT; frame++) {
+      for (int i = 0; i < FACE_COUNT; i++) {
+        if ((frame + i) % 7 == 0) {
+          continue;
+        }
+        boolean isBlurred = (frame % 2) == 1;
+        frames[frame][i] = face(i * 120 + frame, 40 + frame, 80 + (frame % 8),
+                                isBlurred ? Face.UNCOMPUTED_PROBABILITY : (frame % 10) / 10.0f,
+                                isBlurred ? someLandmarks : allLandmarks);
+      }
+    }
+    return frames;
+  }
+
+  private static Face face(float x, float y, float size, float probability, int[] landmarkTypes) {
+    Landmark[] landmarks = new Landmark[landmarkTypes.length];
+    for (int i = 0; i < landmarkTypes.length; i++) {
+      int type = landmarkTypes[i];
+      landmarks[i] = new Landmark(point(landmarkX(x, size, type), y + size * 0.5f), type);
+    }
+    return new Face(0, point(x, y), size, size, 0, 0, landmarks,
+                    probability, probability, probability);
+  }
+
+  private static float landmarkX(float faceX, float size, int type) {
+    return faceX + size * (type + 1) / (FaceData.LANDMARK_TYPE_COUNT + 1);
+  }
+
+  // Sets the fields directly, as the framework's PointF constructors are stubs in local tests.
+  private static PointF point(float x, float y) {
+    PointF point = new PointF();
+    point.x = x;
+    point.y = y;
+    return point;
+  }
+
+}
@@ -0,0 +1,117 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceGeometry}.
+ */
+public class FaceGeometryTest {
+
+  // Preview coordinates are view coordinates, except that x is mirrored across a 400-wide view,
+  // as it is for the front-facing camera.
+  private static final FaceGeometry.ViewTransform MIRRORED = new FaceGeometry.ViewTransform() {
+    @Override
+    public float scaleX(float horizontal) {
+      return horizontal;
+    }
+
+    @Override
+    public float scaleY(float vertical) {
+      return vertical;
+    }
+
+    @Override
+    public float translateX(float x) {
+      return 400 - x;
+    }
+
+    @Override
+    public float translateY(float y) {
+      return y;
+    }
+  };
+
+  // Landmark types, as defined by the Mobile Vision API
+  private static final int BOTTOM_MOUTH = 0;
+  private static final int LEFT_EYE = 4;
+  private static final int LEFT_MOUTH = 5;
+  private static final int NOSE_BASE = 6;
+  private static final int RIGHT_EYE = 10;
+  private static final int RIGHT_MOUTH = 11;
+
+  private static FaceData makeFace(float eulerZ) {
+    FaceData faceData = new FaceData();
+    faceData.setPosition(100, 100);
+    faceData.setWidth(200);
+    faceData.setHeight(240);
+    faceData.setEulerZ(eulerZ);
+    faceData.setLandmarkPosition(LEFT_EYE, 160, 180);
+    faceData.setLandmarkPosition(RIGHT_EYE, 240, 180);
+    faceData.setLandmarkPosition(NOSE_BASE, 200, 240);
+    faceData.setLandmarkPosition(LEFT_MOUTH, 170, 280);
+    faceData.setLandmarkPosition(BOTTOM_MOUTH, 200, 300);
+    faceData.setLandmarkPosition(RIGHT_MOUTH, 230, 280);
+    return faceData;
+  }
+
+  @Test
+  public void compute_missingLandmark_returnsFalse() throws Exception {
+    FaceData faceData = makeFace(0);
+    faceData.clearLandmarkPosition(NOSE_BASE);
+
+    assertFalse(new FaceGeometry().compute(faceData, MIRRORED, true));
+  }
+
+  @Test
+  public void compute_sizesEyesFromEyeDistance() throws Exception {
+    FaceGeometry geometry = new FaceGeometry();
+
+    assertTrue(geometry.compute(makeFace(0), MIRRORED, true));
+    assertEquals(240, geometry.getLeftEyeX(), 0);
+    assertEquals(160, geometry.getRightEyeX(), 0);
+    assertEquals(80 * FaceGeometry.EYE_RADIUS_PROPORTION, geometry.getEyeRadius(), 0.001f);
+    assertEquals(80 * FaceGeometry.IRIS_RADIUS_PROPORTION, geometry.getIrisRadius(), 0.001f);
+    assertFalse(geometry.hasHat());
+  }
+
+  @Test
+  public void compute_mirrorsMustacheForRearCamera() throws Exception {
+    FaceGeometry front = new FaceGeometry();
+    FaceGeometry rear = new FaceGeometry();
+    front.compute(makeFace(0), MIRRORED, true);
+    rear.compute(makeFace(0), MIRRORED, false);
+
+    assertEquals(front.getMustacheLeft(), rear.getMustacheRight());
+    assertEquals(front.getMustacheRight(), rear.getMustacheLeft());
+  }
+
+  @Test
+  public void bounds_coverEveryDecoration() throws Exception {
+    FaceGeometry geometry = new FaceGeometry();
+    assertTrue(geometry.compute(makeFace(30), MIRRORED, false));
+    assertTrue(geometry.hasHat());
+
+    float eyeRadius = geometry.getEyeRadius();
+    assertCovers(geometry, geometry.getLeftEyeX() - eyeRadius, geometry.getLeftEyeY() - eyeRadius,
+                 geometry.getLeftEyeX() + eyeRadius, geometry.getLeftEyeY() + eyeRadius);
+    assertCovers(geometry, geometry.getRightEyeX() - eyeRadius, geometry.getRightEyeY() - eyeRadius,
+                 geometry.getRightEyeX() + eyeRadius, geometry.getRightEyeY() + eyeRadius);
+    assertCovers(geometry, geometry.getNoseLeft(), geometry.getNoseTop(),
+                 geometry.getNoseRight(), geometry.getNoseBottom());
+    assertCovers(geometry, geometry.getMustacheLeft(), geometry.getMustacheTop(),
+                 geometry.getMustacheRight(), geometry.getMustacheBottom());
+    assertCovers(geometry, geometry.getHatLeft(), geometry.getHatTop(),
+                 geometry.getHatRight(), geometry.getHatBottom());
+  }
+
+  private static void assertCovers(FaceGeometry geometry,
+                                   float left, float top, float right, float bottom) {
+    assertTrue(geometry.getBoundsLeft() <= Math.min(left, right));
+    assertTrue(geometry.getBoundsRight() >= Math.max(left, right));
+    assertTrue(geometry.getBoundsTop() <= Math.min(top, bottom));
+    assertTrue(geometry.getBoundsBottom() >= Math.max(top, bottom));
+  }
+
+}
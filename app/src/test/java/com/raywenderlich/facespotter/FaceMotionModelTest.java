@@ -0,0 +1,88 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceMotionModel}.
+ */
+public class FaceMotionModelTest {
+
+  private static final float DELTA = 0.0001f;
+
+  private static final int LEFT_EYE = 4;
+  private static final int NOSE_BASE = 6;
+
+  @Test
+  public void predict_singleKeyframe_staysPut() throws Exception {
+    FaceMotionModel model = new FaceMotionModel();
+    model.onKeyframe(1000, 100, 50, 80, 80);
+
+    model.predict(1100);
+
+    assertEquals(100, model.getPredictedX(), DELTA);
+    assertEquals(50, model.getPredictedY(), DELTA);
+    assertEquals(0, model.getRelativeMotion(100), DELTA);
+  }
+
+  @Test
+  public void predict_extrapolatesSteadyMotion() throws Exception {
+    FaceMotionModel model = new FaceMotionModel();
+
+    // Moving 1 pixel right and 0.5 pixels down per millisecond, growing 0.1 pixels per millisecond
+    for (int keyframe = 0; keyframe < 10; keyframe++) {
+      long timeMs = keyframe * 50;
+      model.onKeyframe(timeMs, 100 + timeMs, 50 + timeMs * 0.5f,
+                       80 + timeMs * 0.1f, 80 + timeMs * 0.1f);
+    }
+    model.predict(470);
+
+    // The moving average has all but converged on the true velocity.
+    assertEquals(570, model.getPredictedX(), 0.1f);
+    assertEquals(285, model.getPredictedY(), 0.1f);
+    assertEquals(127, model.getPredictedWidth(), 0.1f);
+  }
+
+  @Test
+  public void predictLandmark_keepsProportionsWithinMovedFace() throws Exception {
+    FaceMotionModel model = new FaceMotionModel();
+    model.onKeyframe(0, 100, 100, 100, 100);
+    model.rememberLandmark(LEFT_EYE, 130, 140);
+    model.onKeyframe(100, 200, 100, 100, 100);
+    model.rememberLandmark(LEFT_EYE, 230, 140);
+
+    model.predict(150);
+    float[] out = new float[2];
+
+    assertTrue(model.predictLandmark(LEFT_EYE, out, 0));
+    assertEquals(model.getPredictedX() + 30, out[0], DELTA);
+    assertEquals(140, out[1], DELTA);
+    assertFalse(model.predictLandmark(NOSE_BASE, out, 0));
+  }
+
+  @Test
+  public void staleKeyframe_dropsVelocity() throws Exception {
+    FaceMotionModel model = new FaceMotionModel();
+    model.onKeyframe(0, 0, 0, 100, 100);
+    model.onKeyframe(100, 100, 0, 100, 100);
+    assertTrue(model.getRelativeMotion(100) > 0);
+
+    model.onKeyframe(5000, 300, 0, 100, 100);
+
+    assertEquals(0, model.getRelativeMotion(100), DELTA);
+  }
+
+  @Test
+  public void reset_forgetsFace() throws Exception {
+    FaceMotionModel model = new FaceMotionModel();
+    model.onKeyframe(0, 0, 0, 100, 100);
+    model.rememberLandmark(LEFT_EYE, 30, 40);
+
+    model.reset();
+
+    assertFalse(model.hasKeyframe());
+    assertFalse(model.predictLandmark(LEFT_EYE, new float[2], 0));
+  }
+
+}
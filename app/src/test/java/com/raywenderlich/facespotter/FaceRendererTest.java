@@ -0,0 +1,201 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceRenderer}, drawing headless with {@link Java2dFaceCanvas} and
+ * comparing against golden images in {@code src/test/resources/golden}.<p>
+ *
+ * A missing golden image is written from the test's output, and the test fails so that the new
+ * image gets looked at.  To update a golden image after an intended change in drawing, delete
+ * it and run the tests again.  When a comparison fails, the image that was drawn is written to
+ * {@code build/golden-failures}.
+ */
+public class FaceRendererTest {
+
+  private static final File GOLDEN_DIRECTORY = new File("src/test/resources/golden");
+  private static final File FAILURE_DIRECTORY = new File("build/golden-failures");
+
+  private static final int VIEW_WIDTH = 400;
+  private static final int VIEW_HEIGHT = 480;
+  private static final int BACKGROUND_COLOR = 0xFF404040;
+
+  // Pixels differ if any channel differs by more than this, and images differ if more than
+  // this fraction of their pixels do, which allows for small differences between JDKs.
+  private static final int MAX_CHANNEL_DIFFERENCE = 16;
+  private static final float MAX_DIFFERING_PIXELS = 0.001f;
+
+  // Landmark types, as defined by the Mobile Vision API
+  private static final int BOTTOM_MOUTH = 0;
+  private static final int LEFT_EYE = 4;
+  private static final int LEFT_MOUTH = 5;
+  private static final int NOSE_BASE = 6;
+  private static final int RIGHT_EYE = 10;
+  private static final int RIGHT_MOUTH = 11;
+
+  private static class IdentityView implements FaceGeometry.ViewTransform {
+
+    private final boolean mIsMirrored;
+
+    IdentityView(boolean isMirrored) {
+      mIsMirrored = isMirrored;
+    }
+
+    @Override
+    public float scaleX(float horizontal) {
+      return horizontal;
+    }
+
+    @Override
+    public float scaleY(float vertical) {
+      return vertical;
+    }
+
+    @Override
+    public float translateX(float x) {
+      return mIsMirrored ? VIEW_WIDTH - x : x;
+    }
+
+    @Override
+    public float translateY(float y) {
+      return y;
+    }
+  }
+
+  private Java2dFaceCanvas mCanvas;
+
+  @Before
+  public void setUp() throws Exception {
+    mCanvas = new Java2dFaceCanvas(VIEW_WIDTH, VIEW_HEIGHT,
+                                   new File(Java2dFaceCanvas.DRAWABLES_PATH));
+    mCanvas.clear(BACKGROUND_COLOR);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mCanvas.dispose();
+  }
+
+  private static FaceData makeFace(float eulerZ, boolean isLeftEyeOpen, boolean isRightEyeOpen,
+                                   boolean isSmiling) {
+    FaceData faceData = new FaceData();
+    faceData.setSequence(1);
+    faceData.setPosition(100, 100);
+    faceData.setWidth(200);
+    faceData.setHeight(240);
+    faceData.setEulerZ(eulerZ);
+    faceData.setLeftEyeOpen(isLeftEyeOpen);
+    faceData.setRightEyeOpen(isRightEyeOpen);
+    faceData.setSmiling(isSmiling);
+    faceData.setLandmarkPosition(LEFT_EYE, 160, 180);
+    faceData.setLandmarkPosition(RIGHT_EYE, 240, 180);
+    faceData.setLandmarkPosition(NOSE_BASE, 200, 240);
+    faceData.setLandmarkPosition(LEFT_MOUTH, 170, 280);
+    faceData.setLandmarkPosition(BOTTOM_MOUTH, 200, 300);
+    faceData.setLandmarkPosition(RIGHT_MOUTH, 230, 280);
+    return faceData;
+  }
+
+  // Draws the face with its irises resting at the bottom of its eyes.
+  private void draw(FaceData faceData, boolean isFrontFacing) {
+    FaceGeometry geometry = new FaceGeometry();
+    assertTrue(geometry.compute(faceData, new IdentityView(isFrontFacing), isFrontFacing));
+    float drop = geometry.getEyeRadius() - geometry.getIrisRadius();
+    FaceRenderer.draw(mCanvas, geometry, faceData,
+                      geometry.getLeftEyeX(), geometry.getLeftEyeY() + drop,
+                      geometry.getRightEyeX(), geometry.getRightEyeY() + drop);
+  }
+
+  private void assertMatchesGolden(String name) throws Exception {
+    BufferedImage actual = mCanvas.getImage();
+    File golden = new File(GOLDEN_DIRECTORY, name + ".png");
+    if (!golden.exists()) {
+      assertTrue(GOLDEN_DIRECTORY.isDirectory() || GOLDEN_DIRECTORY.mkdirs());
+      ImageIO.write(actual, "png", golden);
+      fail("Wrote a new golden image to " + golden + "; check it and run the test again");
+    }
+
+    BufferedImage expected = ImageIO.read(golden);
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+
+    int differing = 0;
+    for (int y = 0; y < actual.getHeight(); y++) {
+      for (int x = 0; x < actual.getWidth(); x++) {
+        if (channelDifference(expected.getRGB(x, y), actual.getRGB(x, y)) >
+            MAX_CHANNEL_DIFFERENCE) {
+          differing++;
+        }
+      }
+    }
+    int allowed = (int) (MAX_DIFFERING_PIXELS * actual.getWidth() * actual.getHeight());
+    if (differing > allowed) {
+      File failure = new File(FAILURE_DIRECTORY, name + ".png");
+      assertTrue(FAILURE_DIRECTORY.isDirectory() || FAILURE_DIRECTORY.mkdirs());
+      ImageIO.write(actual, "png", failure);
+      fail(differing + " pixels differ from " + golden + " (at most " + allowed +
+           " may); the image drawn is in " + failure);
+    }
+  }
+
+  private static int channelDifference(int a, int b) {
+    int difference = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      difference = Math.max(difference, Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF)));
+    }
+    return difference;
+  }
+
+  @Test
+  public void openEyes() throws Exception {
+    draw(makeFace(0, true, true, false), true);
+
+    assertEquals(6, mCanvas.getCircleCount());
+    assertEquals(0, mCanvas.getLineCount());
+    assertEquals(2, mCanvas.getSpriteCount());
+    assertMatchesGolden("open_eyes");
+  }
+
+  @Test
+  public void closedEyes() throws Exception {
+    draw(makeFace(0, false, false, false), true);
+
+    assertEquals(4, mCanvas.getCircleCount());
+    assertEquals(2, mCanvas.getLineCount());
+    assertMatchesGolden("closed_eyes");
+  }
+
+  @Test
+  public void smiling_hasStarsForIrises() throws Exception {
+    draw(makeFace(0, true, false, true), true);
+
+    assertEquals(4, mCanvas.getCircleCount());
+    assertEquals(3, mCanvas.getSpriteCount());
+    assertMatchesGolden("smiling");
+  }
+
+  @Test
+  public void tiltedHead_hasHat() throws Exception {
+    draw(makeFace(30, true, true, false), true);
+
+    assertEquals(3, mCanvas.getSpriteCount());
+    assertMatchesGolden("tilted_head");
+  }
+
+  @Test
+  public void rearCamera_isNotMirrored() throws Exception {
+    draw(makeFace(-30, false, true, false), false);
+
+    assertMatchesGolden("rear_camera");
+  }
+
+}
@@ -0,0 +1,165 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FaceTraceReader}, reading traces written by
+ * {@link FaceTraceWriter}.
+ */
+public class FaceTraceReaderTest {
+
+  private static final int LEFT_EYE = 4;
+  private static final int RIGHT_EYE = 10;
+
+  @Rule
+  public final TemporaryFolder mFolder = new TemporaryFolder();
+
+  private FaceTraceWriter newWriter(File file) throws IOException {
+    return new FaceTraceWriter(new FileOutputStream(file).getChannel(),
+                               FaceTrace.FLAG_FRONT_FACING);
+  }
+
+  private static FaceTraceReader newReader(File file, long windowBytes) throws IOException {
+    return new FaceTraceReader(new RandomAccessFile(file, "r").getChannel(), windowBytes);
+  }
+
+  // Writes frames with 0, 1, 2, ... faces, whose values are derived from the frame and face.
+  private void writeFrames(FaceTraceWriter writer, int frameCount) throws IOException {
+    float[] landmarks = new float[FaceData.LANDMARK_TYPE_COUNT * 2];
+    for (int frame = 0; frame < frameCount; frame++) {
+      writer.beginFrame(1000 + frame * 33, frame, 320, 240, frame % 4);
+      for (int face = 0; face < frame % 4; face++) {
+        landmarks[LEFT_EYE * 2] = frame + 0.25f;
+        landmarks[LEFT_EYE * 2 + 1] = face + 0.5f;
+        landmarks[RIGHT_EYE * 2] = -frame;
+        landmarks[RIGHT_EYE * 2 + 1] = -face;
+        int landmarkMask = (1 << LEFT_EYE) | (((face % 2) == 0) ? (1 << RIGHT_EYE) : 0);
+        writer.writeFace(face, frame, face, 50, 60, 5, -10, 0.9f, 0.1f,
+                         -1.0f, landmarkMask, landmarks);
+      }
+    }
+  }
+
+  @Test
+  public void roundTrip_acrossManyWindows() throws Exception {
+    File file = mFolder.newFile();
+    FaceTraceWriter writer = newWriter(file);
+    writeFrames(writer, 1000);
+    writer.close();
+
+    // A window barely bigger than a face forces remapping all the way through.
+    FaceTraceReader reader = newReader(file, FaceTrace.MAX_FACE_BYTES + 7);
+    assertTrue(reader.isFrontFacing());
+    int frame = 0;
+    while (reader.nextFrame()) {
+      assertEquals(1000 + frame * 33, reader.getTimestampMs());
+      assertEquals(frame, reader.getFrameId());
+      assertEquals(320, reader.getWidth());
+      assertEquals(240, reader.getHeight());
+      assertEquals(frame % 4, reader.getFaceCount());
+      for (int face = 0; face < reader.getFaceCount(); face++) {
+        reader.nextFace();
+        assertEquals(face, reader.getFaceId());
+        assertEquals(frame, reader.getX(), 0);
+        assertEquals(face, reader.getY(), 0);
+        assertEquals(60, reader.getFaceHeight(), 0);
+        assertEquals(-10, reader.getEulerZ(), 0);
+        assertEquals(0.1f, reader.getIsRightEyeOpenProbability(), 0);
+        assertEquals(-1.0f, reader.getIsSmilingProbability(), 0);
+        assertTrue(reader.hasLandmark(LEFT_EYE));
+        assertEquals(frame + 0.25f, reader.getLandmarkX(LEFT_EYE), 0);
+        assertEquals(face + 0.5f, reader.getLandmarkY(LEFT_EYE), 0);
+        assertEquals((face % 2) == 0, reader.hasLandmark(RIGHT_EYE));
+        assertFalse(reader.hasLandmark(0));
+      }
+      frame++;
+    }
+    reader.close();
+
+    assertEquals(1000, frame);
+  }
+
+  @Test
+  public void unreadFaces_areSkipped() throws Exception {
+    File file = mFolder.newFile();
+    FaceTraceWriter writer = newWriter(file);
+    writeFrames(writer, 8);
+    writer.close();
+
+    FaceTraceReader reader = newReader(file, FaceTraceReader.DEFAULT_WINDOW_BYTES);
+    int frames = 0;
+    while (reader.nextFrame()) {
+      assertEquals(frames++, reader.getFrameId());
+    }
+    reader.close();
+
+    assertEquals(8, frames);
+  }
+
+  @Test
+  public void unfinishedFrame_isLeftOutOnClose() throws Exception {
+    File file = mFolder.newFile();
+    FaceTraceWriter writer = newWriter(file);
+    writeFrames(writer, 4);
+    writer.beginFrame(0, 99, 320, 240, 2);
+    writer.writeFace(0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, new float[0]);
+    writer.close();
+
+    FaceTraceReader reader = newReader(file, FaceTraceReader.DEFAULT_WINDOW_BYTES);
+    int lastFrameId = -1;
+    while (reader.nextFrame()) {
+      lastFrameId = reader.getFrameId();
+    }
+    reader.close();
+
+    assertEquals(3, lastFrameId);
+  }
+
+  @Test(expected = EOFException.class)
+  public void truncatedFrame_isReported() throws Exception {
+    File file = mFolder.newFile();
+    FaceTraceWriter writer = newWriter(file);
+    writeFrames(writer, 4);
+    writer.close();
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    truncated.setLength(truncated.length() - 10);
+    truncated.close();
+
+    FaceTraceReader reader = newReader(file, FaceTraceReader.DEFAULT_WINDOW_BYTES);
+    try {
+      while (reader.nextFrame()) {
+        // Reading the last frame's faces runs off the end.
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFile_isRejected() throws Exception {
+    File file = mFolder.newFile();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("Not a trace at all".getBytes("UTF-8"));
+    out.close();
+
+    newReader(file, FaceTraceReader.DEFAULT_WINDOW_BYTES);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void missingFaces_areAnError() throws Exception {
+    FaceTraceWriter writer = newWriter(mFolder.newFile());
+    writer.beginFrame(0, 0, 320, 240, 1);
+    writer.beginFrame(33, 1, 320, 240, 0);
+  }
+
+}
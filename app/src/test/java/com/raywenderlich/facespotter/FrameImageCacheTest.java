@@ -0,0 +1,143 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameImageCache}.
+ */
+public class FrameImageCacheTest {
+
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+
+  private LuminanceFrame mFrame;
+  private byte[] mImage;
+
+  @Before
+  public void setUp() throws Exception {
+    mFrame = new LuminanceFrame();
+    mImage = LuminanceFaces.background(WIDTH, HEIGHT, 1);
+    LuminanceFaces.drawFace(mImage, WIDTH, 10, 6, 32);
+    mFrame.set(ByteBuffer.wrap(mImage), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, 0, 0, false);
+  }
+
+  private static int pixel(byte[] image, int width, int x, int y) {
+    return image[(y * width) + x] & 0xff;
+  }
+
+  @Test
+  public void levels_halveUntilTooSmall() throws Exception {
+    FrameImageCache images = mFrame.getImages();
+
+    // 64x48, 32x24, 16x12 is too small.
+    assertEquals(2, images.getLevelCount());
+    assertEquals(32, images.getWidth(1));
+    assertEquals(24, images.getHeight(1));
+  }
+
+  @Test
+  public void level0_isTheFrameUpright() throws Exception {
+    byte[] sideways = LuminanceFaces.rotateAnticlockwise(mImage, WIDTH, HEIGHT);
+    mFrame.set(ByteBuffer.wrap(sideways), HEIGHT, WIDTH, LuminanceFrame.ROTATION_90, 0, 0, false);
+    FrameImageCache images = mFrame.getImages();
+
+    assertEquals(WIDTH, images.getWidth(0));
+    assertArrayEquals(mImage, images.getPixels(0));
+  }
+
+  @Test
+  public void otherRotations_areTurnedUpright() throws Exception {
+    // Half a turn is two quarter turns, and three quarter turns is three.
+    byte[] upsideDown = LuminanceFaces.rotateAnticlockwise(
+      LuminanceFaces.rotateAnticlockwise(mImage, WIDTH, HEIGHT), HEIGHT, WIDTH);
+    mFrame.set(ByteBuffer.wrap(upsideDown), WIDTH, HEIGHT, LuminanceFrame.ROTATION_180, 0, 0,
+               false);
+    assertArrayEquals(mImage, mFrame.getImages().getPixels(0));
+
+    byte[] otherWay = LuminanceFaces.rotateAnticlockwise(upsideDown, WIDTH, HEIGHT);
+    mFrame.set(ByteBuffer.wrap(otherWay), HEIGHT, WIDTH, LuminanceFrame.ROTATION_270, 0, 0,
+               false);
+    assertArrayEquals(mImage, mFrame.getImages().getPixels(0));
+  }
+
+  @Test
+  public void downsampledPixels_areMeansOfFour() throws Exception {
+    byte[] half = mFrame.getImages().getPixels(1);
+
+    for (int y = 0; y < HEIGHT / 2; y++) {
+      for (int x = 0; x < WIDTH / 2; x++) {
+        int sum = pixel(mImage, WIDTH, 2 * x, 2 * y) + pixel(mImage, WIDTH, (2 * x) + 1, 2 * y) +
+          pixel(mImage, WIDTH, 2 * x, (2 * y) + 1) + pixel(mImage, WIDTH, (2 * x) + 1, (2 * y) + 1);
+        assertEquals((sum + 2) / 4, pixel(half, WIDTH / 2, x, y));
+      }
+    }
+  }
+
+  @Test
+  public void integrals_sumAboveAndLeft() throws Exception {
+    FrameImageCache images = mFrame.getImages();
+    int[] integral = images.getIntegral(0);
+    long[] squaredIntegral = images.getSquaredIntegral(0);
+    int stride = WIDTH + 1;
+
+    assertEquals(0, integral[0]);
+    assertEquals(0, integral[WIDTH]);
+    assertEquals(0, integral[stride * HEIGHT]);
+    int[][] corners = {{1, 1}, {WIDTH, 1}, {1, HEIGHT}, {20, 30}, {WIDTH, HEIGHT}};
+    for (int[] corner : corners) {
+      int sum = 0;
+      long squaredSum = 0;
+      for (int y = 0; y < corner[1]; y++) {
+        for (int x = 0; x < corner[0]; x++) {
+          int value = pixel(mImage, WIDTH, x, y);
+          sum += value;
+          squaredSum += value * value;
+        }
+      }
+      assertEquals(sum, integral[(corner[1] * stride) + corner[0]]);
+      assertEquals(squaredSum, squaredIntegral[(corner[1] * stride) + corner[0]]);
+    }
+  }
+
+  @Test
+  public void images_areBuiltOncePerFrame() throws Exception {
+    FrameImageCache images = mFrame.getImages();
+    images.getIntegral(1);
+    images.getSquaredIntegral(1);
+    images.getPixels(0);
+    images.getIntegral(0);
+
+    // Level 0's pixels were built for level 1's, and reused for level 0's integrals.
+    assertEquals(2, images.getPixelBuildCount());
+    assertEquals(2, images.getIntegralBuildCount());
+
+    mFrame.set(ByteBuffer.wrap(mImage), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, 1, 0, false);
+    images.getIntegral(0);
+    assertEquals(3, images.getPixelBuildCount());
+    assertEquals(3, images.getIntegralBuildCount());
+  }
+
+  @Test
+  public void sameSizedFrames_reuseArrays() throws Exception {
+    FrameImageCache images = mFrame.getImages();
+    byte[] pixels = images.getPixels(1);
+    int[] integral = images.getIntegral(0);
+
+    byte[] next = LuminanceFaces.background(WIDTH, HEIGHT, 2);
+    mFrame.set(ByteBuffer.wrap(next), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, 1, 0, false);
+    assertSame(pixels, images.getPixels(1));
+    assertSame(integral, images.getIntegral(0));
+    assertEquals(next[0], images.getPixels(0)[0]);
+
+    mFrame.set(ByteBuffer.wrap(LuminanceFaces.background(32, 32, 3)), 32, 32,
+               LuminanceFrame.ROTATION_0, 2, 0, false);
+    assertEquals(32, images.getWidth(0));
+    assertEquals(33 * 33, images.getIntegral(0).length);
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link HaarCascade}.
+ */
+public class HaarCascadeTest {
+
+  // Integral images of the given upright luminance image, with a leading row and column of zeros.
+  private static int[] integral(byte[] image, int width, int height) {
+    int[] integral = new int[(width + 1) * (height + 1)];
+    for (int y = 0; y < height; y++) {
+      int rowSum = 0;
+      for (int x = 0; x < width; x++) {
+        rowSum += image[(y * width) + x] & 0xff;
+        integral[((y + 1) * (width + 1)) + x + 1] = integral[(y * (width + 1)) + x + 1] + rowSum;
+      }
+    }
+    return integral;
+  }
+
+  private static long[] squaredIntegral(byte[] image, int width, int height) {
+    long[] integral = new long[(width + 1) * (height + 1)];
+    for (int y = 0; y < height; y++) {
+      long rowSum = 0;
+      for (int x = 0; x < width; x++) {
+        int value = image[(y * width) + x] & 0xff;
+        rowSum += value * value;
+        integral[((y + 1) * (width + 1)) + x + 1] = integral[(y * (width + 1)) + x + 1] + rowSum;
+      }
+    }
+    return integral;
+  }
+
+  private static HaarCascade read(String cascade) throws IOException {
+    return HaarCascade.read(new StringReader(cascade));
+  }
+
+  @Test
+  public void read_parsesWindowAndStages() throws Exception {
+    HaarCascade cascade = read("# A comment\n" +
+                               "window 20 16\n" +
+                               "\n" +
+                               "stage 1\n" +
+                               "weak 0.5 -1 1  0 0 10 8 1  10 0 10 8 -1\n" +
+                               "stage 0\n" +
+                               "weak 0 0 1  0 0 20 16 1\n");
+
+    assertEquals(20, cascade.getWindowWidth());
+    assertEquals(16, cascade.getWindowHeight());
+    assertEquals(2, cascade.getStageCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsMissingWindow() throws Exception {
+    read("stage 1\nweak 0.5 -1 1  0 0 10 8 1\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsWeakClassifierBeforeStage() throws Exception {
+    read("window 24 24\nweak 0.5 -1 1  0 0 10 8 1\nstage 1\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsRectangleOutsideWindow() throws Exception {
+    read("window 24 24\nstage 1\nweak 0.5 -1 1  20 0 10 8 1\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsTooManyRectangles() throws Exception {
+    read("window 24 24\nstage 1\n" +
+         "weak 0.5 -1 1  0 0 1 1 1  0 0 1 1 1  0 0 1 1 1  0 0 1 1 1\n");
+  }
+
+  @Test(expected = IOException.class)
+  public void read_rejectsBadNumbers() throws Exception {
+    read("window 24 twenty-four\nstage 1\nweak 0.5 -1 1  0 0 10 8 1\n");
+  }
+
+  @Test
+  public void defaultCascade_acceptsFaceAndRejectsBackground() throws Exception {
+    HaarCascade cascade = HaarCascade.getDefault();
+    int size = 48;
+    byte[] image = LuminanceFaces.background(size, size, 1);
+    HaarCascade.Scaled scaled = cascade.scale(2f, size + 1);
+    int stageCount = cascade.getStageCount();
+
+    assertTrue(scaled.evaluate(integral(image, size, size), squaredIntegral(image, size, size),
+                               0, 12f) < stageCount);
+
+    LuminanceFaces.drawFace(image, size, 0, 0, size);
+    assertEquals(stageCount,
+                 scaled.evaluate(integral(image, size, size), squaredIntegral(image, size, size),
+                                 0, 12f));
+  }
+
+  @Test
+  public void flatWindow_isRejectedBeforeAnyStage() throws Exception {
+    HaarCascade cascade = read("window 2 2\nstage -1\nweak 0 0 0  0 0 1 1 1\n");
+    byte[] image = new byte[]{100, 100, 100, 100};
+
+    assertEquals(0, cascade.scale(1f, 3).evaluate(integral(image, 2, 2),
+                                                  squaredIntegral(image, 2, 2), 0, 1f));
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link HysteresisClassifier}.
+ */
+public class HysteresisClassifierTest {
+
+  private static final float UNCOMPUTED = -1.0f;
+
+  private static HysteresisClassifier newEyeClassifier() {
+    return new HysteresisClassifier(0.5f, 0.3f, 0.5f, true);
+  }
+
+  @Test
+  public void initialState_isKeptUntilMeasured() throws Exception {
+    HysteresisClassifier classifier = newEyeClassifier();
+
+    assertTrue(classifier.getState());
+    assertTrue(classifier.update(UNCOMPUTED));
+    assertTrue(classifier.isUncertain());
+  }
+
+  @Test
+  public void noiseAroundOneThreshold_doesNotFlicker() throws Exception {
+    HysteresisClassifier classifier = newEyeClassifier();
+    classifier.update(0.9f);
+
+    // A single threshold of 0.4 would flip on every one of these.
+    int changes = 0;
+    boolean state = classifier.getState();
+    for (int i = 0; i < 50; i++) {
+      boolean newState = classifier.update((i % 2 == 0) ? 0.35f : 0.45f);
+      if (newState != state) {
+        changes++;
+        state = newState;
+      }
+    }
+
+    assertEquals(0, changes);
+    assertTrue(state);
+  }
+
+  @Test
+  public void sustainedChange_flipsState() throws Exception {
+    HysteresisClassifier classifier = newEyeClassifier();
+    classifier.update(0.95f);
+
+    // A blink: closed for two classified frames is enough.
+    classifier.update(0.05f);
+    assertFalse(classifier.update(0.05f));
+
+    // And it takes a clear opening to turn back on.
+    classifier.update(0.45f);
+    assertFalse(classifier.getState());
+    classifier.update(0.95f);
+    assertTrue(classifier.update(0.95f));
+  }
+
+  @Test
+  public void uncomputedProbability_leavesAverageAlone() throws Exception {
+    HysteresisClassifier classifier = newEyeClassifier();
+    classifier.update(0.2f);
+    float average = classifier.getAverage();
+
+    assertFalse(classifier.update(UNCOMPUTED));
+    assertEquals(average, classifier.getAverage(), 0);
+  }
+
+  @Test
+  public void confidentAverage_isCertain() throws Exception {
+    HysteresisClassifier classifier = newEyeClassifier();
+
+    classifier.update(0.95f);
+    assertFalse(classifier.isUncertain());
+
+    classifier.update(0.1f);
+    assertTrue(classifier.isUncertain());
+
+    for (int i = 0; i < 10; i++) {
+      classifier.update(0.02f);
+    }
+    assertFalse(classifier.isUncertain());
+  }
+
+  @Test
+  public void reset_goesBackToInitialState() throws Exception {
+    HysteresisClassifier classifier = new HysteresisClassifier(0.8f, 0.6f, 0.5f, false);
+    classifier.update(0.99f);
+    assertTrue(classifier.getState());
+
+    classifier.reset();
+
+    assertFalse(classifier.getState());
+    assertTrue(classifier.isUncertain());
+  }
+
+}
@@ -0,0 +1,464 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link IrisPhysicsEngine}, which steps every iris in the scene once per
+ * frame on the drawing thread and so must not allocate.
+ */
+public class IrisPhysicsEngineTest {
+
+  private static final int EYE_COUNT = 6;
+  private static final int FRAMES = 5000;
+
+  // Frame intervals to mix, including repeated frames and dropped frames.  They're whole numbers
+  // of simulation steps, so that the simulation has no time left over after each frame.
+  private static final long[] FRAME_INTERVALS_MS = { 20, 10, 20, 30, 0, 20, 50, 10, 40 };
+
+  private static class ManualClock implements IrisPhysicsEngine.Clock {
+
+    long mNowMs;
+
+    ManualClock(long nowMs) {
+      mNowMs = nowMs;
+    }
+
+    @Override
+    public long nowMs() {
+      return mNowMs;
+    }
+  }
+
+  /**
+   * The single-eye simulation as it was before every eye was batched into one engine,
+   * transcribed with the clock passed in rather than read from the system.  Given the same
+   * steps of time, the engine must reproduce its trajectories exactly.
+   */
+  private static class ReferenceEyePhysics {
+
+    private final long TIME_PERIOD_MS = 1000;
+    private final float FRICTION = 2.2f;
+    private final float GRAVITY = 40.0f;
+    private final float BOUNCE_MULTIPLIER = 20.0f;
+    private final float ZERO_TOLERANCE = 0.001f;
+
+    private long mLastUpdateTimeMs;
+    private long mNowMs;
+
+    private float mEyeX;
+    private float mEyeY;
+    private float mEyeRadius;
+
+    private boolean mHasIris;
+    private float mIrisX;
+    private float mIrisY;
+    private float mIrisRadius;
+
+    private float vx = 0.0f;
+    private float vy = 0.0f;
+
+    private int mConsecutiveBounces = 0;
+
+    ReferenceEyePhysics(long nowMs) {
+      mLastUpdateTimeMs = nowMs;
+      mNowMs = nowMs;
+    }
+
+    // Takes one fixed step, as the engine does.
+    void step(EyeMotion motion) {
+      mNowMs += IrisPhysicsEngine.FIXED_STEP_MS;
+      nextIrisPosition(motion.mX, motion.mY, motion.mRadius, motion.irisRadius(), mNowMs);
+    }
+
+    void nextIrisPosition(float eyeX, float eyeY, float eyeRadius, float irisRadius, long nowMs) {
+      mEyeX = eyeX;
+      mEyeY = eyeY;
+      mEyeRadius = eyeRadius;
+      if (!mHasIris) {
+        mIrisX = eyeX;
+        mIrisY = eyeY;
+        mHasIris = true;
+      }
+      mIrisRadius = irisRadius;
+
+      long elapsedTimeMs = nowMs - mLastUpdateTimeMs;
+      float simulationRate = (float) elapsedTimeMs / TIME_PERIOD_MS;
+      mLastUpdateTimeMs = nowMs;
+
+      if (!isStopped()) {
+        vy += GRAVITY * simulationRate;
+      }
+
+      vx = applyFriction(vx, simulationRate);
+      vy = applyFriction(vy, simulationRate);
+
+      mIrisX = mIrisX + (vx * mIrisRadius * simulationRate);
+      mIrisY = mIrisY + (vy * mIrisRadius * simulationRate);
+
+      makeIrisInBounds(simulationRate);
+    }
+
+    private float applyFriction(float velocity, float simulationRate) {
+      if (isZero(velocity)) {
+        velocity = 0.0f;
+      } else if (velocity > 0) {
+        velocity = Math.max(0.0f, velocity - (FRICTION * simulationRate));
+      } else {
+        velocity = Math.min(0.0f, velocity + (FRICTION * simulationRate));
+      }
+      return velocity;
+    }
+
+    private void makeIrisInBounds(float simulationRate) {
+      float irisOffsetX = mIrisX - mEyeX;
+      float irisOffsetY = mIrisY - mEyeY;
+
+      float maxDistance = mEyeRadius - mIrisRadius;
+      float distance = (float) Math.sqrt(Math.pow(irisOffsetX, 2) + Math.pow(irisOffsetY, 2));
+      if (distance <= maxDistance) {
+        mConsecutiveBounces = 0;
+        return;
+      }
+
+      mConsecutiveBounces++;
+
+      float ratio = maxDistance / distance;
+      float x = mEyeX + (ratio * irisOffsetX);
+      float y = mEyeY + (ratio * irisOffsetY);
+
+      float dx = x - mIrisX;
+      vx = applyBounce(vx, dx, simulationRate) / mConsecutiveBounces;
+
+      float dy = y - mIrisY;
+      vy = applyBounce(vy, dy, simulationRate) / mConsecutiveBounces;
+
+      mIrisX = x;
+      mIrisY = y;
+    }
+
+    private float applyBounce(float velocity, float distOutOfBounds, float simulationRate) {
+      if (isZero(distOutOfBounds)) {
+        return velocity;
+      }
+
+      velocity *= -1;
+
+      float bounce = BOUNCE_MULTIPLIER * Math.abs(distOutOfBounds / mIrisRadius);
+      if (velocity > 0) {
+        velocity += bounce * simulationRate;
+      } else {
+        velocity -= bounce * simulationRate;
+      }
+
+      return velocity;
+    }
+
+    private boolean isStopped() {
+      if (mEyeY >= mIrisY) {
+        return false;
+      }
+
+      float irisOffsetY = mIrisY - mEyeY;
+      float maxDistance = mEyeRadius - mIrisRadius;
+      if (irisOffsetY < maxDistance) {
+        return false;
+      }
+
+      return (isZero(vx) && isZero(vy));
+    }
+
+    private boolean isZero(float num) {
+      return ((num < ZERO_TOLERANCE) && (num > -1 * ZERO_TOLERANCE));
+    }
+  }
+
+  /**
+   * Moves an eye around the frame: mostly drifting, sometimes jerking to a new spot, and
+   * sometimes growing or shrinking as the face moves towards or away from the camera.
+   */
+  private static class EyeMotion {
+
+    private final Random mRandom;
+    float mX;
+    float mY;
+    float mRadius;
+
+    EyeMotion(long seed) {
+      mRandom = new Random(seed);
+      mX = 100 + mRandom.nextInt(1000);
+      mY = 100 + mRandom.nextInt(600);
+      mRadius = 20 + mRandom.nextInt(60);
+    }
+
+    void advance() {
+      float roll = mRandom.nextFloat();
+      if (roll < 0.05f) {
+        mX += (mRandom.nextFloat() - 0.5f) * 4 * mRadius;
+        mY += (mRandom.nextFloat() - 0.5f) * 4 * mRadius;
+      } else if (roll < 0.08f) {
+        mRadius = Math.max(8, mRadius * (0.8f + 0.4f * mRandom.nextFloat()));
+      } else {
+        mX += (mRandom.nextFloat() - 0.5f) * 3;
+        mY += (mRandom.nextFloat() - 0.5f) * 3;
+      }
+    }
+
+    float irisRadius() {
+      return mRadius * (FaceGeometry.IRIS_RADIUS_PROPORTION / FaceGeometry.EYE_RADIUS_PROPORTION);
+    }
+  }
+
+  @Test
+  public void singleEye_matchesReferenceBitForBit() throws Exception {
+    ManualClock clock = new ManualClock(1000);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int eye = engine.allocate();
+    engine.step();
+    ReferenceEyePhysics reference = new ReferenceEyePhysics(0);
+    EyeMotion motion = new EyeMotion(42);
+
+    for (int frame = 0; frame < FRAMES; frame++) {
+      long intervalMs = FRAME_INTERVALS_MS[frame % FRAME_INTERVALS_MS.length];
+      clock.mNowMs += intervalMs;
+      motion.advance();
+
+      engine.setEye(eye, motion.mX, motion.mY, motion.mRadius, motion.irisRadius());
+      engine.step();
+      for (long i = 0; i < intervalMs / IrisPhysicsEngine.FIXED_STEP_MS; i++) {
+        reference.step(motion);
+      }
+
+      assertSameIris(frame, reference, engine, eye);
+    }
+  }
+
+  @Test
+  public void batchedEyes_matchReferenceBitForBit() throws Exception {
+    ManualClock clock = new ManualClock(5000);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int[] eyes = new int[EYE_COUNT];
+    ReferenceEyePhysics[] references = new ReferenceEyePhysics[EYE_COUNT];
+    EyeMotion[] motions = new EyeMotion[EYE_COUNT];
+    for (int i = 0; i < EYE_COUNT; i++) {
+      eyes[i] = engine.allocate();
+      references[i] = new ReferenceEyePhysics(0);
+      motions[i] = new EyeMotion(i);
+    }
+    engine.step();
+
+    for (int frame = 0; frame < FRAMES; frame++) {
+      long intervalMs = FRAME_INTERVALS_MS[frame % FRAME_INTERVALS_MS.length];
+      clock.mNowMs += intervalMs;
+
+      // Now and then an eye goes undrawn for a frame, and its simulation doesn't advance.
+      for (int i = 0; i < EYE_COUNT; i++) {
+        EyeMotion motion = motions[i];
+        motion.advance();
+        if ((frame + i) % 7 != 0) {
+          engine.setEye(eyes[i], motion.mX, motion.mY, motion.mRadius, motion.irisRadius());
+          for (long step = 0; step < intervalMs / IrisPhysicsEngine.FIXED_STEP_MS; step++) {
+            references[i].step(motion);
+          }
+        }
+      }
+      engine.step();
+
+      for (int i = 0; i < EYE_COUNT; i++) {
+        assertSameIris(frame, references[i], engine, eyes[i]);
+      }
+    }
+  }
+
+  @Test
+  public void reset_restartsTrajectory() throws Exception {
+    ManualClock clock = new ManualClock(0);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int eye = engine.allocate();
+    EyeMotion motion = new EyeMotion(7);
+    for (int frame = 0; frame < 100; frame++) {
+      clock.mNowMs += 20;
+      motion.advance();
+      engine.setEye(eye, motion.mX, motion.mY, motion.mRadius, motion.irisRadius());
+      engine.step();
+    }
+
+    engine.reset(eye);
+    ReferenceEyePhysics reference = new ReferenceEyePhysics(0);
+    for (int frame = 0; frame < 100; frame++) {
+      clock.mNowMs += 20;
+      motion.advance();
+      engine.setEye(eye, motion.mX, motion.mY, motion.mRadius, motion.irisRadius());
+      engine.step();
+      reference.step(motion);
+      reference.step(motion);
+      assertSameIris(frame, reference, engine, eye);
+    }
+  }
+
+  @Test
+  public void stalledFrame_takesBoundedSteps() throws Exception {
+    // One engine stalls for five seconds, the other for exactly as long as the most it's allowed
+    // to simulate in a frame.  Both must end up in the same place.
+    long[] stallsMs = {
+      5000, IrisPhysicsEngine.FIXED_STEP_MS * IrisPhysicsEngine.MAX_STEPS_PER_FRAME
+    };
+    float[] irisX = new float[stallsMs.length];
+    float[] irisY = new float[stallsMs.length];
+    for (int run = 0; run < stallsMs.length; run++) {
+      ManualClock clock = new ManualClock(0);
+      IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+      int eye = engine.allocate();
+      engine.setEye(eye, 100, 100, 40, 20);
+      engine.step();
+
+      clock.mNowMs += stallsMs[run];
+      engine.setEye(eye, 180, 60, 40, 20);
+      engine.step();
+
+      irisX[run] = engine.getSimulatedIrisX(eye);
+      irisY[run] = engine.getSimulatedIrisY(eye);
+      assertTrue(distance(irisX[run], irisY[run], 180, 60) <= 20.001f);
+    }
+
+    assertEquals(Float.floatToIntBits(irisX[1]), Float.floatToIntBits(irisX[0]));
+    assertEquals(Float.floatToIntBits(irisY[1]), Float.floatToIntBits(irisY[0]));
+  }
+
+  @Test
+  public void interpolatedIris_staysInEyeAndIsReproducible() throws Exception {
+    float[] first = runShakingEye();
+    float[] second = runShakingEye();
+
+    for (int frame = 0; frame < first.length; frame++) {
+      assertEquals(Float.floatToIntBits(first[frame]), Float.floatToIntBits(second[frame]));
+    }
+  }
+
+  // Shakes an eye at an uneven frame rate, checking that the drawn iris never leaves the eye, and
+  // returns where it was drawn on each frame.
+  private static float[] runShakingEye() {
+    ManualClock clock = new ManualClock(0);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int eye = engine.allocate();
+    float[] positions = new float[FRAMES * 2];
+    for (int frame = 0; frame < FRAMES; frame++) {
+      clock.mNowMs += 7 + (frame % 3) * 5;
+      float eyeX = 200 + ((frame % 40 < 20) ? 25 : -25);
+      float eyeY = 200 + (frame % 13);
+      engine.setEye(eye, eyeX, eyeY, 40, 20);
+      engine.step();
+
+      float irisX = engine.getIrisX(eye);
+      float irisY = engine.getIrisY(eye);
+      assertTrue("frame " + frame, distance(irisX, irisY, eyeX, eyeY) <= 20.001f);
+      positions[frame * 2] = irisX;
+      positions[frame * 2 + 1] = irisY;
+    }
+    return positions;
+  }
+
+  @Test
+  public void stepFrame_stepsOncePerFrame() throws Exception {
+    ManualClock clock = new ManualClock(0);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int eye = engine.allocate();
+    engine.setEye(eye, 100, 100, 40, 20);
+    engine.stepFrame(1);
+
+    // The iris falls under gravity, but only for the first graphic to ask within a frame.
+    clock.mNowMs += 30;
+    engine.setEye(eye, 100, 100, 40, 20);
+    engine.stepFrame(2);
+    float y = engine.getIrisY(eye);
+    clock.mNowMs += 30;
+    engine.setEye(eye, 100, 100, 40, 20);
+    engine.stepFrame(2);
+
+    assertTrue(y > 100);
+    assertEquals(y, engine.getIrisY(eye), 0);
+  }
+
+  @Test
+  public void allocate_reusesReleasedSlotsAndGrows() throws Exception {
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(new ManualClock(0));
+    int[] eyes = new int[40];
+    for (int i = 0; i < eyes.length; i++) {
+      eyes[i] = engine.allocate();
+      assertEquals(i, eyes[i]);
+    }
+
+    engine.release(eyes[3]);
+    assertEquals(3, engine.allocate());
+  }
+
+  @Test
+  public void steadyStateSteps_doNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    ManualClock clock = new ManualClock(0);
+    IrisPhysicsEngine engine = new IrisPhysicsEngine(clock);
+    int[] eyes = new int[EYE_COUNT * 2];
+    for (int i = 0; i < eyes.length; i++) {
+      eyes[i] = engine.allocate();
+    }
+
+    // Warm up so that class loading and JIT compilation aren't counted.
+    runSyntheticFrames(engine, clock, eyes, 20000);
+
+    // Take the best of a few runs, as in LandmarkMemoryTest.
+    long threadId = Thread.currentThread().getId();
+    long fewestBytes = Long.MAX_VALUE;
+    float checksum = 0;
+    for (int run = 0; run < 5; run++) {
+      long before = threads.getThreadAllocatedBytes(threadId);
+      checksum += runSyntheticFrames(engine, clock, eyes, 10000);
+      long after = threads.getThreadAllocatedBytes(threadId);
+      fewestBytes = Math.min(fewestBytes, after - before);
+    }
+
+    assertFalse(Float.isNaN(checksum));
+    assertEquals("bytes allocated by steady-state stepping", 0, fewestBytes);
+  }
+
+  // Shakes a row of eyes from side to side, so that the irises keep bouncing.
+  private static float runSyntheticFrames(IrisPhysicsEngine engine, ManualClock clock, int[] eyes,
+                                          int frames) {
+    float checksum = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      for (int i = 0; i < eyes.length; i++) {
+        float shake = ((frame + i) % 20 < 10) ? 30 : -30;
+        engine.setEye(eyes[i], 100 * i + shake, 200, 40, 20);
+      }
+      clock.mNowMs += 16;
+      engine.step();
+      for (int eye : eyes) {
+        checksum += engine.getIrisX(eye) + engine.getIrisY(eye);
+      }
+    }
+    return checksum;
+  }
+
+  private static void assertSameIris(int frame, ReferenceEyePhysics reference,
+                                     IrisPhysicsEngine engine, int eye) {
+    float irisX = engine.getSimulatedIrisX(eye);
+    float irisY = engine.getSimulatedIrisY(eye);
+    if ((Float.floatToIntBits(reference.mIrisX) != Float.floatToIntBits(irisX)) ||
+        (Float.floatToIntBits(reference.mIrisY) != Float.floatToIntBits(irisY))) {
+      fail("frame " + frame + ": expected iris at (" + reference.mIrisX + ", " +
+           reference.mIrisY + ") but was (" + irisX + ", " + irisY + ")");
+    }
+  }
+
+  private static float distance(float x0, float y0, float x1, float y1) {
+    return (float) Math.hypot(x1 - x0, y1 - y0);
+  }
+
+}
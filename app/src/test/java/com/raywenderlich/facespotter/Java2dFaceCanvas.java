@@ -0,0 +1,139 @@
+package com.raywenderlich.facespotter;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws {@link FaceRenderer}'s decorations into a Java2D image, so that they can be drawn,
+ * measured and compared against golden images on the desktop JVM, without a device.<p>
+ *
+ * Drawing follows what the app's paints do on Android: shapes aren't antialiased, outlines have
+ * butt caps, and sprites are scaled with bilinear filtering.  The sprites are the app's own
+ * drawables.  Each kind of drawing call is counted.
+ */
+class Java2dFaceCanvas implements FaceCanvas {
+
+  // The app's drawables, relative to the app module
+  static final String DRAWABLES_PATH = "src/main/res/drawable";
+
+  // Sprite files, indexed by their FaceCanvas constants
+  private static final String[] SPRITE_FILES = {
+    "pig_nose_emoji.png",
+    "happy_star.png",
+    "mustache.png",
+    "red_hat.png",
+  };
+
+  private final BufferedImage mImage;
+  private final Graphics2D mGraphics;
+  private final Color[] mColors = new Color[PAINT_COUNT];
+  private final BufferedImage[] mSprites = new BufferedImage[SPRITE_COUNT];
+  private final BasicStroke mOutlineStroke = new BasicStroke(
+    FaceGeometry.EYE_OUTLINE_WIDTH, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+
+  // Reused shapes, so that drawing doesn't allocate
+  private final Ellipse2D.Float mCircle = new Ellipse2D.Float();
+  private final Line2D.Float mLine = new Line2D.Float();
+
+  // Drawing calls so far
+  private long mCircleCount;
+  private long mLineCount;
+  private long mSpriteCount;
+
+  /**
+   * @param drawables the directory holding the app's drawables
+   */
+  Java2dFaceCanvas(int width, int height, File drawables) throws IOException {
+    mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    mGraphics = mImage.createGraphics();
+    mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                               RenderingHints.VALUE_ANTIALIAS_OFF);
+    mGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                               RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    mGraphics.setStroke(mOutlineStroke);
+
+    for (int i = 0; i < PAINT_COUNT; i++) {
+      mColors[i] = new Color(FaceRenderer.getPaintColor(i), true);
+    }
+    for (int i = 0; i < SPRITE_COUNT; i++) {
+      File file = new File(drawables, SPRITE_FILES[i]);
+      mSprites[i] = ImageIO.read(file);
+      if (mSprites[i] == null) {
+        throw new IOException("Couldn't read sprite " + file);
+      }
+    }
+  }
+
+  BufferedImage getImage() {
+    return mImage;
+  }
+
+  /**
+   * Fills the whole image with the given ARGB color, standing in for the camera preview.
+   */
+  void clear(int color) {
+    mGraphics.setComposite(AlphaComposite.Src);
+    mGraphics.setColor(new Color(color, true));
+    mGraphics.fillRect(0, 0, mImage.getWidth(), mImage.getHeight());
+    mGraphics.setComposite(AlphaComposite.SrcOver);
+  }
+
+  @Override
+  public void drawCircle(float centerX, float centerY, float radius, int paint) {
+    mCircleCount++;
+    mCircle.setFrame(centerX - radius, centerY - radius, radius * 2, radius * 2);
+    mGraphics.setColor(mColors[paint]);
+    if (FaceRenderer.isOutline(paint)) {
+      mGraphics.draw(mCircle);
+    } else {
+      mGraphics.fill(mCircle);
+    }
+  }
+
+  @Override
+  public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+    mLineCount++;
+    mLine.setLine(startX, startY, stopX, stopY);
+    mGraphics.setColor(mColors[paint]);
+    mGraphics.draw(mLine);
+  }
+
+  @Override
+  public void drawSprite(int sprite, int left, int top, int right, int bottom) {
+    mSpriteCount++;
+    if ((left == right) || (top == bottom)) {
+      return;
+    }
+    // Java2D mirrors the image itself when left is greater than right.
+    BufferedImage image = mSprites[sprite];
+    mGraphics.drawImage(image, left, Math.min(top, bottom), right, Math.max(top, bottom),
+                        0, 0, image.getWidth(), image.getHeight(), null);
+  }
+
+  long getCircleCount() {
+    return mCircleCount;
+  }
+
+  long getLineCount() {
+    return mLineCount;
+  }
+
+  long getSpriteCount() {
+    return mSpriteCount;
+  }
+
+  void dispose() {
+    mGraphics.dispose();
+  }
+
+}
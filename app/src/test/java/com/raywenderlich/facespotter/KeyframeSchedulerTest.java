@@ -0,0 +1,83 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link KeyframeScheduler}.
+ */
+public class KeyframeSchedulerTest {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+
+  private static ByteBuffer frame(int luminance) {
+    byte[] pixels = new byte[WIDTH * HEIGHT];
+    Arrays.fill(pixels, (byte) luminance);
+    return ByteBuffer.wrap(pixels);
+  }
+
+  @Test
+  public void steadyScene_detectsEveryNthFrame() throws Exception {
+    KeyframeScheduler scheduler = new KeyframeScheduler(3, 0.25f, 0.1f);
+    ByteBuffer frame = frame(128);
+
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < 9; i++) {
+      scheduler.sampleFrame(frame, WIDTH, HEIGHT);
+      pattern.append(scheduler.isKeyframe(0) ? 'K' : '.');
+    }
+
+    assertEquals("K..K..K..", pattern.toString());
+  }
+
+  @Test
+  public void fastFace_forcesKeyframe() throws Exception {
+    KeyframeScheduler scheduler = new KeyframeScheduler(3, 0.25f, 0.1f);
+    ByteBuffer frame = frame(128);
+    scheduler.sampleFrame(frame, WIDTH, HEIGHT);
+    assertTrue(scheduler.isKeyframe(0));
+
+    scheduler.sampleFrame(frame, WIDTH, HEIGHT);
+    assertFalse(scheduler.isKeyframe(0.2f));
+    scheduler.sampleFrame(frame, WIDTH, HEIGHT);
+    assertTrue(scheduler.isKeyframe(0.3f));
+  }
+
+  @Test
+  public void sceneChange_forcesKeyframe() throws Exception {
+    KeyframeScheduler scheduler = new KeyframeScheduler(10, 0.25f, 0.1f);
+    scheduler.sampleFrame(frame(100), WIDTH, HEIGHT);
+    assertTrue(scheduler.isKeyframe(0));
+
+    // A small change in lighting isn't enough, but a big one is.
+    scheduler.sampleFrame(frame(110), WIDTH, HEIGHT);
+    assertFalse(scheduler.isKeyframe(0));
+    scheduler.sampleFrame(frame(160), WIDTH, HEIGHT);
+    assertTrue(scheduler.isKeyframe(0));
+  }
+
+  @Test
+  public void sceneChange_measuresMeanDifference() throws Exception {
+    byte[] black = new byte[KeyframeScheduler.SAMPLE_COUNT];
+    byte[] white = new byte[KeyframeScheduler.SAMPLE_COUNT];
+    Arrays.fill(white, (byte) 255);
+
+    assertEquals(0, KeyframeScheduler.sceneChange(black, black), 0);
+    assertEquals(1, KeyframeScheduler.sceneChange(black, white), 0);
+  }
+
+  @Test
+  public void sample_toleratesShortBuffer() throws Exception {
+    byte[] out = new byte[KeyframeScheduler.SAMPLE_COUNT];
+
+    KeyframeScheduler.sample(ByteBuffer.allocate(10), WIDTH, HEIGHT, out);
+
+    assertEquals(0, out[out.length - 1]);
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LandmarkMemory}, which runs on the detector thread once per face
+ * per frame and so must not allocate.
+ */
+public class LandmarkMemoryTest {
+
+  private static final float DELTA = 0.0001f;
+
+  @Test
+  public void approximate_unknownLandmark_returnsFalse() throws Exception {
+    LandmarkMemory memory = new LandmarkMemory();
+    float[] out = {-1, -1};
+
+    assertFalse(memory.approximate(4, 0, 0, 100, 100, out, 0));
+    assertEquals(-1, out[0], DELTA);
+    assertEquals(-1, out[1], DELTA);
+  }
+
+  @Test
+  public void approximate_followsFaceMovementAndScale() throws Exception {
+    LandmarkMemory memory = new LandmarkMemory();
+    // Landmark at 25% across and 50% down a 100x200 face at (10, 20).
+    memory.remember(4, 35, 120, 10, 20, 100, 200);
+
+    float[] out = new float[4];
+    assertTrue(memory.approximate(4, 50, 60, 200, 100, out, 2));
+    assertEquals(100, out[2], DELTA);
+    assertEquals(110, out[3], DELTA);
+  }
+
+  @Test
+  public void remember_ignoresUnknownTypesAndEmptyFaces() throws Exception {
+    LandmarkMemory memory = new LandmarkMemory();
+    memory.remember(-1, 1, 1, 0, 0, 10, 10);
+    memory.remember(LandmarkMemory.LANDMARK_TYPE_COUNT, 1, 1, 0, 0, 10, 10);
+    memory.remember(3, 1, 1, 0, 0, 0, 10);
+
+    assertFalse(memory.isKnown(-1));
+    assertFalse(memory.isKnown(LandmarkMemory.LANDMARK_TYPE_COUNT));
+    assertFalse(memory.isKnown(3));
+  }
+
+  @Test
+  public void clear_forgetsLandmarks() throws Exception {
+    LandmarkMemory memory = new LandmarkMemory();
+    memory.remember(6, 5, 5, 0, 0, 10, 10);
+    memory.clear();
+
+    assertFalse(memory.isKnown(6));
+  }
+
+  @Test
+  public void steadyStateUpdates_doNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    LandmarkMemory memory = new LandmarkMemory();
+    float[] out = new float[LandmarkMemory.LANDMARK_TYPE_COUNT * 2];
+
+    // Warm up so that class loading and JIT compilation aren't counted.
+    runSyntheticUpdates(memory, out, 20000);
+
+    // Take the best of a few runs, so that one-off allocations made by the JVM itself on this
+    // thread (for instance, while the JIT swaps in compiled code) aren't blamed on tracking.
+    // Any per-update allocation would show up as thousands of bytes in every run.
+    long threadId = Thread.currentThread().getId();
+    long fewestBytes = Long.MAX_VALUE;
+    float checksum = 0;
+    for (int run = 0; run < 5; run++) {
+      long before = threads.getThreadAllocatedBytes(threadId);
+      checksum += runSyntheticUpdates(memory, out, 10000);
+      long after = threads.getThreadAllocatedBytes(threadId);
+      fewestBytes = Math.min(fewestBytes, after - before);
+    }
+
+    assertFalse(Float.isNaN(checksum));
+    assertEquals("bytes allocated by steady-state tracking", 0, fewestBytes);
+  }
+
+  // Simulates a face drifting across the frame, with half of the landmarks dropping out on
+  // alternate frames so that both the remember and approximate paths are exercised.
+  private static float runSyntheticUpdates(LandmarkMemory memory, float[] out, int frames) {
+    float checksum = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      float faceX = frame % 320;
+      float faceY = frame % 240;
+      float faceSize = 80 + (frame % 40);
+      for (int type = 0; type < LandmarkMemory.LANDMARK_TYPE_COUNT; type++) {
+        if ((type + frame) % 2 == 0) {
+          memory.remember(type, faceX + type * 5, faceY + type * 3,
+                          faceX, faceY, faceSize, faceSize);
+        } else if (memory.approximate(type, faceX, faceY, faceSize, faceSize, out, type * 2)) {
+          checksum += out[type * 2] + out[type * 2 + 1];
+        }
+      }
+    }
+    return checksum;
+  }
+
+}
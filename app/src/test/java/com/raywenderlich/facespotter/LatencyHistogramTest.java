@@ -0,0 +1,111 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void empty_hasNoPercentiles() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileUs(50));
+    assertEquals(0, histogram.getMaxUs());
+  }
+
+  @Test
+  public void smallValues_areExact() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int us = 1; us <= 60; us++) {
+      histogram.record(us);
+    }
+
+    assertEquals(60, histogram.getCount());
+    assertEquals(30, histogram.getPercentileUs(50));
+    assertEquals(60, histogram.getPercentileUs(100));
+    assertEquals(1, histogram.getPercentileUs(0));
+  }
+
+  @Test
+  public void buckets_holdValuesWithinPrecision() throws Exception {
+    int lastBucket = -1;
+    for (long us = 0; us < LatencyHistogram.MAX_TRACKABLE_US; us += 1 + us / 97) {
+      int bucket = LatencyHistogram.bucketOf(us);
+      long highest = LatencyHistogram.highestValueIn(bucket);
+      assertTrue(bucket >= lastBucket);
+      assertTrue(highest >= us);
+      assertTrue(highest - us <= us / LatencyHistogram.SUB_BUCKET_COUNT);
+      lastBucket = bucket;
+    }
+    assertEquals(lastBucket, LatencyHistogram.bucketOf(LatencyHistogram.MAX_TRACKABLE_US));
+  }
+
+  @Test
+  public void percentiles_ofUniformLatencies() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int us = 1; us <= 100000; us++) {
+      histogram.record(us);
+    }
+
+    assertEquals(50000, histogram.getPercentileUs(50), 50000 / 32);
+    assertEquals(99000, histogram.getPercentileUs(99), 99000 / 32);
+    assertEquals(99900, histogram.getPercentileUs(99.9), 99900 / 32);
+    assertEquals(100000, histogram.getPercentileUs(100));
+    assertEquals(100000, histogram.getMaxUs());
+  }
+
+  @Test
+  public void outOfRangeLatencies_areClamped() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(0, histogram.getPercentileUs(50));
+    assertEquals(LatencyHistogram.MAX_TRACKABLE_US, histogram.getMaxUs());
+    assertEquals(LatencyHistogram.MAX_TRACKABLE_US, histogram.getPercentileUs(100));
+  }
+
+  @Test
+  public void concurrentRecording_losesNothing() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final int perThread = 100000;
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final int offset = i;
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < perThread; j++) {
+            histogram.record(offset * 1000 + j % 1000);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(threads.length * perThread, histogram.getCount());
+    assertEquals(3999, histogram.getMaxUs());
+    assertEquals(3999, histogram.getPercentileUs(100));
+  }
+
+  @Test
+  public void reset_forgetsEverything() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMaxUs());
+    histogram.record(10);
+    assertEquals(10, histogram.getPercentileUs(50));
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyMonitor}.
+ */
+public class LatencyMonitorTest {
+
+  private static final long MS = 1000000;
+
+  // The camera source started 5 seconds into the clock.
+  private static final long SOURCE_START_NS = 5000 * MS;
+
+  private static class FakeClock implements LatencyMonitor.Clock {
+    long mNowNs;
+
+    @Override
+    public long nowNs() {
+      return mNowNs;
+    }
+
+    // Moves the clock to the given time after the camera source started.
+    void setSinceSourceStart(long ms) {
+      mNowNs = SOURCE_START_NS + ms * MS;
+    }
+  }
+
+  private FakeClock mClock;
+  private LatencyMonitor mMonitor;
+
+  @Before
+  public void setUp() throws Exception {
+    mClock = new FakeClock();
+    mMonitor = new LatencyMonitor(mClock);
+    mMonitor.setEnabled(true);
+  }
+
+  @Test
+  public void disabled_recordsNothing() throws Exception {
+    mMonitor.setEnabled(false);
+    mClock.setSinceSourceStart(100);
+    mMonitor.onFrameStarted(100);
+    mMonitor.stamp(LatencyMonitor.DETECTED, 100);
+
+    assertEquals(0, mMonitor.getHistogram(LatencyMonitor.DETECTED).getCount());
+  }
+
+  @Test
+  public void stampsBeforeAnyFrameStarts_areIgnored() throws Exception {
+    mClock.setSinceSourceStart(100);
+    mMonitor.stamp(LatencyMonitor.DRAWN, 100);
+
+    assertEquals(0, mMonitor.getHistogram(LatencyMonitor.DRAWN).getCount());
+  }
+
+  @Test
+  public void latencies_areMeasuredFromCapture() throws Exception {
+    // Captured at 100 ms, and handed straight to the detector.
+    mClock.setSinceSourceStart(100);
+    mMonitor.onFrameStarted(100);
+    mClock.setSinceSourceStart(130);
+    mMonitor.stamp(LatencyMonitor.DETECTED, 100);
+    mClock.setSinceSourceStart(135);
+    mMonitor.stamp(LatencyMonitor.TRACKED, 100);
+    mMonitor.stamp(LatencyMonitor.PUBLISHED, 100);
+    mClock.setSinceSourceStart(150);
+    mMonitor.stamp(LatencyMonitor.DRAWN, 100);
+
+    assertEquals(30000, mMonitor.getHistogram(LatencyMonitor.DETECTED).getMaxUs());
+    assertEquals(35000, mMonitor.getHistogram(LatencyMonitor.TRACKED).getMaxUs());
+    assertEquals(35000, mMonitor.getHistogram(LatencyMonitor.PUBLISHED).getMaxUs());
+    assertEquals(50000, mMonitor.getHistogram(LatencyMonitor.DRAWN).getMaxUs());
+  }
+
+  @Test
+  public void sourceStart_isEstimatedFromQuickestHandOff() throws Exception {
+    // The first frame waits 20 ms for the detector, the second is handed over at once.
+    mClock.setSinceSourceStart(120);
+    mMonitor.onFrameStarted(100);
+    mClock.setSinceSourceStart(133);
+    mMonitor.onFrameStarted(133);
+    mClock.setSinceSourceStart(160);
+    mMonitor.stamp(LatencyMonitor.DETECTED, 133);
+
+    assertEquals(27000, mMonitor.getHistogram(LatencyMonitor.DETECTED).getMaxUs());
+  }
+
+  @Test
+  public void resetClock_forNewCameraSource() throws Exception {
+    mClock.setSinceSourceStart(1000);
+    mMonitor.onFrameStarted(1000);
+
+    // A new camera source starts 2 seconds later, with timestamps from zero.
+    mMonitor.resetClock();
+    mClock.setSinceSourceStart(2000);
+    mMonitor.onFrameStarted(0);
+    mClock.setSinceSourceStart(2040);
+    mMonitor.stamp(LatencyMonitor.DRAWN, 0);
+
+    assertEquals(40000, mMonitor.getHistogram(LatencyMonitor.DRAWN).getMaxUs());
+  }
+
+  @Test
+  public void summary_hasLinePerStage() throws Exception {
+    mClock.setSinceSourceStart(100);
+    mMonitor.onFrameStarted(100);
+    mClock.setSinceSourceStart(125);
+    mMonitor.stamp(LatencyMonitor.DETECTED, 100);
+
+    String[] lines = mMonitor.getSummary().split("\n");
+    assertEquals(LatencyMonitor.STAGE_COUNT, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("detected"));
+    assertTrue(lines[0], lines[0].contains("n=1 "));
+    assertTrue(lines[0], lines[0].contains("p50=  25.0"));
+    assertTrue(lines[3], lines[3].startsWith("drawn"));
+  }
+
+}
@@ -0,0 +1,93 @@
+package com.raywenderlich.facespotter;
+
+import java.util.Random;
+
+/**
+ * Draws simple faces into luminance images, for testing and benchmarking detection engines
+ * without a camera: a light oval with dark eyes and a dark mouth, on a darker background with a
+ * little noise.
+ */
+final class LuminanceFaces {
+
+  private static final int BACKGROUND = 80;
+  private static final int SKIN = 190;
+  private static final int FEATURE = 40;
+  private static final int NOISE = 12;
+
+  private LuminanceFaces() {
+  }
+
+  /**
+   * Returns a noisy background image, the same for the same seed.
+   */
+  static byte[] background(int width, int height, long seed) {
+    byte[] image = new byte[width * height];
+    Random random = new Random(seed);
+    for (int i = 0; i < image.length; i++) {
+      image[i] = (byte) (BACKGROUND + random.nextInt(NOISE));
+    }
+    return image;
+  }
+
+  /**
+   * Returns an NV21 image: the luminance of the given image, followed by neutral chroma.
+   */
+  static byte[] toNv21(byte[] luminance, int width, int height) {
+    byte[] image = new byte[width * height * 3 / 2];
+    System.arraycopy(luminance, 0, image, 0, width * height);
+    for (int i = width * height; i < image.length; i++) {
+      image[i] = (byte) 128;
+    }
+    return image;
+  }
+
+  /**
+   * Draws an upright face filling the square with the given top left corner and size.
+   */
+  static void drawFace(byte[] image, int width, int left, int top, int size) {
+    fillEllipse(image, width, left + (size * 0.5f), top + (size * 0.5f),
+                size * 0.5f, size * 0.5f, SKIN);
+    // Eyes, then the mouth
+    fillEllipse(image, width, left + (size * 0.28f), top + (size * 0.38f),
+                size * 0.09f, size * 0.06f, FEATURE);
+    fillEllipse(image, width, left + (size * 0.72f), top + (size * 0.38f),
+                size * 0.09f, size * 0.06f, FEATURE);
+    fillEllipse(image, width, left + (size * 0.5f), top + (size * 0.77f),
+                size * 0.16f, size * 0.05f, FEATURE);
+  }
+
+  private static void fillEllipse(byte[] image, int width, float centerX, float centerY,
+                                  float radiusX, float radiusY, int value) {
+    int height = image.length / width;
+    int top = Math.max(0, (int) (centerY - radiusY));
+    int bottom = Math.min(height - 1, (int) Math.ceil(centerY + radiusY));
+    int left = Math.max(0, (int) (centerX - radiusX));
+    int right = Math.min(width - 1, (int) Math.ceil(centerX + radiusX));
+    for (int y = top; y <= bottom; y++) {
+      for (int x = left; x <= right; x++) {
+        float dx = (x + 0.5f - centerX) / radiusX;
+        float dy = (y + 0.5f - centerY) / radiusY;
+        if ((dx * dx) + (dy * dy) <= 1) {
+          image[(y * width) + x] = (byte) value;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the image turned a quarter turn anticlockwise, as a camera mounted a quarter turn
+   * clockwise would capture it: turning the result clockwise by {@code ROTATION_90} makes it
+   * upright again.
+   */
+  static byte[] rotateAnticlockwise(byte[] image, int width, int height) {
+    byte[] rotated = new byte[image.length];
+    // The rotated image is height wide and width high.
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        rotated[((width - 1 - x) * height) + y] = image[(y * width) + x];
+      }
+    }
+    return rotated;
+  }
+
+}
@@ -0,0 +1,260 @@
+package com.raywenderlich.facespotter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed ring of NV21 frame buffers, allocated once, that the camera fills and the detection
+ * pipeline reads without copying.<p>
+ *
+ * The camera is given every buffer up front.  When it has filled one, {@link #acquire} wraps it
+ * as a {@link Frame} with one reference, held by whoever is delivering it.  Each pipeline stage
+ * that keeps the frame past the call it received it in {@link Frame#retain()}s it, and
+ * {@link Frame#release()}s it when done.  When the last reference goes, the buffer is handed back
+ * to the camera through the {@link Recycler}, ready to be filled again.  While every buffer is in
+ * the pipeline the camera has nothing to fill, and drops frames rather than the pipeline falling
+ * behind.<p>
+ *
+ * Each idle buffer remembers the recycler it was last handed to, and is handed over with a
+ * compare-and-set, so that a frame released while {@link #setRecycler} hands over the idle
+ * buffers reaches the new recycler once, not twice.<p>
+ *
+ * Frames, their buffers, and their views of the luminance plane are all made up front, so
+ * delivering a frame allocates nothing, however fast the camera runs.<p>
+ *
+ * The app's engines still take their frames from the Play Services camera source, so the ring
+ * and {@link CameraFrameIngester} are kept with the tests and benchmarks, out of the app, until
+ * its camera pipeline takes frames this way.
+ */
+final class Nv21FrameRing {
+
+  /**
+   * Gives a buffer back to whatever fills it, e.g. the camera.  Called on the thread that
+   * releases the frame's last reference.
+   */
+  interface Recycler {
+    void recycle(byte[] buffer);
+  }
+
+  /**
+   * One buffer of the ring, with what's known about the frame it holds.
+   */
+  static final class Frame {
+
+    private final Nv21FrameRing mRing;
+    private final byte[] mData;
+    private final ByteBuffer mImage;
+    private final ByteBuffer mLuminance;
+    private final AtomicInteger mReferenceCount = new AtomicInteger();
+    // The recycler the buffer was last handed to, until it's filled again
+    private final AtomicReference<Recycler> mQueuedWith = new AtomicReference<>();
+    private int mId;
+    private long mTimestampMs;
+    private int mRotation;
+
+    private Frame(Nv21FrameRing ring, byte[] data, int luminanceSize) {
+      mRing = ring;
+      mData = data;
+      mImage = ByteBuffer.wrap(data);
+      ByteBuffer luminance = ByteBuffer.wrap(data);
+      luminance.limit(luminanceSize);
+      mLuminance = luminance.slice();
+    }
+
+    /**
+     * Returns the whole NV21 image, luminance then chroma, backed by the frame's buffer.
+     * Callers that move its position or limit should use a duplicate.
+     */
+    ByteBuffer getImage() {
+      return mImage;
+    }
+
+    /**
+     * Returns the luminance plane alone, backed by the frame's buffer.  Callers that move its
+     * position or limit should use a duplicate.
+     */
+    ByteBuffer getLuminance() {
+      return mLuminance;
+    }
+
+    byte[] getData() {
+      return mData;
+    }
+
+    int getWidth() {
+      return mRing.mWidth;
+    }
+
+    int getHeight() {
+      return mRing.mHeight;
+    }
+
+    int getId() {
+      return mId;
+    }
+
+    long getTimestampMs() {
+      return mTimestampMs;
+    }
+
+    int getRotation() {
+      return mRotation;
+    }
+
+    /**
+     * Points the given frame at this one's image, for a {@link FaceDetectionEngine}, without
+     * copying.  The engine's frame is only good while this one is held.
+     */
+    void toLuminanceFrame(LuminanceFrame frame) {
+      frame.set(mImage, mRing.mWidth, mRing.mHeight, mRotation, mId, mTimestampMs, true);
+    }
+
+    /**
+     * Adds a reference to the frame, which keeps its buffer from being refilled until it's
+     * released.
+     */
+    void retain() {
+      if (mReferenceCount.getAndIncrement() <= 0) {
+        mReferenceCount.getAndDecrement();
+        throw new IllegalStateException("Frame " + mId + " was already recycled");
+      }
+    }
+
+    /**
+     * Drops a reference to the frame, recycling its buffer if it was the last one.
+     */
+    void release() {
+      int count = mReferenceCount.decrementAndGet();
+      if (count == 0) {
+        mRing.recycle(this);
+      } else if (count < 0) {
+        mReferenceCount.incrementAndGet();
+        throw new IllegalStateException("Frame " + mId + " released too many times");
+      }
+    }
+
+    int getReferenceCount() {
+      return mReferenceCount.get();
+    }
+
+  }
+
+  private final int mWidth;
+  private final int mHeight;
+  private final Frame[] mFrames;
+  private volatile Recycler mRecycler;
+
+  // Statistics
+  private final AtomicInteger mFramesInUse = new AtomicInteger();
+  private volatile long mAcquiredCount;
+
+  /**
+   * @param capacity how many buffers to allocate; three lets the camera fill one while the
+   *                 pipeline works on another and a third waits
+   */
+  Nv21FrameRing(int capacity, int width, int height) {
+    if ((capacity < 1) || (width <= 0) || (height <= 0)) {
+      throw new IllegalArgumentException(
+        "Bad frame ring: " + capacity + " frames of " + width + "x" + height);
+    }
+    mWidth = width;
+    mHeight = height;
+    mFrames = new Frame[capacity];
+    int luminanceSize = width * height;
+    int imageSize = getBufferSize(width, height);
+    for (int i = 0; i < capacity; i++) {
+      mFrames[i] = new Frame(this, new byte[imageSize], luminanceSize);
+    }
+  }
+
+  /**
+   * Returns the size of an NV21 image: the full-resolution luminance, then the chroma at half
+   * resolution both ways, interleaved.
+   */
+  static int getBufferSize(int width, int height) {
+    return (width * height) + (2 * ((width + 1) / 2) * ((height + 1) / 2));
+  }
+
+  /**
+   * Sets where buffers go once their frames are released, and hands it every buffer that isn't
+   * in use, so that it can start filling them.  Buffers handed to the recycler before are taken
+   * to be lost with it.
+   */
+  void setRecycler(Recycler recycler) {
+    mRecycler = recycler;
+    if (recycler == null) {
+      return;
+    }
+    for (Frame frame : mFrames) {
+      if (frame.mReferenceCount.get() == 0) {
+        handOver(frame, recycler);
+      }
+    }
+  }
+
+  // Gives the frame's buffer to the recycler, unless it's already been given it.
+  private static void handOver(Frame frame, Recycler recycler) {
+    Recycler queuedWith = frame.mQueuedWith.get();
+    if ((queuedWith != recycler) && frame.mQueuedWith.compareAndSet(queuedWith, recycler)) {
+      recycler.recycle(frame.mData);
+    }
+  }
+
+  /**
+   * Wraps a buffer that has just been filled as a frame, with one reference for the caller.
+   *
+   * @param buffer   one of this ring's buffers, as handed to the recycler
+   * @param rotation how far the image needs turning clockwise to be upright, in quarter turns
+   * @throws IllegalArgumentException if the buffer isn't one of this ring's, or is in use
+   */
+  Frame acquire(byte[] buffer, int id, long timestampMs, int rotation) {
+    for (Frame frame : mFrames) {
+      if (frame.mData == buffer) {
+        if (!frame.mReferenceCount.compareAndSet(0, 1)) {
+          throw new IllegalArgumentException("Frame buffer is still in use");
+        }
+        frame.mQueuedWith.set(null);
+        frame.mId = id;
+        frame.mTimestampMs = timestampMs;
+        frame.mRotation = rotation & 3;
+        mFramesInUse.incrementAndGet();
+        mAcquiredCount++;
+        return frame;
+      }
+    }
+    throw new IllegalArgumentException("Not one of this ring's buffers");
+  }
+
+  private void recycle(Frame frame) {
+    mFramesInUse.decrementAndGet();
+    Recycler recycler = mRecycler;
+    if (recycler != null) {
+      handOver(frame, recycler);
+    }
+  }
+
+  int getWidth() {
+    return mWidth;
+  }
+
+  int getHeight() {
+    return mHeight;
+  }
+
+  int getCapacity() {
+    return mFrames.length;
+  }
+
+  /**
+   * Returns how many frames are held by the pipeline, and so can't be filled by the camera.
+   */
+  int getFramesInUse() {
+    return mFramesInUse.get();
+  }
+
+  long getAcquiredCount() {
+    return mAcquiredCount;
+  }
+
+}
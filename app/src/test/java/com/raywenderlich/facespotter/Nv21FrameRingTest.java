@@ -0,0 +1,165 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Nv21FrameRing}.
+ */
+public class Nv21FrameRingTest {
+
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 6;
+
+  private Nv21FrameRing mRing;
+  private final List<byte[]> mRecycled = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    mRing = new Nv21FrameRing(3, WIDTH, HEIGHT);
+    mRing.setRecycler(new Nv21FrameRing.Recycler() {
+      @Override
+      public void recycle(byte[] buffer) {
+        mRecycled.add(buffer);
+      }
+    });
+  }
+
+  // Takes the next buffer given to the recycler, as the camera would to fill it.
+  private byte[] fill() {
+    return mRecycled.remove(0);
+  }
+
+  @Test
+  public void setRecycler_handsOverEveryBuffer() throws Exception {
+    assertEquals(3, mRecycled.size());
+    assertEquals(Nv21FrameRing.getBufferSize(WIDTH, HEIGHT), mRecycled.get(0).length);
+    assertEquals(WIDTH * HEIGHT * 3 / 2, mRecycled.get(0).length);
+    assertNotSame(mRecycled.get(0), mRecycled.get(1));
+  }
+
+  @Test
+  public void acquire_wrapsBufferWithoutCopying() throws Exception {
+    byte[] buffer = fill();
+    buffer[0] = 42;
+    buffer[WIDTH * HEIGHT] = (byte) 128;
+    Nv21FrameRing.Frame frame = mRing.acquire(buffer, 7, 1000, LuminanceFrame.ROTATION_90);
+
+    assertSame(buffer, frame.getData());
+    assertEquals(7, frame.getId());
+    assertEquals(1000, frame.getTimestampMs());
+    assertEquals(LuminanceFrame.ROTATION_90, frame.getRotation());
+    ByteBuffer luminance = frame.getLuminance();
+    assertEquals(WIDTH * HEIGHT, luminance.remaining());
+    assertEquals(42, luminance.get(0));
+    buffer[0] = 43;
+    assertEquals(43, luminance.get(0));
+    assertEquals(buffer.length, frame.getImage().remaining());
+  }
+
+  @Test
+  public void toLuminanceFrame_pointsAtImage() throws Exception {
+    Nv21FrameRing.Frame frame = mRing.acquire(fill(), 1, 2, LuminanceFrame.ROTATION_270);
+    LuminanceFrame luminanceFrame = new LuminanceFrame();
+    frame.toLuminanceFrame(luminanceFrame);
+
+    assertSame(frame.getImage(), luminanceFrame.getLuminance());
+    assertTrue(luminanceFrame.isNv21());
+    assertEquals(WIDTH, luminanceFrame.getWidth());
+    assertEquals(HEIGHT, luminanceFrame.getUprightWidth());
+    assertEquals(LuminanceFrame.ROTATION_270, luminanceFrame.getRotation());
+  }
+
+  @Test
+  public void release_recyclesAfterLastReference() throws Exception {
+    byte[] buffer = fill();
+    Nv21FrameRing.Frame frame = mRing.acquire(buffer, 0, 0, 0);
+    frame.retain();
+    assertEquals(1, mRing.getFramesInUse());
+
+    frame.release();
+    assertEquals(2, mRecycled.size());
+    frame.release();
+    assertEquals(3, mRecycled.size());
+    assertSame(buffer, mRecycled.get(2));
+    assertEquals(0, mRing.getFramesInUse());
+
+    // The same buffer, filled again, is the same frame.
+    assertSame(frame, mRing.acquire(mRecycled.remove(2), 1, 0, 0));
+  }
+
+  @Test
+  public void withoutRecycler_buffersWaitForTheNextOne() throws Exception {
+    Nv21FrameRing.Frame frame = mRing.acquire(fill(), 0, 0, 0);
+    mRing.setRecycler(null);
+    frame.release();
+    mRecycled.clear();
+
+    final List<byte[]> recycled = new ArrayList<>();
+    mRing.setRecycler(new Nv21FrameRing.Recycler() {
+      @Override
+      public void recycle(byte[] buffer) {
+        recycled.add(buffer);
+      }
+    });
+    assertEquals(3, recycled.size());
+  }
+
+  @Test
+  public void releaseDuringHandover_recyclesBufferOnce() throws Exception {
+    final Nv21FrameRing.Frame frame = mRing.acquire(mRecycled.get(2), 0, 0, 0);
+    mRing.setRecycler(null);
+    mRecycled.clear();
+
+    // The frame is released on another thread while the idle buffers are being handed over.
+    final List<byte[]> recycled = new ArrayList<>();
+    mRing.setRecycler(new Nv21FrameRing.Recycler() {
+      @Override
+      public void recycle(byte[] buffer) {
+        recycled.add(buffer);
+        if (recycled.size() == 1) {
+          frame.release();
+        }
+      }
+    });
+
+    assertEquals(3, recycled.size());
+    assertTrue(recycled.contains(frame.getData()));
+    assertNotSame(recycled.get(0), recycled.get(1));
+    assertNotSame(recycled.get(1), recycled.get(2));
+    assertNotSame(recycled.get(0), recycled.get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void acquire_rejectsForeignBuffer() throws Exception {
+    mRing.acquire(new byte[Nv21FrameRing.getBufferSize(WIDTH, HEIGHT)], 0, 0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void acquire_rejectsBufferInUse() throws Exception {
+    byte[] buffer = fill();
+    mRing.acquire(buffer, 0, 0, 0);
+    mRing.acquire(buffer, 1, 0, 0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void release_rejectsTooManyReleases() throws Exception {
+    Nv21FrameRing.Frame frame = mRing.acquire(fill(), 0, 0, 0);
+    frame.release();
+    frame.release();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void retain_rejectsRecycledFrame() throws Exception {
+    Nv21FrameRing.Frame frame = mRing.acquire(fill(), 0, 0, 0);
+    frame.release();
+    frame.retain();
+  }
+
+}
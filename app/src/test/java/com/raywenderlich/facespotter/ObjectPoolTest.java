@@ -0,0 +1,101 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ObjectPool}.
+ */
+public class ObjectPoolTest {
+
+  private static class Item {
+    boolean mDirty;
+  }
+
+  private static class ItemPool extends ObjectPool<Item> {
+
+    int mCreatedCount;
+    Item mLastDiscarded;
+
+    ItemPool(int capacity) {
+      super(capacity);
+    }
+
+    @Override
+    protected Item create() {
+      mCreatedCount++;
+      return new Item();
+    }
+
+    @Override
+    protected void reset(Item item) {
+      item.mDirty = false;
+    }
+
+    @Override
+    protected void discard(Item item) {
+      mLastDiscarded = item;
+    }
+
+  }
+
+  @Test
+  public void acquire_reusesReleasedItems() throws Exception {
+    ItemPool pool = new ItemPool(4);
+    Item first = pool.acquire();
+    first.mDirty = true;
+    pool.release(first);
+
+    Item second = pool.acquire();
+
+    assertSame(first, second);
+    assertFalse(second.mDirty);
+    assertEquals(1, pool.mCreatedCount);
+    assertEquals(0.5f, pool.getHitRate(), 0);
+  }
+
+  @Test
+  public void release_beyondCapacity_discards() throws Exception {
+    ItemPool pool = new ItemPool(2);
+    Item[] items = { pool.acquire(), pool.acquire(), pool.acquire() };
+    for (Item item : items) {
+      pool.release(item);
+    }
+
+    assertEquals(2, pool.getIdleCount());
+    assertEquals(1, pool.getDiscardedCount());
+    assertSame(items[2], pool.mLastDiscarded);
+  }
+
+  @Test
+  public void faceChurn_reachesSteadyState() throws Exception {
+    // Simulate a crowd of about ten faces, with one face leaving and another arriving each frame.
+    ItemPool pool = new ItemPool(16);
+    Item[] onScreen = new Item[10];
+    for (int i = 0; i < onScreen.length; i++) {
+      onScreen[i] = pool.acquire();
+    }
+    for (int frame = 0; frame < 1000; frame++) {
+      int leaving = frame % onScreen.length;
+      pool.release(onScreen[leaving]);
+      onScreen[leaving] = pool.acquire();
+    }
+
+    assertEquals(onScreen.length, pool.mCreatedCount);
+    assertEquals(1000, pool.getReusedCount());
+    assertEquals(0, pool.getDiscardedCount());
+  }
+
+  @Test
+  public void clear_dropsIdleItems() throws Exception {
+    ItemPool pool = new ItemPool(4);
+    pool.release(pool.acquire());
+    pool.clear();
+
+    assertEquals(0, pool.getIdleCount());
+    pool.acquire();
+    assertEquals(2, pool.mCreatedCount);
+  }
+
+}
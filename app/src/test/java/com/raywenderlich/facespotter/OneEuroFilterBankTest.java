@@ -0,0 +1,140 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link OneEuroFilterBank}.
+ */
+public class OneEuroFilterBankTest {
+
+  private static final long FRAME_MS = 33;
+
+  private static OneEuroFilterBank newBank(int channels) {
+    return new OneEuroFilterBank(channels, 1.0f, 0.05f, 1.0f);
+  }
+
+  @Test
+  public void firstMeasurement_passesThrough() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+
+    assertFalse(bank.isInitialized(0));
+    assertEquals(42.0f, bank.filter(0, 42.0f, 1000), 0);
+    assertTrue(bank.isInitialized(0));
+  }
+
+  @Test
+  public void steadyValue_staysPut() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+
+    for (int frame = 0; frame < 100; frame++) {
+      assertEquals(10.0f, bank.filter(0, 10.0f, frame * FRAME_MS), 0);
+    }
+    assertEquals(10.0f, bank.predict(0, 100 * FRAME_MS), 0);
+  }
+
+  @Test
+  public void jitter_isSmoothedOut() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+    Random random = new Random(1);
+
+    float rawSquaredError = 0;
+    float filteredSquaredError = 0;
+    for (int frame = 0; frame < 300; frame++) {
+      float raw = 100.0f + (random.nextFloat() - 0.5f) * 4.0f;
+      float filtered = bank.filter(0, raw, frame * FRAME_MS);
+      if (frame >= 30) {
+        rawSquaredError += (raw - 100.0f) * (raw - 100.0f);
+        filteredSquaredError += (filtered - 100.0f) * (filtered - 100.0f);
+      }
+    }
+
+    // At least halves the RMS error
+    assertTrue(filteredSquaredError < rawSquaredError / 4);
+  }
+
+  @Test
+  public void steadyMotion_isFollowedAndPredicted() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+
+    // 300 units per second
+    float speed = 0.3f;
+    long timeMs = 0;
+    float filtered = 0;
+    for (int frame = 0; frame < 100; frame++) {
+      timeMs = frame * FRAME_MS;
+      filtered = bank.filter(0, speed * timeMs, timeMs);
+    }
+
+    // Fast motion opens up the filter, so it lags by less than a frame.
+    assertTrue(speed * timeMs - filtered < speed * FRAME_MS);
+
+    // The prediction keeps going at the measured speed.
+    float predicted = bank.predict(0, timeMs + 100);
+    assertEquals(filtered + speed * 100, predicted, 1.0f);
+  }
+
+  @Test
+  public void predict_doesNotChangeChannel() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+    bank.filter(0, 0, 0);
+    bank.filter(0, 10, FRAME_MS);
+
+    float first = bank.predict(0, 5 * FRAME_MS);
+    float second = bank.predict(0, 5 * FRAME_MS);
+
+    assertEquals(first, second, 0);
+    assertEquals(FRAME_MS, bank.getTimeMs(0));
+  }
+
+  @Test
+  public void channels_areIndependent() throws Exception {
+    OneEuroFilterBank bank = newBank(2);
+
+    for (int frame = 0; frame < 10; frame++) {
+      bank.filter(0, frame * 10, frame * FRAME_MS);
+    }
+    assertFalse(bank.isInitialized(1));
+    assertEquals(-5.0f, bank.filter(1, -5.0f, 10 * FRAME_MS), 0);
+  }
+
+  @Test
+  public void reset_startsOver() throws Exception {
+    OneEuroFilterBank bank = newBank(2);
+    bank.filter(0, 0, 0);
+    bank.filter(1, 0, 0);
+
+    bank.reset(0);
+    assertFalse(bank.isInitialized(0));
+    assertTrue(bank.isInitialized(1));
+    assertEquals(50.0f, bank.filter(0, 50.0f, FRAME_MS), 0);
+
+    bank.reset();
+    assertFalse(bank.isInitialized(0));
+    assertFalse(bank.isInitialized(1));
+  }
+
+  @Test
+  public void longGap_startsOver() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+    bank.filter(0, 0, 0);
+    bank.filter(0, 1, FRAME_MS);
+
+    assertEquals(200.0f, bank.filter(0, 200.0f, 5000), 0);
+  }
+
+  @Test
+  public void sameTimestamp_doesNotBlowUp() throws Exception {
+    OneEuroFilterBank bank = newBank(1);
+    bank.filter(0, 0, 100);
+
+    float filtered = bank.filter(0, 10, 100);
+
+    assertFalse(Float.isNaN(filtered) || Float.isInfinite(filtered));
+    assertTrue(filtered >= 0 && filtered <= 10);
+  }
+
+}
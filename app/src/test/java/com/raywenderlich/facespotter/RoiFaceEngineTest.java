@@ -0,0 +1,132 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RoiFaceEngine}.
+ */
+public class RoiFaceEngineTest {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  private static final int FULL_SCAN_INTERVAL = 10;
+
+  private RoiFaceEngine mEngine;
+  private LuminanceFrame mFrame;
+  private DetectedFaces mFaces;
+  private int mSeed;
+
+  @Before
+  public void setUp() throws Exception {
+    HaarCascade cascade = HaarCascade.getDefault();
+    mEngine = new RoiFaceEngine(
+      new CascadeFaceEngine(cascade, 0.1f),
+      new CascadeFaceEngine(cascade, RoiFaceEngine.CROP_MIN_FACE_SIZE,
+                            RoiFaceEngine.CROP_STEP_FRACTION),
+      FULL_SCAN_INTERVAL);
+    mFrame = new LuminanceFrame();
+    mFaces = new DetectedFaces();
+  }
+
+  // Detects a frame with faces of the given size at the given top left corners.
+  private void detect(int size, int... corners) {
+    byte[] image = LuminanceFaces.background(WIDTH, HEIGHT, mSeed++);
+    for (int i = 0; i < corners.length; i += 2) {
+      LuminanceFaces.drawFace(image, WIDTH, corners[i], corners[i + 1], size);
+    }
+    mFrame.set(ByteBuffer.wrap(image), WIDTH, HEIGHT, LuminanceFrame.ROTATION_0, mSeed, 0, false);
+    mEngine.detect(mFrame, mFaces);
+  }
+
+  @Test
+  public void firstFrame_isScannedInFull() throws Exception {
+    detect(80, 100, 60);
+
+    assertEquals(1, mFaces.size());
+    assertEquals(1, mEngine.getFullScanCount());
+    assertEquals(0, mEngine.getCropCount());
+  }
+
+  @Test
+  public void trackedFace_isFoundInItsCrop() throws Exception {
+    detect(80, 100, 60);
+    int id = mFaces.getId(0);
+    detect(80, 112, 66);
+
+    assertEquals(1, mEngine.getFullScanCount());
+    assertEquals(1, mEngine.getCropCount());
+    assertEquals(1, mFaces.size());
+    assertEquals(id, mFaces.getId(0));
+    // In frame coordinates, not the crop's
+    assertEquals(112, mFaces.getX(0), 80 * 0.2f);
+    assertEquals(66, mFaces.getY(0), 80 * 0.2f);
+    assertEquals(80, mFaces.getWidth(0), 80 * 0.2f);
+    assertTrue(mFaces.getLandmarkX(0, 4) > mFaces.getX(0));
+  }
+
+  @Test
+  public void faceNearTheEdge_isFoundInItsCrop() throws Exception {
+    detect(64, 250, 170);
+    detect(64, 254, 174);
+
+    assertEquals(1, mEngine.getCropCount());
+    assertEquals(1, mFaces.size());
+    assertEquals(254, mFaces.getX(0), 64 * 0.2f);
+  }
+
+  @Test
+  public void bigFaces_areStillCropped() throws Exception {
+    detect(100, 10, 20, 180, 100);
+    detect(100, 14, 20, 176, 104);
+
+    assertEquals(2, mEngine.getCropCount());
+    assertEquals(2, mFaces.size());
+  }
+
+  @Test
+  public void newFace_isFoundAtNextFullScan() throws Exception {
+    detect(64, 20, 40);
+    for (int i = 1; i < FULL_SCAN_INTERVAL; i++) {
+      detect(64, 20, 40, 200, 100);
+      assertEquals(1, mFaces.size());
+    }
+    detect(64, 20, 40, 200, 100);
+
+    assertEquals(2, mEngine.getFullScanCount());
+    assertEquals(2, mFaces.size());
+  }
+
+  @Test
+  public void lostFace_bringsForwardFullScan() throws Exception {
+    detect(64, 20, 40);
+    // Gone from its crop: nothing is reported, and the next frame is scanned in full.
+    detect(64, 220, 140);
+    assertEquals(0, mFaces.size());
+    detect(64, 220, 140);
+
+    assertEquals(2, mEngine.getFullScanCount());
+    assertEquals(1, mFaces.size());
+  }
+
+  @Test
+  public void fewFaces_processAFractionOfThePixels() throws Exception {
+    for (int i = 0; i < FULL_SCAN_INTERVAL * 3; i++) {
+      detect(48, 40 + i, 60, 200, 120 - i);
+    }
+
+    assertEquals(3, mEngine.getFullScanCount());
+    assertEquals(2 * (FULL_SCAN_INTERVAL - 1) * 3, mEngine.getCropCount());
+    assertEquals(2, mFaces.size());
+    float fullScanRatio = 1f / FULL_SCAN_INTERVAL;
+    float cropRatio = (1 - fullScanRatio) * 2 * RoiFaceEngine.CROP_SIZE * RoiFaceEngine.CROP_SIZE /
+      (WIDTH * HEIGHT);
+    assertEquals(fullScanRatio + cropRatio, mEngine.getProcessedPixelRatio(), 0.001f);
+    assertTrue(mEngine.getProcessedPixelRatio() < 0.25f);
+  }
+
+}
@@ -0,0 +1,45 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the sizing rules of {@link SpriteAtlas}.
+ */
+public class SpriteAtlasTest {
+
+  @Test
+  public void quantize_neverShrinksAndStaysClose() throws Exception {
+    for (int size = 9; size < 2048; size++) {
+      int quantized = SpriteAtlas.quantize(size);
+      assertTrue(size + " -> " + quantized, quantized >= size);
+      assertTrue(size + " -> " + quantized, quantized <= Math.ceil(size * 1.19f) + 1);
+    }
+  }
+
+  @Test
+  public void quantize_usesFewSizes() throws Exception {
+    int distinct = 0;
+    int previous = 0;
+    for (int size = 1; size <= 4096; size++) {
+      int quantized = SpriteAtlas.quantize(size);
+      assertTrue(quantized >= previous);
+      if (quantized != previous) {
+        distinct++;
+        previous = quantized;
+      }
+    }
+
+    // Four sizes per doubling between the limits, rather than one per pixel.
+    assertTrue("distinct sizes: " + distinct, distinct <= 4 * 8 + 2);
+  }
+
+  @Test
+  public void quantize_clampsToLimits() throws Exception {
+    assertEquals(8, SpriteAtlas.quantize(0));
+    assertEquals(8, SpriteAtlas.quantize(3));
+    assertEquals(2048, SpriteAtlas.quantize(5000));
+  }
+
+}
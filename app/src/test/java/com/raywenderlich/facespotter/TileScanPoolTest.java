@@ -0,0 +1,133 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TileScanPool}.
+ */
+public class TileScanPoolTest {
+
+  private static final int THREAD_COUNT = 3;
+
+  private TileScanPool mPool;
+
+  // Counts how many times each tile is scanned, and on which worker it was scanned last.
+  private static class CountingScanner implements TileScanPool.Scanner {
+
+    final AtomicIntegerArray mScans;
+    final AtomicIntegerArray mWorkers;
+    volatile Thread mLastThread;
+
+    CountingScanner(int tileCount) {
+      mScans = new AtomicIntegerArray(tileCount);
+      mWorkers = new AtomicIntegerArray(tileCount);
+    }
+
+    @Override
+    public void scanTile(int tile, int worker) {
+      mScans.incrementAndGet(tile);
+      mWorkers.set(tile, worker);
+      mLastThread = Thread.currentThread();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    mPool = new TileScanPool(THREAD_COUNT);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mPool.close();
+  }
+
+  @Test
+  public void workerCount_includesCallingThread() throws Exception {
+    assertEquals(THREAD_COUNT + 1, mPool.getWorkerCount());
+  }
+
+  @Test
+  public void scan_scansEveryTileOnce() throws Exception {
+    CountingScanner scanner = new CountingScanner(1000);
+    mPool.scan(scanner, 1000);
+
+    for (int tile = 0; tile < 1000; tile++) {
+      assertEquals(1, scanner.mScans.get(tile));
+      assertTrue(scanner.mWorkers.get(tile) < mPool.getWorkerCount());
+    }
+  }
+
+  @Test
+  public void repeatedScans_eachScanEveryTileOnce() throws Exception {
+    for (int scan = 0; scan < 200; scan++) {
+      int tileCount = 1 + (scan % 17);
+      CountingScanner scanner = new CountingScanner(tileCount);
+      mPool.scan(scanner, tileCount);
+      for (int tile = 0; tile < tileCount; tile++) {
+        assertEquals(1, scanner.mScans.get(tile));
+      }
+    }
+  }
+
+  @Test
+  public void noThreads_scansOnCallingThread() throws Exception {
+    TileScanPool pool = new TileScanPool(0);
+    CountingScanner scanner = new CountingScanner(10);
+    pool.scan(scanner, 10);
+
+    assertEquals(1, pool.getWorkerCount());
+    assertSame(Thread.currentThread(), scanner.mLastThread);
+    for (int tile = 0; tile < 10; tile++) {
+      assertEquals(1, scanner.mScans.get(tile));
+      assertEquals(0, scanner.mWorkers.get(tile));
+    }
+  }
+
+  @Test
+  public void failure_isThrownOnceOtherTilesAreDone() throws Exception {
+    final CountingScanner counter = new CountingScanner(100);
+    TileScanPool.Scanner scanner = new TileScanPool.Scanner() {
+      @Override
+      public void scanTile(int tile, int worker) {
+        counter.scanTile(tile, worker);
+        if (tile == 42) {
+          throw new IllegalStateException("tile " + tile);
+        }
+      }
+    };
+
+    try {
+      mPool.scan(scanner, 100);
+      fail("Expected the tile's failure");
+    } catch (IllegalStateException e) {
+      assertEquals("tile 42", e.getMessage());
+    }
+    for (int tile = 0; tile < 100; tile++) {
+      assertEquals(1, counter.mScans.get(tile));
+    }
+
+    // The pool carries on after a failure.
+    CountingScanner next = new CountingScanner(100);
+    mPool.scan(next, 100);
+    assertEquals(1, next.mScans.get(99));
+  }
+
+  @Test
+  public void afterClose_scansOnCallingThread() throws Exception {
+    mPool.close();
+    CountingScanner scanner = new CountingScanner(50);
+    mPool.scan(scanner, 50);
+
+    for (int tile = 0; tile < 50; tile++) {
+      assertEquals(1, scanner.mScans.get(tile));
+      assertEquals(0, scanner.mWorkers.get(tile));
+    }
+  }
+
+}
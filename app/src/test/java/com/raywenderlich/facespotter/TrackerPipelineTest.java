@@ -0,0 +1,300 @@
+package com.raywenderlich.facespotter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrackerPipeline}.
+ */
+public class TrackerPipelineTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  // Records the events handled for one item, as strings, and checks that they're never
+  // handled at the same time.
+  private static class RecordingHandler implements TrackerPipeline.Handler<String> {
+
+    final List<String> mEvents = new ArrayList<>();
+    final CountDownLatch mDone;
+    private volatile boolean mIsBusy;
+    volatile boolean mWasConcurrent;
+
+    // Set to hold up the worker in processNewItem() until released
+    CountDownLatch mStarted;
+    CountDownLatch mRelease;
+
+    RecordingHandler(CountDownLatch done) {
+      mDone = done;
+    }
+
+    private void record(String event) {
+      if (mIsBusy) {
+        mWasConcurrent = true;
+      }
+      mIsBusy = true;
+      synchronized (mEvents) {
+        mEvents.add(event);
+      }
+      mIsBusy = false;
+    }
+
+    List<String> getEvents() {
+      synchronized (mEvents) {
+        return new ArrayList<>(mEvents);
+      }
+    }
+
+    @Override
+    public void processNewItem(int id, String item) {
+      record("new " + item);
+      if (mStarted != null) {
+        mStarted.countDown();
+        try {
+          mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }
+
+    @Override
+    public void processUpdate(String item, long timeMs) {
+      record("update " + timeMs);
+    }
+
+    @Override
+    public void processMissing(long timeMs) {
+      record("missing " + timeMs);
+    }
+
+    @Override
+    public void processDone() {
+      record("done");
+      mDone.countDown();
+    }
+  }
+
+  private TrackerPipeline<String> mPipeline;
+
+  @After
+  public void tearDown() throws Exception {
+    if (mPipeline != null) {
+      mPipeline.close();
+    }
+  }
+
+  // Starts a single worker, and holds it up handling a new item until the returned handler
+  // is released.
+  private RecordingHandler blockWorker(int queueCapacity, CountDownLatch done) throws Exception {
+    mPipeline = new TrackerPipeline<>(1, queueCapacity);
+    RecordingHandler handler = new RecordingHandler(done);
+    handler.mStarted = new CountDownLatch(1);
+    handler.mRelease = new CountDownLatch(1);
+    mPipeline.postNewItem(handler, 1, "a");
+    assertTrue(handler.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    return handler;
+  }
+
+  @Test
+  public void eachItemsEvents_areHandledInOrder() throws Exception {
+    final int itemCount = 16;
+    final int updateCount = 1000;
+    mPipeline = new TrackerPipeline<>(3, itemCount * updateCount);
+    CountDownLatch done = new CountDownLatch(itemCount);
+    RecordingHandler[] handlers = new RecordingHandler[itemCount];
+    for (int id = 0; id < itemCount; id++) {
+      handlers[id] = new RecordingHandler(done);
+      mPipeline.postNewItem(handlers[id], id, "face" + id);
+    }
+    for (int t = 1; t <= updateCount; t++) {
+      for (int id = 0; id < itemCount; id++) {
+        if (t % 10 == 0) {
+          mPipeline.postMissing(handlers[id], id, t);
+        } else {
+          mPipeline.postUpdate(handlers[id], id, "face" + id, t);
+        }
+      }
+    }
+    for (int id = 0; id < itemCount; id++) {
+      mPipeline.postDone(handlers[id], id);
+    }
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    for (int id = 0; id < itemCount; id++) {
+      List<String> events = handlers[id].getEvents();
+      assertFalse(handlers[id].mWasConcurrent);
+      assertEquals(updateCount + 2, events.size());
+      assertEquals("new face" + id, events.get(0));
+      for (int t = 1; t <= updateCount; t++) {
+        assertEquals(((t % 10 == 0) ? "missing " : "update ") + t, events.get(t));
+      }
+      assertEquals("done", events.get(updateCount + 1));
+    }
+    assertEquals(0, mPipeline.getDroppedCount());
+    assertEquals(itemCount * (updateCount + 2), mPipeline.getPostedCount());
+  }
+
+  @Test
+  public void fullQueue_dropsOldestUpdates() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    RecordingHandler handler = blockWorker(2, done);
+    for (int t = 1; t <= 5; t++) {
+      mPipeline.postUpdate(handler, 1, "a", t);
+    }
+    mPipeline.postMissing(handler, 1, 6);
+    mPipeline.postDone(handler, 1);
+    assertEquals(3, mPipeline.getQueueDepth());
+    handler.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    List<String> expected = new ArrayList<>();
+    expected.add("new a");
+    expected.add("update 5");
+    expected.add("missing 6");
+    expected.add("done");
+    assertEquals(expected, handler.getEvents());
+    assertEquals(4, mPipeline.getDroppedCount());
+  }
+
+  @Test
+  public void fullQueue_replacesSameItemsUpdateFirst() throws Exception {
+    CountDownLatch done = new CountDownLatch(3);
+    RecordingHandler blocked = blockWorker(2, done);
+    RecordingHandler busy = new RecordingHandler(done);
+    RecordingHandler quiet = new RecordingHandler(done);
+    mPipeline.postMissing(quiet, 3, 1);
+    mPipeline.postUpdate(busy, 2, "b", 2);
+    mPipeline.postUpdate(busy, 2, "b", 3);
+    mPipeline.postUpdate(busy, 2, "b", 4);
+    mPipeline.postDone(busy, 2);
+    mPipeline.postDone(quiet, 3);
+    mPipeline.postDone(blocked, 1);
+    blocked.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    // The busy item's updates replaced each other, rather than the other item's only event.
+    List<String> expected = new ArrayList<>();
+    expected.add("update 4");
+    expected.add("done");
+    assertEquals(expected, busy.getEvents());
+    expected.clear();
+    expected.add("missing 1");
+    expected.add("done");
+    assertEquals(expected, quiet.getEvents());
+    assertEquals(2, mPipeline.getDroppedCount());
+  }
+
+  @Test
+  public void fullQueue_dropsSupersededUpdateBeforeAnotherItemsOnlyOne() throws Exception {
+    CountDownLatch done = new CountDownLatch(4);
+    RecordingHandler blocked = blockWorker(3, done);
+    RecordingHandler quiet = new RecordingHandler(done);
+    RecordingHandler busy = new RecordingHandler(done);
+    RecordingHandler late = new RecordingHandler(done);
+    mPipeline.postUpdate(quiet, 2, "b", 1);
+    mPipeline.postUpdate(busy, 3, "c", 2);
+    mPipeline.postUpdate(busy, 3, "c", 3);
+    mPipeline.postUpdate(late, 4, "d", 4);
+    mPipeline.postDone(quiet, 2);
+    mPipeline.postDone(busy, 3);
+    mPipeline.postDone(late, 4);
+    mPipeline.postDone(blocked, 1);
+    blocked.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    // Room for the late item's update came from the busy item's older update, although the
+    // quiet item's was older still.
+    assertEquals("update 1", quiet.getEvents().get(0));
+    assertEquals("update 3", busy.getEvents().get(0));
+    assertEquals(2, busy.getEvents().size());
+    assertEquals("update 4", late.getEvents().get(0));
+    assertEquals(1, mPipeline.getDroppedCount());
+  }
+
+  @Test
+  public void fullQueue_neverDropsNewItemsOrDone() throws Exception {
+    CountDownLatch done = new CountDownLatch(3);
+    RecordingHandler blocked = blockWorker(1, done);
+    RecordingHandler first = new RecordingHandler(done);
+    RecordingHandler second = new RecordingHandler(done);
+    mPipeline.postNewItem(first, 2, "b");
+    mPipeline.postUpdate(first, 2, "b", 1);
+    mPipeline.postDone(first, 2);
+    mPipeline.postNewItem(second, 3, "c");
+    mPipeline.postUpdate(second, 3, "c", 2);
+    mPipeline.postDone(second, 3);
+    mPipeline.postDone(blocked, 1);
+    blocked.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    // Each item had one update queued, so as a last resort the first update was dropped to make
+    // room for the second.
+    List<String> expected = new ArrayList<>();
+    expected.add("new b");
+    expected.add("done");
+    assertEquals(expected, first.getEvents());
+    expected.clear();
+    expected.add("new c");
+    expected.add("update 2");
+    expected.add("done");
+    assertEquals(expected, second.getEvents());
+    assertEquals(1, mPipeline.getDroppedCount());
+  }
+
+  @Test
+  public void statistics() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    RecordingHandler handler = blockWorker(8, done);
+    for (int t = 1; t <= 4; t++) {
+      mPipeline.postUpdate(handler, 1, "a", t);
+    }
+    mPipeline.postDone(handler, 1);
+    assertEquals(5, mPipeline.getQueueDepth());
+    Thread.sleep(5);
+    handler.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    assertEquals(6, mPipeline.getPostedCount());
+    assertEquals(0, mPipeline.getDroppedCount());
+    assertEquals(5, mPipeline.getMaxQueueDepth());
+    // The first event was being handled, and the others waiting, for at least the sleep.
+    assertTrue(mPipeline.getMaxHandleNs() >= TimeUnit.MILLISECONDS.toNanos(5));
+    assertTrue(mPipeline.getMaxWaitNs() >= TimeUnit.MILLISECONDS.toNanos(5));
+    assertTrue(mPipeline.getAverageWaitNs() <= mPipeline.getMaxWaitNs());
+    assertTrue(mPipeline.getAverageHandleNs() <= mPipeline.getMaxHandleNs());
+  }
+
+  @Test
+  public void close_handlesPostedEventsAndIgnoresLaterOnes() throws Exception {
+    CountDownLatch done = new CountDownLatch(1);
+    RecordingHandler handler = blockWorker(8, done);
+    mPipeline.postUpdate(handler, 1, "a", 1);
+    mPipeline.postDone(handler, 1);
+    mPipeline.close();
+    mPipeline.postUpdate(handler, 1, "a", 2);
+    handler.mRelease.countDown();
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    List<String> expected = new ArrayList<>();
+    expected.add("new a");
+    expected.add("update 1");
+    expected.add("done");
+    assertEquals(expected, handler.getEvents());
+    assertEquals(3, mPipeline.getPostedCount());
+  }
+
+  @Test
+  public void workerCount_isAtLeastOne() throws Exception {
+    mPipeline = new TrackerPipeline<>(0, 1);
+
+    assertEquals(1, mPipeline.getWorkerCount());
+  }
+
+}
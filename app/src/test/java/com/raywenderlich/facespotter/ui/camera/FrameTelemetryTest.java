@@ -0,0 +1,122 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FrameTelemetry}.
+ */
+public class FrameTelemetryTest {
+
+  private static class FakeClock implements FrameTelemetry.Clock {
+    long mNowMs;
+
+    @Override
+    public long nowMs() {
+      return mNowMs;
+    }
+  }
+
+  private FakeClock mClock;
+  private FrameTelemetry mTelemetry;
+
+  @Before
+  public void setUp() throws Exception {
+    mClock = new FakeClock();
+    mClock.mNowMs = 1000;
+    mTelemetry = new FrameTelemetry(mClock);
+    mTelemetry.setRequestedFps(60);
+  }
+
+  // Runs the camera for a second at 30 fps, with the detector seeing every given frame.
+  private void runSecond(int firstFrameId, int detectEvery) {
+    for (int i = 0; i < 30; i++) {
+      if (i % detectEvery == 0) {
+        mTelemetry.onFrameDetected(firstFrameId + i);
+      }
+      mTelemetry.onOverlayDrawn();
+      mTelemetry.onOverlayDrawn();
+    }
+    mClock.mNowMs += 1000;
+  }
+
+  @Test
+  public void nothingReported_hasNoRates() throws Exception {
+    FrameTelemetry.Snapshot snapshot = mTelemetry.getSnapshot();
+
+    assertEquals(0, snapshot.getRunningMs());
+    assertEquals(0, snapshot.getCameraFps(), 0);
+    assertEquals(0, snapshot.getDroppedFraction(), 0);
+    assertEquals(60, snapshot.getRequestedFps(), 0);
+  }
+
+  @Test
+  public void rates_perSecondOfRunning() throws Exception {
+    mTelemetry.onCameraStarted();
+    runSecond(0, 1);
+    runSecond(30, 3);
+    FrameTelemetry.Snapshot snapshot = mTelemetry.getSnapshot();
+
+    assertEquals(2000, snapshot.getRunningMs());
+    // The camera's last two frames haven't reached the detector yet.
+    assertEquals(58, snapshot.getCameraFrameCount());
+    assertEquals(40, snapshot.getDetectedFrameCount());
+    assertEquals(18, snapshot.getDroppedFrameCount());
+    assertEquals(120, snapshot.getDrawnFrameCount());
+    assertEquals(29, snapshot.getCameraFps(), 0.01f);
+    assertEquals(20, snapshot.getDetectorFps(), 0.01f);
+    assertEquals(60, snapshot.getDrawFps(), 0.01f);
+    assertEquals(18f / 58, snapshot.getDroppedFraction(), 0.001f);
+  }
+
+  @Test
+  public void since_coversInterval() throws Exception {
+    mTelemetry.onCameraStarted();
+    runSecond(0, 1);
+    FrameTelemetry.Snapshot earlier = mTelemetry.getSnapshot();
+    runSecond(30, 2);
+    FrameTelemetry.Snapshot interval = mTelemetry.getSnapshot().since(earlier);
+
+    assertEquals(1000, interval.getRunningMs());
+    assertEquals(29, interval.getCameraFrameCount());
+    assertEquals(15, interval.getDetectedFrameCount());
+    assertEquals(14, interval.getDroppedFrameCount());
+    assertEquals(14f / 29, interval.getDroppedFraction(), 0.001f);
+  }
+
+  @Test
+  public void stoppedTime_andRestartedFrameIds_areNotCounted() throws Exception {
+    mTelemetry.onCameraStarted();
+    runSecond(0, 1);
+    mTelemetry.onCameraStopped();
+    mClock.mNowMs += 5000;
+
+    // A new camera source numbers its frames from zero again.
+    mTelemetry.onCameraStarted();
+    runSecond(0, 1);
+    FrameTelemetry.Snapshot snapshot = mTelemetry.getSnapshot();
+
+    assertEquals(2000, snapshot.getRunningMs());
+    assertEquals(60, snapshot.getCameraFrameCount());
+    assertEquals(0, snapshot.getDroppedFrameCount());
+    assertEquals(30, snapshot.getCameraFps(), 0.01f);
+  }
+
+  @Test
+  public void toString_isKeyValuePairs() throws Exception {
+    mTelemetry.onCameraStarted();
+    runSecond(0, 2);
+    String line = mTelemetry.getSnapshot().toString();
+
+    assertTrue(line, line.contains("requestedFps=60.0 "));
+    assertTrue(line, line.contains("cameraFps=29.0 "));
+    assertTrue(line, line.contains("detectorFps=15.0 "));
+    assertTrue(line, line.contains("droppedFrames=14 "));
+    for (String pair : line.split(" ")) {
+      assertEquals(pair, 2, pair.split("=").length);
+    }
+  }
+
+}
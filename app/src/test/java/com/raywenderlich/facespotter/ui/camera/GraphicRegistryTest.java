@@ -0,0 +1,148 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GraphicRegistry}, including a stress test that has many simulated
+ * trackers adding and removing graphics while a drawing thread iterates over them.
+ */
+public class GraphicRegistryTest {
+
+  @Test
+  public void add_keepsInsertionOrder() throws Exception {
+    GraphicRegistry<String> registry = new GraphicRegistry<>();
+    String first = "first";
+    String second = "second";
+    String third = "third";
+
+    registry.add(first);
+    registry.add(second);
+    registry.add(third);
+    registry.remove(second);
+    registry.add(second);
+
+    assertArrayEquals(new Object[] { first, third, second }, registry.snapshot());
+  }
+
+  @Test
+  public void add_alreadyPresent_leavesSnapshotUntouched() throws Exception {
+    GraphicRegistry<String> registry = new GraphicRegistry<>();
+    String graphic = "graphic";
+    registry.add(graphic);
+    Object[] before = registry.snapshot();
+
+    assertFalse(registry.add(graphic));
+    assertSame(before, registry.snapshot());
+  }
+
+  @Test
+  public void remove_missing_returnsFalse() throws Exception {
+    GraphicRegistry<String> registry = new GraphicRegistry<>();
+    registry.add("present");
+
+    assertFalse(registry.remove("missing"));
+    assertEquals(1, registry.snapshot().length);
+  }
+
+  @Test
+  public void clear_removesEverything() throws Exception {
+    GraphicRegistry<String> registry = new GraphicRegistry<>();
+    registry.add("a");
+    registry.add("b");
+    registry.clear();
+
+    assertEquals(0, registry.snapshot().length);
+    assertFalse(registry.contains("a"));
+  }
+
+  @Test
+  public void concurrentTrackersAndDrawing_stayConsistent() throws Exception {
+    final int trackerCount = 16;
+    final int framesPerTracker = 20000;
+    final GraphicRegistry<Object> registry = new GraphicRegistry<>();
+    final Object[][] graphics = new Object[trackerCount][2];
+    for (int t = 0; t < trackerCount; t++) {
+      graphics[t][0] = new Object();
+      graphics[t][1] = new Object();
+    }
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicBoolean trackersDone = new AtomicBoolean(false);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // Each simulated tracker adds its graphic on every frame (as FaceTracker.onUpdate does),
+    // and occasionally removes it (as onMissing does).  Its second graphic is added and removed
+    // in strict alternation, so it must always end up removed.
+    Thread[] trackers = new Thread[trackerCount];
+    for (int t = 0; t < trackerCount; t++) {
+      final Object[] own = graphics[t];
+      trackers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int frame = 0; frame < framesPerTracker; frame++) {
+              registry.add(own[0]);
+              if (frame % 7 == 0) {
+                registry.remove(own[0]);
+              }
+              assertTrue(registry.add(own[1]));
+              assertTrue(registry.remove(own[1]));
+            }
+            registry.add(own[0]);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+      trackers[t].start();
+    }
+
+    // The drawing thread checks that every snapshot it sees is free of duplicates.
+    Thread drawer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          start.await();
+          Map<Object, Boolean> seen = new IdentityHashMap<>();
+          while (!trackersDone.get()) {
+            seen.clear();
+            for (Object graphic : registry.snapshot()) {
+              assertNull("graphic drawn twice in one frame", seen.put(graphic, Boolean.TRUE));
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    });
+    drawer.start();
+
+    start.countDown();
+    for (Thread tracker : trackers) {
+      tracker.join();
+    }
+    trackersDone.set(true);
+    drawer.join();
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+
+    Object[] remaining = registry.snapshot();
+    assertEquals(trackerCount, remaining.length);
+    for (int t = 0; t < trackerCount; t++) {
+      assertTrue(registry.contains(graphics[t][0]));
+      assertFalse(registry.contains(graphics[t][1]));
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link InvalidationScheduler}, driven by a manually stepped frame clock.
+ */
+public class InvalidationSchedulerTest {
+
+  // A frame clock that only delivers a frame when the test says so.
+  private static class ManualFrameClock implements InvalidationScheduler.FrameClock {
+
+    private final List<Runnable> mCallbacks = new ArrayList<>();
+
+    @Override
+    public void postFrameCallback(Runnable callback) {
+      mCallbacks.add(callback);
+    }
+
+    int pendingCallbacks() {
+      return mCallbacks.size();
+    }
+
+    void doFrame() {
+      List<Runnable> callbacks = new ArrayList<>(mCallbacks);
+      mCallbacks.clear();
+      for (Runnable callback : callbacks) {
+        callback.run();
+      }
+    }
+
+  }
+
+  // Records the invalidations the scheduler issues.
+  private static class RecordingInvalidator implements InvalidationScheduler.Invalidator {
+
+    int mCount;
+    int mFullCount;
+    int[] mLastRegion;
+
+    @Override
+    public void invalidateAll() {
+      mCount++;
+      mFullCount++;
+    }
+
+    @Override
+    public void invalidateRegion(int left, int top, int right, int bottom) {
+      mCount++;
+      mLastRegion = new int[] { left, top, right, bottom };
+    }
+
+  }
+
+  private static DirtyRegion region(float left, float top, float right, float bottom) {
+    DirtyRegion region = new DirtyRegion();
+    region.set(left, top, right, bottom);
+    return region;
+  }
+
+  @Test
+  public void requestsWithinOneFrame_issueOneInvalidate() throws Exception {
+    ManualFrameClock clock = new ManualFrameClock();
+    RecordingInvalidator invalidate = new RecordingInvalidator();
+    InvalidationScheduler scheduler = new InvalidationScheduler(clock, invalidate);
+
+    // Eight faces, each updated and re-added in the same camera frame.
+    for (int i = 0; i < 16; i++) {
+      scheduler.requestInvalidate();
+    }
+    assertEquals(1, clock.pendingCallbacks());
+    assertEquals(0, invalidate.mCount);
+
+    clock.doFrame();
+
+    assertEquals(1, invalidate.mCount);
+    assertEquals(16, scheduler.getRequestedCount());
+    assertEquals(1, scheduler.getIssuedCount());
+  }
+
+  @Test
+  public void framesWithoutRequests_issueNothing() throws Exception {
+    ManualFrameClock clock = new ManualFrameClock();
+    RecordingInvalidator invalidate = new RecordingInvalidator();
+    InvalidationScheduler scheduler = new InvalidationScheduler(clock, invalidate);
+
+    scheduler.requestInvalidate();
+    clock.doFrame();
+    clock.doFrame();
+    clock.doFrame();
+
+    assertEquals(1, invalidate.mCount);
+    assertEquals(0, clock.pendingCallbacks());
+  }
+
+  @Test
+  public void requestDuringInvalidate_schedulesNextFrame() throws Exception {
+    final ManualFrameClock clock = new ManualFrameClock();
+    final InvalidationScheduler[] scheduler = new InvalidationScheduler[1];
+    final int[] invalidations = new int[1];
+    scheduler[0] = new InvalidationScheduler(clock, new RecordingInvalidator() {
+      @Override
+      public void invalidateAll() {
+        invalidations[0]++;
+        if (invalidations[0] == 1) {
+          scheduler[0].requestInvalidate();
+        }
+      }
+    });
+
+    scheduler[0].requestInvalidate();
+    clock.doFrame();
+    assertEquals(1, clock.pendingCallbacks());
+
+    clock.doFrame();
+    assertEquals(2, invalidations[0]);
+    assertEquals(2, scheduler[0].getIssuedCount());
+  }
+
+  @Test
+  public void regionRequests_invalidateTheirUnion() throws Exception {
+    ManualFrameClock clock = new ManualFrameClock();
+    RecordingInvalidator invalidate = new RecordingInvalidator();
+    InvalidationScheduler scheduler = new InvalidationScheduler(clock, invalidate);
+
+    scheduler.requestInvalidate(region(10.5f, 20, 30, 40));
+    scheduler.requestInvalidate(region(100, 5, 50, 25.5f));
+    clock.doFrame();
+
+    assertEquals(1, invalidate.mCount);
+    assertEquals(0, invalidate.mFullCount);
+    assertArrayEquals(new int[] { 10, 5, 100, 40 }, invalidate.mLastRegion);
+  }
+
+  @Test
+  public void wholeViewRequest_overridesRegions() throws Exception {
+    ManualFrameClock clock = new ManualFrameClock();
+    RecordingInvalidator invalidate = new RecordingInvalidator();
+    InvalidationScheduler scheduler = new InvalidationScheduler(clock, invalidate);
+
+    scheduler.requestInvalidate(region(0, 0, 10, 10));
+    scheduler.requestInvalidate();
+    clock.doFrame();
+
+    assertEquals(1, invalidate.mFullCount);
+    assertNull(invalidate.mLastRegion);
+
+    // The next frame starts from a clean slate.
+    scheduler.requestInvalidate(region(1, 2, 3, 4));
+    clock.doFrame();
+    assertEquals(1, invalidate.mFullCount);
+    assertArrayEquals(new int[] { 1, 2, 3, 4 }, invalidate.mLastRegion);
+  }
+
+  @Test
+  public void emptyRegionRequest_isIgnored() throws Exception {
+    ManualFrameClock clock = new ManualFrameClock();
+    RecordingInvalidator invalidate = new RecordingInvalidator();
+    InvalidationScheduler scheduler = new InvalidationScheduler(clock, invalidate);
+
+    scheduler.requestInvalidate(new DirtyRegion());
+
+    assertEquals(0, clock.pendingCallbacks());
+    assertEquals(0, scheduler.getRequestedCount());
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.raywenderlich.facespotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the plain Java {@link CascadeFaceEngine} on preview-sized NV21 frames, each with a few
+ * drawn faces, as the camera delivers them: sideways, to be turned upright.  It's measured
+ * scanning every frame in full, scanning it in pyramid levels and tiles on a {@link TileScanPool}
+ * with a worker for every core, and wrapped in a {@link RoiFaceEngine} that mostly looks only
+ * around the faces it's tracking.  One operation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CascadeFaceEngineBenchmark {
+
+  @Param({"320x240", "640x480", "1280x720"})
+  public String previewSize;
+
+  // Smallest face to find, as a fraction of the upright width
+  @Param({"0.1", "0.2"})
+  public float minFaceSize;
+
+  // Scan the whole frame on every this many frames, when looking around tracked faces.
+  private static final int FULL_SCAN_INTERVAL = 10;
+
+  private CascadeFaceEngine mEngine;
+  private TileScanPool mPool;
+  private CascadeFaceEngine mPooledEngine;
+  private RoiFaceEngine mRoiEngine;
+  private final LuminanceFrame mFrame = new LuminanceFrame();
+  private final DetectedFaces mFaces = new DetectedFaces();
+
+  @Setup
+  public void setUp() {
+    String[] size = previewSize.split("x");
+    int width = Integer.parseInt(size[0]);
+    int height = Integer.parseInt(size[1]);
+
+    // Drawn upright, height wide and width high, then turned as a portrait camera would see it.
+    byte[] image = LuminanceFaces.background(height, width, 1);
+    LuminanceFaces.drawFace(image, height, height / 8, width / 8, height / 2);
+    LuminanceFaces.drawFace(image, height, height / 2, width / 2, height / 3);
+    LuminanceFaces.drawFace(image, height, height / 10, (width * 2) / 3, height / 4);
+    byte[] sideways = LuminanceFaces.rotateAnticlockwise(image, height, width);
+    ByteBuffer nv21 = ByteBuffer.wrap(LuminanceFaces.toNv21(sideways, width, height));
+    mFrame.set(nv21, width, height, LuminanceFrame.ROTATION_90, 0, 0, true);
+
+    HaarCascade cascade = HaarCascade.getDefault();
+    mEngine = new CascadeFaceEngine(cascade, minFaceSize);
+    mPool = new TileScanPool(Runtime.getRuntime().availableProcessors() - 1);
+    mPooledEngine = new CascadeFaceEngine(cascade, minFaceSize,
+                                          CascadeFaceEngine.DEFAULT_STEP_FRACTION, mPool);
+    mRoiEngine = new RoiFaceEngine(
+      new CascadeFaceEngine(cascade, minFaceSize),
+      new CascadeFaceEngine(cascade, RoiFaceEngine.CROP_MIN_FACE_SIZE,
+                            RoiFaceEngine.CROP_STEP_FRACTION),
+      FULL_SCAN_INTERVAL);
+  }
+
+  @TearDown
+  public void tearDown() {
+    mPool.close();
+  }
+
+  @Benchmark
+  public DetectedFaces detect() {
+    mEngine.detect(mFrame, mFaces);
+    return mFaces;
+  }
+
+  @Benchmark
+  public DetectedFaces detectOnPool() {
+    mPooledEngine.detect(mFrame, mFaces);
+    return mFaces;
+  }
+
+  @Benchmark
+  public DetectedFaces detectAroundFaces() {
+    mRoiEngine.detect(mFrame, mFaces);
+    return mFaces;
+  }
+
+}
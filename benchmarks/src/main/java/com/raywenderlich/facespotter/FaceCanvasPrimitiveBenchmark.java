@@ -0,0 +1,93 @@
+package com.raywenderlich.facespotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each kind of drawing call {@link FaceRenderer} makes, one call per operation, at the
+ * size it draws a face filling a fifth of a 1080p view.  Along with
+ * {@link FaceRendererBenchmark}, this shows which primitives a frame's drawing time goes to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceCanvasPrimitiveBenchmark {
+
+  private static final int VIEW_SIZE = 512;
+  private static final float CENTER = VIEW_SIZE / 2;
+
+  // About what FaceGeometry works out for a face 216 pixels wide
+  private static final float EYE_RADIUS = 48;
+  private static final float IRIS_RADIUS = 24;
+  private static final int SPRITE_SIZE = 96;
+
+  private Java2dFaceCanvas mCanvas;
+
+  @Setup
+  public void setUp() throws IOException {
+    mCanvas = FaceRendererBenchmark.createCanvas(VIEW_SIZE, VIEW_SIZE);
+  }
+
+  @TearDown
+  public void tearDown() {
+    mCanvas.dispose();
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas filledCircle() {
+    mCanvas.drawCircle(CENTER, CENTER, EYE_RADIUS, FaceCanvas.EYE_WHITES);
+    return mCanvas;
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas outlinedCircle() {
+    mCanvas.drawCircle(CENTER, CENTER, EYE_RADIUS, FaceCanvas.EYE_OUTLINE);
+    return mCanvas;
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas iris() {
+    mCanvas.drawCircle(CENTER, CENTER, IRIS_RADIUS, FaceCanvas.EYE_IRIS);
+    return mCanvas;
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas line() {
+    mCanvas.drawLine(CENTER - EYE_RADIUS, CENTER, CENTER + EYE_RADIUS, CENTER,
+                     FaceCanvas.EYE_OUTLINE);
+    return mCanvas;
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas sprite() {
+    int left = (int) CENTER - SPRITE_SIZE / 2;
+    int top = (int) CENTER - SPRITE_SIZE / 2;
+    mCanvas.drawSprite(FaceCanvas.PIG_NOSE, left, top, left + SPRITE_SIZE, top + SPRITE_SIZE);
+    return mCanvas;
+  }
+
+  // Sprites are mirrored for the front-facing camera.
+  @Benchmark
+  public Java2dFaceCanvas mirroredSprite() {
+    int left = (int) CENTER - SPRITE_SIZE / 2;
+    int top = (int) CENTER - SPRITE_SIZE / 2;
+    mCanvas.drawSprite(FaceCanvas.PIG_NOSE, left + SPRITE_SIZE, top, left, top + SPRITE_SIZE);
+    return mCanvas;
+  }
+
+}
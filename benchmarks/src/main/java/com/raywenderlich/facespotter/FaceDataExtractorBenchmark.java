@@ -0,0 +1,64 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Face;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-face work {@link FaceTracker#onUpdate} does on the detector thread for each
+ * frame: smoothing the detection into {@link FaceData}, approximating missing landmarks and
+ * classifying the eyes and smile.  One operation is one frame's worth of faces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceDataExtractorBenchmark {
+
+  @Param({"1", "4", "16", "64"})
+  public int faceCount;
+
+  private Face[][] mFrames;
+  private FaceDataExtractor[] mExtractors;
+  private FaceData[] mFaceData;
+  private int mFrame;
+  private long mTimeMs;
+
+  @Setup
+  public void setUp() {
+    mFrames = SyntheticFaces.generate(faceCount, 1);
+    mExtractors = new FaceDataExtractor[faceCount];
+    mFaceData = new FaceData[faceCount];
+    for (int i = 0; i < faceCount; i++) {
+      mExtractors[i] = new FaceDataExtractor();
+      mFaceData[i] = new FaceData();
+    }
+  }
+
+  @Benchmark
+  public void extractFrame(Blackhole blackhole) {
+    Face[] faces = mFrames[mFrame];
+    mFrame = (mFrame + 1) % mFrames.length;
+    mTimeMs += SyntheticFaces.FRAME_INTERVAL_MS;
+    for (int i = 0; i < faces.length; i++) {
+      mExtractors[i].extract(faces[i], mTimeMs, mFaceData[i]);
+      blackhole.consume(mFaceData[i].getLandmarkX(FaceData.LANDMARK_TYPE_COUNT - 1));
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Face;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the geometry {@link FaceGraphic} works out for every face on every frame, both on the
+ * detector thread (to find the area to redraw) and on the UI thread (to draw).  One operation is
+ * one frame's worth of faces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceGeometryBenchmark {
+
+  // A 1080p portrait view showing the preview from the front-facing camera
+  private static final float VIEW_WIDTH = 1080;
+  private static final float VIEW_HEIGHT = 1920;
+
+  private static final FaceGeometry.ViewTransform FRONT_FACING_VIEW =
+    new FaceGeometry.ViewTransform() {
+      private final float mWidthScaleFactor = VIEW_WIDTH / SyntheticFaces.PREVIEW_WIDTH;
+      private final float mHeightScaleFactor = VIEW_HEIGHT / SyntheticFaces.PREVIEW_HEIGHT;
+
+      @Override
+      public float scaleX(float horizontal) {
+        return horizontal * mWidthScaleFactor;
+      }
+
+      @Override
+      public float scaleY(float vertical) {
+        return vertical * mHeightScaleFactor;
+      }
+
+      @Override
+      public float translateX(float x) {
+        return VIEW_WIDTH - scaleX(x);
+      }
+
+      @Override
+      public float translateY(float y) {
+        return scaleY(y);
+      }
+    };
+
+  @Param({"1", "4", "16", "64"})
+  public int faceCount;
+
+  private FaceData[][] mFrames;
+  private final FaceGeometry mGeometry = new FaceGeometry();
+  private int mFrame;
+
+  @Setup
+  public void setUp() {
+    Face[][] faces = SyntheticFaces.generate(faceCount, 1);
+    FaceDataExtractor[] extractors = new FaceDataExtractor[faceCount];
+    for (int i = 0; i < faceCount; i++) {
+      extractors[i] = new FaceDataExtractor();
+    }
+
+    mFrames = new FaceData[faces.length][faceCount];
+    for (int frame = 0; frame < faces.length; frame++) {
+      for (int i = 0; i < faceCount; i++) {
+        FaceData faceData = new FaceData();
+        long timeMs = frame * SyntheticFaces.FRAME_INTERVAL_MS;
+        extractors[i].extract(faces[frame][i], timeMs, faceData);
+        mFrames[frame][i] = faceData;
+      }
+    }
+  }
+
+  @Benchmark
+  public void computeFrame(Blackhole blackhole) {
+    FaceData[] faces = mFrames[mFrame];
+    mFrame = (mFrame + 1) % mFrames.length;
+    FaceGeometry geometry = mGeometry;
+    for (FaceData faceData : faces) {
+      if (geometry.compute(faceData, FRONT_FACING_VIEW, true)) {
+        blackhole.consume(geometry.getBoundsRight());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.raywenderlich.facespotter;
+
+import com.google.android.gms.vision.face.Face;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures drawing whole frames of faces with {@link FaceRenderer}, headless into a Java2D image
+ * the size of a 1080p portrait view.  One operation is one frame: clearing the image, then
+ * working out each face's geometry and drawing its decorations.  Throughput is frames per
+ * second.<p>
+ *
+ * Java2D isn't the device's renderer, so the numbers are for comparing changes to the drawing
+ * code against each other rather than for predicting frame rates on a phone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceRendererBenchmark {
+
+  // Where the app's drawables are, relative to this module unless set
+  static final String DRAWABLES_PROPERTY = "facespotter.drawables";
+  static final String DEFAULT_DRAWABLES_PATH = "../app/src/main/res/drawable";
+
+  // A 1080p portrait view showing the preview from the front-facing camera
+  private static final int VIEW_WIDTH = 1080;
+  private static final int VIEW_HEIGHT = 1920;
+  private static final int BACKGROUND_COLOR = 0xFF404040;
+
+  private static final FaceGeometry.ViewTransform FRONT_FACING_VIEW =
+    new FaceGeometry.ViewTransform() {
+      private final float mWidthScaleFactor = (float) VIEW_WIDTH / SyntheticFaces.PREVIEW_WIDTH;
+      private final float mHeightScaleFactor = (float) VIEW_HEIGHT / SyntheticFaces.PREVIEW_HEIGHT;
+
+      @Override
+      public float scaleX(float horizontal) {
+        return horizontal * mWidthScaleFactor;
+      }
+
+      @Override
+      public float scaleY(float vertical) {
+        return vertical * mHeightScaleFactor;
+      }
+
+      @Override
+      public float translateX(float x) {
+        return VIEW_WIDTH - scaleX(x);
+      }
+
+      @Override
+      public float translateY(float y) {
+        return scaleY(y);
+      }
+    };
+
+  @Param({"1", "4", "16", "64"})
+  public int faceCount;
+
+  private FaceData[][] mFrames;
+  private final FaceGeometry mGeometry = new FaceGeometry();
+  private Java2dFaceCanvas mCanvas;
+  private int mFrame;
+
+  static Java2dFaceCanvas createCanvas(int width, int height) throws IOException {
+    File drawables = new File(System.getProperty(DRAWABLES_PROPERTY, DEFAULT_DRAWABLES_PATH));
+    return new Java2dFaceCanvas(width, height, drawables);
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    Face[][] faces = SyntheticFaces.generate(faceCount, 1);
+    FaceDataExtractor[] extractors = new FaceDataExtractor[faceCount];
+    for (int i = 0; i < faceCount; i++) {
+      extractors[i] = new FaceDataExtractor();
+    }
+
+    mFrames = new FaceData[faces.length][faceCount];
+    for (int frame = 0; frame < faces.length; frame++) {
+      for (int i = 0; i < faceCount; i++) {
+        FaceData faceData = new FaceData();
+        long timeMs = frame * SyntheticFaces.FRAME_INTERVAL_MS;
+        extractors[i].extract(faces[frame][i], timeMs, faceData);
+        mFrames[frame][i] = faceData;
+      }
+    }
+
+    mCanvas = createCanvas(VIEW_WIDTH, VIEW_HEIGHT);
+  }
+
+  @TearDown
+  public void tearDown() {
+    mCanvas.dispose();
+  }
+
+  @Benchmark
+  public Java2dFaceCanvas drawFrame() {
+    FaceData[] faces = mFrames[mFrame];
+    mFrame = (mFrame + 1) % mFrames.length;
+    Java2dFaceCanvas canvas = mCanvas;
+    FaceGeometry geometry = mGeometry;
+    canvas.clear(BACKGROUND_COLOR);
+    for (FaceData faceData : faces) {
+      if (geometry.compute(faceData, FRONT_FACING_VIEW, true)) {
+        // The irises rest at the bottom of the eyes, where gravity leaves them.
+        float drop = geometry.getEyeRadius() - geometry.getIrisRadius();
+        FaceRenderer.draw(canvas, geometry, faceData,
+                          geometry.getLeftEyeX(), geometry.getLeftEyeY() + drop,
+                          geometry.getRightEyeX(), geometry.getRightEyeY() + drop);
+      }
+    }
+    return canvas;
+  }
+
+}
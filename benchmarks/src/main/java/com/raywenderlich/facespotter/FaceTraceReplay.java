@@ -0,0 +1,369 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a face trace, recorded on a device by {@link FaceTraceRecorder}, through the app's
+ * tracking and drawing code as fast as it will go, and reports the throughput and the time taken
+ * per frame.<p>
+ *
+ * Each frame goes through what {@link FaceTracker} and {@link FaceGraphic} do with it:<p>
+ *
+ * <ul>
+ * <li>new, updated and missing faces, with a face done after the same number of missed frames
+ * as Mobile Vision's {@code MultiProcessor},</li>
+ *
+ * <li>{@link FaceDataExtractor} turning each detection (or prediction) into {@link FaceData},
+ * handed over through a {@link FaceDataBuffer},</li>
+ *
+ * <li>{@link FaceGeometry} laying out the decorations on a 1080p portrait view, and</li>
+ *
+ * <li>{@link IrisPhysicsEngine} moving every iris, on a clock driven by the trace's timestamps.
+ * </li>
+ * </ul>
+ *
+ * Only the drawing calls themselves are left out.  Because the clock comes from the trace, a
+ * replay is deterministic: the digest it prints changes only if the tracking or drawing results
+ * change, which makes it a regression test as well as a profile.<p>
+ *
+ * Usage:<p>
+ *
+ * <pre>
+ * FaceTraceReplay &lt;trace&gt; [passes]
+ * FaceTraceReplay --synthesize &lt;trace&gt; &lt;faces&gt; &lt;frames&gt;
+ * </pre>
+ */
+public final class FaceTraceReplay {
+
+  // The view the decorations are laid out on
+  private static final float VIEW_WIDTH = 1080;
+  private static final float VIEW_HEIGHT = 1920;
+
+  // Mobile Vision's MultiProcessor gives up on a face after this many frames without it.
+  private static final int MAX_MISSED_FRAMES = 3;
+
+  // Frame latencies are counted in microsecond buckets up to this, and the rest in the last one.
+  private static final int MAX_LATENCY_US = 100000;
+
+  /**
+   * A face being tracked, with what its tracker and graphic would hold.
+   */
+  private static final class ReplayedFace {
+    final FaceDataExtractor mExtractor = new FaceDataExtractor();
+    final FaceData mFaceData = new FaceData();
+    final FaceDataBuffer mBuffer = new FaceDataBuffer();
+    final FaceGeometry mGeometry = new FaceGeometry();
+    int mLeftEye = -1;
+    int mRightEye = -1;
+    boolean mIsDetected;
+    boolean mIsVisible;
+    int mMissedFrames;
+  }
+
+  private static final class TraceClock implements IrisPhysicsEngine.Clock {
+
+    long mNowMs;
+
+    @Override
+    public long nowMs() {
+      return mNowMs;
+    }
+  }
+
+  /**
+   * Maps preview coordinates onto the view, as {@code GraphicOverlay} does.
+   */
+  private static final class ReplayView implements FaceGeometry.ViewTransform {
+
+    float mWidthScaleFactor = 1.0f;
+    float mHeightScaleFactor = 1.0f;
+    boolean mIsFrontFacing;
+
+    void setPreviewSize(int width, int height) {
+      if ((width > 0) && (height > 0)) {
+        mWidthScaleFactor = VIEW_WIDTH / width;
+        mHeightScaleFactor = VIEW_HEIGHT / height;
+      }
+    }
+
+    @Override
+    public float scaleX(float horizontal) {
+      return horizontal * mWidthScaleFactor;
+    }
+
+    @Override
+    public float scaleY(float vertical) {
+      return vertical * mHeightScaleFactor;
+    }
+
+    @Override
+    public float translateX(float x) {
+      return mIsFrontFacing ? VIEW_WIDTH - scaleX(x) : scaleX(x);
+    }
+
+    @Override
+    public float translateY(float y) {
+      return scaleY(y);
+    }
+  }
+
+  private final TraceClock mClock = new TraceClock();
+  private final IrisPhysicsEngine mIrisPhysics = new IrisPhysicsEngine(mClock);
+  private final ReplayView mView = new ReplayView();
+  private final HashMap<Integer, ReplayedFace> mFaces = new HashMap<>();
+  private final ArrayList<ReplayedFace> mSpareFaces = new ArrayList<>();
+
+  // Results
+  private final long[] mLatencyCounts = new long[MAX_LATENCY_US + 1];
+  private long mFrameCount;
+  private long mFaceCount;
+  private long mDrawnFaceCount;
+  private long mTotalNs;
+  private long mMaxLatencyNs;
+  private long mDigest = 17;
+
+  public static void main(String[] args) throws IOException {
+    if ((args.length == 4) && args[0].equals("--synthesize")) {
+      synthesize(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+      return;
+    }
+    if ((args.length < 1) || (args.length > 2)) {
+      System.err.println("Usage: FaceTraceReplay <trace> [passes]");
+      System.err.println("       FaceTraceReplay --synthesize <trace> <faces> <frames>");
+      System.exit(2);
+    }
+
+    File trace = new File(args[0]);
+    int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+    for (int pass = 1; pass <= passes; pass++) {
+      FaceTraceReplay replay = new FaceTraceReplay();
+      replay.replay(trace);
+      System.out.println("Pass " + pass + " of " + passes);
+      replay.report();
+    }
+  }
+
+  private void replay(File trace) throws IOException {
+    FaceTraceReader reader = new FaceTraceReader(new RandomAccessFile(trace, "r").getChannel());
+    try {
+      mView.mIsFrontFacing = reader.isFrontFacing();
+      while (reader.nextFrame()) {
+        long startNs = System.nanoTime();
+        replayFrame(reader);
+        recordLatency(System.nanoTime() - startNs);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void replayFrame(FaceTraceReader reader) throws IOException {
+    long timeMs = reader.getTimestampMs();
+    mClock.mNowMs = timeMs;
+    mView.setPreviewSize(reader.getWidth(), reader.getHeight());
+    mFrameCount++;
+
+    // The detector thread: update the trackers.
+    for (ReplayedFace face : mFaces.values()) {
+      face.mIsDetected = false;
+    }
+    for (int i = 0, count = reader.getFaceCount(); i < count; i++) {
+      reader.nextFace();
+      Face detected = toFace(reader);
+      ReplayedFace face = mFaces.get(detected.getId());
+      if (face == null) {
+        face = obtainFace();
+        mFaces.put(detected.getId(), face);
+      }
+      face.mExtractor.extract(detected, timeMs, face.mFaceData);
+      face.mBuffer.publish(face.mFaceData);
+      face.mIsDetected = true;
+      face.mIsVisible = true;
+      face.mMissedFrames = 0;
+      mFaceCount++;
+    }
+    for (Iterator<ReplayedFace> it = mFaces.values().iterator(); it.hasNext(); ) {
+      ReplayedFace face = it.next();
+      if (face.mIsDetected) {
+        continue;
+      }
+      if (++face.mMissedFrames > MAX_MISSED_FRAMES) {
+        it.remove();
+        releaseFace(face);
+      } else if (face.mExtractor.predict(timeMs, face.mFaceData)) {
+        face.mBuffer.publish(face.mFaceData);
+      } else {
+        face.mIsVisible = false;
+      }
+    }
+
+    // The UI thread: prepare every graphic, step the irises, then draw.
+    for (ReplayedFace face : mFaces.values()) {
+      if (!face.mIsVisible) {
+        continue;
+      }
+      FaceData faceData = face.mBuffer.acquire();
+      FaceGeometry geometry = face.mGeometry;
+      if ((faceData.getSequence() == 0) ||
+          !geometry.compute(faceData, mView, mView.mIsFrontFacing)) {
+        face.mIsVisible = false;
+        continue;
+      }
+      if (face.mLeftEye < 0) {
+        face.mLeftEye = mIrisPhysics.allocate();
+        face.mRightEye = mIrisPhysics.allocate();
+      }
+      mIrisPhysics.setEye(face.mLeftEye, geometry.getLeftEyeX(), geometry.getLeftEyeY(),
+                          geometry.getEyeRadius(), geometry.getIrisRadius());
+      mIrisPhysics.setEye(face.mRightEye, geometry.getRightEyeX(), geometry.getRightEyeY(),
+                          geometry.getEyeRadius(), geometry.getIrisRadius());
+    }
+    mIrisPhysics.stepFrame(mFrameCount);
+    for (ReplayedFace face : mFaces.values()) {
+      if (!face.mIsVisible) {
+        continue;
+      }
+      FaceGeometry geometry = face.mGeometry;
+      digest(geometry.getBoundsLeft());
+      digest(geometry.getBoundsTop());
+      digest(geometry.getBoundsRight());
+      digest(geometry.getBoundsBottom());
+      digest(mIrisPhysics.getIrisX(face.mLeftEye));
+      digest(mIrisPhysics.getIrisY(face.mLeftEye));
+      digest(mIrisPhysics.getIrisX(face.mRightEye));
+      digest(mIrisPhysics.getIrisY(face.mRightEye));
+      mDrawnFaceCount++;
+    }
+  }
+
+  // Build the face as the detector would have reported it.
+  private static Face toFace(FaceTraceReader reader) {
+    int landmarkCount = 0;
+    for (int type = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if (reader.hasLandmark(type)) {
+        landmarkCount++;
+      }
+    }
+    Landmark[] landmarks = new Landmark[landmarkCount];
+    for (int type = 0, index = 0; type < FaceData.LANDMARK_TYPE_COUNT; type++) {
+      if (reader.hasLandmark(type)) {
+        landmarks[index++] = new Landmark(
+          new PointF(reader.getLandmarkX(type), reader.getLandmarkY(type)), type);
+      }
+    }
+    return new Face(reader.getFaceId(), new PointF(reader.getX(), reader.getY()),
+                    reader.getFaceWidth(), reader.getFaceHeight(),
+                    reader.getEulerY(), reader.getEulerZ(), landmarks,
+                    reader.getIsLeftEyeOpenProbability(),
+                    reader.getIsRightEyeOpenProbability(),
+                    reader.getIsSmilingProbability());
+  }
+
+  private ReplayedFace obtainFace() {
+    int spares = mSpareFaces.size();
+    return (spares == 0) ? new ReplayedFace() : mSpareFaces.remove(spares - 1);
+  }
+
+  private void releaseFace(ReplayedFace face) {
+    face.mExtractor.reset();
+    face.mBuffer.clear();
+    if (face.mLeftEye >= 0) {
+      mIrisPhysics.release(face.mLeftEye);
+      mIrisPhysics.release(face.mRightEye);
+      face.mLeftEye = -1;
+      face.mRightEye = -1;
+    }
+    face.mIsVisible = false;
+    mSpareFaces.add(face);
+  }
+
+  private void digest(float value) {
+    mDigest = (mDigest * 31) + Float.floatToIntBits(value);
+  }
+
+  private void recordLatency(long latencyNs) {
+    mTotalNs += latencyNs;
+    mMaxLatencyNs = Math.max(mMaxLatencyNs, latencyNs);
+    mLatencyCounts[(int) Math.min(latencyNs / 1000, MAX_LATENCY_US)]++;
+  }
+
+  // Returns the latency, in microseconds, that the given fraction of frames took at most.
+  private long latencyPercentileUs(double fraction) {
+    long target = (long) Math.ceil(fraction * mFrameCount);
+    long seen = 0;
+    for (int us = 0; us <= MAX_LATENCY_US; us++) {
+      seen += mLatencyCounts[us];
+      if (seen >= Math.max(1, target)) {
+        return us;
+      }
+    }
+    return MAX_LATENCY_US;
+  }
+
+  private void report() {
+    double seconds = mTotalNs / 1e9;
+    System.out.println(String.format(Locale.US,
+      "  %d frames, %d faces detected, %d faces drawn in %.3f s",
+      mFrameCount, mFaceCount, mDrawnFaceCount, seconds));
+    if (mFrameCount == 0) {
+      return;
+    }
+    System.out.println(String.format(Locale.US,
+      "  throughput: %.0f frames/s, %.0f faces/s",
+      mFrameCount / seconds, mFaceCount / seconds));
+    System.out.println(String.format(Locale.US,
+      "  latency per frame (us): mean %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d",
+      mTotalNs / 1000.0 / mFrameCount, latencyPercentileUs(0.5), latencyPercentileUs(0.9),
+      latencyPercentileUs(0.99), latencyPercentileUs(0.999), mMaxLatencyNs / 1000));
+    System.out.println(String.format(Locale.US, "  digest: %016x", mDigest));
+  }
+
+  // Writes a trace of synthetic faces, for trying out replay without a device.
+  private static void synthesize(File trace, int faceCount, int frameCount) throws IOException {
+    Face[][] frames = SyntheticFaces.generate(faceCount, 1);
+    float[] landmarks = new float[FaceData.LANDMARK_TYPE_COUNT * 2];
+    FaceTraceWriter writer = new FaceTraceWriter(new FileOutputStream(trace).getChannel(),
+                                                 FaceTrace.FLAG_FRONT_FACING);
+    try {
+      for (int frame = 0; frame < frameCount; frame++) {
+        Face[] faces = frames[frame % frames.length];
+        writer.beginFrame(frame * SyntheticFaces.FRAME_INTERVAL_MS, frame,
+                          SyntheticFaces.PREVIEW_WIDTH, SyntheticFaces.PREVIEW_HEIGHT,
+                          faces.length);
+        for (Face face : faces) {
+          int landmarkMask = 0;
+          List<Landmark> faceLandmarks = face.getLandmarks();
+          for (Landmark landmark : faceLandmarks) {
+            int type = landmark.getType();
+            landmarks[type * 2] = landmark.getPosition().x;
+            landmarks[type * 2 + 1] = landmark.getPosition().y;
+            landmarkMask |= (1 << type);
+          }
+          PointF position = face.getPosition();
+          writer.writeFace(face.getId(), position.x, position.y, face.getWidth(),
+                           face.getHeight(), face.getEulerY(), face.getEulerZ(),
+                           face.getIsLeftEyeOpenProbability(),
+                           face.getIsRightEyeOpenProbability(),
+                           face.getIsSmilingProbability(), landmarkMask, landmarks);
+        }
+      }
+    } finally {
+      writer.close();
+    }
+    System.out.println("Wrote " + frameCount + " frames of " + faceCount + " faces to " + trace);
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.raywenderlich.facespotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the images in a frame's {@link FrameImageCache}, from an NV21 frame as the
+ * camera delivers it, either sideways or already upright.  One operation is one frame: its
+ * upright luminance, its integral images, or its whole pyramid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameImageCacheBenchmark {
+
+  @Param({"320x240", "640x480", "1280x720"})
+  public String previewSize;
+
+  // Quarter turns clockwise to upright
+  @Param({"0", "1"})
+  public int rotation;
+
+  private int mWidth;
+  private int mHeight;
+  private ByteBuffer mImage;
+  private final LuminanceFrame mFrame = new LuminanceFrame();
+  private int mNextId;
+
+  @Setup
+  public void setUp() {
+    String[] size = previewSize.split("x");
+    mWidth = Integer.parseInt(size[0]);
+    mHeight = Integer.parseInt(size[1]);
+    byte[] image = LuminanceFaces.background(mWidth, mHeight, 1);
+    LuminanceFaces.drawFace(image, mWidth, mWidth / 4, mHeight / 4, mHeight / 2);
+    mImage = ByteBuffer.wrap(LuminanceFaces.toNv21(image, mWidth, mHeight));
+  }
+
+  private FrameImageCache nextFrame() {
+    mFrame.set(mImage, mWidth, mHeight, rotation, mNextId++, 0, true);
+    return mFrame.getImages();
+  }
+
+  @Benchmark
+  public byte[] upright() {
+    return nextFrame().getPixels(0);
+  }
+
+  @Benchmark
+  public long[] integralImages() {
+    FrameImageCache images = nextFrame();
+    images.getIntegral(0);
+    return images.getSquaredIntegral(0);
+  }
+
+  @Benchmark
+  public byte[] pyramid() {
+    FrameImageCache images = nextFrame();
+    return images.getPixels(images.getLevelCount() - 1);
+  }
+
+}
@@ -0,0 +1,79 @@
+package com.raywenderlich.facespotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a frame of the iris simulation: submitting both eyes of every face, stepping them all
+ * and reading back where to draw the irises.  The faces shake from side to side, so that the
+ * irises keep bouncing.  One operation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IrisPhysicsEngineBenchmark {
+
+  // Time between frames, which takes one or two simulation steps
+  private static final long FRAME_INTERVAL_MS = 16;
+
+  @Param({"1", "4", "16", "64"})
+  public int faceCount;
+
+  private final FrameClock mClock = new FrameClock();
+  private IrisPhysicsEngine mEngine;
+  private int[] mEyes;
+  private int mFrame;
+
+  private static class FrameClock implements IrisPhysicsEngine.Clock {
+
+    long mNowMs;
+
+    @Override
+    public long nowMs() {
+      return mNowMs;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    mEngine = new IrisPhysicsEngine(mClock);
+    mEyes = new int[faceCount * 2];
+    for (int i = 0; i < mEyes.length; i++) {
+      mEyes[i] = mEngine.allocate();
+    }
+  }
+
+  @Benchmark
+  public void stepFrame(Blackhole blackhole) {
+    IrisPhysicsEngine engine = mEngine;
+    int[] eyes = mEyes;
+    int frame = mFrame++;
+    mClock.mNowMs += FRAME_INTERVAL_MS;
+
+    for (int i = 0; i < eyes.length; i++) {
+      float shake = ((frame + i) % 20 < 10) ? 30 : -30;
+      engine.setEye(eyes[i], 100 * i + shake, 200, 40, 20);
+    }
+    engine.step();
+    for (int eye : eyes) {
+      blackhole.consume(engine.getIrisX(eye));
+      blackhole.consume(engine.getIrisY(eye));
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+package com.raywenderlich.facespotter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures delivering frames through an {@link Nv21FrameRing} as the camera would: a filled
+ * buffer is wrapped as a frame, handed to a stage that retains it, turned into an engine's
+ * frame, and released until its buffer goes back to be filled again.  One operation is one
+ * frame; the GC profiler's allocation rate should stay at zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Nv21FrameRingBenchmark {
+
+  @Param({"640x480", "1280x720"})
+  public String previewSize;
+
+  private Nv21FrameRing mRing;
+  // Buffers waiting to be filled, as the camera holds them
+  private final ArrayDeque<byte[]> mEmpty = new ArrayDeque<>();
+  private final LuminanceFrame mLuminanceFrame = new LuminanceFrame();
+  private int mNextId;
+
+  @Setup
+  public void setUp() {
+    String[] size = previewSize.split("x");
+    mRing = new Nv21FrameRing(3, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+    mRing.setRecycler(new Nv21FrameRing.Recycler() {
+      @Override
+      public void recycle(byte[] buffer) {
+        mEmpty.addLast(buffer);
+      }
+    });
+  }
+
+  @Benchmark
+  public void deliverFrame(Blackhole blackhole) {
+    int id = mNextId++;
+    Nv21FrameRing.Frame frame =
+      mRing.acquire(mEmpty.removeFirst(), id, id, LuminanceFrame.ROTATION_90);
+    frame.retain();
+    frame.toLuminanceFrame(mLuminanceFrame);
+    blackhole.consume(mLuminanceFrame.getLuminance().get(id & 0xff));
+    frame.release();
+    frame.release();
+  }
+
+}
@@ -0,0 +1,97 @@
+package com.raywenderlich.facespotter;
+
+import android.graphics.PointF;
+
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.Landmark;
+
+import java.util.Random;
+
+/**
+ * Generates a repeatable stream of detected faces for the benchmarks: a crowd of faces drifting
+ * around a preview frame, with landmarks and eye classifications dropping out now and then the
+ * way they do for real detections.  The whole stream is generated up front, so that the
+ * benchmarks measure processing rather than generation.
+ */
+final class SyntheticFaces {
+
+  // Preview size that detection runs at, as set up by FaceActivity
+  static final int PREVIEW_WIDTH = 320;
+  static final int PREVIEW_HEIGHT = 240;
+
+  // Frames in a stream, after which it repeats
+  static final int FRAME_COUNT = 128;
+
+  // Time between frames, as for a 30 fps camera
+  static final long FRAME_INTERVAL_MS = 33;
+
+  // Landmark positions as proportions of the face's bounding box, by landmark type
+  private static final float[][] LANDMARK_PROPORTIONS = {
+    { 0.50f, 0.85f },  // BOTTOM_MOUTH
+    { 0.25f, 0.60f },  // LEFT_CHEEK
+    { 0.05f, 0.30f },  // LEFT_EAR_TIP
+    { 0.05f, 0.45f },  // LEFT_EAR
+    { 0.32f, 0.40f },  // LEFT_EYE
+    { 0.36f, 0.75f },  // LEFT_MOUTH
+    { 0.50f, 0.60f },  // NOSE_BASE
+    { 0.75f, 0.60f },  // RIGHT_CHEEK
+    { 0.95f, 0.30f },  // RIGHT_EAR_TIP
+    { 0.95f, 0.45f },  // RIGHT_EAR
+    { 0.68f, 0.40f },  // RIGHT_EYE
+    { 0.64f, 0.75f },  // RIGHT_MOUTH
+  };
+
+  private SyntheticFaces() {
+  }
+
+  /**
+   * Returns {@link #FRAME_COUNT} frames of detections, indexed by frame and then by face.
+   */
+  static Face[][] generate(int faceCount, long seed) {
+    Random random = new Random(seed);
+    Face[][] frames = new Face[FRAME_COUNT][faceCount];
+
+    // Lay the faces out on a grid, so that they're all in frame and all about the same size.
+    int columns = (int) Math.ceil(Math.sqrt(faceCount));
+    float cellSize = (float) PREVIEW_WIDTH / columns;
+    for (int face = 0; face < faceCount; face++) {
+      float x = (face % columns) * cellSize;
+      float y = (face / columns) * cellSize * PREVIEW_HEIGHT / PREVIEW_WIDTH;
+      float size = cellSize * 0.8f;
+      float eulerZ = 0;
+
+      for (int frame = 0; frame < FRAME_COUNT; frame++) {
+        x += (random.nextFloat() - 0.5f) * 2;
+        y += (random.nextFloat() - 0.5f) * 2;
+        size = Math.max(8, size + (random.nextFloat() - 0.5f));
+        eulerZ = Math.max(-40, Math.min(40, eulerZ + (random.nextFloat() - 0.5f) * 4));
+
+        // Most of the time all landmarks are found, but fast movement loses a few of them.
+        boolean isBlurred = random.nextFloat() < 0.2f;
+        int landmarkCount = 0;
+        Landmark[] found = new Landmark[LANDMARK_PROPORTIONS.length];
+        for (int type = 0; type < LANDMARK_PROPORTIONS.length; type++) {
+          if (isBlurred && random.nextBoolean()) {
+            continue;
+          }
+          float landmarkX = x + LANDMARK_PROPORTIONS[type][0] * size;
+          float landmarkY = y + LANDMARK_PROPORTIONS[type][1] * size;
+          found[landmarkCount++] = new Landmark(new PointF(landmarkX, landmarkY), type);
+        }
+        Landmark[] landmarks = new Landmark[landmarkCount];
+        System.arraycopy(found, 0, landmarks, 0, landmarkCount);
+
+        frames[frame][face] = new Face(face, new PointF(x, y), size, size, 0, eulerZ, landmarks,
+                                       probability(random, isBlurred),
+                                       probability(random, isBlurred),
+                                       probability(random, isBlurred));
+      }
+    }
+    return frames;
+  }
+
+  private static float probability(Random random, boolean isBlurred) {
+    return isBlurred ? Face.UNCOMPUTED_PROBABILITY : random.nextFloat();
+  }
+
+}
@@ -0,0 +1,78 @@
+package com.raywenderlich.facespotter.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the set of graphics {@link GraphicOverlay} keeps, under the contention it sees in the
+ * app: tracker threads adding and removing graphics as faces come and go, while the UI thread
+ * iterates over them to draw.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphicRegistryBenchmark {
+
+  @Param({"1", "4", "16", "64"})
+  public int faceCount;
+
+  private final GraphicRegistry<Object> mRegistry = new GraphicRegistry<>();
+  private Object[] mGraphics;
+
+  @State(Scope.Thread)
+  public static class Churn {
+    int mNext;
+  }
+
+  @Setup
+  public void setUp() {
+    mGraphics = new Object[faceCount];
+    for (int i = 0; i < faceCount; i++) {
+      mGraphics[i] = new Object();
+      mRegistry.add(mGraphics[i]);
+    }
+  }
+
+  /**
+   * A face going missing and coming back, as its tracker removes and re-adds its graphic.
+   */
+  @Benchmark
+  @Group("overlay")
+  @GroupThreads(2)
+  public void removeAndAdd(Churn churn) {
+    Object graphic = mGraphics[churn.mNext];
+    churn.mNext = (churn.mNext + 1) % mGraphics.length;
+    mRegistry.remove(graphic);
+    mRegistry.add(graphic);
+  }
+
+  /**
+   * The UI thread walking the graphics to draw them.
+   */
+  @Benchmark
+  @Group("overlay")
+  @GroupThreads(1)
+  public void iterate(Blackhole blackhole) {
+    for (Object graphic : mRegistry.snapshot()) {
+      blackhole.consume(graphic);
+    }
+  }
+
+}
@@ -0,0 +1,24 @@
+package android.graphics;
+
+/**
+ * Benchmark shim for the framework's {@code PointF}, with just the members the app uses.
+ */
+public class PointF {
+
+  public float x;
+  public float y;
+
+  public PointF() {
+  }
+
+  public PointF(float x, float y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  public final void set(float x, float y) {
+    this.x = x;
+    this.y = y;
+  }
+
+}
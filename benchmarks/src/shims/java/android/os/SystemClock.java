@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Benchmark shim for the framework's {@code SystemClock}.
+ */
+public final class SystemClock {
+
+  private SystemClock() {
+  }
+
+  public static long elapsedRealtime() {
+    return System.nanoTime() / 1000000;
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.google.android.gms.vision.face;
+
+import android.graphics.PointF;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmark shim for the Mobile Vision {@code Face}, with the same constructor and getters.
+ */
+public class Face {
+
+  public static final float UNCOMPUTED_PROBABILITY = -1.0f;
+
+  private final int mId;
+  private final PointF mPosition;
+  private final float mWidth;
+  private final float mHeight;
+  private final float mEulerY;
+  private final float mEulerZ;
+  private final List<Landmark> mLandmarks;
+  private final float mIsLeftEyeOpenProbability;
+  private final float mIsRightEyeOpenProbability;
+  private final float mIsSmilingProbability;
+
+  public Face(int id, PointF position, float width, float height, float eulerY, float eulerZ,
+              Landmark[] landmarks, float isLeftEyeOpenProbability,
+              float isRightEyeOpenProbability, float isSmilingProbability) {
+    mId = id;
+    mPosition = position;
+    mWidth = width;
+    mHeight = height;
+    mEulerY = eulerY;
+    mEulerZ = eulerZ;
+    mLandmarks = Collections.unmodifiableList(Arrays.asList(landmarks));
+    mIsLeftEyeOpenProbability = isLeftEyeOpenProbability;
+    mIsRightEyeOpenProbability = isRightEyeOpenProbability;
+    mIsSmilingProbability = isSmilingProbability;
+  }
+
+  public int getId() {
+    return mId;
+  }
+
+  public PointF getPosition() {
+    return mPosition;
+  }
+
+  public float getWidth() {
+    return mWidth;
+  }
+
+  public float getHeight() {
+    return mHeight;
+  }
+
+  public float getEulerY() {
+    return mEulerY;
+  }
+
+  public float getEulerZ() {
+    return mEulerZ;
+  }
+
+  public List<Landmark> getLandmarks() {
+    return mLandmarks;
+  }
+
+  public float getIsLeftEyeOpenProbability() {
+    return mIsLeftEyeOpenProbability;
+  }
+
+  public float getIsRightEyeOpenProbability() {
+    return mIsRightEyeOpenProbability;
+  }
+
+  public float getIsSmilingProbability() {
+    return mIsSmilingProbability;
+  }
+
+}
@@ -0,0 +1,39 @@
+package com.google.android.gms.vision.face;
+
+import android.graphics.PointF;
+
+/**
+ * Benchmark shim for the Mobile Vision {@code Landmark}, with the same type constants.
+ */
+public final class Landmark {
+
+  public static final int BOTTOM_MOUTH = 0;
+  public static final int LEFT_CHEEK = 1;
+  public static final int LEFT_EAR_TIP = 2;
+  public static final int LEFT_EAR = 3;
+  public static final int LEFT_EYE = 4;
+  public static final int LEFT_MOUTH = 5;
+  public static final int NOSE_BASE = 6;
+  public static final int RIGHT_CHEEK = 7;
+  public static final int RIGHT_EAR_TIP = 8;
+  public static final int RIGHT_EAR = 9;
+  public static final int RIGHT_EYE = 10;
+  public static final int RIGHT_MOUTH = 11;
+
+  private final PointF mPosition;
+  private final int mType;
+
+  public Landmark(PointF position, int type) {
+    mPosition = position;
+    mType = type;
+  }
+
+  public PointF getPosition() {
+    return mPosition;
+  }
+
+  public int getType() {
+    return mType;
+  }
+
+}